@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.consensus;
+
+import static io.xdag.BlockInfoBuilder.hashlow;
+
+import io.xdag.BlockInfoBuilder;
+import io.xdag.core.BlockWrapper;
+import io.xdag.core.XdagBlock;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding a block to, and releasing a parent from, a pending pool already holding {@link #capacity}
+ * blocks. Each add past the capacity evicts the oldest block, so both should cost the same however
+ * full the pool is. The former pool copied its whole key set for every eviction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PendingBlockPoolBenchmark {
+
+    /**
+     * Children per missing parent.
+     */
+    private static final int FAN_OUT = 4;
+
+    @Param({"10000", "100000", "500000"})
+    public int capacity;
+
+    private PendingBlockPool pool;
+    private int next;
+
+    private static BlockWrapper wrapper(int id) {
+        return new BlockWrapper(BlockInfoBuilder.block(id), 5);
+    }
+
+    private static Bytes32 parent(int id) {
+        return hashlow(Integer.MIN_VALUE | id / FAN_OUT);
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        pool = new PendingBlockPool((long) capacity * XdagBlock.XDAG_BLOCK_SIZE);
+        for (next = 0; next < capacity; next++) {
+            pool.add(wrapper(next), parent(next), 0);
+        }
+    }
+
+    @Benchmark
+    public boolean addAtCapacity() {
+        int id = next++;
+        return pool.add(wrapper(id), parent(id), 0);
+    }
+
+    @Benchmark
+    public List<BlockWrapper> addAndRelease() {
+        int id = next++;
+        pool.add(wrapper(id), parent(id), 0);
+        return pool.release(parent(id - FAN_OUT * 2));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
+
+import io.xdag.BlockBuilder;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.Keys;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.utils.BytesUtils;
+import io.xdag.utils.XdagTime;
+import java.util.concurrent.TimeUnit;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and parsing of a signed transaction block. Run with {@code -prof gc} for the
+ * allocations per block; {@link #reparseForImport} is what importing a received block used to cost
+ * on top of the parse at the network edge, {@link #copyForImport} what it costs now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockBenchmark {
+
+    private Block block;
+    private byte[] raw;
+    private Block received;
+
+    @Setup
+    public void setUp() {
+        Config config = new DevnetConfig();
+        KeyPair key = SampleKeys.KEY_PAIR;
+        Address from = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(key)), XDAG_FIELD_INPUT, true);
+        Address to = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(key)), XDAG_FIELD_OUTPUT, true);
+        block = BlockBuilder.generateNewTransactionBlock(config, key, XdagTime.getCurrentTimestamp(), from, to,
+                XAmount.of(10, XUnit.XDAG));
+        raw = block.toBytes();
+        received = new Block(new XdagBlock(raw));
+    }
+
+    @Benchmark
+    public XdagBlock newXdagBlock() {
+        return new XdagBlock(raw);
+    }
+
+    @Benchmark
+    public long fieldTypes() {
+        XdagBlock xdagBlock = new XdagBlock(raw);
+        long n = 0;
+        for (int i = 0; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            n += xdagBlock.getFieldType(i).ordinal();
+        }
+        return n + xdagBlock.getSum();
+    }
+
+    @Benchmark
+    public Object subRawData() {
+        return received.getSubRawData(received.getOutsigIndex() - 2);
+    }
+
+    @Benchmark
+    public Block parse() {
+        Block b = new Block(new XdagBlock(raw));
+        b.parse();
+        return b;
+    }
+
+    @Benchmark
+    public Object parseWithKeys() {
+        Block b = new Block(new XdagBlock(raw));
+        return b.getPubKeys();
+    }
+
+    @Benchmark
+    public Block reparseForImport() {
+        return new Block(new XdagBlock(received.getXdagBlock().getData().toArray()));
+    }
+
+    @Benchmark
+    public Block copyForImport() {
+        return received.copy();
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return block.toBytes();
+    }
+}
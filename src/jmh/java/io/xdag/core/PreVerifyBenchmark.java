@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
+
+import com.google.common.collect.Lists;
+import io.xdag.BlockBuilder;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.Keys;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.utils.BytesUtils;
+import io.xdag.utils.XdagTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link BlockSignatureVerifier#preVerify} of a received transaction block spending {@link #INPUTS}
+ * input blocks, by size of the worker pool. Every invocation gets a block and inputs the verifier
+ * has not seen, so its caches never answer and each signature is checked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreVerifyBenchmark {
+
+    /**
+     * input blocks of the transaction, each one's output signature is checked against the key
+     */
+    static final int INPUTS = 8;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    private final Config config = new DevnetConfig();
+    private final KeyPair key = SampleKeys.KEY_PAIR;
+    private BlockSignatureVerifier verifier;
+    private long time;
+
+    private Block block;
+    private final Map<Bytes32, Block> inputs = new HashMap<>();
+
+    @Setup(Level.Trial)
+    public void start() {
+        verifier = new BlockSignatureVerifier(threads);
+        time = XdagTime.getCurrentTimestamp() - (1L << 32);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        verifier.stop();
+    }
+
+    @Setup(Level.Invocation)
+    public void newBlock() {
+        inputs.clear();
+        List<Address> refs = Lists.newArrayList();
+        for (int i = 0; i < INPUTS; i++) {
+            Block input = BlockBuilder.generateAddressBlock(config, key, time++);
+            // as read back from the store
+            inputs.put(input.getHashLow(), new Block(new XdagBlock(input.toBytes())));
+            refs.add(new Address(input.getHashLow(), XDAG_FIELD_IN, XAmount.of(1, XUnit.XDAG), false));
+        }
+        refs.add(new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(key)), XDAG_FIELD_OUTPUT,
+                XAmount.of(INPUTS, XUnit.XDAG), true));
+        Block tx = new Block(config, time++, refs, null, false, Lists.newArrayList(key), null, 0,
+                XAmount.of(100, XUnit.MILLI_XDAG));
+        tx.signOut(key);
+        // as received from a peer
+        block = new Block(new XdagBlock(tx.toBytes()));
+    }
+
+    @Benchmark
+    public Block preVerify() {
+        verifier.preVerify(block, inputs::get);
+        return block;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUT;
+
+import io.xdag.BlockBuilder;
+import io.xdag.Kernel;
+import io.xdag.Wallet;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.db.AddressStore;
+import io.xdag.db.BlockStore;
+import io.xdag.db.OrphanBlockStore;
+import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.rocksdb.AddressStoreImpl;
+import io.xdag.db.rocksdb.BlockStoreImpl;
+import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.OrphanBlockStoreImpl;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.utils.XdagTime;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.KeyPair;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Import of a generated chain, one address block followed by {@link #CHAIN_LENGTH} extra blocks
+ * each linking the previous one, into an empty store. Reported per imported block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 10, batchSize = 1)
+@Fork(1)
+public class TryToConnectBenchmark {
+
+    static final int CHAIN_LENGTH = 500;
+
+    private final KeyPair key = SampleKeys.KEY_PAIR;
+    private final List<Block> chain = Lists.newArrayList();
+
+    private File root;
+    private RocksdbFactory dbFactory;
+    private BlockchainImpl blockchain;
+
+    @Setup(Level.Trial)
+    public void generateChain() {
+        Config config = new DevnetConfig();
+        long generateTime = 1600616700000L;
+        Block addressBlock = BlockBuilder.generateAddressBlock(config, key, generateTime);
+        chain.add(addressBlock);
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            generateTime += 64000L;
+            List<Address> pending = Lists.newArrayList(new Address(ref, XDAG_FIELD_OUT, false));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = BlockBuilder.generateExtraBlock(config, key, xdagTime, pending);
+            chain.add(extraBlock);
+            ref = extraBlock.getHashLow();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("xdag-jmh").toFile();
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(new File(root, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(root, "backup").getAbsolutePath());
+
+        Wallet wallet = new Wallet(config);
+        wallet.unlock("password");
+        wallet.setAccounts(Collections.singletonList(key));
+
+        Kernel kernel = new Kernel(config, key);
+        dbFactory = new RocksdbFactory(config);
+        BlockStore blockStore = new BlockStoreImpl(
+                dbFactory.getDB(DatabaseName.INDEX),
+                dbFactory.getDB(DatabaseName.TIME),
+                dbFactory.getDB(DatabaseName.BLOCK),
+                dbFactory.getDB(DatabaseName.TXHISTORY));
+        blockStore.reset();
+        OrphanBlockStore orphanBlockStore = new OrphanBlockStoreImpl(dbFactory.getDB(DatabaseName.ORPHANIND));
+        orphanBlockStore.reset();
+        AddressStore addressStore = new AddressStoreImpl(dbFactory.getDB(DatabaseName.ADDRESS));
+        addressStore.reset();
+
+        kernel.setDbFactory(dbFactory);
+        kernel.setBlockStore(blockStore);
+        kernel.setOrphanBlockStore(orphanBlockStore);
+        kernel.setAddressStore(addressStore);
+        kernel.setTxHistoryStore(Mockito.mock(TransactionHistoryStore.class));
+        kernel.setWallet(wallet);
+        blockchain = new BlockchainTest.MockBlockchain(kernel);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        blockchain.stopCheckMain();
+        dbFactory.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHAIN_LENGTH + 1)
+    public void tryToConnect() {
+        for (Block block : chain) {
+            // a fresh copy, tryToConnect fills in the info of the block it imports
+            Block copy = new Block(new XdagBlock(block.getXdagBlock().getData().toArray()));
+            ImportResult result = blockchain.tryToConnect(copy);
+            if (result != ImportResult.IMPORTED_BEST && result != ImportResult.IMPORTED_NOT_BEST) {
+                throw new IllegalStateException("Import failed: " + result + " " + result.getErrorInfo());
+            }
+        }
+    }
+}
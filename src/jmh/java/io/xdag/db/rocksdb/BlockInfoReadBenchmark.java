@@ -0,0 +1,144 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import static io.xdag.db.BlockStore.HASH_BLOCK_INFO;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.XAmount;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import io.xdag.utils.BytesUtils;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link BlockStoreImpl#getBlockInfoByHash} under 8 concurrent readers, with the records stored
+ * in the former Kryo encoding or as {@link BlockInfoCodec} records. {@code decode} is the cache
+ * miss path alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class BlockInfoReadBenchmark {
+
+    static final int BLOCKS = 100_000;
+
+    @Param({"kryo", "codec"})
+    public String format;
+
+    private File root;
+    private DatabaseFactory factory;
+    private KVSource<byte[], byte[]> indexSource;
+    private BlockStoreImpl blockStore;
+    private Bytes32[] hashlows;
+    private byte[][] keys;
+
+    @Setup
+    public void setUp() throws IOException, SerializationException {
+        root = Files.createTempDirectory("xdag-jmh").toFile();
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(new File(root, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(root, "backup").getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        indexSource = factory.getDB(DatabaseName.INDEX);
+        blockStore = new BlockStoreImpl(
+                indexSource,
+                factory.getDB(DatabaseName.TIME),
+                factory.getDB(DatabaseName.BLOCK),
+                factory.getDB(DatabaseName.TXHISTORY));
+        // init first, it would migrate the kryo records
+        blockStore.init();
+
+        Random random = new Random(1);
+        hashlows = new Bytes32[BLOCKS];
+        keys = new byte[BLOCKS][];
+        for (int i = 0; i < BLOCKS; i++) {
+            BlockInfo blockInfo = new BlockInfo();
+            blockInfo.type = 0x0171;
+            blockInfo.flags = 0x1f;
+            blockInfo.setHeight(i);
+            blockInfo.setDifficulty(new BigInteger(128, random));
+            blockInfo.setRef(randomBytes(random));
+            blockInfo.setMaxDiffLink(randomBytes(random));
+            blockInfo.setHash(randomBytes(random));
+            blockInfo.setHashlow(randomBytes(random));
+            blockInfo.setAmount(XAmount.of(random.nextInt(Integer.MAX_VALUE)));
+            blockInfo.setTimestamp(i * 64L);
+            hashlows[i] = Bytes32.wrap(blockInfo.getHashlow());
+            keys[i] = BytesUtils.merge(HASH_BLOCK_INFO, blockInfo.getHashlow());
+            indexSource.put(keys[i], "kryo".equals(format)
+                    ? blockStore.serialize(blockInfo) : BlockInfoCodec.encode(blockInfo));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        factory.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public Block getBlockInfoByHash() {
+        return blockStore.getBlockInfoByHash(hashlows[ThreadLocalRandom.current().nextInt(BLOCKS)]);
+    }
+
+    @Benchmark
+    public BlockInfo decode() throws DeserializationException {
+        return blockStore.decodeBlockInfo(indexSource.get(keys[ThreadLocalRandom.current().nextInt(BLOCKS)]));
+    }
+
+    private static byte[] randomBytes(Random random) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
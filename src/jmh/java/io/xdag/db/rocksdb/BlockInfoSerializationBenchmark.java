@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.XAmount;
+import io.xdag.core.XUnit;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BlockInfo encodings of {@link BlockStoreImpl}, written and read for every block import: the
+ * former Kryo one against {@link BlockInfoCodec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockInfoSerializationBenchmark {
+
+    private File root;
+    private DatabaseFactory factory;
+    private BlockStoreImpl blockStore;
+    private BlockInfo blockInfo;
+    private byte[] kryoEncoded;
+    private byte[] codecEncoded;
+
+    @Setup
+    public void setUp() throws IOException, SerializationException {
+        root = Files.createTempDirectory("xdag-jmh").toFile();
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(new File(root, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(root, "backup").getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        blockStore = new BlockStoreImpl(
+                factory.getDB(DatabaseName.INDEX),
+                factory.getDB(DatabaseName.TIME),
+                factory.getDB(DatabaseName.BLOCK),
+                factory.getDB(DatabaseName.TXHISTORY));
+
+        Random random = new Random(1);
+        blockInfo = new BlockInfo();
+        blockInfo.type = 0x0171;
+        blockInfo.flags = 0x1f;
+        blockInfo.setHeight(1_000_000);
+        blockInfo.setDifficulty(new BigInteger(128, random));
+        blockInfo.setRef(randomBytes(random, 32));
+        blockInfo.setMaxDiffLink(randomBytes(random, 32));
+        blockInfo.setHash(randomBytes(random, 32));
+        blockInfo.setHashlow(randomBytes(random, 32));
+        blockInfo.setRemark(randomBytes(random, 32));
+        blockInfo.setFee(XAmount.of(100, XUnit.MILLI_XDAG));
+        blockInfo.setAmount(XAmount.of(1024, XUnit.XDAG));
+        blockInfo.setTimestamp(System.currentTimeMillis());
+        kryoEncoded = blockStore.serialize(blockInfo);
+        codecEncoded = BlockInfoCodec.encode(blockInfo);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        factory.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public byte[] kryoSerialize() throws SerializationException {
+        return blockStore.serialize(blockInfo);
+    }
+
+    @Benchmark
+    public Object kryoDeserialize() throws DeserializationException {
+        return blockStore.deserialize(kryoEncoded, BlockInfo.class);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() throws SerializationException {
+        return BlockInfoCodec.encode(blockInfo);
+    }
+
+    @Benchmark
+    public BlockInfo codecDecode() throws DeserializationException {
+        return BlockInfoCodec.decode(codecEncoded);
+    }
+
+    @Benchmark
+    public int codecFlags() {
+        return BlockInfoCodec.flags(codecEncoded);
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Orphan selection for a new link or main block with a large orphan backlog, plus the
+ * add/delete churn of importing blocks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrphanBlockStoreBenchmark {
+
+    // orphans picked for a main block
+    static final int ORPHANS_PER_BLOCK = 11;
+
+    @Param({"1000", "100000"})
+    public int orphans;
+
+    private File root;
+    private DatabaseFactory factory;
+    private OrphanBlockStoreImpl orphanBlockStore;
+    private final Random random = new Random(1);
+    private long maxTime;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("xdag-jmh").toFile();
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(new File(root, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(root, "backup").getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        orphanBlockStore = new OrphanBlockStoreImpl(factory.getDB(DatabaseName.ORPHANIND));
+        orphanBlockStore.reset();
+        for (int i = 0; i < orphans; i++) {
+            orphanBlockStore.addOrphan(orphan(random.nextInt(orphans) + 1L));
+        }
+        maxTime = orphans + 1L;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        factory.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public List<Address> getOrphan() {
+        long[] sendTime = new long[]{maxTime, 0};
+        return orphanBlockStore.getOrphan(ORPHANS_PER_BLOCK, sendTime);
+    }
+
+    @Benchmark
+    public void addAndDelete() {
+        Block block = orphan(++maxTime);
+        orphanBlockStore.addOrphan(block);
+        orphanBlockStore.deleteByHash(block.getHashLow().toArray());
+    }
+
+    private Block orphan(long time) {
+        MutableBytes32 hashlow = MutableBytes32.create();
+        hashlow.setLong(8, random.nextLong());
+        hashlow.setLong(16, random.nextLong());
+        hashlow.setLong(24, random.nextLong());
+        BlockInfo info = new BlockInfo();
+        info.setHashlow(hashlow.toArray());
+        info.setTimestamp(time);
+        return new Block(info);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.utils.BytesUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point reads, writes and prefix scans on a store preloaded with {@link #ENTRIES} entries, keys
+ * being a one byte prefix followed by 32 random bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RocksdbKVSourceBenchmark {
+
+    static final int ENTRIES = 100_000;
+    static final int VALUE_SIZE = 128;
+
+    private File root;
+    private DatabaseFactory factory;
+    private KVSource<byte[], byte[]> source;
+    private byte[][] keys;
+    private byte[] value;
+    private final Random random = new Random(1);
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("xdag-jmh").toFile();
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(new File(root, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(root, "backup").getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        source = factory.getDB(DatabaseName.INDEX);
+        source.reset();
+
+        value = new byte[VALUE_SIZE];
+        random.nextBytes(value);
+        keys = new byte[ENTRIES][];
+        for (int i = 0; i < ENTRIES; i++) {
+            keys[i] = newKey(i);
+            source.put(keys[i], value);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        factory.close();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return source.get(keys[random.nextInt(ENTRIES)]);
+    }
+
+    @Benchmark
+    public void put() {
+        source.put(newKey(next++), value);
+    }
+
+    @Benchmark
+    public List<Pair<byte[], byte[]>> prefixScan() {
+        // about ENTRIES / 256 entries per prefix
+        return source.prefixKeyAndValueLookup(BytesUtils.of((byte) random.nextInt(256)));
+    }
+
+    private byte[] newKey(int i) {
+        byte[] key = new byte[33];
+        random.nextBytes(key);
+        key[0] = (byte) i;
+        return key;
+    }
+}
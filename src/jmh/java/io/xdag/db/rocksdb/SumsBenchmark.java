@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.utils.FileUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sums upkeep of {@link BlockStoreImpl}: the four file updates of every saved block, and the
+ * {@code loadSum} answering a sums request of a syncing peer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SumsBenchmark {
+
+    static final long START_TIME = 0x17f0_0000_0000L;
+    static final long TIME_SPAN = 0x20_0000_0000L;
+
+    private File root;
+    private DatabaseFactory factory;
+    private BlockStoreImpl blockStore;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("xdag-jmh").toFile();
+        Config config = new DevnetConfig();
+        config.getNodeSpec().setStoreDir(new File(root, "store").getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(new File(root, "backup").getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        blockStore = new BlockStoreImpl(
+                factory.getDB(DatabaseName.INDEX),
+                factory.getDB(DatabaseName.TIME),
+                factory.getDB(DatabaseName.BLOCK),
+                factory.getDB(DatabaseName.TXHISTORY));
+        blockStore.init();
+        for (int i = 0; i < 10_000; i++) {
+            saveSums();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        factory.close();
+        org.apache.commons.io.FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public void saveSums() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long time = START_TIME + (random.nextLong() & (TIME_SPAN - 1));
+        List<String> files = FileUtils.getFileName(time);
+        for (int i = 0; i < files.size(); i++) {
+            blockStore.updateSum(files.get(i), random.nextLong(), 512, (time >> (40 - 8 * i)) & 0xff);
+        }
+    }
+
+    @Benchmark
+    public MutableBytes loadSum() {
+        long dt = 1L << (16 + 4 * ThreadLocalRandom.current().nextInt(4));
+        long start = (START_TIME + (ThreadLocalRandom.current().nextLong() & (TIME_SPAN - 1))) & -dt;
+        MutableBytes sums = MutableBytes.create(256);
+        blockStore.loadSum(start, start + dt, sums);
+        return sums;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Address;
+import io.xdag.core.TxHistory;
+import io.xdag.core.TxHistoryPage;
+import io.xdag.core.XAmount;
+import io.xdag.core.XdagField;
+import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.mysql.TransactionHistoryStoreImpl;
+import io.xdag.db.mysql.TransactionHistoryStoreImplTest;
+import io.xdag.utils.BasicUtils;
+import io.xdag.utils.DruidUtils;
+import io.xdag.utils.XdagTime;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * History of an address with a million transactions, read from the MySQL store (on H2 from the
+ * test resources) or from {@link RocksdbTransactionHistoryStore}: one page by number at the given
+ * depth, and the same page through the keyset cursor of the page before it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TxHistoryQueryBenchmark {
+
+    static final int RECORDS = 1_000_000;
+    static final int PAGE_SIZE = 100;
+    static final long START_TIME = 1_700_000_000L << 10;
+
+    @Param({"h2", "rocksdb"})
+    public String backend;
+
+    @Param({"1", "100", "5000"})
+    public int page;
+
+    private File root;
+    private DatabaseFactory factory;
+    private TransactionHistoryStore store;
+    private String address;
+    private String cursor;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        if ("h2".equals(backend)) {
+            Connection conn = DruidUtils.getConnection();
+            Statement stmt = conn.createStatement();
+            stmt.execute(TransactionHistoryStoreImplTest.SQL_CTEATE_TABLE);
+            DruidUtils.close(conn, stmt);
+            store = new TransactionHistoryStoreImpl(PAGE_SIZE);
+        } else {
+            root = Files.createTempDirectory("xdag-jmh").toFile();
+            Config config = new DevnetConfig();
+            config.getNodeSpec().setStoreDir(new File(root, "store").getAbsolutePath());
+            config.getNodeSpec().setStoreBackupDir(new File(root, "backup").getAbsolutePath());
+            factory = new RocksdbFactory(config);
+            RocksdbTransactionHistoryStore rocksdbStore = new RocksdbTransactionHistoryStore(
+                    (RocksdbKVSource) factory.getDB(DatabaseName.TXHISTORY), PAGE_SIZE);
+            rocksdbStore.init();
+            store = rocksdbStore;
+        }
+
+        Bytes32 account = hashlow(1);
+        address = BasicUtils.hash2Address(account);
+        List<TxHistory> chunk = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            Address link = new Address(account, XdagField.FieldType.XDAG_FIELD_OUT, XAmount.of(i), false);
+            chunk.add(new TxHistory(link, BasicUtils.hash2Address(hashlow(i + 2)), START_TIME + i, "benchmark"));
+            if (chunk.size() == 10_000) {
+                store.saveTxHistories(chunk);
+                chunk.clear();
+            }
+        }
+
+        // cursor of the page before the measured one
+        for (int i = 1; i < page; i++) {
+            cursor = store.listTxHistoryByAddress(address, 0, XdagTime.xdagTimestampToMs(START_TIME + RECORDS),
+                    cursor, PAGE_SIZE).getNext();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (factory != null) {
+            factory.close();
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    @Benchmark
+    public List<TxHistory> pageByNumber() {
+        return store.listTxHistoryByAddress(address, page, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public TxHistoryPage pageByCursor() {
+        return store.listTxHistoryByAddress(address, 0, XdagTime.xdagTimestampToMs(START_TIME + RECORDS),
+                cursor, PAGE_SIZE);
+    }
+
+    private static Bytes32 hashlow(long n) {
+        return Bytes32.fromHexStringLenient(Long.toHexString(n << 8));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.MessageToMessageCodec;
+import io.xdag.BlockBuilder;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.MessageFactory;
+import io.xdag.net.message.consensus.SyncBlockMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.tuple.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Sync blocks sent through the frame and message codecs to an in-process peer that echoes them
+ * back, with {@link XdagMessageHandler} or the former byte[] based handler. The small frame body
+ * size splits every block into several frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XdagMessageHandlerBenchmark {
+
+    static final int BATCH = 10000;
+
+    @Param({"pooled", "legacy"})
+    public String handler;
+
+    @Param({"131072", "128"})
+    public int frameBodySize;
+
+    private final Semaphore received = new Semaphore(0);
+
+    private Config config;
+    private EventLoopGroup group;
+    private Channel server;
+    private Channel client;
+    private Block block;
+
+    private ChannelHandler codec() {
+        return "legacy".equals(handler) ? new LegacyMessageHandler(config) : new XdagMessageHandler(config);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        int maxFrameBodySize = frameBodySize;
+        config = new DevnetConfig() {
+            {
+                netMaxFrameBodySize = maxFrameBodySize;
+            }
+        };
+        block = BlockBuilder.generateAddressBlock(config, SampleKeys.KEY_PAIR, 1600616700000L);
+        group = new DefaultEventLoopGroup(2);
+        LocalAddress address = new LocalAddress("message-handler-benchmark");
+
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        ch.pipeline().addLast(new XdagFrameHandler(config), codec(), new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                ctx.write(msg);
+                            }
+
+                            @Override
+                            public void channelReadComplete(ChannelHandlerContext ctx) {
+                                ctx.flush();
+                            }
+                        });
+                    }
+                })
+                .bind(address).sync().channel();
+
+        client = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .handler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        ch.pipeline().addLast(new XdagFrameHandler(config), codec(), new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                received.release();
+                            }
+                        });
+                    }
+                })
+                .connect(address).sync().channel();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        client.close().sync();
+        server.close().sync();
+        group.shutdownGracefully().sync();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void echoThroughput() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            client.write(new SyncBlockMessage(block, 1));
+        }
+        client.flush();
+        received.acquire(BATCH);
+    }
+
+    /**
+     * The message handler as it was: Snappy into fresh arrays, a copy per frame, and reassembly in a
+     * 16 entry cache under a lock. It also does the body copy the frame handler used to make.
+     */
+    static class LegacyMessageHandler extends MessageToMessageCodec<Frame, Message> {
+
+        private final Cache<Integer, Pair<List<Frame>, AtomicInteger>> incompletePackets = Caffeine.newBuilder()
+                .maximumSize(16).build();
+        private final MessageFactory messageFactory = new MessageFactory();
+        private final AtomicInteger count = new AtomicInteger(0);
+        private final int limit;
+
+        LegacyMessageHandler(Config config) {
+            this.limit = config.getNodeSpec().getNetMaxFrameBodySize();
+        }
+
+        @Override
+        protected void encode(ChannelHandlerContext ctx, Message msg, List<Object> out) throws Exception {
+            byte[] dataCompressed = Snappy.compress(msg.getBody());
+            int packetId = count.incrementAndGet();
+            int total = (dataCompressed.length - 1) / limit + 1;
+            for (int i = 0; i < total; i++) {
+                byte[] body = new byte[Math.min(limit, dataCompressed.length - i * limit)];
+                System.arraycopy(dataCompressed, i * limit, body, 0, body.length);
+                out.add(new Frame(Frame.VERSION, Frame.COMPRESS_SNAPPY, msg.getCode().toByte(), packetId,
+                        dataCompressed.length, body.length, Unpooled.wrappedBuffer(body)));
+            }
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, Frame frame, List<Object> out) throws Exception {
+            byte[] copy = ByteBufUtil.getBytes(frame.getBody());
+            frame.getBody().release();
+            Frame body = new Frame(frame.getVersion(), frame.getCompressType(), frame.getPacketType(),
+                    frame.getPacketId(), frame.getPacketSize(), frame.getBodySize(), Unpooled.wrappedBuffer(copy));
+            if (!frame.isChunked()) {
+                out.add(decodeMessage(List.of(body)));
+                return;
+            }
+            synchronized (incompletePackets) {
+                Pair<List<Frame>, AtomicInteger> pair = incompletePackets.get(frame.getPacketId(),
+                        k -> Pair.of(new ArrayList<>(), new AtomicInteger(frame.getPacketSize())));
+                pair.getLeft().add(body);
+                if (pair.getRight().addAndGet(-frame.getBodySize()) == 0) {
+                    out.add(decodeMessage(pair.getLeft()));
+                    incompletePackets.invalidate(frame.getPacketId());
+                }
+            }
+        }
+
+        private Message decodeMessage(List<Frame> frames) throws Exception {
+            Frame head = frames.get(0);
+            byte[] data = new byte[head.getPacketSize()];
+            int pos = 0;
+            for (Frame frame : frames) {
+                frame.getBody().readBytes(data, pos, frame.getBodySize());
+                pos += frame.getBodySize();
+            }
+            return messageFactory.create(head.getPacketType(), Snappy.uncompress(data));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import java.util.concurrent.TimeUnit;
+import org.apache.tuweni.bytes.Bytes32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Shares per second one core takes from a pool, JSON text frames against binary ones.
+ * <p>
+ * A simulated pool client encodes its shares as masked WebSocket frames up front. Each operation
+ * feeds one of them through the server side frame decoder and the share decoding of the node, up to
+ * the share the PoW validates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolShareBenchmark {
+
+    private static final int SHARES = 1024;
+
+    private final ByteBuf[] jsonFrames = new ByteBuf[SHARES];
+    private final ByteBuf[] binaryFrames = new ByteBuf[SHARES];
+    private final ShareSink sink = new ShareSink();
+    private EmbeddedChannel server;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        EmbeddedChannel client = new EmbeddedChannel(new WebSocket13FrameEncoder(true));
+        Bytes32 preHash = Bytes32.random();
+        for (int i = 0; i < SHARES; i++) {
+            Bytes32 share = Bytes32.random();
+            String json = "{\"msgType\":2,\"msgContent\":{\"share\":\"" + share.toUnprefixedHexString()
+                    + "\",\"hash\":\"" + preHash.toUnprefixedHexString() + "\",\"taskIndex\":" + i + "}}";
+            client.writeOutbound(new TextWebSocketFrame(json));
+            jsonFrames[i] = readWire(client);
+            client.writeOutbound(new BinaryWebSocketFrame(PoolProtocol.encodeShare(client.alloc(), share, preHash, i)));
+            binaryFrames[i] = readWire(client);
+        }
+        client.finishAndReleaseAll();
+        server = new EmbeddedChannel(new WebSocket13FrameDecoder(true, false, 65536), sink);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.finishAndReleaseAll();
+        for (int i = 0; i < SHARES; i++) {
+            jsonFrames[i].release();
+            binaryFrames[i].release();
+        }
+    }
+
+    @Benchmark
+    public PoolProtocol.Share jsonShare() {
+        server.writeInbound(jsonFrames[next++ & (SHARES - 1)].retainedDuplicate());
+        return sink.share;
+    }
+
+    @Benchmark
+    public PoolProtocol.Share binaryShare() {
+        server.writeInbound(binaryFrames[next++ & (SHARES - 1)].retainedDuplicate());
+        return sink.share;
+    }
+
+    private static ByteBuf readWire(EmbeddedChannel client) {
+        ByteBuf wire = Unpooled.buffer();
+        for (ByteBuf part; (part = client.readOutbound()) != null; ) {
+            wire.writeBytes(part);
+            part.release();
+        }
+        return wire;
+    }
+
+    /**
+     * Decodes shares like {@link PoolHandShakeHandler} and {@code XdagPow.GetShares} do.
+     */
+    private static class ShareSink extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+        private PoolProtocol.Share share;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+            if (frame instanceof BinaryWebSocketFrame) {
+                share = PoolProtocol.readShare(frame.content());
+            } else {
+                share = PoolProtocol.parseShare(((TextWebSocketFrame) frame).text());
+            }
+        }
+    }
+}
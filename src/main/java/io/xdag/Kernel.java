@@ -37,9 +37,11 @@ import io.xdag.crypto.Keys;
 import io.xdag.crypto.RandomX;
 import io.xdag.db.*;
 import io.xdag.db.mysql.TransactionHistoryStoreImpl;
+import io.xdag.db.mysql.TxHistoryWriter;
 import io.xdag.db.rocksdb.*;
+import io.xdag.metrics.MetricsHttpServer;
+import io.xdag.metrics.MetricsRegistry;
 import io.xdag.net.*;
-import io.xdag.net.message.MessageQueue;
 import io.xdag.net.node.NodeManager;
 import io.xdag.net.websocket.WebSocketServer;
 import io.xdag.pool.PoolAwardManagerImpl;
@@ -75,6 +77,7 @@ public class Kernel {
     protected BlockStore blockStore;
     protected OrphanBlockStore orphanBlockStore;
     protected TransactionHistoryStore txHistoryStore;
+    protected TxHistoryWriter txHistoryWriter;
 
     protected SnapshotStore snapshotStore;
     protected Blockchain blockchain;
@@ -111,6 +114,7 @@ public class Kernel {
     private JsonRpcWeb3ServerHandler jsonRpcWeb3ServerHandler;
     private Web3 web3;
     private Web3HttpServer web3HttpServer;
+    private MetricsHttpServer metricsHttpServer;
     private JsonRpcWeb3FilterHandler jsonRpcWeb3FilterHandler;
 
     public Kernel(Config config, Wallet wallet) {
@@ -176,7 +180,16 @@ public class Kernel {
 
         if (config.getEnableTxHistory()) {
             long txPageSizeLimit = config.getTxPageSizeLimit();
-            txHistoryStore = new TransactionHistoryStoreImpl(txPageSizeLimit);
+            if ("rocksdb".equalsIgnoreCase(config.getTxHistoryStoreType())) {
+                RocksdbTransactionHistoryStore embeddedStore = new RocksdbTransactionHistoryStore(
+                        (RocksdbKVSource) dbFactory.getDB(DatabaseName.TXHISTORY), txPageSizeLimit);
+                embeddedStore.init();
+                txHistoryStore = embeddedStore;
+            } else {
+                txHistoryStore = new TransactionHistoryStoreImpl(txPageSizeLimit);
+            }
+            txHistoryWriter = new TxHistoryWriter(txHistoryStore, dbFactory.getDB(DatabaseName.TXHISTORY));
+            txHistoryWriter.start();
             log.info("Transaction History Store init.");
         }
 
@@ -298,6 +311,15 @@ public class Kernel {
             getWeb3HttpServer().start();
         }
 
+        // ====================================
+        // metrics start
+        // ====================================
+        if (config.getNodeSpec().isMetricsEnabled()) {
+            metricsHttpServer = new MetricsHttpServer(MetricsRegistry.getDefault(),
+                    InetAddress.getByName(config.getNodeSpec().getMetricsHost()), config.getNodeSpec().getMetricsPort());
+            metricsHttpServer.start();
+        }
+
         // ====================================
         // telnet server
         // ====================================
@@ -388,6 +410,9 @@ public class Kernel {
         if (web3HttpServer != null) {
             web3HttpServer.stop();
         }
+        if (metricsHttpServer != null) {
+            metricsHttpServer.stop();
+        }
 
         // 1. 工作层关闭
         // stop consensus
@@ -407,9 +432,6 @@ public class Kernel {
 
         log.info("ChannelManager stop.");
 
-        // close timer
-        MessageQueue.timer.shutdown();
-
         // close server
         p2p.close();
         log.info("Node server stop.");
@@ -421,10 +443,13 @@ public class Kernel {
         // TODO 关闭checkmain线程
         blockchain.stopCheckMain();
 
-        for (DatabaseName name : DatabaseName.values()) {
-            dbFactory.getDB(name).close();
+        if (txHistoryWriter != null) {
+            txHistoryWriter.stop();
+            log.info("Transaction history writer stop.");
         }
 
+        dbFactory.close();
+
         // release
         randomx.randomXPoolReleaseMem();
         log.info("Release randomx");
@@ -34,7 +34,10 @@ import io.xdag.crypto.Keys;
 import io.xdag.crypto.Sign;
 import io.xdag.db.SnapshotStore;
 import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.RocksdbFactory;
 import io.xdag.db.rocksdb.RocksdbKVSource;
+import io.xdag.db.rocksdb.RocksdbMigrator;
+import io.xdag.db.rocksdb.RocksdbStorage;
 import io.xdag.db.rocksdb.SnapshotStoreImpl;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.MnemonicUtils;
@@ -49,6 +52,7 @@ import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.besu.crypto.KeyPair;
 import org.hyperledger.besu.crypto.SECPPrivateKey;
 import org.hyperledger.besu.crypto.SecureRandomProvider;
+import org.rocksdb.RocksIterator;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -134,6 +138,12 @@ public class XdagCli extends Launcher {
                 .hasArg(true).optionalArg(true).argName("covertuint").type(String.class)
                 .build();
         addOption(makeSnapshotOption);
+
+        Option migrateDbOption = Option.builder()
+                .longOpt(XdagOption.MIGRATE_DB.toString())
+                .desc("migrate the database to the column family layout")
+                .build();
+        addOption(migrateDbOption);
     }
 
     public static void main(String[] args, XdagCli cli) throws Exception {
@@ -197,6 +207,8 @@ public class XdagCli extends Launcher {
                 convertXAmount = true;
             }
             makeSnapshot(convertXAmount);
+        } else if (cmd.hasOption(XdagOption.MIGRATE_DB.toString())) {
+            migrateDb();
         } else {
             if (cmd.hasOption(XdagOption.ENABLE_SNAPSHOT.toString())) {
                 String[] values = cmd.getOptionValues(XdagOption.ENABLE_SNAPSHOT.toString().trim());
@@ -505,28 +517,58 @@ public class XdagCli extends Launcher {
         System.out.println("convertXAmount = " + b);
         long start = System.currentTimeMillis();
         this.getConfig().getSnapshotSpec().setSnapshotJ(true);
-        RocksdbKVSource blockSource = new RocksdbKVSource(DatabaseName.TIME.toString());
-        blockSource.setConfig(getConfig());
+        boolean legacyLayout = RocksdbStorage.isLegacyLayout(getConfig());
+        RocksdbFactory dbFactory = new RocksdbFactory(getConfig());
+        RocksdbKVSource blockSource = (RocksdbKVSource) dbFactory.getDB(DatabaseName.TIME);
         blockSource.init();
         RocksdbKVSource snapshotSource = new RocksdbKVSource("SNAPSHOT/BLOCKS");
         snapshotSource.setConfig(getConfig());
         snapshotSource.init();
-        RocksdbKVSource indexSource = new RocksdbKVSource(DatabaseName.INDEX.toString());
-        indexSource.setConfig(getConfig());
+        RocksdbKVSource indexSource = (RocksdbKVSource) dbFactory.getDB(DatabaseName.INDEX);
         indexSource.init();
         SnapshotStore snapshotStore = new SnapshotStoreImpl(snapshotSource);
 
         snapshotStore.makeSnapshot(blockSource,indexSource,b);
 
-        Path source = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/ADDRESS");
-        Path target = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/SNAPSHOT/ADDRESS");
-        copyDir(source.toString(),target.toString());
+        if (legacyLayout) {
+            Path source = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/ADDRESS");
+            Path target = Paths.get(getConfig().getRootDir() + "/rocksdb/xdagdb/SNAPSHOT/ADDRESS");
+            copyDir(source.toString(),target.toString());
+        } else {
+            // the address store is a column family, copy it entry by entry
+            RocksdbKVSource addressSource = (RocksdbKVSource) dbFactory.getDB(DatabaseName.ADDRESS);
+            addressSource.init();
+            RocksdbKVSource snapshotAddressSource = new RocksdbKVSource("SNAPSHOT/ADDRESS");
+            snapshotAddressSource.setConfig(getConfig());
+            snapshotAddressSource.init();
+            try (RocksIterator iter = addressSource.newIterator()) {
+                for (iter.seekToFirst(); iter.isValid(); iter.next()) {
+                    snapshotAddressSource.put(iter.key(), iter.value());
+                }
+            }
+            snapshotAddressSource.close();
+        }
+        dbFactory.close();
         long end = System.currentTimeMillis();
         System.out.println("make snapshot done");
         System.out.println("time：" + (end - start) + "ms");
         System.out.println("snapshot height: " + snapshotStore.getHeight());
         System.out.println("next start frame: " + Long.toHexString(XdagTime.getEndOfEpoch(snapshotStore.getNextTime()) + 1));
     }
+
+    public void migrateDb() throws IOException {
+        System.out.println("migrate database start");
+        long start = System.currentTimeMillis();
+        long count = new RocksdbMigrator(getConfig()).migrate();
+        if (count < 0) {
+            System.out.println("database is already migrated");
+            return;
+        }
+        System.out.println("migrate database done");
+        System.out.println("entries: " + count);
+        System.out.println("time：" + (System.currentTimeMillis() - start) + "ms");
+    }
+
     public static void copyDir(String sourcePath, String newPath) {
         File start = new File(sourcePath);
         File end = new File(newPath);
@@ -47,7 +47,9 @@ public enum XdagOption {
     // Snapshot enable
     ENABLE_SNAPSHOT("enablesnapshot"),
 
-    MAKE_SNAPSHOT("makesnapshot");
+    MAKE_SNAPSHOT("makesnapshot"),
+
+    MIGRATE_DB("migratedb");
 
     private final String name;
 
@@ -89,6 +89,7 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
 
     protected Set<MessageCode> netPrioritizedMessages = new HashSet<>(Arrays.asList(
             MessageCode.NEW_BLOCK,
+            MessageCode.NEW_BLOCK_HASH,
             MessageCode.BLOCK_REQUEST,
             MessageCode.BLOCKS_REQUEST));
 
@@ -101,6 +102,7 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
     protected int connectionReadTimeout = 10000;
     protected boolean enableTxHistory = false;
     protected long txPageSizeLimit = 500;
+    protected String txHistoryStoreType = "mysql";
     protected boolean enableGenerateBlock = false;
 
     protected String rootDir;
@@ -145,6 +147,13 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
     protected String rpcHost;
     protected int rpcPortHttp;
 
+    // =========================
+    // Metrics
+    // =========================
+    protected boolean metricsEnabled = false;
+    protected String metricsHost;
+    protected int metricsPort;
+
     // =========================
     // Xdag Snapshot
     // =========================
@@ -225,7 +234,7 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
 
     @Override
     public CapabilityTreeSet getClientCapabilities() {
-        return CapabilityTreeSet.of(Capability.FULL_NODE, Capability.LIGHT_NODE);
+        return CapabilityTreeSet.of(Capability.FULL_NODE, Capability.LIGHT_NODE, Capability.BLOCK_ANNOUNCE);
     }
 
     @Override
@@ -261,6 +270,7 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
         enableTxHistory = config.hasPath("node.transaction.history.enable") && config.getBoolean("node.transaction.history.enable");
         enableGenerateBlock = config.hasPath("node.generate.block.enable") && config.getBoolean("node.generate.block.enable");
         txPageSizeLimit = config.hasPath("node.transaction.history.pageSizeLimit") ? config.getInt("node.transaction.history.pageSizeLimit") : 500;
+        txHistoryStoreType = config.hasPath("node.transaction.history.store") ? config.getString("node.transaction.history.store") : "mysql";
         fundAddress = config.hasPath("fund.address") ? config.getString("fund.address") : "4duPWMbYUgAifVYkKDCWxLvRRkSByf5gb";
         fundRation = config.hasPath("fund.ration") ? config.getDouble("fund.ration") : 5;
         nodeRation = config.hasPath("node.ration") ? config.getDouble("node.ration") : 5;
@@ -277,6 +287,10 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
             rpcHost = config.hasPath("rpc.http.host") ? config.getString("rpc.http.host") : "127.0.0.1";
             rpcPortHttp = config.hasPath("rpc.http.port") ? config.getInt("rpc.http.port") : 10001;
         }
+        // metrics
+        metricsEnabled = config.hasPath("metrics.enabled") && config.getBoolean("metrics.enabled");
+        metricsHost = config.hasPath("metrics.http.host") ? config.getString("metrics.http.host") : "127.0.0.1";
+        metricsPort = config.hasPath("metrics.http.port") ? config.getInt("metrics.http.port") : 10003;
         flag = config.hasPath("randomx.flags.fullmem") && config.getBoolean("randomx.flags.fullmem");
 
     }
@@ -409,6 +423,21 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
         return rpcPortHttp;
     }
 
+    @Override
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    @Override
+    public String getMetricsHost() {
+        return metricsHost;
+    }
+
+    @Override
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
     @Override
     public boolean isSnapshotEnabled() {
         return snapshotEnabled;
@@ -439,6 +468,11 @@ public class AbstractConfig implements Config, AdminSpec, NodeSpec, WalletSpec,
         return txPageSizeLimit;
     }
 
+    @Override
+    public String getTxHistoryStoreType() {
+        return txHistoryStoreType;
+    }
+
     @Override
     public boolean getEnableGenerateBlock() {
         return enableGenerateBlock;
@@ -93,6 +93,11 @@ public interface Config {
 
     long getTxPageSizeLimit();
 
+    /**
+     * Backend of the transaction history: mysql (druid.properties) or rocksdb (embedded).
+     */
+    String getTxHistoryStoreType();
+
     //websocket
     List<String> getPoolWhiteIPList();
 
@@ -105,4 +105,11 @@ public interface NodeSpec {
     boolean enableRefresh();
     double getNodeRation();
 
+    // Metrics, Prometheus text format on http://host:port/metrics
+    boolean isMetricsEnabled();
+
+    String getMetricsHost();
+
+    int getMetricsPort();
+
 }
@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.consensus;
+
+import io.xdag.core.BlockWrapper;
+import io.xdag.core.XdagBlock;
+import io.xdag.metrics.Counter;
+import io.xdag.metrics.MetricsRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Blocks received before one of their links, waiting for that parent to be imported.
+ * <p>
+ * Blocks are bucketed by the missing parent, so releasing the children of an imported block only
+ * touches its bucket. The pool is bounded by the bytes of the blocks it holds; once full, the blocks
+ * that have waited longest are dropped first, each in constant time.
+ */
+public class PendingBlockPool {
+
+    /**
+     * A parent still missing after this long is requested again.
+     */
+    public static final long RESEND_MILLIS = 64 * 1000;
+
+    private static final Counter EVICTED = MetricsRegistry.getDefault()
+            .counter("xdag_sync_pending_evicted_total", "Blocks dropped from the full pending pool");
+
+    private static final class Entry {
+        final Bytes32 parent;
+        final BlockWrapper blockWrapper;
+
+        Entry(Bytes32 parent, BlockWrapper blockWrapper) {
+            this.parent = parent;
+            this.blockWrapper = blockWrapper;
+        }
+    }
+
+    private final long capacityBytes;
+    /**
+     * Waiting blocks by hashlow, oldest first.
+     */
+    private final LinkedHashMap<Bytes32, Entry> entries = new LinkedHashMap<>();
+    /**
+     * Hashlows of the waiting blocks by the parent they wait for, in arrival order.
+     */
+    private final Map<Bytes32, Set<Bytes32>> byParent = new HashMap<>();
+    private long bytes;
+
+    public PendingBlockPool(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    /**
+     * Puts the block in the bucket of its missing parent.
+     *
+     * @return true if the parent should be requested, false if a request for it went out lately
+     */
+    public synchronized boolean add(BlockWrapper blockWrapper, Bytes32 parent, long now) {
+        Bytes32 hashLow = blockWrapper.getBlock().getHashLow().copy();
+        Entry entry = entries.get(hashLow);
+        if (entry != null) {
+            if (entry.parent.equals(parent)) {
+                if (now - entry.blockWrapper.getTime() > RESEND_MILLIS) {
+                    entry.blockWrapper.setTime(now);
+                    return true;
+                }
+                return false;
+            }
+            remove(hashLow);
+        }
+
+        parent = parent.copy();
+        blockWrapper.setTime(now);
+        entries.put(hashLow, new Entry(parent, blockWrapper));
+        byParent.computeIfAbsent(parent, k -> new LinkedHashSet<>()).add(hashLow);
+        bytes += XdagBlock.XDAG_BLOCK_SIZE;
+
+        Iterator<Map.Entry<Bytes32, Entry>> oldest = entries.entrySet().iterator();
+        while (bytes > capacityBytes && oldest.hasNext()) {
+            Map.Entry<Bytes32, Entry> evicted = oldest.next();
+            oldest.remove();
+            unlink(evicted.getKey(), evicted.getValue());
+            EVICTED.inc();
+        }
+        return true;
+    }
+
+    /**
+     * Removes and returns the blocks waiting for the parent, in arrival order.
+     */
+    public synchronized List<BlockWrapper> release(Bytes32 parent) {
+        Set<Bytes32> children = byParent.remove(parent);
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        List<BlockWrapper> released = new ArrayList<>(children.size());
+        for (Bytes32 child : children) {
+            released.add(entries.remove(child).blockWrapper);
+            bytes -= XdagBlock.XDAG_BLOCK_SIZE;
+        }
+        return released;
+    }
+
+    public synchronized boolean contains(Bytes32 hashLow) {
+        return entries.containsKey(hashLow);
+    }
+
+    /**
+     * Number of waiting blocks.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Number of distinct missing parents.
+     */
+    public synchronized int parents() {
+        return byParent.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    private void remove(Bytes32 hashLow) {
+        Entry entry = entries.remove(hashLow);
+        if (entry != null) {
+            unlink(hashLow, entry);
+        }
+    }
+
+    private void unlink(Bytes32 hashLow, Entry entry) {
+        Set<Bytes32> siblings = byParent.get(entry.parent);
+        siblings.remove(hashLow);
+        if (siblings.isEmpty()) {
+            byParent.remove(entry.parent);
+        }
+        bytes -= XdagBlock.XDAG_BLOCK_SIZE;
+    }
+}
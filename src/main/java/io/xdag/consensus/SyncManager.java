@@ -24,7 +24,6 @@
 
 package io.xdag.consensus;
 
-import com.google.common.collect.Queues;
 import io.xdag.Kernel;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
@@ -32,6 +31,8 @@ import io.xdag.config.MainnetConfig;
 import io.xdag.config.TestnetConfig;
 import io.xdag.core.*;
 import io.xdag.db.TransactionHistoryStore;
+import io.xdag.metrics.MetricsRegistry;
+import io.xdag.net.BlockIngestExecutor;
 import io.xdag.net.Channel;
 import io.xdag.net.ChannelManager;
 import io.xdag.net.Peer;
@@ -44,11 +45,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.apache.tuweni.bytes.Bytes32;
-import org.hyperledger.besu.crypto.SecureRandomProvider;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Date;
-import java.util.List;
+import java.util.Deque;
 import java.util.Queue;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -63,10 +63,8 @@ import static io.xdag.utils.XdagTime.msToXdagtimestamp;
 @Getter
 @Setter
 public class SyncManager {
-    // sycMap's MAX_SIZE
-    public static final int MAX_SIZE = 500000;
-    // If syncMap.size() > MAX_SIZE remove number of keys;
-    public static final int DELETE_NUM = 5000;
+    // bytes of blocks allowed to wait for a missing parent, about 500000 blocks
+    public static final long MAX_PENDING_BYTES = 500000L * XdagBlock.XDAG_BLOCK_SIZE;
 
     private static final ThreadFactory factory = new BasicThreadFactory.Builder()
             .namingPattern("SyncManager-thread-%d")
@@ -88,19 +86,18 @@ public class SyncManager {
      */
     private Queue<BlockWrapper> blockQueue = new ConcurrentLinkedQueue<>();
     /**
-     * Queue for the link block don't exist
+     * Blocks whose link block doesn't exist yet, by the missing link
      */
-    private ConcurrentHashMap<Bytes32, Queue<BlockWrapper>> syncMap = new ConcurrentHashMap<>();
-    /***
-     * Queue for poll oldest block
-     */
-//    private ConcurrentLinkedQueue<Bytes32> syncQueue = new ConcurrentLinkedQueue<>();
-    private ConcurrentLinkedQueue<Bytes32> syncQueue = new ConcurrentLinkedQueue<>();
+    private final PendingBlockPool pendingBlocks = new PendingBlockPool(MAX_PENDING_BYTES);
 
     private ScheduledExecutorService checkStateTask;
 
     private ScheduledFuture<?> checkStateFuture;
     private final TransactionHistoryStore txHistoryStore;
+    /**
+     * blocks received from peers are imported here instead of on the Netty I/O threads
+     */
+    private final BlockIngestExecutor blockIngest = new BlockIngestExecutor();
 
     public SyncManager(Kernel kernel) {
         this.kernel = kernel;
@@ -109,6 +106,12 @@ public class SyncManager {
         this.stateListener = new StateListener();
         checkStateTask = new ScheduledThreadPoolExecutor(1, factory);
         this.txHistoryStore = kernel.getTxHistoryStore();
+        MetricsRegistry.getDefault().gauge("xdag_sync_waiting_parents",
+                "Missing parents that received blocks are waiting for", pendingBlocks::parents);
+        MetricsRegistry.getDefault().gauge("xdag_sync_pending_bytes",
+                "Bytes of received blocks waiting for a missing parent", pendingBlocks::bytes);
+        MetricsRegistry.getDefault().gauge("xdag_block_ingest_queued",
+                "Blocks received from peers and not yet imported", blockIngest::queued);
     }
 
     public void start() throws InterruptedException {
@@ -169,7 +172,7 @@ public class SyncManager {
     public ImportResult importBlock(BlockWrapper blockWrapper) {
         log.debug("importBlock:{}", blockWrapper.getBlock().getHashLow());
         ImportResult importResult = blockchain
-                .tryToConnect(new Block(new XdagBlock(blockWrapper.getBlock().getXdagBlock().getData().toArray())));
+                .tryToConnect(blockWrapper.getBlock().copy());
 
         if (importResult == EXIST) {
             log.debug("Block have exist:{}", blockWrapper.getBlock().getHashLow());
@@ -187,8 +190,14 @@ public class SyncManager {
         return importResult;
     }
 
-    public synchronized ImportResult validateAndAddNewBlock(BlockWrapper blockWrapper) {
+    public ImportResult validateAndAddNewBlock(BlockWrapper blockWrapper) {
         blockWrapper.getBlock().parse();
+        // signatures are checked concurrently here, tryToConnect then only hits the cache
+        blockchain.preVerify(blockWrapper.getBlock());
+        return addNewBlock(blockWrapper);
+    }
+
+    private synchronized ImportResult addNewBlock(BlockWrapper blockWrapper) {
         ImportResult result = importBlock(blockWrapper);
         log.debug("validateAndAddNewBlock:{}, {}", blockWrapper.getBlock().getHashLow(), result);
         switch (result) {
@@ -196,13 +205,7 @@ public class SyncManager {
             case NO_PARENT -> {
                 if (syncPushBlock(blockWrapper, result.getHashlow())) {
                     log.debug("push block:{}, NO_PARENT {}", blockWrapper.getBlock().getHashLow(), result);
-                    List<Channel> channels = channelMgr.getActiveChannels();
-                    for (Channel channel : channels) {
-                        // if (channel.getRemotePeer().equals(blockWrapper.getRemotePeer())) {
-                        channel.getP2pHandler().sendGetBlock(result.getHashlow(), blockWrapper.isOld());
-                        //}
-                    }
-
+                    requestParent(result.getHashlow(), blockWrapper.isOld());
                 }
             }
             case INVALID_BLOCK -> {
@@ -221,81 +224,42 @@ public class SyncManager {
      * @param hashLow      缺失的parent哈希
      */
     public boolean syncPushBlock(BlockWrapper blockWrapper, Bytes32 hashLow) {
-        if (syncMap.size() >= MAX_SIZE) {
-            for (int j = 0; j < DELETE_NUM; j++) {
-                List<Bytes32> keyList = new ArrayList<>(syncMap.keySet());
-                Bytes32 key = keyList.get(SecureRandomProvider.publicSecureRandom().nextInt(keyList.size()));
-                assert key != null;
-                if (syncMap.remove(key) != null) blockchain.getXdagStats().nwaitsync--;
-            }
-        }
-        AtomicBoolean r = new AtomicBoolean(true);
-        long now = System.currentTimeMillis();
-
-        Queue<BlockWrapper> newQueue = Queues.newConcurrentLinkedQueue();
-        blockWrapper.setTime(now);
-        newQueue.add(blockWrapper);
-        blockchain.getXdagStats().nwaitsync++;
-
-        syncMap.merge(hashLow, newQueue,
-                (oldQ, newQ) -> {
-                    blockchain.getXdagStats().nwaitsync--;
-                    for (BlockWrapper b : oldQ) {
-                        if (b.getBlock().getHashLow().equals(blockWrapper.getBlock().getHashLow())) {
-                            // after 64 sec must resend block request
-                            if (now - b.getTime() > 64 * 1000) {
-                                b.setTime(now);
-                                r.set(true);
-                            } else {
-                                // TODO should be consider timeout not received request block
-                                r.set(false);
-                            }
-                            return oldQ;
-                        }
-                    }
-                    oldQ.add(blockWrapper);
-                    r.set(true);
-                    return oldQ;
-                });
-        return r.get();
+        boolean request = pendingBlocks.add(blockWrapper, hashLow, System.currentTimeMillis());
+        blockchain.getXdagStats().nwaitsync = pendingBlocks.parents();
+        return request;
     }
 
     /**
      * 根据接收到的区块，将子区块释放
+     * <p>
+     * Released children are imported from a work list rather than recursively, so a long chain of
+     * waiting blocks can't overflow the stack.
      */
     public void syncPopBlock(BlockWrapper blockWrapper) {
-        Block block = blockWrapper.getBlock();
-
-        Queue<BlockWrapper> queue = syncMap.getOrDefault(block.getHashLow(), null);
-        if (queue != null) {
-            syncMap.remove(block.getHashLow());
-            blockchain.getXdagStats().nwaitsync--;
-            queue.forEach(bw -> {
-                ImportResult importResult = importBlock(bw);
-                switch (importResult) {
-                    case EXIST, IN_MEM, IMPORTED_BEST, IMPORTED_NOT_BEST -> {
-                        // TODO import成功后都需要移除
-                        syncPopBlock(bw);
-                        queue.remove(bw);
-                    }
-                    case NO_PARENT -> {
-                        if (syncPushBlock(bw, importResult.getHashlow())) {
-                            log.debug("push block:{}, NO_PARENT {}", bw.getBlock().getHashLow(),
-                                    importResult.getHashlow().toHexString());
-                            List<Channel> channels = channelMgr.getActiveChannels();
-                            for (Channel channel : channels) {
-//                            Peer remotePeer = channel.getRemotePeer();
-//                            Peer blockPeer = bw.getRemotePeer();
-                                // if (StringUtils.equals(remotePeer.getIp(), blockPeer.getIp()) && remotePeer.getPort() == blockPeer.getPort() ) {
-                                channel.getP2pHandler().sendGetBlock(importResult.getHashlow(), blockWrapper.isOld());
-                                //}
-                            }
-                        }
-                    }
-                    default -> {
+        Deque<BlockWrapper> ready = new ArrayDeque<>(pendingBlocks.release(blockWrapper.getBlock().getHashLow()));
+        BlockWrapper bw;
+        while ((bw = ready.poll()) != null) {
+            ImportResult importResult = importBlock(bw);
+            switch (importResult) {
+                case EXIST, IN_MEM, IMPORTED_BEST, IMPORTED_NOT_BEST ->
+                        ready.addAll(pendingBlocks.release(bw.getBlock().getHashLow()));
+                case NO_PARENT -> {
+                    if (syncPushBlock(bw, importResult.getHashlow())) {
+                        log.debug("push block:{}, NO_PARENT {}", bw.getBlock().getHashLow(),
+                                importResult.getHashlow().toHexString());
+                        requestParent(importResult.getHashlow(), bw.isOld());
                     }
                 }
-            });
+                default -> {
+                }
+            }
+        }
+        blockchain.getXdagStats().nwaitsync = pendingBlocks.parents();
+    }
+
+    private void requestParent(Bytes32 hashLow, boolean isOld) {
+        for (Channel channel : channelMgr.getActiveChannels()) {
+            channel.getP2pHandler().sendGetBlock(hashLow, isOld);
         }
     }
 
@@ -365,6 +329,7 @@ public class SyncManager {
             this.stateListener.isRunning = false;
         }
         stopStateTask();
+        blockIngest.stop();
     }
 
     private void stopStateTask() {
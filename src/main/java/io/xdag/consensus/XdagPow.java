@@ -24,6 +24,8 @@
 
 package io.xdag.consensus;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.xdag.Kernel;
 import io.xdag.Wallet;
 import io.xdag.core.*;
@@ -33,8 +35,12 @@ import io.xdag.crypto.RandomXMemory;
 import io.xdag.listener.BlockMessage;
 import io.xdag.listener.Listener;
 import io.xdag.listener.PretopMessage;
+import io.xdag.metrics.Counter;
+import io.xdag.metrics.Histogram;
+import io.xdag.metrics.MetricsRegistry;
 import io.xdag.net.ChannelManager;
 import io.xdag.net.websocket.ChannelSupervise;
+import io.xdag.net.websocket.PoolProtocol;
 import io.xdag.pool.PoolAwardManager;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.XdagRandomUtils;
@@ -46,11 +52,8 @@ import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
-import java.util.Objects;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -63,6 +66,12 @@ import static io.xdag.utils.BytesUtils.equalBytes;
 @Slf4j
 public class XdagPow implements PoW, Listener, Runnable {
 
+    private static final Counter SHARES = MetricsRegistry.getDefault()
+            .counter("xdag_pool_shares_total", "Shares received from pools for the current task");
+    private static final Counter SHARES_REJECTED = MetricsRegistry.getDefault()
+            .counter("xdag_pool_shares_rejected_total", "Shares dropped as malformed or for another task");
+    private static final Histogram SHARE_LATENCY = MetricsRegistry.getDefault()
+            .histogram("xdag_pool_share_seconds", "Time to hash and compare one share");
 
     private final Kernel kernel;
     protected BlockingQueue<Event> events = new LinkedBlockingQueue<>();
@@ -95,9 +104,14 @@ public class XdagPow implements PoW, Listener, Runnable {
     private final ExecutorService broadcasterExecutor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
             .namingPattern("XdagPow-broadcaster-thread")
             .build());
-    private final ExecutorService getSharesExecutor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
-            .namingPattern("XdagPow-getShares-thread")
-            .build());
+    /**
+     * Shares are validated by several consumers of the same queue, RandomX hashes run in parallel
+     */
+    private final int getSharesThreads = Runtime.getRuntime().availableProcessors();
+    private final ExecutorService getSharesExecutor = Executors.newFixedThreadPool(getSharesThreads,
+            new BasicThreadFactory.Builder()
+                    .namingPattern("XdagPow-getShares-thread-%d")
+                    .build());
 
     protected RandomX randomXUtils;
     private boolean isRunning = false;
@@ -111,6 +125,8 @@ public class XdagPow implements PoW, Listener, Runnable {
         this.broadcaster = new Broadcaster();
         this.randomXUtils = kernel.getRandomx();
         this.sharesFromPools = new GetShares();
+        MetricsRegistry.getDefault().gauge("xdag_pool_shares_queued", "Shares waiting to be validated",
+                () -> sharesFromPools.shareQueue.size());
         this.poolAwardManager = kernel.getPoolAwardManager();
         this.wallet = kernel.getWallet();
 
@@ -120,7 +136,9 @@ public class XdagPow implements PoW, Listener, Runnable {
     public void start() {
         if (!this.isRunning) {
             this.isRunning = true;
-            getSharesExecutor.execute(this.sharesFromPools);
+            for (int i = 0; i < getSharesThreads; i++) {
+                getSharesExecutor.execute(this.sharesFromPools);
+            }
             mainExecutor.execute(this);
             kernel.getPoolAwardManager().start();
             timerExecutor.execute(timer);
@@ -193,7 +211,7 @@ public class XdagPow implements PoW, Listener, Runnable {
         block.setNonce(minShare.get());
         minHash.set(Bytes32.fromHexString("ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff"));
         currentTask.set(createTaskByRandomXBlock(block, sendTime));
-        ChannelSupervise.send2Pools(currentTask.get().toJsonString());
+        sendTaskToPools(currentTask.get());
         return block;
     }
 
@@ -208,10 +226,14 @@ public class XdagPow implements PoW, Listener, Runnable {
         // initial nonce
         minHash.set(block.recalcHash());
         currentTask.set(createTaskByNewBlock(block, sendTime));
-        ChannelSupervise.send2Pools(currentTask.get().toJsonString());
+        sendTaskToPools(currentTask.get());
         return block;
     }
 
+    private void sendTaskToPools(Task task) {
+        ChannelSupervise.send2Pools(task::toJsonString, () -> PoolProtocol.encodeTask(ByteBufAllocator.DEFAULT, task));
+    }
+
     protected void resetTimeout(long timeout) {
         timer.timeout(timeout);
         events.removeIf(e -> e.type == Event.Type.TIMEOUT);
@@ -227,16 +249,34 @@ public class XdagPow implements PoW, Listener, Runnable {
      */
     @Override
     public void receiveNewShare(String share, String hash, long taskIndex) {
+        Bytes32 preHash;
+        Bytes32 nonce;
+        try {
+            preHash = Bytes32.wrap(Bytes.fromHexString(hash));
+            nonce = Bytes32.wrap(Bytes.fromHexString(share));
+        } catch (IllegalArgumentException e) {
+            SHARES_REJECTED.inc();
+            log.debug("Share format error, share {}, hash {}", share, hash);
+            return;
+        }
+        receiveNewShare(nonce, preHash, taskIndex);
+    }
+
+    public void receiveNewShare(Bytes32 share, Bytes32 preHash, long taskIndex) {
 
         if (!this.isRunning) {
             return;
         }
         if (currentTask.get() == null) {
             log.info("Current task is empty");
-        } else if (currentTask.get().getTaskIndex() == taskIndex && Objects.equals(hash,
-                currentTask.get().getTask()[0].getData().toUnprefixedHexString())) {
-            onNewShare(Bytes32.wrap(Bytes.fromHexString(share)));
+        } else if (currentTask.get().getTaskIndex() == taskIndex && preHash.equals(
+                currentTask.get().getTask()[0].getData())) {
+            SHARES.inc();
+            long start = System.nanoTime();
+            onNewShare(share);
+            SHARE_LATENCY.observeSince(start);
         } else {
+            SHARES_REJECTED.inc();
             log.debug("Task index error or preHash error. Current task is {} ,but pool sends task index is {}",
                     currentTask.get().getTaskIndex(), taskIndex);
         }
@@ -530,39 +570,50 @@ public class XdagPow implements PoW, Listener, Runnable {
     }
 
     public class GetShares implements Runnable {
-        private final LinkedBlockingQueue<String> shareQueue = new LinkedBlockingQueue<>();
+        private final LinkedBlockingQueue<PoolProtocol.Share> shareQueue = new LinkedBlockingQueue<>();
         private volatile boolean isRunning = false;
-        private static final int SHARE_FLAG = 2;
 
         @Override
         public void run() {
             isRunning = true;
             while (isRunning) {
-                String shareInfo = null;
+                PoolProtocol.Share share = null;
                 try {
-                    shareInfo = shareQueue.poll(50, TimeUnit.MILLISECONDS);
+                    share = shareQueue.poll(50, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException e) {
                     log.error(e.getMessage(), e);
                 }
-                if (shareInfo != null) {
-                    try {
-                        JSONObject shareJson = new JSONObject(shareInfo);
-                        if (shareJson.getInt("msgType") == SHARE_FLAG) {
-                            receiveNewShare(shareJson.getJSONObject("msgContent").getString("share"),
-                                    shareJson.getJSONObject("msgContent").getString("hash"),
-                                    shareJson.getJSONObject("msgContent").getLong("taskIndex"));
-                        } else {
-                            log.error("Share format error! Current share: {}", shareInfo);
-                        }
-
-                    } catch (JSONException e) {
-                        log.error("Share format error, current share: {}", shareInfo);
-                    }
+                if (share != null) {
+                    receiveNewShare(share.getShare(), share.getPreHash(), share.getTaskIndex());
                 }
             }
         }
 
-        public void getShareInfo(String share) {
+        /**
+         * Queues a share sent as JSON text.
+         */
+        public void getShareInfo(String shareInfo) {
+            try {
+                offer(PoolProtocol.parseShare(shareInfo));
+            } catch (IllegalArgumentException e) {
+                SHARES_REJECTED.inc();
+                log.error("Share format error, current share: {}", shareInfo);
+            }
+        }
+
+        /**
+         * Queues a share sent as a binary frame.
+         */
+        public void getShare(ByteBuf frame) {
+            try {
+                offer(PoolProtocol.readShare(frame));
+            } catch (IllegalArgumentException e) {
+                SHARES_REJECTED.inc();
+                log.error("Share format error: {}", e.getMessage());
+            }
+        }
+
+        private void offer(PoolProtocol.Share share) {
             // todo:Limit the number of shares submitted by each pool within each block production cycle
             if (!shareQueue.offer(share)) {
                 log.error("Failed to get ShareInfo from pools");
@@ -24,6 +24,8 @@
 
 package io.xdag.consensus;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
 import io.xdag.Kernel;
 import io.xdag.config.Config;
@@ -35,7 +37,6 @@ import io.xdag.core.XdagState;
 import io.xdag.db.BlockStore;
 import io.xdag.net.Channel;
 import io.xdag.net.ChannelManager;
-import io.xdag.utils.XdagRandomUtils;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -44,16 +45,43 @@ import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.MutableBytes;
 
 import java.nio.ByteOrder;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.*;
 
 import static io.xdag.config.Constants.REQUEST_BLOCKS_MAX_TIME;
 import static io.xdag.config.Constants.REQUEST_WAIT;
 
+/**
+ * Sums based synchronization. The 16-way sums tree is compared against all the active peers at
+ * once: sums and block range requests are spread over the peers with a limit of requests in flight
+ * per peer, and a request that fails or times out is given to another peer.
+ * <p>
+ * All the scheduling state is only touched from the single sync thread.
+ */
 @Slf4j
 public class XdagSync {
 
+    /**
+     * requests in flight to one peer
+     */
+    static final int MAX_IN_FLIGHT_PER_PEER = 4;
+    /**
+     * block ranges requested and not answered yet, over all peers
+     */
+    static final int MAX_OUTSTANDING_RANGES = 128;
+    /**
+     * a range is dropped after so many failures, the next sums walk finds it again
+     */
+    static final int MAX_ATTEMPTS = 3;
+
     private static final ThreadFactory factory = new BasicThreadFactory.Builder()
             .namingPattern("XdagSync-thread-%d")
             .daemon(true)
@@ -67,7 +95,20 @@ public class XdagSync {
     @Getter
     private final ConcurrentHashMap<Long, SettableFuture<Bytes>> blocksRequestMap;
 
-    private final LinkedList<Long> syncWindow = new LinkedList<>();
+    /**
+     * sums ranges still to compare with a peer
+     */
+    private final Deque<SyncRange> sumsQueue = new ArrayDeque<>();
+    /**
+     * block ranges still to download, oldest first
+     */
+    private final PriorityQueue<SyncRange> blocksQueue = new PriorityQueue<>(Comparator.comparingLong(r -> r.start));
+    /**
+     * start of the block ranges queued or in flight
+     */
+    private final Set<Long> scheduledBlocks = new HashSet<>();
+    private final Map<Channel, Integer> inFlight = new HashMap<>();
+    private int outstandingRanges;
 
     @Getter
     @Setter
@@ -77,8 +118,6 @@ public class XdagSync {
     private ScheduledFuture<?> sendFuture;
     private volatile boolean isRunning;
 
-    private long lastRequestTime;
-
     public XdagSync(Kernel kernel) {
         this.kernel = kernel;
         this.channelMgr = kernel.getChannelMgr();
@@ -101,131 +140,188 @@ public class XdagSync {
         }
     }
 
+    /**
+     * Run one round of the sync loop on the sync thread.
+     */
+    Future<?> syncNow() {
+        return sendTask.submit(this::syncLoop);
+    }
+
     private void syncLoop() {
         try {
-            if (syncWindow.isEmpty()) {
+            if (sumsQueue.isEmpty() && blocksQueue.isEmpty() && inFlight.isEmpty()) {
                 log.debug("start finding different time periods");
                 requestBlocks(0, 1L << 48);
             }
 
             log.debug("start getting blocks");
-            getBlocks();
+            dispatch();
         } catch (Throwable e) {
             log.error("error when requestBlocks {}", e.getMessage());
         }
     }
 
     /**
-     *  Use syncWindow to request blocks in segments.
+     * Hand out queued ranges to peers with a free slot. Block ranges go first since they make
+     * progress, sums requests only find more work.
      */
-    private void getBlocks() {
+    private void dispatch() {
+        // Not in sync state, synchronization is complete, stop synchronization task.
+        if (status != Status.SYNCING) {
+            stop();
+            return;
+        }
         List<Channel> any = getAnyNode();
         if (any == null || any.isEmpty()) {
             return;
         }
-        SettableFuture<Bytes> sf = SettableFuture.create();
-        int index = XdagRandomUtils.nextInt() % any.size();
-        Channel xc = any.get(index);
-        long lastTime = getLastTime();
 
         // Extract the time that has been synchronized.
-        while (!syncWindow.isEmpty() && syncWindow.get(0) < lastTime) {
-            syncWindow.pollFirst();
+        long lastTime = getLastTime();
+        while (!blocksQueue.isEmpty() && outstandingRanges < MAX_OUTSTANDING_RANGES) {
+            SyncRange range = blocksQueue.peek();
+            if (range.start < lastTime) {
+                blocksQueue.poll();
+                scheduledBlocks.remove(range.start);
+                continue;
+            }
+            Channel xc = pickChannel(any, range);
+            if (xc == null) {
+                break;
+            }
+            blocksQueue.poll();
+            sendGetBlocks(xc, range);
         }
 
-        // Segmented requests, each request for 32 time periods.
-        int size = syncWindow.size();
-        for (int i = 0; i < 128; i++) {
-            if (i >= size) {
+        while (!sumsQueue.isEmpty()) {
+            Channel xc = pickChannel(any, sumsQueue.peek());
+            if (xc == null) {
                 break;
             }
-            //when the synchronization process channel is removed and reset, update the channel
-            if (!xc.isActive()){
-                log.debug("sync channel need to update");
-                return;
+            SyncRange range = sumsQueue.poll();
+            MutableBytes lSums = MutableBytes.create(256);
+            if (blockStore.loadSum(range.start, range.start + range.dt, lSums) <= 0) {
+                continue;
             }
+            range.localSums = lSums;
+            sendGetSums(xc, range);
+        }
+    }
 
-            long time = syncWindow.get(i);
-            if (time >= lastRequestTime) {
-                sendGetBlocks(xc, time, sf);
-                lastRequestTime = time;
+    /**
+     * Least loaded active peer with a free slot, avoiding the one the range last failed on.
+     */
+    private Channel pickChannel(List<Channel> channels, SyncRange range) {
+        Channel best = null;
+        int bestLoad = MAX_IN_FLIGHT_PER_PEER;
+        for (Channel channel : channels) {
+            if (!channel.isActive() || (channel == range.failedOn && channels.size() > 1)) {
+                continue;
+            }
+            int load = inFlight.getOrDefault(channel, 0);
+            if (load < bestLoad) {
+                best = channel;
+                bestLoad = load;
             }
-
         }
-
+        return best;
     }
 
-
     /**
      * @param t start time
      * @param dt interval time
      */
     private void requestBlocks(long t, long dt) {
-        // Not in sync state, synchronization is complete, stop synchronization task.
-        if (status != Status.SYNCING) {
-            stop();
-            return;
-        }
-
-        List<Channel> any = getAnyNode();
-        if (any == null || any.isEmpty()) {
-            return;
-        }
-
-        SettableFuture<Bytes> sf = SettableFuture.create();
-        int index = XdagRandomUtils.nextInt() % any.size();
-        Channel xc = any.get(index);
         if (dt > REQUEST_BLOCKS_MAX_TIME) {
-            findGetBlocks(xc, t, dt, sf);
+            sumsQueue.offerLast(new SyncRange(t, dt, false));
         } else {
             if (!kernel.getSyncMgr().isSyncOld() && !kernel.getSyncMgr().isSync()) {
                 log.debug("set sync old");
                 setSyncOld();
             }
 
-            if (t > getLastTime()) {
-                syncWindow.offerLast(t);
+            if (t > getLastTime() && scheduledBlocks.add(t)) {
+                blocksQueue.offer(new SyncRange(t, dt, true));
             }
         }
     }
 
     /**
      * Request blocks from remote nodes.
-     * @param t request time
      */
-    private void sendGetBlocks(Channel xc, long t, SettableFuture<Bytes> sf) {
-        long randomSeq = xc.getP2pHandler().sendGetBlocks(t, t + REQUEST_BLOCKS_MAX_TIME);
+    private void sendGetBlocks(Channel xc, SyncRange range) {
+        SettableFuture<Bytes> sf = SettableFuture.create();
+        long randomSeq = xc.getP2pHandler().sendGetBlocks(range.start, range.start + REQUEST_BLOCKS_MAX_TIME);
         blocksRequestMap.put(randomSeq, sf);
-        try {
-            sf.get(REQUEST_WAIT, TimeUnit.SECONDS);
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            blocksRequestMap.remove(randomSeq);
-            log.error(e.getMessage(), e);
-        }
+        outstandingRanges++;
+        await(xc, range, randomSeq, blocksRequestMap, sf);
     }
 
+    private void sendGetSums(Channel xc, SyncRange range) {
+        SettableFuture<Bytes> sf = SettableFuture.create();
+        long randomSeq = xc.getP2pHandler().sendGetSums(range.start, range.start + range.dt);
+        sumsRequestMap.put(randomSeq, sf);
+        await(xc, range, randomSeq, sumsRequestMap, sf);
+    }
 
-    /**
-     * Recursively find the time periods to request.
-     */
-    private void findGetBlocks(Channel xc, long t, long dt, SettableFuture<Bytes> sf) {
-        MutableBytes lSums = MutableBytes.create(256);
-        Bytes rSums;
-        if (blockStore.loadSum(t, t + dt, lSums) <= 0) {
-            return;
+    private void await(Channel xc, SyncRange range, long randomSeq,
+            Map<Long, SettableFuture<Bytes>> requests, SettableFuture<Bytes> sf) {
+        inFlight.merge(xc, 1, Integer::sum);
+        Futures.addCallback(Futures.withTimeout(sf, REQUEST_WAIT, TimeUnit.SECONDS, sendTask),
+                new FutureCallback<>() {
+                    @Override
+                    public void onSuccess(Bytes reply) {
+                        release(xc, randomSeq, requests);
+                        if (range.blocks) {
+                            outstandingRanges--;
+                            scheduledBlocks.remove(range.start);
+                        } else {
+                            onSumsReply(range, reply);
+                        }
+                        dispatch();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        release(xc, randomSeq, requests);
+                        log.debug("Request {} from node {} failed: {}", range, xc.getRemoteAddress(), t.toString());
+                        retry(xc, range);
+                        dispatch();
+                    }
+                }, sendTask);
+    }
+
+    private void release(Channel xc, long randomSeq, Map<Long, SettableFuture<Bytes>> requests) {
+        requests.remove(randomSeq);
+        inFlight.computeIfPresent(xc, (c, n) -> n > 1 ? n - 1 : null);
+    }
+
+    private void retry(Channel xc, SyncRange range) {
+        if (range.blocks) {
+            outstandingRanges--;
         }
-        long randomSeq = xc.getP2pHandler().sendGetSums(t, t + dt);
-        sumsRequestMap.put(randomSeq, sf);
-        try {
-            Bytes sums = sf.get(REQUEST_WAIT, TimeUnit.SECONDS);
-            rSums = sums.copy();
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            sumsRequestMap.remove(randomSeq);
-            log.error(e.getMessage(), e);
+        range.failedOn = xc;
+        if (++range.attempts >= MAX_ATTEMPTS) {
+            log.debug("Give up {} after {} attempts", range, range.attempts);
+            if (range.blocks) {
+                scheduledBlocks.remove(range.start);
+            }
             return;
         }
-        sumsRequestMap.remove(randomSeq);
-        dt >>= 4;
+        if (range.blocks) {
+            blocksQueue.offer(range);
+        } else {
+            sumsQueue.offerFirst(range);
+        }
+    }
+
+    /**
+     * Compare the remote sums with ours and queue the sub ranges that differ.
+     */
+    private void onSumsReply(SyncRange range, Bytes sums) {
+        Bytes lSums = range.localSums;
+        Bytes rSums = sums.copy();
+        long dt = range.dt >> 4;
         for (int i = 0; i < 16; i++) {
             long lSumsSum = lSums.getLong(i * 16, ByteOrder.LITTLE_ENDIAN);
             long lSumsSize = lSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
@@ -233,7 +329,7 @@ public class XdagSync {
             long rSumsSize = rSums.getLong(i * 16 + 8, ByteOrder.LITTLE_ENDIAN);
 
             if (lSumsSize != rSumsSize || lSumsSum != rSumsSum) {
-                requestBlocks(t + i * dt, dt);
+                requestBlocks(range.start + i * dt, dt);
             }
         }
     }
@@ -295,6 +391,29 @@ public class XdagSync {
         return isRunning;
     }
 
+    /**
+     * A time range of the sums tree, or a block range when blocks is set.
+     */
+    private static class SyncRange {
+        final long start;
+        final long dt;
+        final boolean blocks;
+        int attempts;
+        Channel failedOn;
+        Bytes localSums;
+
+        SyncRange(long start, long dt, boolean blocks) {
+            this.start = start;
+            this.dt = dt;
+            this.blocks = blocks;
+        }
+
+        @Override
+        public String toString() {
+            return (blocks ? "blocks[" : "sums[") + Long.toHexString(start) + ", " + Long.toHexString(start + dt) + ")";
+        }
+    }
+
     public enum Status {
         /**
          * syncing
@@ -30,6 +30,7 @@ import io.xdag.crypto.Hash;
 import io.xdag.crypto.Sign;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.SimpleEncoder;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -77,8 +78,13 @@ public class Block implements Cloneable {
     /**
      * 记录公钥 前缀+压缩公钥*
      */
-    @Getter
     private List<SECPPublicKey> pubKeys = new CopyOnWriteArrayList<>();
+    /**
+     * Compressed keys read from the raw block, decompressed into {@link #pubKeys} on first use
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile List<Bytes> compressedKeys;
     @Getter
     private Map<SECPSignature, Integer> insigs = new LinkedHashMap<>();
     private SECPSignature outsig;
@@ -210,6 +216,30 @@ public class Block implements Cloneable {
         this.parsed = true;
     }
 
+    /**
+     * A block read from the same raw data with its own {@link BlockInfo} and its own input, output, key and
+     * signature collections, so importing the copy leaves this block untouched. The raw {@link XdagBlock} and
+     * the parsed addresses, keys and signatures are shared, they are not modified once parsed. Blocks
+     * received from peers are parsed once and copied for import instead of being parsed again.
+     */
+    public Block copy() {
+        parse();
+        if (xdagBlock == null) {
+            return new Block(new XdagBlock(getXdagBlock().getData().toArray()));
+        }
+        Block copy = (Block) clone();
+        copy.info = info.copy();
+        copy.inputs = new CopyOnWriteArrayList<>(inputs);
+        copy.outputs = new CopyOnWriteArrayList<>(outputs);
+        copy.pubKeys = new CopyOnWriteArrayList<>(pubKeys);
+        copy.insigs = new LinkedHashMap<>(insigs);
+        copy.isSaved = false;
+        copy.isOurs = false;
+        copy.pretopCandidate = false;
+        copy.pretopCandidateDiff = null;
+        return copy;
+    }
+
     /**
      * 计算区块hash*
      */
@@ -239,75 +269,78 @@ public class Block implements Cloneable {
             this.info = new BlockInfo();
         }
         this.info.setHash(calcHash());
-        Bytes32 header = Bytes32.wrap(xdagBlock.getField(0).getData());
+        Bytes header = xdagBlock.getFieldData(0);
         this.transportHeader = header.getLong(0, ByteOrder.LITTLE_ENDIAN);
         this.info.type = header.getLong(8, ByteOrder.LITTLE_ENDIAN);
         this.info.setTimestamp(header.getLong(16, ByteOrder.LITTLE_ENDIAN));
         this.info.setFee(XAmount.of(header.getLong(24, ByteOrder.LITTLE_ENDIAN), XUnit.NANO_XDAG));
-        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
-            XdagField field = xdagBlock.getField(i);
-            if (field == null) {
-                throw new IllegalArgumentException("xdagBlock field:" + i + " is null");
+        // the second half of each signature is the next field of the same type
+        int[] nextSign = new int[XdagBlock.XDAG_BLOCK_FIELDS];
+        int nextIn = -1;
+        int nextOut = -1;
+        for (int i = XdagBlock.XDAG_BLOCK_FIELDS - 1; i > 0; i--) {
+            XdagField.FieldType type = xdagBlock.getFieldType(i);
+            if (type == XDAG_FIELD_SIGN_IN) {
+                nextSign[i] = nextIn;
+                nextIn = i;
+            } else if (type == XDAG_FIELD_SIGN_OUT) {
+                nextSign[i] = nextOut;
+                nextOut = i;
             }
-            switch (field.getType()) {
-            case XDAG_FIELD_IN -> inputs.add(new Address(field,false));
-            case XDAG_FIELD_INPUT -> inputs.add(new Address(field,true));
-            case XDAG_FIELD_OUT -> outputs.add(new Address(field,false));
-            case XDAG_FIELD_OUTPUT -> outputs.add(new Address(field,true));
-            case XDAG_FIELD_REMARK -> this.info.setRemark(field.getData().toArray());
+        }
+        List<Address> in = new ArrayList<>();
+        List<Address> out = new ArrayList<>();
+        List<Bytes> keys = new ArrayList<>();
+        for (int i = 1; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            XdagField.FieldType type = xdagBlock.getFieldType(i);
+            switch (type) {
+            case XDAG_FIELD_IN -> in.add(new Address(xdagBlock.getField(i),false));
+            case XDAG_FIELD_INPUT -> in.add(new Address(xdagBlock.getField(i),true));
+            case XDAG_FIELD_OUT -> out.add(new Address(xdagBlock.getField(i),false));
+            case XDAG_FIELD_OUTPUT -> out.add(new Address(xdagBlock.getField(i),true));
+            case XDAG_FIELD_REMARK -> this.info.setRemark(xdagBlock.getFieldData(i).toArray());
             case XDAG_FIELD_COINBASE -> {
-                    this.coinBase = new Address(field,true);
-                    outputs.add(new Address(field,true));
+                    this.coinBase = new Address(xdagBlock.getField(i),true);
+                    out.add(new Address(xdagBlock.getField(i),true));
             }
             case XDAG_FIELD_SIGN_IN, XDAG_FIELD_SIGN_OUT -> {
-                BigInteger r;
-                BigInteger s;
-                int j, signo_s = -1;
-                XdagField ixf;
-                for (j = i; j < XdagBlock.XDAG_BLOCK_FIELDS; ++j) {
-                    ixf = xdagBlock.getField(j);
-                    if (ixf.getType().ordinal() == XDAG_FIELD_SIGN_IN.ordinal()
-                            || ixf.getType() == XDAG_FIELD_SIGN_OUT) {
-                        if (j > i && signo_s < 0 && ixf.getType().ordinal() == xdagBlock.getField(i).getType()
-                                .ordinal()) {
-                            signo_s = j;
-                            r = xdagBlock.getField(i).getData().toUnsignedBigInteger();
-                            s = xdagBlock.getField(signo_s).getData().toUnsignedBigInteger();
-
-                            // r and s are 0, the signature is illegal, or it is a pseudo block sent by the miner
-                            if(r.compareTo(BigInteger.ZERO) == 0 && s.compareTo(BigInteger.ZERO) == 0){
-                                r = BigInteger.ONE;
-                                s = BigInteger.ONE;
-                            }
-
-                            SECPSignature tmp = SECPSignature.create(r, s, (byte) 0, Sign.CURVE.getN());
-                            if (ixf.getType().ordinal() == XDAG_FIELD_SIGN_IN.ordinal()) {
-                                insigs.put(tmp, i);
-                            } else {
-                                outsig = tmp;
-                            }
-                        }
+                int signo_s = nextSign[i];
+                if (signo_s > 0) {
+                    BigInteger r = xdagBlock.getFieldData(i).toUnsignedBigInteger();
+                    BigInteger s = xdagBlock.getFieldData(signo_s).toUnsignedBigInteger();
+
+                    // r and s are 0, the signature is illegal, or it is a pseudo block sent by the miner
+                    if(r.compareTo(BigInteger.ZERO) == 0 && s.compareTo(BigInteger.ZERO) == 0){
+                        r = BigInteger.ONE;
+                        s = BigInteger.ONE;
+                    }
+
+                    SECPSignature tmp = SECPSignature.create(r, s, (byte) 0, Sign.CURVE.getN());
+                    if (type == XDAG_FIELD_SIGN_IN) {
+                        insigs.put(tmp, i);
+                    } else {
+                        outsig = tmp;
                     }
                 }
-                if (i == MAX_LINKS && field.getType().ordinal() == XDAG_FIELD_SIGN_IN.ordinal()) {
-                    this.nonce = Bytes32.wrap(xdagBlock.getField(i).getData());
+                if (i == MAX_LINKS && type == XDAG_FIELD_SIGN_IN) {
+                    this.nonce = Bytes32.wrap(xdagBlock.getFieldData(i).copy());
                 }
             }
             case XDAG_FIELD_PUBLIC_KEY_0, XDAG_FIELD_PUBLIC_KEY_1 -> {
-                Bytes key = xdagBlock.getField(i).getData();
-                boolean yBit = (field.getType().ordinal() == XDAG_FIELD_PUBLIC_KEY_1.ordinal());
-                ECPoint point = Sign.decompressKey(key.toUnsignedBigInteger(), yBit);
-                // 解析成非压缩去前缀 公钥
-                byte[] encodePub = point.getEncoded(false);
-                SECPPublicKey publicKey = SECPPublicKey.create(
-                        new BigInteger(1, Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME);
-                pubKeys.add(publicKey);
+                // 前缀+压缩公钥, 用到时才解压
+                byte prefix = (byte) (type == XDAG_FIELD_PUBLIC_KEY_1 ? 0x03 : 0x02);
+                keys.add(Bytes.wrap(Bytes.of(prefix), xdagBlock.getFieldData(i).copy()));
             }
             default -> {
             }
-            //                    log.debug("no match xdagBlock field type:" + field.getType());
+            //                    log.debug("no match xdagBlock field type:" + type);
             }
         }
+        inputs.addAll(in);
+        outputs.addAll(out);
+        if (!keys.isEmpty()) {
+            compressedKeys = keys;
+        }
         this.parsed = true;
     }
 
@@ -351,7 +384,7 @@ public class Block implements Cloneable {
         if (info.getRemark() != null) {
             encoder.write(info.getRemark());
         }
-        for (SECPPublicKey publicKey : pubKeys) {
+        for (SECPPublicKey publicKey : getPubKeys()) {
             byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
             byte[] key = BytesUtils.subArray(pubkeyBytes, 1, 32);
             encoder.writeField(key);
@@ -461,6 +494,47 @@ public class Block implements Cloneable {
         return MutableBytes32.wrap(info.getHashlow());
     }
 
+    /**
+     * The public keys of the block, decompressed on the first call for a block read from raw data.
+     */
+    public List<SECPPublicKey> getPubKeys() {
+        if (compressedKeys != null) {
+            decompressKeys();
+        }
+        return pubKeys;
+    }
+
+    /**
+     * @return false if a public key field of the block is not a point of the curve
+     */
+    public boolean hasValidKeys() {
+        try {
+            getPubKeys();
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private synchronized void decompressKeys() {
+        List<Bytes> keys = compressedKeys;
+        if (keys == null) {
+            return;
+        }
+        List<SECPPublicKey> decompressed = new ArrayList<>(keys.size());
+        for (Bytes key : keys) {
+            ECPoint point = Sign.decompressKey(key.slice(1).toUnsignedBigInteger(), key.get(0) == 0x03);
+            // 解析成非压缩去前缀 公钥
+            byte[] encodePub = point.getEncoded(false);
+            decompressed.add(SECPPublicKey.create(
+                    new BigInteger(1, Arrays.copyOfRange(encodePub, 1, encodePub.length)), Sign.CURVE_NAME));
+        }
+        List<SECPPublicKey> all = new CopyOnWriteArrayList<>(pubKeys);
+        all.addAll(decompressed);
+        pubKeys = all;
+        compressedKeys = null;
+    }
+
     public SECPSignature getOutsig() {
         return outsig == null ? null : outsig;
     }
@@ -508,8 +582,8 @@ public class Block implements Cloneable {
         Bytes data = getXdagBlock().getData();
         MutableBytes res = MutableBytes.create(512);
         res.set(0, data.slice(0, (length + 1) * 32));
+        long type = data.getLong(8, ByteOrder.LITTLE_ENDIAN);
         for (int i = length + 1; i < 16; i++) {
-            long type = data.getLong(8, ByteOrder.LITTLE_ENDIAN);
             byte typeB = (byte) (type >> (i << 2) & 0xf);
             if (XDAG_FIELD_SIGN_IN.asByte() == typeB || XDAG_FIELD_SIGN_OUT.asByte() == typeB) {
                 continue;
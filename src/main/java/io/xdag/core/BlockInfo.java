@@ -52,6 +52,31 @@ public class BlockInfo {
     private boolean isSnapshot = false;
     private SnapshotInfo snapshotInfo = null;
 
+    /**
+     * deep copy, so that cached instances are never shared with callers that mutate them
+     */
+    public BlockInfo copy() {
+        BlockInfo copy = new BlockInfo();
+        copy.type = type;
+        copy.flags = flags;
+        copy.height = height;
+        copy.difficulty = difficulty;
+        copy.ref = ref == null ? null : ref.clone();
+        copy.maxDiffLink = maxDiffLink == null ? null : maxDiffLink.clone();
+        copy.fee = fee;
+        copy.remark = remark == null ? null : remark.clone();
+        copy.hash = hash == null ? null : hash.clone();
+        copy.hashlow = hashlow == null ? null : hashlow.clone();
+        copy.amount = amount;
+        copy.timestamp = timestamp;
+        copy.isSnapshot = isSnapshot;
+        if (snapshotInfo != null) {
+            copy.snapshotInfo = new SnapshotInfo(snapshotInfo.getType(),
+                    snapshotInfo.getData() == null ? null : snapshotInfo.getData().clone());
+        }
+        return copy;
+    }
+
     @Override
     public String toString() {
         return "BlockInfo{" +
@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.core;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Lists;
+import io.xdag.crypto.Hash;
+import io.xdag.crypto.Sign;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.hyperledger.besu.crypto.SECPPublicKey;
+import org.hyperledger.besu.crypto.SECPSignature;
+
+/**
+ * Pre-validation stage for SECP256K1 signatures. {@link #preVerify} checks all the signatures of a
+ * block on a worker pool before the block enters the chain lock and caches the results, so that
+ * tryToConnect only has to look them up.
+ */
+@Slf4j
+public class BlockSignatureVerifier {
+
+    private static final ThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("verify-signature-%d")
+            .daemon(true)
+            .build();
+
+    private final ExecutorService workers;
+    /**
+     * block hash -> keys whose signature is in the block, see {@link Block#verifiedKeys()}
+     */
+    private final Cache<Bytes32, List<SECPPublicKey>> verifiedKeys = Caffeine.newBuilder()
+            .maximumSize(64 * 1024)
+            .build();
+    /**
+     * hashlow of an input block + compressed key -> whether the key signed that block's output
+     */
+    private final Cache<Bytes, Boolean> outsigs = Caffeine.newBuilder()
+            .maximumSize(256 * 1024)
+            .build();
+
+    public BlockSignatureVerifier(int threads) {
+        this.workers = Executors.newFixedThreadPool(threads, factory);
+    }
+
+    public BlockSignatureVerifier() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Verify the input and output signatures of the block and, for the inputs found by
+     * inputLookup, whether those keys signed them. Signature checks run in parallel; the call
+     * returns once all the results are cached.
+     *
+     * @param inputLookup raw input block by hashlow, may return null
+     */
+    public void preVerify(Block block, Function<Bytes32, Block> inputLookup) {
+        List<SECPPublicKey> keys = verifiedKeys.getIfPresent(block.getHash());
+        if (keys == null) {
+            keys = computeVerifiedKeys(block);
+        }
+        if (keys.isEmpty() || block.getInputs() == null || block.getInputs().isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Boolean>> futures = Lists.newArrayList();
+        for (Address in : block.getInputs()) {
+            if (in.isAddress) {
+                continue;
+            }
+            Block inBlock = inputLookup.apply(in.getAddress());
+            if (inBlock == null || inBlock.getXdagBlock() == null) {
+                continue;
+            }
+            Bytes subdata = inBlock.getSubRawData(inBlock.getOutsigIndex() - 2);
+            SECPSignature sig = inBlock.getOutsig();
+            for (SECPPublicKey key : keys) {
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> verifyOutsig(in.getAddress(), subdata, sig, key), workers));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Cached {@link Block#verifiedKeys()}, computed on the calling thread on a miss.
+     */
+    public List<SECPPublicKey> verifiedKeys(Block block) {
+        return verifiedKeys.get(block.getHash().copy(), h -> Collections.unmodifiableList(block.verifiedKeys()));
+    }
+
+    /**
+     * Whether key signed the output of the block identified by hashlow, subdata being the signed
+     * part of that block.
+     */
+    public boolean verifyOutsig(Bytes32 hashlow, Bytes subdata, SECPSignature sig, SECPPublicKey key) {
+        byte[] keyBytes = key.asEcPoint(Sign.CURVE).getEncoded(true);
+        return outsigs.get(Bytes.wrap(hashlow.toArray(), keyBytes),
+                k -> Sign.SECP256K1.verify(Hash.hashTwice(Bytes.wrap(subdata, Bytes.wrap(keyBytes))), sig, key));
+    }
+
+    /**
+     * Same result as {@link Block#verifiedKeys()}, with one task per (signature, key) pair.
+     */
+    private List<SECPPublicKey> computeVerifiedKeys(Block block) {
+        List<SECPPublicKey> keys = block.getPubKeys();
+        List<Bytes> digests = Lists.newArrayList();
+        List<SECPSignature> sigs = Lists.newArrayList();
+        for (Map.Entry<SECPSignature, Integer> insig : block.getInsigs().entrySet()) {
+            digests.add(block.getSubRawData(insig.getValue() - 1));
+            sigs.add(insig.getKey());
+        }
+        digests.add(block.getSubRawData(block.getOutsigIndex() - 2));
+        sigs.add(block.getOutsig());
+
+        List<CompletableFuture<Boolean>> futures = Lists.newArrayList();
+        for (int i = 0; i < sigs.size(); i++) {
+            Bytes digest = digests.get(i);
+            SECPSignature sig = sigs.get(i);
+            for (SECPPublicKey key : keys) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    byte[] keyBytes = key.asEcPoint(Sign.CURVE).getEncoded(true);
+                    return Sign.SECP256K1.verify(Hash.hashTwice(Bytes.wrap(digest, Bytes.wrap(keyBytes))), sig, key);
+                }, workers));
+            }
+        }
+        List<SECPPublicKey> res = Lists.newArrayList();
+        int i = 0;
+        for (int s = 0; s < sigs.size(); s++) {
+            for (SECPPublicKey key : keys) {
+                if (futures.get(i++).join()) {
+                    res.add(key);
+                }
+            }
+        }
+        res = Collections.unmodifiableList(res);
+        verifiedKeys.put(block.getHash().copy(), res);
+        return res;
+    }
+
+    public void stop() {
+        workers.shutdownNow();
+    }
+}
@@ -39,6 +39,12 @@ public interface Blockchain {
 
     ImportResult tryToConnect(Block block);
 
+    /**
+     * Verify the signatures of a block before it is passed to {@link #tryToConnect(Block)}, can be
+     * called concurrently and without holding any lock.
+     */
+    void preVerify(Block block);
+
     Block createNewBlock(Map<Address, KeyPair> pairs, List<Address> to, boolean mining, String remark, XAmount fee);
 
     Block getBlockByHash(Bytes32 hash, boolean isRaw);
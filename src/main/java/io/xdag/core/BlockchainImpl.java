@@ -35,16 +35,22 @@ import io.xdag.crypto.Keys;
 import io.xdag.crypto.RandomX;
 import io.xdag.crypto.Sign;
 import io.xdag.db.*;
+import io.xdag.db.mysql.TxHistoryWriter;
 import io.xdag.db.rocksdb.RocksdbKVSource;
 import io.xdag.db.rocksdb.SnapshotStoreImpl;
+import io.xdag.db.rocksdb.UnitOfWork;
 import io.xdag.listener.BlockMessage;
 import io.xdag.listener.Listener;
 import io.xdag.listener.PretopMessage;
+import io.xdag.metrics.Counter;
+import io.xdag.metrics.Histogram;
+import io.xdag.metrics.MetricsRegistry;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.WalletUtils;
 import io.xdag.utils.XdagRandomUtils;
 import io.xdag.utils.XdagTime;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
@@ -82,24 +88,68 @@ import static io.xdag.utils.WalletUtils.toBase58;
 public class BlockchainImpl implements Blockchain {
 
     private static XAmount sumGas = XAmount.ZERO;
+    /**
+     * returned by applyBlock for a block that was already applied
+     */
+    private static final XAmount NOT_APPLIED = XAmount.ZERO.subtract(XAmount.ONE);
     private static final ThreadFactory factory = new BasicThreadFactory.Builder()
             .namingPattern("check-main-%d")
             .daemon(true)
             .build();
 
+    private static final Histogram IMPORT_LATENCY = MetricsRegistry.getDefault()
+            .histogram("xdag_block_import_seconds", "Time spent in tryToConnect");
+    private static final Counter IMPORTED = MetricsRegistry.getDefault()
+            .counter("xdag_blocks_imported_total", "Blocks imported into the dag");
+    private static final Counter IMPORT_REJECTED = MetricsRegistry.getDefault()
+            .counter("xdag_blocks_rejected_total", "Blocks rejected as invalid or failed to import");
+
     private final Wallet wallet;
 
     private final AddressStore addressStore;
     private final BlockStore blockStore;
     private final TransactionHistoryStore txHistoryStore;
+    private final TxHistoryWriter txHistoryWriter;
     /**
      * 非Extra orphan存放
      */
     private final OrphanBlockStore orphanBlockStore;
+    /**
+     * collects all writes of one tryToConnect/checkMain into a single batch
+     */
+    private final UnitOfWork unitOfWork;
+    /**
+     * keeps the block infos and balances changed by setMain/unSetMain in memory until the main block is done
+     */
+    @Getter(AccessLevel.NONE)
+    private final StateJournal journal;
+    /**
+     * the blocks between the top and the latest main block, so checkNewMain does not walk the store
+     */
+    @Getter(AccessLevel.NONE)
+    private final MainChainTracker mainChain = new MainChainTracker();
+    /**
+     * in-memory chain state when the unit of work of this thread began, restored if the unit is rolled back
+     */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<ChainStateSnapshot> unitSnapshot = new ThreadLocal<>();
+    /**
+     * histories of the unit of work of this thread, submitted once it is committed
+     */
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<List<TxHistory>> pendingTxHistories = ThreadLocal.withInitial(ArrayList::new);
+    /**
+     * verifies signatures on a worker pool before tryToConnect, see {@link #preVerify(Block)}
+     */
+    private final BlockSignatureVerifier signatureVerifier = new BlockSignatureVerifier();
 
-    private final LinkedHashMap<Bytes, Block> memOrphanPool = new LinkedHashMap<>();
+    private final MemOrphanPool memOrphanPool = new MemOrphanPool();
     private final Map<Bytes, Integer> memOurBlocks = new ConcurrentHashMap<>();
     private final XdagStats xdagStats;
+    /**
+     * the stats as checkMain last saved them, so it only writes them when they change
+     */
+    private XdagStats savedStats;
     private final Kernel kernel;
 
 
@@ -126,6 +176,29 @@ public class BlockchainImpl implements Blockchain {
         this.blockStore = kernel.getBlockStore();
         this.orphanBlockStore = kernel.getOrphanBlockStore();
         this.txHistoryStore = kernel.getTxHistoryStore();
+        this.txHistoryWriter = kernel.getTxHistoryWriter();
+        this.unitOfWork = kernel.getDbFactory() != null ? kernel.getDbFactory().getUnitOfWork()
+                : new UnitOfWork(Collections::emptyList);
+        this.unitOfWork.onCommit(blockStore::publishPendingCache);
+        this.unitOfWork.onRollback(blockStore::discardPendingCache);
+        this.unitOfWork.onRollback(mainChain::invalidate);
+        this.journal = new StateJournal(blockStore, addressStore);
+        if (orphanBlockStore != null) {
+            this.unitOfWork.onCommit(orphanBlockStore::commitPending);
+            this.unitOfWork.onRollback(orphanBlockStore::rollbackPending);
+        }
+        this.unitOfWork.onCommit(unitSnapshot::remove);
+        this.unitOfWork.onCommit(this::submitPendingTxHistories);
+        this.unitOfWork.onRollback(() -> pendingTxHistories.get().clear());
+        this.unitOfWork.onRollback(() -> {
+            ChainStateSnapshot snapshot = unitSnapshot.get();
+            if (snapshot != null) {
+                unitSnapshot.remove();
+                snapshot.restore();
+            }
+        });
+        MetricsRegistry.getDefault().gauge("xdag_orphan_blocks", "Orphan blocks waiting to be linked",
+                () -> orphanBlockStore == null ? 0 : orphanBlockStore.getOrphanSize());
         snapshotHeight = kernel.getConfig().getSnapshotSpec().getSnapshotHeight();
 //        this.filter = new Filter(blockStore);
 
@@ -229,103 +302,136 @@ public class BlockchainImpl implements Blockchain {
      */
     @Override
     public synchronized ImportResult tryToConnect(Block block) {
+        long start = System.nanoTime();
+        ImportResult result;
+        beginUnit();
+        try {
+            result = connectBlock(block);
+            unitOfWork.commit();
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+            unitOfWork.rollback();
+            result = ImportResult.ERROR;
+        }
+        IMPORT_LATENCY.observeSince(start);
+        if (result == ImportResult.IMPORTED_BEST || result == ImportResult.IMPORTED_NOT_BEST
+                || result == ImportResult.IMPORTED_EXTRA) {
+            IMPORTED.inc();
+        } else if (result == ImportResult.INVALID_BLOCK || result == ImportResult.ERROR) {
+            IMPORT_REJECTED.inc();
+        }
+        return result;
+    }
+
+    /**
+     * Begin a unit of work, the outermost one also snapshots the in-memory chain state it may change.
+     */
+    private void beginUnit() {
+        if (!unitOfWork.isActive()) {
+            unitSnapshot.set(new ChainStateSnapshot(xdagStats, xdagTopStatus, xdagExtStats));
+        }
+        unitOfWork.begin();
+    }
+
+    /**
+     * Register how to undo a change of in-memory state the chain state snapshot does not copy.
+     */
+    private void onUnitRollback(Runnable action) {
+        ChainStateSnapshot snapshot = unitSnapshot.get();
+        if (snapshot != null) {
+            snapshot.onRollback(action);
+        }
+    }
+
+    private ImportResult connectBlock(Block block) {
 
         // TODO: if current height is snapshot height, we need change logic to process new block
 
-        try {
-            ImportResult result = ImportResult.IMPORTED_NOT_BEST;
-
-            long type = block.getType() & 0xf;
-            if (kernel.getConfig() instanceof MainnetConfig) {
-                if (type != XDAG_FIELD_HEAD.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a mainnet block");
-                    log.debug("Block type error, is not a mainnet block");
-                    return result;
-                }
-            } else {
-                if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
-                    result = ImportResult.ERROR;
-                    result.setErrorInfo("Block type error, is not a testnet block");
-                    log.debug("Block type error, is not a testnet block");
-                    return result;
-                }
-            }
+        ImportResult result = ImportResult.IMPORTED_NOT_BEST;
 
-            if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
-                    || block.getTimestamp() < kernel.getConfig().getXdagEra()
-//                    || (limit && timestamp - tmpNodeBlock.time > limit)
-            ) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setErrorInfo("Block's time is illegal");
-                log.debug("Block's time is illegal");
+        long type = block.getType() & 0xf;
+        if (kernel.getConfig() instanceof MainnetConfig) {
+            if (type != XDAG_FIELD_HEAD.asByte()) {
+                result = ImportResult.ERROR;
+                result.setErrorInfo("Block type error, is not a mainnet block");
+                log.debug("Block type error, is not a mainnet block");
                 return result;
             }
-
-            if (isExist(block.getHashLow())) {
-                return ImportResult.EXIST;
+        } else {
+            if (type != XDAG_FIELD_HEAD_TEST.asByte()) {
+                result = ImportResult.ERROR;
+                result.setErrorInfo("Block type error, is not a testnet block");
+                log.debug("Block type error, is not a testnet block");
+                return result;
             }
+        }
 
-            if (isExistInMem(block.getHashLow())) {
-                return ImportResult.IN_MEM;
-            }
+        if (block.getTimestamp() > (XdagTime.getCurrentTimestamp() + MAIN_CHAIN_PERIOD / 4)
+                || block.getTimestamp() < kernel.getConfig().getXdagEra()
+//                    || (limit && timestamp - tmpNodeBlock.time > limit)
+        ) {
+            result = ImportResult.INVALID_BLOCK;
+            result.setErrorInfo("Block's time is illegal");
+            log.debug("Block's time is illegal");
+            return result;
+        }
 
-            if (isExtraBlock(block)) {
-                updateBlockFlag(block, BI_EXTRA, true);
-            }
+        if (isExist(block.getHashLow())) {
+            return ImportResult.EXIST;
+        }
 
-            List<Address> all = block.getLinks().stream().distinct().toList();
-            // TODO：新地址转账判断inputs的地址余额是否足够
-            // 检查区块的引用区块是否都存在,对所有input和output放入block（可能在pending或db中取出）
-            for (Address ref : all) {
-                /*
-                 Now transactionBlock's outputs are new address so ref.isAddress == false which means no blocks
-                 mainBlocks and linkBlocks are same as original
-                 */
-                if (ref != null && !ref.isAddress) {
-                    if (ref.getType() == XDAG_FIELD_OUT && !ref.getAmount().isZero()) {
-                        result = ImportResult.INVALID_BLOCK;
-                        result.setHashlow(ref.getAddress());
-                        result.setErrorInfo("Address's amount isn't zero");
-                        log.debug("Address's amount isn't zero");
-                        return result;
-                    }
-                    Block refBlock = getBlockByHash(ref.getAddress(), false);
-                    if (refBlock == null) {
+        if (isExistInMem(block.getHashLow())) {
+            return ImportResult.IN_MEM;
+        }
+
+        // keys are decompressed on first use, so a key off the curve is only found here, once duplicates are out
+        if (!block.hasValidKeys()) {
+            result = ImportResult.INVALID_BLOCK;
+            result.setHashlow(block.getHashLow());
+            result.setErrorInfo("Block's public key is invalid");
+            log.debug("Block's public key is invalid");
+            return result;
+        }
+
+        if (isExtraBlock(block)) {
+            updateBlockFlag(block, BI_EXTRA, true);
+        }
+
+        List<Address> all = block.getLinks().stream().distinct().toList();
+        // TODO：新地址转账判断inputs的地址余额是否足够
+        // 检查区块的引用区块是否都存在,对所有input和output放入block（可能在pending或db中取出）
+        for (Address ref : all) {
+            /*
+             Now transactionBlock's outputs are new address so ref.isAddress == false which means no blocks
+             mainBlocks and linkBlocks are same as original
+             */
+            if (ref != null && !ref.isAddress) {
+                if (ref.getType() == XDAG_FIELD_OUT && !ref.getAmount().isZero()) {
+                    result = ImportResult.INVALID_BLOCK;
+                    result.setHashlow(ref.getAddress());
+                    result.setErrorInfo("Address's amount isn't zero");
+                    log.debug("Address's amount isn't zero");
+                    return result;
+                }
+                Block refBlock = getBlockByHash(ref.getAddress(), false);
+                if (refBlock == null) {
 //                        log.debug("No Parent " + Hex.toHexString(ref.getHashLow()));
-                        result = ImportResult.NO_PARENT;
-                        result.setHashlow(ref.getAddress());
-                        result.setErrorInfo("Block have no parent for " + result.getHashlow().toHexString());
-                        log.debug("Block have no parent for {}", result.getHashlow().toHexString());
-                        return result;
-                    } else {
-                        // ensure ref block's time is earlier than block's time
-                        if (refBlock.getTimestamp() >= block.getTimestamp()) {
-                            result = ImportResult.INVALID_BLOCK;
-                            result.setHashlow(refBlock.getHashLow());
-                            result.setErrorInfo("Ref block's time >= block's time");
-                            log.debug("Ref block's time >= block's time");
-                            return result;
-                        }
-                        // ensure TX block's amount is enough to subtract minGas, Amount must >= 0.1;
-                        if (ref.getType() == XDAG_FIELD_IN && ref.getAmount().subtract(MIN_GAS).isNegative()) {
-                            result = ImportResult.INVALID_BLOCK;
-                            result.setHashlow(ref.getAddress());
-                            result.setErrorInfo("Ref block's balance < minGas");
-                            log.debug("Ref block's balance < minGas");
-                            return result;
-                        }
-                    }
+                    result = ImportResult.NO_PARENT;
+                    result.setHashlow(ref.getAddress());
+                    result.setErrorInfo("Block have no parent for " + result.getHashlow().toHexString());
+                    log.debug("Block have no parent for {}", result.getHashlow().toHexString());
+                    return result;
                 } else {
-                    if (ref != null && ref.type == XDAG_FIELD_INPUT && !addressStore.addressIsExist(BytesUtils.byte32ToArray(ref.getAddress()))) {
+                    // ensure ref block's time is earlier than block's time
+                    if (refBlock.getTimestamp() >= block.getTimestamp()) {
                         result = ImportResult.INVALID_BLOCK;
-                        result.setErrorInfo("Address isn't exist " + WalletUtils.toBase58(BytesUtils.byte32ToArray(ref.getAddress())));
-                        log.debug("Address isn't exist {}",
-                                WalletUtils.toBase58(BytesUtils.byte32ToArray(ref.getAddress())));
+                        result.setHashlow(refBlock.getHashLow());
+                        result.setErrorInfo("Ref block's time >= block's time");
+                        log.debug("Ref block's time >= block's time");
                         return result;
                     }
-                    // ensure TX block's input's & output's amount is enough to subtract minGas, Amount must >= 0.1;
-                    if (ref != null && (ref.getType() == XDAG_FIELD_INPUT || ref.getType() == XDAG_FIELD_OUTPUT) && ref.getAmount().subtract(MIN_GAS).isNegative()) {
+                    // ensure TX block's amount is enough to subtract minGas, Amount must >= 0.1;
+                    if (ref.getType() == XDAG_FIELD_IN && ref.getAmount().subtract(MIN_GAS).isNegative()) {
                         result = ImportResult.INVALID_BLOCK;
                         result.setHashlow(ref.getAddress());
                         result.setErrorInfo("Ref block's balance < minGas");
@@ -333,153 +439,166 @@ public class BlockchainImpl implements Blockchain {
                         return result;
                     }
                 }
-                /*
-                 Determine if ref is a block
-                 */
-                // TODO: 如果是交易块 不设置extra
-                if (ref != null && compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
-                    log.debug("Try to connect a tx Block:{}", block.getHash().toHexString());
-                    updateBlockFlag(block, BI_EXTRA, false);
+            } else {
+                if (ref != null && ref.type == XDAG_FIELD_INPUT && !addressStore.addressIsExist(BytesUtils.byte32ToArray(ref.getAddress()))) {
+                    result = ImportResult.INVALID_BLOCK;
+                    result.setErrorInfo("Address isn't exist " + WalletUtils.toBase58(BytesUtils.byte32ToArray(ref.getAddress())));
+                    log.debug("Address isn't exist {}",
+                            WalletUtils.toBase58(BytesUtils.byte32ToArray(ref.getAddress())));
+                    return result;
+                }
+                // ensure TX block's input's & output's amount is enough to subtract minGas, Amount must >= 0.1;
+                if (ref != null && (ref.getType() == XDAG_FIELD_INPUT || ref.getType() == XDAG_FIELD_OUTPUT) && ref.getAmount().subtract(MIN_GAS).isNegative()) {
+                    result = ImportResult.INVALID_BLOCK;
+                    result.setHashlow(ref.getAddress());
+                    result.setErrorInfo("Ref block's balance < minGas");
+                    log.debug("Ref block's balance < minGas");
+                    return result;
                 }
             }
-            // 检查区块合法性 检查input是否能使用
-            if (!canUseInput(block)) {
-                result = ImportResult.INVALID_BLOCK;
-                result.setHashlow(block.getHashLow());
-                result.setErrorInfo("Block's input can't be used");
-                log.debug("Block's input can't be used");
-                return ImportResult.INVALID_BLOCK;
+            /*
+             Determine if ref is a block
+             */
+            // TODO: 如果是交易块 不设置extra
+            if (ref != null && compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
+                log.debug("Try to connect a tx Block:{}", block.getHash().toHexString());
+                updateBlockFlag(block, BI_EXTRA, false);
             }
-            int id = 0;
-            // remove links
-            for (Address ref : all) {
-                FieldType fType;
-                if (!ref.isAddress) {
-                    removeOrphan(ref.getAddress(),
-                            (block.getInfo().flags & BI_EXTRA) != 0
-                                    ? OrphanRemoveActions.ORPHAN_REMOVE_EXTRA
-                                    : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
-
-                    fType = ref.getType().equals(XDAG_FIELD_IN) ? XDAG_FIELD_OUT : XDAG_FIELD_IN;
-                } else {
-                    fType = ref.getType().equals(XDAG_FIELD_INPUT) ? XDAG_FIELD_OUTPUT : XDAG_FIELD_INPUT;
-                }
+        }
+        // 检查区块合法性 检查input是否能使用
+        if (!canUseInput(block)) {
+            result = ImportResult.INVALID_BLOCK;
+            result.setHashlow(block.getHashLow());
+            result.setErrorInfo("Block's input can't be used");
+            log.debug("Block's input can't be used");
+            return ImportResult.INVALID_BLOCK;
+        }
+        // remove links
+        for (Address ref : all) {
+            FieldType fType;
+            if (!ref.isAddress) {
+                removeOrphan(ref.getAddress(),
+                        (block.getInfo().flags & BI_EXTRA) != 0
+                                ? OrphanRemoveActions.ORPHAN_REMOVE_EXTRA
+                                : OrphanRemoveActions.ORPHAN_REMOVE_NORMAL);
 
-                if (compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
-                    onNewTxHistory(ref.getAddress(), block.getHashLow(), fType, ref.getAmount(),
-                            block.getTimestamp(), block.getInfo().getRemark(), ref.isAddress, id);
-                }
-                id++;
+                fType = ref.getType().equals(XDAG_FIELD_IN) ? XDAG_FIELD_OUT : XDAG_FIELD_IN;
+            } else {
+                fType = ref.getType().equals(XDAG_FIELD_INPUT) ? XDAG_FIELD_OUTPUT : XDAG_FIELD_INPUT;
             }
 
-            // 检查当前主链
-            checkNewMain();
-
-            // 如果是自己的区块
-            if (checkMineAndAdd(block)) {
-                log.debug("A block hash:{} become mine", block.getHashLow().toHexString());
-                updateBlockFlag(block, BI_OURS, true);
+            if (compareAmountTo(ref.getAmount(), XAmount.ZERO) != 0) {
+                onNewTxHistory(ref.getAddress(), block.getHashLow(), fType, ref.getAmount(),
+                        block.getTimestamp(), block.getInfo().getRemark(), ref.isAddress);
             }
+        }
 
-            // calculate block's self difficulty
-            BigInteger cuDiff = calculateCurrentBlockDiff(block);
-            // calculate block's chain difficulty
-            calculateBlockDiff(block, cuDiff);
-
-            // TODO:extra 处理
-            processExtraBlock();
-
-            // 根据难度更新主链
-            // 判断难度是否是比当前最大，并以此更新topMainChain
-            if (block.getInfo().getDifficulty().compareTo(xdagTopStatus.getTopDiff()) > 0) {
-                // 切换主链 fork
-                long currentHeight = xdagStats.nmain;
-                // 找到共同祖先blockref
-                Block blockRef = findAncestor(block, isSyncFixFork(xdagStats.nmain));
-                // 将主链回退到blockRef
-                unWindMain(blockRef);
-                // 更新新的链
-                updateNewChain(block, isSyncFixFork(xdagStats.nmain));
-                // 发生回退
-                if (currentHeight - xdagStats.nmain > 1) {
-                    log.info("XDAG:Before unwind, height = {}, After unwind, height = {}, unwind number = {}",
-                            currentHeight, xdagStats.nmain, currentHeight - xdagStats.nmain);
-                }
+        // 检查当前主链
+        checkNewMain();
+
+        // 如果是自己的区块
+        if (checkMineAndAdd(block)) {
+            log.debug("A block hash:{} become mine", block.getHashLow().toHexString());
+            updateBlockFlag(block, BI_OURS, true);
+        }
+
+        // calculate block's self difficulty
+        BigInteger cuDiff = calculateCurrentBlockDiff(block);
+        // calculate block's chain difficulty
+        calculateBlockDiff(block, cuDiff);
+
+        // TODO:extra 处理
+        processExtraBlock();
+
+        // 根据难度更新主链
+        // 判断难度是否是比当前最大，并以此更新topMainChain
+        if (block.getInfo().getDifficulty().compareTo(xdagTopStatus.getTopDiff()) > 0) {
+            // 切换主链 fork
+            long currentHeight = xdagStats.nmain;
+            // 找到共同祖先blockref
+            Block blockRef = findAncestor(block, isSyncFixFork(xdagStats.nmain));
+            // 将主链回退到blockRef
+            unWindMain(blockRef);
+            // 更新新的链
+            updateNewChain(block, isSyncFixFork(xdagStats.nmain));
+            // 发生回退
+            if (currentHeight - xdagStats.nmain > 1) {
+                log.info("XDAG:Before unwind, height = {}, After unwind, height = {}, unwind number = {}",
+                        currentHeight, xdagStats.nmain, currentHeight - xdagStats.nmain);
+            }
 
-                Block currentTop = getBlockByHash(xdagTopStatus.getTop() == null ? null :
-                        Bytes32.wrap(xdagTopStatus.getTop()), false);
-                BigInteger currentTopDiff = xdagTopStatus.getTopDiff();
-                log.debug("update top: {}", block.getHashLow());
-                // update Top
-                xdagTopStatus.setTopDiff(block.getInfo().getDifficulty());
-                xdagTopStatus.setTop(block.getHashLow().toArray());
-                // update preTop
-                setPreTop(currentTop, currentTopDiff);
-                // if block's epoch is earlier than current epoch, then notify the PoW thread to regenerate the main block
-                if (XdagTime.getEpoch(block.getTimestamp()) < XdagTime.getCurrentEpoch()) {
-                    onNewPretop();
-                }
-                result = ImportResult.IMPORTED_BEST;
-                xdagStats.updateMaxDiff(xdagTopStatus.getTopDiff());
-                xdagStats.updateDiff(xdagTopStatus.getTopDiff());
+            Block currentTop = getBlockByHash(xdagTopStatus.getTop() == null ? null :
+                    Bytes32.wrap(xdagTopStatus.getTop()), false);
+            BigInteger currentTopDiff = xdagTopStatus.getTopDiff();
+            log.debug("update top: {}", block.getHashLow());
+            // update Top
+            xdagTopStatus.setTopDiff(block.getInfo().getDifficulty());
+            xdagTopStatus.setTop(block.getHashLow().toArray());
+            mainChain.onNewTop(block, currentTop == null ? null : Bytes32.wrap(currentTop.getHashLow().toArray()));
+            // update preTop
+            setPreTop(currentTop, currentTopDiff);
+            // if block's epoch is earlier than current epoch, then notify the PoW thread to regenerate the main block
+            if (XdagTime.getEpoch(block.getTimestamp()) < XdagTime.getCurrentEpoch()) {
+                onNewPretop();
             }
+            result = ImportResult.IMPORTED_BEST;
+            xdagStats.updateMaxDiff(xdagTopStatus.getTopDiff());
+            xdagStats.updateDiff(xdagTopStatus.getTopDiff());
+        }
 
-            // 新增区块
-            xdagStats.nblocks++;
-            xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
+        // 新增区块
+        xdagStats.nblocks++;
+        xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
 
-            if ((block.getInfo().flags & BI_EXTRA) != 0) {
-                memOrphanPool.put(block.getHashLow(), block);
-                xdagStats.nextra++;
+        if ((block.getInfo().flags & BI_EXTRA) != 0) {
+            memOrphanPool.add(block);
+            onUnitRollback(() -> memOrphanPool.remove(block.getHashLow()));
+            xdagStats.nextra++;
 //                 TODO：设置为返回 IMPORTED_EXTRA
 //                result = ImportResult.IMPORTED_EXTRA;
-            } else {
-                saveBlock(block);
-                // 1. prohibited non-mining node set Tx pool,
-                // 2. all nodes temporarily close tx pool when syncing.
-                if (kernel.getConfig().getEnableGenerateBlock() && kernel.getPow() != null) {
-                    orphanBlockStore.addOrphan(block);
-                }
-                xdagStats.nnoref++;
-            }
-            blockStore.saveXdagStatus(xdagStats);
-
-            // 如果区块输入不为0说明是交易块
-            if (!block.getInputs().isEmpty()) {
-                if ((block.getInfo().getFlags() & BI_OURS) != 0) {
-                    log.info("XDAG:pool transaction(reward). block hash:{}", block.getHash().toHexString());
-                }
+        } else {
+            saveBlock(block);
+            // 1. prohibited non-mining node set Tx pool,
+            // 2. all nodes temporarily close tx pool when syncing.
+            if (kernel.getConfig().getEnableGenerateBlock() && kernel.getPow() != null) {
+                orphanBlockStore.addOrphan(block);
             }
+            xdagStats.nnoref++;
+        }
+        blockStore.saveXdagStatus(xdagStats);
 
-            // 把过去四个小时每个时间片的diff都记录下来，后面会用这些diff去转换出一个全局hashrate
-            int i = (int) (XdagTime.getEpoch(block.getTimestamp()) & (HASH_RATE_LAST_MAX_TIME - 1));
-            if (XdagTime.getEpoch(block.getTimestamp()) > XdagTime.getEpoch(xdagExtStats.getHashrate_last_time())) {
-                xdagExtStats.getHashRateTotal()[i] = BigInteger.ZERO;
-                xdagExtStats.getHashRateOurs()[i] = BigInteger.ZERO;
-                xdagExtStats.setHashrate_last_time(block.getTimestamp());
+        // 如果区块输入不为0说明是交易块
+        if (!block.getInputs().isEmpty()) {
+            if ((block.getInfo().getFlags() & BI_OURS) != 0) {
+                log.info("XDAG:pool transaction(reward). block hash:{}", block.getHash().toHexString());
             }
+        }
 
-            if (cuDiff.compareTo(xdagExtStats.getHashRateTotal()[i]) > 0) {
-                xdagExtStats.getHashRateTotal()[i] = cuDiff;
-            }
+        // 把过去四个小时每个时间片的diff都记录下来，后面会用这些diff去转换出一个全局hashrate
+        int i = (int) (XdagTime.getEpoch(block.getTimestamp()) & (HASH_RATE_LAST_MAX_TIME - 1));
+        if (XdagTime.getEpoch(block.getTimestamp()) > XdagTime.getEpoch(xdagExtStats.getHashrate_last_time())) {
+            xdagExtStats.getHashRateTotal()[i] = BigInteger.ZERO;
+            xdagExtStats.getHashRateOurs()[i] = BigInteger.ZERO;
+            xdagExtStats.setHashrate_last_time(block.getTimestamp());
+        }
 
-            if ((block.getInfo().getFlags() & BI_OURS) != 0
-                    && cuDiff.compareTo(xdagExtStats.getHashRateOurs()[i]) > 0) {
-                xdagExtStats.getHashRateOurs()[i] = cuDiff;
+        if (cuDiff.compareTo(xdagExtStats.getHashRateTotal()[i]) > 0) {
+            xdagExtStats.getHashRateTotal()[i] = cuDiff;
+        }
 
-            }
+        if ((block.getInfo().getFlags() & BI_OURS) != 0
+                && cuDiff.compareTo(xdagExtStats.getHashRateOurs()[i]) > 0) {
+            xdagExtStats.getHashRateOurs()[i] = cuDiff;
 
-            return result;
-        } catch (Throwable e) {
-            log.error(e.getMessage(), e);
-            return ImportResult.ERROR;
         }
+
+        return result;
     }
 
 
     public void onNewTxHistory(Bytes32 addressHashlow, Bytes32 txHashlow, XdagField.FieldType type,
-                               XAmount amount, long time, byte[] remark, boolean isAddress, int id) {
-        if (txHistoryStore != null) {
+                               XAmount amount, long time, byte[] remark, boolean isAddress) {
+        if (txHistoryWriter != null) {
             Address address = new Address(addressHashlow, type, amount, isAddress);
             TxHistory txHistory = new TxHistory();
             txHistory.setAddress(address);
@@ -488,34 +607,22 @@ public class BlockchainImpl implements Blockchain {
                 txHistory.setRemark(new String(remark, StandardCharsets.UTF_8));
             }
             txHistory.setTimestamp(time);
-            try {
-                if (kernel.getXdagState() == XdagState.CDST || kernel.getXdagState() == XdagState.CTST || kernel.getXdagState() == XdagState.CONN
-                        || kernel.getXdagState() == XdagState.CDSTP || kernel.getXdagState() == XdagState.CTSTP || kernel.getXdagState() == XdagState.CONNP) {
-                    txHistoryStore.batchSaveTxHistory(txHistory);
-                } else {
-                    if (!txHistoryStore.saveTxHistory(txHistory)) {
-                        log.warn("tx history write to mysql fail:{}", txHistory);
-                        // Mysql exception, transaction history transferred to Rocksdb
-                        blockStore.saveTxHistoryToRocksdb(txHistory, id);
-                    } else {
-                        List<TxHistory> txHistoriesInRocksdb = blockStore.getAllTxHistoryFromRocksdb();
-                        if (!txHistoriesInRocksdb.isEmpty()) {
-                            for (TxHistory txHistoryInRocksdb : txHistoriesInRocksdb) {
-                                txHistoryStore.batchSaveTxHistory(txHistoryInRocksdb, txHistoriesInRocksdb.size());
-                            }
-                            if (txHistoryStore.batchSaveTxHistory(null)) {
-                                blockStore.deleteAllTxHistoryFromRocksdb();
-                            }
-                        }
-                    }
-                }
-
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
+            if (unitOfWork.isActive()) {
+                pendingTxHistories.get().add(txHistory);
+            } else {
+                txHistoryWriter.submit(txHistory);
             }
         }
     }
 
+    private void submitPendingTxHistories() {
+        List<TxHistory> txHistories = pendingTxHistories.get();
+        for (TxHistory txHistory : txHistories) {
+            txHistoryWriter.submit(txHistory);
+        }
+        txHistories.clear();
+    }
+
     public List<TxHistory> getBlockTxHistoryByAddress(Bytes32 addressHashlow, int page, Object... parameters) {
         List<TxHistory> txHistory = Lists.newArrayList();
         if (txHistoryStore != null) {
@@ -595,9 +702,10 @@ public class BlockchainImpl implements Blockchain {
 
     public void processExtraBlock() {
         if (memOrphanPool.size() > MAX_ALLOWED_EXTRA) {
-            Block reuse = memOrphanPool.entrySet().iterator().next().getValue();
+            Block reuse = memOrphanPool.oldest();
             log.debug("Remove when extra too big");
             removeOrphan(reuse.getHashLow(), OrphanRemoveActions.ORPHAN_REMOVE_REUSE);
+            mainChain.onRemoved(reuse.getHashLow());
             xdagStats.nblocks--;
             xdagStats.totalnblocks = Math.max(xdagStats.nblocks, xdagStats.totalnblocks);
 
@@ -624,28 +732,37 @@ public class BlockchainImpl implements Blockchain {
      */
     @Override
     public synchronized void checkNewMain() {
-        Block p = null;
-        int i = 0;
         // TODO: 如果是快照点主块会直接返回，因为快照点前的数据都已经确定好
-        if (xdagTopStatus.getTop() != null) {
-            for (Block block = getBlockByHash(Bytes32.wrap(xdagTopStatus.getTop()), false); block != null
-                    && ((block.getInfo().flags & BI_MAIN) == 0);
-                 block = getMaxDiffLink(getBlockByHash(block.getHashLow(), true), true)) {
-
-                if ((block.getInfo().flags & BI_MAIN_CHAIN) != 0) {
-                    p = block;
-                    ++i;
-                }
-            }
+        if (xdagTopStatus.getTop() == null) {
+            return;
+        }
+        Bytes32 top = Bytes32.wrap(xdagTopStatus.getTop());
+        if (!mainChain.isValid(top)) {
+            mainChain.reset(top, walkMainChain(top));
         }
+        MainChainTracker.Candidate p = mainChain.oldestOnChain();
         long ct = XdagTime.getCurrentTimestamp();
         if (p != null
-                && ((p.getInfo().flags & BI_REF) != 0)
-                && i > 1
-                && ct >= p.getTimestamp() + 2 * 1024) {
+                && ((p.flags & BI_REF) != 0)
+                && mainChain.chainCount() > 1
+                && ct >= p.timestamp + 2 * 1024) {
 //            log.info("setMain success block:{}", Hex.toHexString(p.getHashLow()));
-            setMain(p);
+            setMain(getBlockByHash(p.hashlow, true));
+        }
+    }
+
+    /**
+     * The max difficulty path from the top down to the latest main block, read from the store.
+     */
+    private List<MainChainTracker.Candidate> walkMainChain(Bytes32 top) {
+        List<MainChainTracker.Candidate> candidates = Lists.newArrayList();
+        for (Block block = getBlockByHash(top, false); block != null
+                && ((block.getInfo().flags & BI_MAIN) == 0);
+             block = getMaxDiffLink(block, false)) {
+            candidates.add(new MainChainTracker.Candidate(Bytes32.wrap(block.getHashLow().toArray()),
+                    block.getTimestamp(), block.getInfo().flags));
         }
+        return candidates;
     }
 
     @Override
@@ -684,22 +801,62 @@ public class BlockchainImpl implements Blockchain {
 
     /**
      * 执行区块并返回手续费 *
+     * <p>
+     * Walks the links depth first with an explicit stack instead of recursing, so the depth of the
+     * graph is only bounded by the heap. Each frame applies its referenced blocks first, then its own
+     * inputs and outputs, in the same order as the former recursive version.
      */
     private XAmount applyBlock(boolean flag, Block block) {
-        XAmount gas = XAmount.ZERO;
-        XAmount sumIn = XAmount.ZERO;
-        XAmount sumOut = XAmount.ZERO; // sumOut是用来支付其他区块link自己的手续费 现在先用0
+        Deque<ApplyFrame> stack = new ArrayDeque<>();
+        XAmount ret = enterApply(flag, block, stack);
+        while (!stack.isEmpty()) {
+            ApplyFrame frame = stack.peek();
+            if (frame.ref != null) {
+                // the frame of frame.ref just returned
+                refApplied(frame, ret);
+            }
+            if (applyNextRef(frame, stack)) {
+                continue;
+            }
+            stack.pop();
+            ret = applyLinks(frame.flag, frame.block, frame.links);
+        }
+        return ret;
+    }
+
+    /**
+     * A block being applied, {@link #next} is the next link to look at for referenced blocks.
+     */
+    private static final class ApplyFrame {
+        final boolean flag;
+        final Block block;
+        final List<Address> links;
+        int next;
+        /**
+         * the referenced block applied by the frame above this one
+         */
+        Block ref;
+
+        ApplyFrame(boolean flag, Block block, List<Address> links) {
+            this.flag = flag;
+            this.block = block;
+            this.links = links;
+        }
+    }
+
+    /**
+     * Start applying the block: the result if it is already done, otherwise null with its frame pushed.
+     */
+    private XAmount enterApply(boolean flag, Block block, Deque<ApplyFrame> stack) {
         // 处理过的block
         if ((block.getInfo().flags & BI_MAIN_REF) != 0) {
-            return XAmount.ZERO.subtract(XAmount.ONE);
+            return NOT_APPLIED;
         }
         // the TX block create by wallet or pool will not set fee = minGas, set in this.
         if (!block.getInputs().isEmpty() && block.getFee().equals(XAmount.ZERO)) {
             block.getInfo().setFee(MIN_GAS);
         }
         // 设置为已处理
-        MutableBytes32 blockHashLow = block.getHashLow();
-
         updateBlockFlag(block, BI_MAIN_REF, true);
 
         List<Address> links = block.getLinks();
@@ -707,32 +864,61 @@ public class BlockchainImpl implements Blockchain {
             updateBlockFlag(block, BI_APPLIED, true);
             return XAmount.ZERO;
         }
+        stack.push(new ApplyFrame(flag, block, links));
+        return null;
+    }
 
-        for (Address link : links) {
-            if (!link.isAddress) {
-                // 预处理时不需要拿回全部数据
-                Block ref = getBlockByHash(link.getAddress(), false);
-                XAmount ret;
-                // 如果处理过
-                if ((ref.getInfo().flags & BI_MAIN_REF) != 0) {
-                    ret = XAmount.ZERO.subtract(XAmount.ONE);
-                } else {
-                    ref = getBlockByHash(link.getAddress(), true);
-                    ret = applyBlock(false, ref);
-                }
-                if (ret.equals(XAmount.ZERO.subtract(XAmount.ONE))) {
-                    continue;
-                }
-                sumGas = sumGas.add(ret);
-                updateBlockRef(ref, new Address(block));
-                if (flag && sumGas != XAmount.ZERO) {// judge if block is mainBlock, if true: add fee!
-                    block.getInfo().setFee(block.getFee().add(sumGas));
-                    addAndAccept(block, sumGas);
-                    sumGas = XAmount.ZERO;
-                }
+    /**
+     * Apply the referenced blocks of the frame until one needs a frame of its own.
+     *
+     * @return true if a frame was pushed
+     */
+    private boolean applyNextRef(ApplyFrame frame, Deque<ApplyFrame> stack) {
+        while (frame.next < frame.links.size()) {
+            Address link = frame.links.get(frame.next++);
+            if (link.isAddress) {
+                continue;
+            }
+            // 预处理时不需要拿回全部数据
+            Block ref = getBlockByHash(link.getAddress(), false);
+            // 如果处理过
+            if ((ref.getInfo().flags & BI_MAIN_REF) != 0) {
+                continue;
             }
+            frame.ref = getBlockByHash(link.getAddress(), true);
+            XAmount ret = enterApply(false, frame.ref, stack);
+            if (ret == null) {
+                return true;
+            }
+            refApplied(frame, ret);
+        }
+        return false;
+    }
+
+    private void refApplied(ApplyFrame frame, XAmount ret) {
+        Block ref = frame.ref;
+        frame.ref = null;
+        if (ret.equals(NOT_APPLIED)) {
+            return;
         }
+        Block block = frame.block;
+        sumGas = sumGas.add(ret);
+        updateBlockRef(ref, new Address(block));
+        if (frame.flag && sumGas != XAmount.ZERO) {// judge if block is mainBlock, if true: add fee!
+            block.getInfo().setFee(block.getFee().add(sumGas));
+            addAndAccept(block, sumGas);
+            sumGas = XAmount.ZERO;
+        }
+    }
 
+    /**
+     * Move the amounts of the inputs and outputs of the block, once its referenced blocks are applied.
+     */
+    private XAmount applyLinks(boolean flag, Block block, List<Address> links) {
+        XAmount gas = XAmount.ZERO;
+        XAmount sumIn = XAmount.ZERO;
+        XAmount sumOut = XAmount.ZERO; // sumOut是用来支付其他区块link自己的手续费 现在先用0
+        MutableBytes32 blockHashLow = block.getHashLow();
 
         for (Address link : links) {
             MutableBytes32 linkAddress = link.getAddress();
@@ -763,7 +949,7 @@ public class BlockchainImpl implements Blockchain {
                 }
                 sumIn = sumIn.add(link.getAmount());
             } else if (link.getType() == XDAG_FIELD_INPUT) {
-                XAmount balance = addressStore.getBalanceByAddress(hash2byte(link.getAddress()));
+                XAmount balance = journal.getBalance(hash2byte(link.getAddress()));
                 if (compareAmountTo(balance, link.amount) < 0) {
                     log.debug("This input ref doesn't have enough amount,hash:{},amount:{},need:{}",
                             Hex.toHexString(hash2byte(link.getAddress())), balance,
@@ -798,9 +984,9 @@ public class BlockchainImpl implements Blockchain {
                 Block ref = getBlockByHash(linkAddress, false);
                 if (link.getType() == XDAG_FIELD_IN) {
                     subtractAndAccept(ref, link.getAmount());
-                    XAmount allBalance = addressStore.getAllBalance();
+                    XAmount allBalance = journal.getAllBalance();
                     allBalance = allBalance.add(link.getAmount().subtract(block.getFee()));
-                    addressStore.updateAllBalance(allBalance);
+                    journal.updateAllBalance(allBalance);
                 } else if (!flag) {// 递归返回到第一层时，ref上一个主块（output）类型，此时不允许扣款
                     addAndAccept(ref, link.getAmount().subtract(block.getFee()));
                     gas = gas.add(block.getFee()); // Mark the output for Fee
@@ -822,8 +1008,48 @@ public class BlockchainImpl implements Blockchain {
         return gas;
     }
 
+    /**
+     * Undo {@link #applyBlock} for the block and, through an explicit stack, for every block it applied.
+     * The amounts of each block are returned before the blocks it applied are visited.
+     */
     // TODO: unapply block which in snapshot
     public XAmount unApplyBlock(Block block) {
+        Deque<UnapplyFrame> stack = new ArrayDeque<>();
+        stack.push(enterUnapply(block));
+        while (!stack.isEmpty()) {
+            UnapplyFrame frame = stack.peek();
+            if (frame.waiting) {
+                // the block applied by this one is done, unApplyBlock always returns zero
+                frame.waiting = false;
+                addAndAccept(frame.block, XAmount.ZERO);
+            }
+            Block next = nextToUnapply(frame);
+            if (next != null) {
+                frame.waiting = true;
+                stack.push(enterUnapply(next));
+                continue;
+            }
+            stack.pop();
+        }
+        return XAmount.ZERO;
+    }
+
+    private static final class UnapplyFrame {
+        final Block block;
+        final List<Address> links;
+        int next;
+        boolean waiting;
+
+        UnapplyFrame(Block block, List<Address> links) {
+            this.block = block;
+            this.links = links;
+        }
+    }
+
+    /**
+     * Return the amounts moved by the block itself and clear its flags.
+     */
+    private UnapplyFrame enterUnapply(Block block) {
         List<Address> links = block.getLinks();
         Collections.reverse(links); // must be reverse
         if ((block.getInfo().flags & BI_APPLIED) != 0) {
@@ -838,14 +1064,14 @@ public class BlockchainImpl implements Blockchain {
                     if (link.getType() == XDAG_FIELD_IN) {
                         addAndAccept(ref, link.getAmount());
                         sum = sum.subtract(link.getAmount());
-                        XAmount allBalance = addressStore.getAllBalance();
+                        XAmount allBalance = journal.getAllBalance();
                         // allBalance = allBalance.subtract(link.getAmount()); //fix subtract twice.
                         try {
                             allBalance = allBalance.subtract(link.getAmount().subtract(block.getFee()));
                         } catch (Exception e) {
                             log.debug("allBalance rollback");
                         }
-                        addressStore.updateAllBalance(allBalance);
+                        journal.updateAllBalance(allBalance);
                     } else if (link.getType() == XDAG_FIELD_OUT) {
                         // when add amount in 'Apply' subtract fee, so unApply also subtract fee.
                         subtractAndAccept(ref, link.getAmount().subtract(block.getFee()));
@@ -867,19 +1093,26 @@ public class BlockchainImpl implements Blockchain {
         }
         updateBlockFlag(block, BI_MAIN_REF, false);
         updateBlockRef(block, null);
+        return new UnapplyFrame(block, links);
+    }
 
-        for (Address link : links) {
+    /**
+     * The next referenced block that was applied by the block of the frame, null if none is left.
+     */
+    private Block nextToUnapply(UnapplyFrame frame) {
+        while (frame.next < frame.links.size()) {
+            Address link = frame.links.get(frame.next++);
             if (!link.isAddress) {
                 Block ref = getBlockByHash(link.getAddress(), false);
                 //even mainBlock duplicate link the TX_block which other mainBlock is handled, we could check the TX ref if this mainBlock.
                 if (ref.getInfo().getRef() != null
-                        && equalBytes(ref.getInfo().getRef(), block.getHashLow().toArray())
+                        && equalBytes(ref.getInfo().getRef(), frame.block.getHashLow().toArray())
                         && ((ref.getInfo().flags & BI_MAIN_REF) != 0)) {
-                    addAndAccept(block, unApplyBlock(getBlockByHash(ref.getHashLow(), true)));
+                    return getBlockByHash(ref.getHashLow(), true);
                 }
             }
         }
-        return XAmount.ZERO;
+        return null;
     }
 
     /**
@@ -888,27 +1121,38 @@ public class BlockchainImpl implements Blockchain {
     public void setMain(Block block) {
 
         synchronized (this) {
-            // 设置奖励
-            long mainNumber = xdagStats.nmain + 1;
-            log.debug("mainNumber = {},hash = {}", mainNumber, Hex.toHexString(block.getInfo().getHash()));
-            XAmount reward = getReward(mainNumber);
-            block.getInfo().setHeight(mainNumber);
-            updateBlockFlag(block, BI_MAIN, true);
-
-            // 接收奖励
-            acceptAmount(block, reward);
-            xdagStats.nmain++;
-
-            // 递归执行主块引用的区块 并获取手续费
-            XAmount mainBlockFee = applyBlock(true, block); //the mainBlock may have tx, return the fee to itself.
-            if (!mainBlockFee.equals(XAmount.ZERO)) {// normal mainBlock will not go into this
-                acceptAmount(block, mainBlockFee); //add the fee
-                block.getInfo().setFee(mainBlockFee);
+            // the whole main block is written at once, or not at all
+            journal.begin();
+            journal.onRollback(mainChain::invalidate);
+            try {
+                // 设置奖励
+                long mainNumber = xdagStats.nmain + 1;
+                log.debug("mainNumber = {},hash = {}", mainNumber, Hex.toHexString(block.getInfo().getHash()));
+                XAmount reward = getReward(mainNumber);
+                block.getInfo().setHeight(mainNumber);
+                updateBlockFlag(block, BI_MAIN, true);
+
+                // 接收奖励
+                acceptAmount(block, reward);
+                xdagStats.nmain++;
+                journal.onRollback(() -> xdagStats.nmain--);
+
+                // 递归执行主块引用的区块 并获取手续费
+                XAmount mainBlockFee = applyBlock(true, block); //the mainBlock may have tx, return the fee to itself.
+                if (!mainBlockFee.equals(XAmount.ZERO)) {// normal mainBlock will not go into this
+                    acceptAmount(block, mainBlockFee); //add the fee
+                    block.getInfo().setFee(mainBlockFee);
+                }
+                // 主块REF指向自身
+                // TODO:补充手续费
+                updateBlockRef(block, new Address(block));
+                journal.commit();
+            } catch (RuntimeException e) {
+                journal.rollback();
+                throw e;
             }
-            // 主块REF指向自身
-            // TODO:补充手续费
-            updateBlockRef(block, new Address(block));
 
+            // reads the heights written above
             if (randomx != null) {
                 randomx.randomXSetForkTime(block);
             }
@@ -926,15 +1170,24 @@ public class BlockchainImpl implements Blockchain {
 
             log.debug("UnSet main,{}, mainnumber = {}", block.getHash().toHexString(), xdagStats.nmain);
 
-            XAmount amount = block.getInfo().getAmount();// mainBlock's balance will have fee, subtract all balance.
-            block.getInfo().setFee(XAmount.ZERO);// set the mainBlock's zero.
-            updateBlockFlag(block, BI_MAIN, false);
-
-            xdagStats.nmain--;
-
-            // 去掉奖励和引用块的手续费
-            acceptAmount(block, XAmount.ZERO.subtract(amount));
-            acceptAmount(block, unApplyBlock(block));
+            journal.begin();
+            journal.onRollback(mainChain::invalidate);
+            try {
+                XAmount amount = block.getInfo().getAmount();// mainBlock's balance will have fee, subtract all balance.
+                block.getInfo().setFee(XAmount.ZERO);// set the mainBlock's zero.
+                updateBlockFlag(block, BI_MAIN, false);
+
+                xdagStats.nmain--;
+                journal.onRollback(() -> xdagStats.nmain++);
+
+                // 去掉奖励和引用块的手续费
+                acceptAmount(block, XAmount.ZERO.subtract(amount));
+                acceptAmount(block, unApplyBlock(block));
+                journal.commit();
+            } catch (RuntimeException e) {
+                journal.rollback();
+                throw e;
+            }
 
             if (randomx != null) {
                 randomx.randomXUnsetForkTime(block);
@@ -1257,9 +1510,25 @@ public class BlockchainImpl implements Blockchain {
         keyHashlow.set(8, Objects.requireNonNull(hashlow).slice(8, 24));
 
         Block b = memOrphanPool.get(Bytes32.wrap(keyHashlow));
-        if (b == null) {
-            b = blockStore.getBlockByHash(keyHashlow, isRaw);
+        if (b != null) {
+            return b;
+        }
+        // changed by the main block being set, not written yet
+        BlockInfo info = journal.getBlockInfo(Bytes32.wrap(keyHashlow));
+        if (info == null) {
+            return blockStore.getBlockByHash(keyHashlow, isRaw);
         }
+        if (!isRaw) {
+            return new Block(info);
+        }
+        Block stored = blockStore.getBlockByHash(keyHashlow, true);
+        if (stored == null) {
+            return null;
+        }
+        b = new Block(info);
+        b.setXdagBlock(stored.getXdagBlock());
+        b.setParsed(false);
+        b.parse();
         return b;
     }
 
@@ -1283,9 +1552,16 @@ public class BlockchainImpl implements Blockchain {
 //                log.debug("移除Extra");
                 // 那removeBlockInfo就是完整的
                 // 从MemOrphanPool中去除
-                Bytes key = b.getHashLow();
-                Block removeBlockRaw = memOrphanPool.get(key);
-                memOrphanPool.remove(key);
+                Block removeBlockRaw = memOrphanPool.remove(b.getHashLow());
+                if (removeBlockRaw != null) {
+                    int flags = removeBlockRaw.getInfo().flags;
+                    boolean saved = removeBlockRaw.isSaved;
+                    onUnitRollback(() -> {
+                        removeBlockRaw.getInfo().setFlags(flags);
+                        removeBlockRaw.isSaved = saved;
+                        memOrphanPool.add(removeBlockRaw);
+                    });
+                }
                 if (action != OrphanRemoveActions.ORPHAN_REMOVE_REUSE) {
                     // 将区块保存
                     saveBlock(removeBlockRaw);
@@ -1314,13 +1590,19 @@ public class BlockchainImpl implements Blockchain {
         if (block == null) {
             return;
         }
+        int oldFlags = block.getInfo().flags;
+        if (!block.isSaved) {
+            // e.g. a block of the orphan pool, saved blocks are restored with the store
+            onUnitRollback(() -> block.getInfo().setFlags(oldFlags));
+        }
         if (direction) {
             block.getInfo().setFlags(block.getInfo().flags |= flag);
         } else {
             block.getInfo().setFlags(block.getInfo().flags &= ~flag);
         }
+        mainChain.onFlags(block.getHashLow(), oldFlags, block.getInfo().flags);
         if (block.isSaved) {
-            blockStore.saveBlockInfo(block.getInfo());
+            journal.saveBlockInfo(block.getInfo());
         }
     }
 
@@ -1331,7 +1613,7 @@ public class BlockchainImpl implements Blockchain {
             block.getInfo().setRef(ref.getAddress().toArray());
         }
         if (block.isSaved) {
-            blockStore.saveBlockInfo(block.getInfo());
+            journal.saveBlockInfo(block.getInfo());
         }
     }
 
@@ -1347,8 +1629,10 @@ public class BlockchainImpl implements Blockchain {
             if (xdagStats.getOurLastBlockHash() == null) {
                 blockStore.saveXdagStatus(xdagStats);
             }
-            addOurBlock(memOurBlocks.get(block.getHash()), block);
+            Integer index = memOurBlocks.get(block.getHash());
+            addOurBlock(index, block);
             memOurBlocks.remove(block.getHash());
+            onUnitRollback(() -> memOurBlocks.put(block.getHash(), index));
         }
 
         if (block.isPretopCandidate()) {
@@ -1368,8 +1652,30 @@ public class BlockchainImpl implements Blockchain {
         return this.xdagStats;
     }
 
+    @Override
+    public void preVerify(Block block) {
+        try {
+            // runs outside the chain lock, so only read the store and leave the in-memory pool alone
+            signatureVerifier.preVerify(block, hashlow -> {
+                MutableBytes32 keyHashlow = MutableBytes32.create();
+                keyHashlow.set(8, hashlow.slice(8, 24));
+                Block inBlock = blockStore.getBlockInfoByHash(keyHashlow);
+                if (inBlock == null || inBlock.getInfo().isSnapshot()) {
+                    return null;
+                }
+                return blockStore.getBlockByHash(keyHashlow, true);
+            });
+        } catch (Exception e) {
+            // tryToConnect rejects the block
+            log.debug("Failed to verify signatures of block {}", block.getHashLow(), e);
+        }
+    }
+
     public boolean canUseInput(Block block) {
-        List<SECPPublicKey> keys = block.verifiedKeys();
+        if (!block.hasValidKeys()) {
+            return false;
+        }
+        List<SECPPublicKey> keys = signatureVerifier.verifiedKeys(block);
         List<Address> inputs = block.getInputs();
         if (inputs == null || inputs.isEmpty()) {
             return true;
@@ -1411,7 +1717,7 @@ public class BlockchainImpl implements Blockchain {
             MutableBytes subdata = inBlock.getSubRawData(inBlock.getOutsigIndex() - 2);
 //            log.debug("verify encoded:{}", Hex.toHexString(subdata));
             SECPSignature sig = inBlock.getOutsig();
-            return verifySignature(subdata, sig, publicKeys, block.getInfo());
+            return verifySignature(in.getAddress(), subdata, sig, publicKeys, block.getInfo());
         }
     }
 
@@ -1439,19 +1745,15 @@ public class BlockchainImpl implements Blockchain {
             block.parse();
             MutableBytes subdata = block.getSubRawData(block.getOutsigIndex() - 2);
             SECPSignature sig = block.getOutsig();
-            return verifySignature(subdata, Sign.toCanonical(sig), publicKeys, blockInfo);
+            return verifySignature(in.getAddress(), subdata, Sign.toCanonical(sig), publicKeys, blockInfo);
         }
 
 
     }
 
-    private boolean verifySignature(MutableBytes subdata, SECPSignature sig, List<SECPPublicKey> publicKeys, BlockInfo blockInfo) {
+    private boolean verifySignature(Bytes32 hashlow, MutableBytes subdata, SECPSignature sig, List<SECPPublicKey> publicKeys, BlockInfo blockInfo) {
         for (SECPPublicKey publicKey : publicKeys) {
-            byte[] publicKeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
-            Bytes digest = Bytes.wrap(subdata, Bytes.wrap(publicKeyBytes));
-//            log.debug("verify encoded:{}", Hex.toHexString(digest));
-            Bytes32 hash = Hash.hashTwice(digest);
-            if (Sign.SECP256K1.verify(hash, sig, publicKey)) {
+            if (signatureVerifier.verifyOutsig(hashlow, subdata, sig, publicKey)) {
                 SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
                 byte[] pubkeyBytes = publicKey.asEcPoint(Sign.CURVE).getEncoded(true);
                 if (snapshotInfo != null) {
@@ -1571,13 +1873,23 @@ public class BlockchainImpl implements Blockchain {
         }
     }
 
-    public void checkMain() {
+    public synchronized void checkMain() {
+        beginUnit();
         try {
             checkNewMain();
-            // checkNewMain后xdagStats状态会发生改变
-            blockStore.saveXdagStatus(xdagStats);
+            // checkNewMain后xdagStats状态会发生改变, and peers update the remote stats in between
+            XdagStats stats = xdagStats.snapshot();
+            boolean changed = savedStats == null || !stats.sameAs(savedStats);
+            if (changed) {
+                blockStore.saveXdagStatus(xdagStats);
+            }
+            unitOfWork.commit();
+            if (changed) {
+                savedStats = stats;
+            }
         } catch (Throwable e) {
             log.error(e.getMessage(), e);
+            unitOfWork.rollback();
         }
     }
 
@@ -1590,6 +1902,7 @@ public class BlockchainImpl implements Blockchain {
             }
             // 关闭线程池
             checkLoop.shutdownNow();
+            signatureVerifier.stop();
             checkLoop.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             log.error(e.getMessage(), e);
@@ -1621,17 +1934,18 @@ public class BlockchainImpl implements Blockchain {
             log.debug("balance {}  amount {}  block {}", oldAmount, amount, block.getHashLow().toHexString());
         }
         if (block.isSaved) {
-            blockStore.saveBlockInfo(block.getInfo());
+            journal.saveBlockInfo(block.getInfo());
         }
         if ((block.getInfo().flags & BI_OURS) != 0) {
-            xdagStats.setBalance(amount.add(xdagStats.getBalance()));
+            setOurBalance(amount.add(xdagStats.getBalance()));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— block:{} [old:{} add:{} fin:{}]",
+                    block.getHashLow().toHexString(),
+                    oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    block.getInfo().getAmount().toDecimal(9, XUnit.XDAG).toPlainString());
         }
-        XAmount finalAmount = blockStore.getBlockInfoByHash(block.getHashLow()).getInfo().getAmount();
-        log.debug("Balance checker —— block:{} [old:{} add:{} fin:{}]",
-                block.getHashLow().toHexString(),
-                oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
     }
 
     private void subtractAndAccept(Block block, XAmount amount) {
@@ -1643,54 +1957,63 @@ public class BlockchainImpl implements Blockchain {
             log.debug("balance {}  amount {}  block {}", oldAmount, amount, block.getHashLow().toHexString());
         }
         if (block.isSaved) {
-            blockStore.saveBlockInfo(block.getInfo());
+            journal.saveBlockInfo(block.getInfo());
         }
         if ((block.getInfo().flags & BI_OURS) != 0) {
-            xdagStats.setBalance(xdagStats.getBalance().subtract(amount));
+            setOurBalance(xdagStats.getBalance().subtract(amount));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— block:{} [old:{} sub:{} fin:{}]",
+                    block.getHashLow().toHexString(),
+                    oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    block.getInfo().getAmount().toDecimal(9, XUnit.XDAG).toPlainString());
         }
-        XAmount finalAmount = blockStore.getBlockInfoByHash(block.getHashLow()).getInfo().getAmount();
-        log.debug("Balance checker —— block:{} [old:{} sub:{} fin:{}]",
-                block.getHashLow().toHexString(),
-                oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
     }
 
     private void subtractAmount(byte[] addressHash, XAmount amount, Block block) {
-        XAmount balance = addressStore.getBalanceByAddress(addressHash);
+        XAmount balance = journal.getBalance(addressHash);
+        XAmount finalAmount = balance;
         try {
-            addressStore.updateBalance(addressHash, balance.subtract(amount));
+            finalAmount = balance.subtract(amount);
+            journal.updateBalance(addressHash, finalAmount);
         } catch (Exception e) {
+            finalAmount = balance;
             log.error(e.getMessage(), e);
             log.debug("balance {}  amount {}  addressHsh {}  block {}", balance, amount, toBase58(addressHash), block.getHashLow());
         }
-        XAmount finalAmount = addressStore.getBalanceByAddress(addressHash);
-        log.debug("Balance checker —— Address:{} [old:{} sub:{} fin:{}]",
-                WalletUtils.toBase58(addressHash),
-                balance.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        if (log.isDebugEnabled()) {
+            log.debug("Balance checker —— Address:{} [old:{} sub:{} fin:{}]",
+                    WalletUtils.toBase58(addressHash),
+                    balance.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        }
         if ((block.getInfo().flags & BI_OURS) != 0) {
-            xdagStats.setBalance(xdagStats.getBalance().subtract(amount));
+            setOurBalance(xdagStats.getBalance().subtract(amount));
         }
     }
 
     private void addAmount(byte[] addressHash, XAmount amount, Block block) {
-        XAmount balance = addressStore.getBalanceByAddress(addressHash);
+        XAmount balance = journal.getBalance(addressHash);
+        XAmount finalAmount = balance;
         try {
-            addressStore.updateBalance(addressHash, balance.add(amount));
+            finalAmount = balance.add(amount);
+            journal.updateBalance(addressHash, finalAmount);
         } catch (Exception e) {
+            finalAmount = balance;
             log.error(e.getMessage(), e);
             log.debug("balance {}  amount {}  addressHsh {}  block {}", balance, amount, toBase58(addressHash), block.getHashLow());
         }
-        XAmount finalAmount = addressStore.getBalanceByAddress(addressHash);
-        log.warn("Balance checker —— Address:{} [old:{} add:{} fin:{}]",
-                WalletUtils.toBase58(addressHash),
-                balance.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        if (log.isWarnEnabled()) {
+            log.warn("Balance checker —— Address:{} [old:{} add:{} fin:{}]",
+                    WalletUtils.toBase58(addressHash),
+                    balance.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+        }
         if ((block.getInfo().flags & BI_OURS) != 0) {
-            xdagStats.setBalance(amount.add(xdagStats.getBalance()));
+            setOurBalance(amount.add(xdagStats.getBalance()));
         }
     }
 
@@ -1699,19 +2022,26 @@ public class BlockchainImpl implements Blockchain {
         XAmount oldAmount = block.getInfo().getAmount();
         block.getInfo().setAmount(block.getInfo().getAmount().add(amount));
         if (block.isSaved) {
-            blockStore.saveBlockInfo(block.getInfo());
-        }
-        XAmount finalAmount = blockStore.getBlockByHash(block.getHashLow(), false).getInfo().getAmount();
-        log.warn("Balance checker —— Block:{} [old:{} acc:{} fin:{}]",
-                block.getHashLow().toHexString(),
-                oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                amount.toDecimal(9, XUnit.XDAG).toPlainString(),
-                finalAmount.toDecimal(9, XUnit.XDAG).toPlainString());
+            journal.saveBlockInfo(block.getInfo());
+        }
+        if (log.isWarnEnabled()) {
+            log.warn("Balance checker —— Block:{} [old:{} acc:{} fin:{}]",
+                    block.getHashLow().toHexString(),
+                    oldAmount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    amount.toDecimal(9, XUnit.XDAG).toPlainString(),
+                    block.getInfo().getAmount().toDecimal(9, XUnit.XDAG).toPlainString());
+        }
         if ((block.getInfo().flags & BI_OURS) != 0) {
-            xdagStats.setBalance(amount.add(xdagStats.getBalance()));
+            setOurBalance(amount.add(xdagStats.getBalance()));
         }
     }
 
+    private void setOurBalance(XAmount balance) {
+        XAmount old = xdagStats.getBalance();
+        xdagStats.setBalance(balance);
+        journal.onRollback(() -> xdagStats.setBalance(old));
+    }
+
     /**
      * 判断是否已经接收过区块 *
      */
@@ -1720,7 +2050,7 @@ public class BlockchainImpl implements Blockchain {
     }
 
     public boolean isExistInMem(Bytes32 hashlow) {
-        return memOrphanPool.containsKey(hashlow);
+        return memOrphanPool.contains(hashlow);
     }
 
     /**
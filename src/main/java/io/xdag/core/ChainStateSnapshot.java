@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The in-memory chain state of {@link BlockchainImpl} as it was when a unit of work began, so that
+ * a rollback of the unit also takes back the counters, top and hashrate slots it changed.
+ * <p>
+ * Changes to collections are not copied, they register an undo action with
+ * {@link #onRollback(Runnable)} instead.
+ */
+final class ChainStateSnapshot {
+
+    private final XdagStats stats;
+    private final XdagTopStatus topStatus;
+    private final XdagExtStats extStats;
+
+    private final BigInteger difficulty;
+    private final BigInteger maxdifficulty;
+    private final long nblocks;
+    private final long totalnblocks;
+    private final long nmain;
+    private final long totalnmain;
+    private final long nnoref;
+    private final long nextra;
+    private final long maintime;
+    private final XAmount balance;
+    private final byte[] globalMiner;
+    private final byte[] ourLastBlockHash;
+
+    private final byte[] top;
+    private final BigInteger topDiff;
+    private final byte[] preTop;
+    private final BigInteger preTopDiff;
+
+    private final BigInteger[] hashRateTotal;
+    private final BigInteger[] hashRateOurs;
+    private final long hashrateLastTime;
+
+    /**
+     * newest first
+     */
+    private final Deque<Runnable> undo = new ArrayDeque<>();
+
+    ChainStateSnapshot(XdagStats stats, XdagTopStatus topStatus, XdagExtStats extStats) {
+        this.stats = stats;
+        this.topStatus = topStatus;
+        this.extStats = extStats;
+
+        difficulty = stats.difficulty;
+        maxdifficulty = stats.maxdifficulty;
+        nblocks = stats.nblocks;
+        totalnblocks = stats.totalnblocks;
+        nmain = stats.nmain;
+        totalnmain = stats.totalnmain;
+        nnoref = stats.nnoref;
+        nextra = stats.nextra;
+        maintime = stats.maintime;
+        balance = stats.balance;
+        globalMiner = clone(stats.getGlobalMiner());
+        ourLastBlockHash = clone(stats.getOurLastBlockHash());
+
+        top = clone(topStatus.getTop());
+        topDiff = topStatus.getTopDiff();
+        preTop = clone(topStatus.getPreTop());
+        preTopDiff = topStatus.getPreTopDiff();
+
+        hashRateTotal = extStats.getHashRateTotal().clone();
+        hashRateOurs = extStats.getHashRateOurs().clone();
+        hashrateLastTime = extStats.getHashrate_last_time();
+    }
+
+    void onRollback(Runnable action) {
+        undo.push(action);
+    }
+
+    void restore() {
+        while (!undo.isEmpty()) {
+            undo.pop().run();
+        }
+        stats.difficulty = difficulty;
+        stats.maxdifficulty = maxdifficulty;
+        stats.nblocks = nblocks;
+        stats.totalnblocks = totalnblocks;
+        stats.nmain = nmain;
+        stats.totalnmain = totalnmain;
+        stats.nnoref = nnoref;
+        stats.nextra = nextra;
+        stats.maintime = maintime;
+        stats.balance = balance;
+        stats.setGlobalMiner(globalMiner);
+        stats.setOurLastBlockHash(ourLastBlockHash);
+
+        topStatus.setTop(top);
+        topStatus.setTopDiff(topDiff);
+        topStatus.setPreTop(preTop);
+        topStatus.setPreTopDiff(preTopDiff);
+
+        // the arrays are shared with the hashrate readers
+        System.arraycopy(hashRateTotal, 0, extStats.getHashRateTotal(), 0, hashRateTotal.length);
+        System.arraycopy(hashRateOurs, 0, extStats.getHashRateOurs(), 0, hashRateOurs.length);
+        extStats.setHashrate_last_time(hashrateLastTime);
+    }
+
+    private static byte[] clone(byte[] bytes) {
+        return bytes == null ? null : bytes.clone();
+    }
+}
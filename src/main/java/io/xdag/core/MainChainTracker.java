@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.config.Constants.BI_MAIN;
+import static io.xdag.config.Constants.BI_MAIN_CHAIN;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * In-memory copy of the blocks that {@link BlockchainImpl#checkNewMain()} looks at: the max
+ * difficulty path from the top down to, but not including, the latest main block.
+ * <p>
+ * The path is rebuilt from the store only after {@link #invalidate()}. Otherwise it follows the
+ * chain as blocks connect: a new top linking the old one is pushed in front, flag changes of the
+ * blocks on the path are copied in place, and a block becoming main cuts the path at it.
+ * Not thread safe, the chain lock guards it.
+ */
+final class MainChainTracker {
+
+    static final class Candidate {
+        final Bytes32 hashlow;
+        final long timestamp;
+        int flags;
+
+        Candidate(Bytes32 hashlow, long timestamp, int flags) {
+            this.hashlow = hashlow;
+            this.timestamp = timestamp;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * top first
+     */
+    private final Deque<Candidate> path = new ArrayDeque<>();
+    private final Map<Bytes32, Candidate> index = new HashMap<>();
+    private Bytes32 top;
+    private boolean valid;
+    private int chainCount;
+
+    /**
+     * Whether the path is known and was built for this top.
+     */
+    boolean isValid(Bytes32 currentTop) {
+        return valid && top != null && top.equals(currentTop);
+    }
+
+    void invalidate() {
+        valid = false;
+        path.clear();
+        index.clear();
+        top = null;
+        chainCount = 0;
+    }
+
+    /**
+     * Replace the path with one read from the store, top first.
+     */
+    void reset(Bytes32 currentTop, List<Candidate> candidates) {
+        invalidate();
+        for (Candidate candidate : candidates) {
+            path.addLast(candidate);
+            index.put(candidate.hashlow, candidate);
+            if ((candidate.flags & BI_MAIN_CHAIN) != 0) {
+                chainCount++;
+            }
+        }
+        top = currentTop;
+        valid = true;
+    }
+
+    /**
+     * The block became the top. It extends the path if it links the previous top, anything else
+     * needs a rebuild.
+     */
+    void onNewTop(Block block, Bytes32 previousTop) {
+        byte[] maxDiffLink = block.getInfo().getMaxDiffLink();
+        if (!valid || previousTop == null || !previousTop.equals(top) || maxDiffLink == null
+                || !previousTop.equals(Bytes32.wrap(maxDiffLink))) {
+            invalidate();
+            return;
+        }
+        Bytes32 hashlow = Bytes32.wrap(block.getHashLow().toArray());
+        top = hashlow;
+        Candidate candidate = new Candidate(hashlow, block.getTimestamp(), block.getInfo().flags);
+        path.addFirst(candidate);
+        index.put(hashlow, candidate);
+        if ((candidate.flags & BI_MAIN_CHAIN) != 0) {
+            chainCount++;
+        }
+    }
+
+    /**
+     * The flags of the block changed from {@code oldFlags}.
+     */
+    void onFlags(Bytes32 hashlow, int oldFlags, int flags) {
+        if (!valid || oldFlags == flags) {
+            return;
+        }
+        Candidate candidate = index.get(hashlow);
+        if (candidate == null) {
+            if ((oldFlags & BI_MAIN) != 0 && (flags & BI_MAIN) == 0) {
+                // may be where the path ends, it goes further down now
+                invalidate();
+            }
+            return;
+        }
+        if ((flags & BI_MAIN) != 0) {
+            cut(candidate);
+            return;
+        }
+        if ((candidate.flags & BI_MAIN_CHAIN) != (flags & BI_MAIN_CHAIN)) {
+            chainCount += (flags & BI_MAIN_CHAIN) != 0 ? 1 : -1;
+        }
+        candidate.flags = flags;
+    }
+
+    /**
+     * The block was dropped from the dag.
+     */
+    void onRemoved(Bytes32 hashlow) {
+        if (index.containsKey(hashlow)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * The deepest block of the path that is on the main chain, null if none is.
+     */
+    Candidate oldestOnChain() {
+        Iterator<Candidate> it = path.descendingIterator();
+        while (it.hasNext()) {
+            Candidate candidate = it.next();
+            if ((candidate.flags & BI_MAIN_CHAIN) != 0) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The number of blocks of the path that are on the main chain.
+     */
+    int chainCount() {
+        return chainCount;
+    }
+
+    int size() {
+        return path.size();
+    }
+
+    /**
+     * Drop the candidate and everything below it.
+     */
+    private void cut(Candidate candidate) {
+        while (!path.isEmpty()) {
+            Candidate last = path.removeLast();
+            index.remove(last.hashlow);
+            if ((last.flags & BI_MAIN_CHAIN) != 0) {
+                chainCount--;
+            }
+            if (last == candidate) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * The extra blocks kept in memory until they are linked, or evicted oldest first.
+ * <p>
+ * Blocks are indexed by hashlow for lookups and by timestamp for eviction. Both indexes are
+ * concurrent, so lookups from the sync, P2P and PoW threads take no lock and never see a torn
+ * map. Writers are serialized by the chain lock; a block is in the hash index whenever it is in the
+ * time index.
+ */
+public final class MemOrphanPool {
+
+    private final Map<Bytes32, Block> byHash = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<TimeKey, Block> byTime = new ConcurrentSkipListMap<>();
+
+    private static final class TimeKey implements Comparable<TimeKey> {
+        final long timestamp;
+        final Bytes32 hashlow;
+
+        TimeKey(long timestamp, Bytes32 hashlow) {
+            this.timestamp = timestamp;
+            this.hashlow = hashlow;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int c = Long.compare(timestamp, other.timestamp);
+            return c != 0 ? c : hashlow.compareTo(other.hashlow);
+        }
+    }
+
+    public Block get(Bytes32 hashlow) {
+        return byHash.get(hashlow);
+    }
+
+    public boolean contains(Bytes32 hashlow) {
+        return byHash.containsKey(hashlow);
+    }
+
+    /**
+     * Adds the block unless a block with the same hashlow is pooled already.
+     */
+    public boolean add(Block block) {
+        Bytes32 hashlow = block.getHashLow().copy();
+        if (byHash.putIfAbsent(hashlow, block) != null) {
+            return false;
+        }
+        byTime.put(new TimeKey(block.getTimestamp(), hashlow), block);
+        return true;
+    }
+
+    public Block remove(Bytes32 hashlow) {
+        Block block = byHash.remove(hashlow);
+        if (block != null) {
+            byTime.remove(new TimeKey(block.getTimestamp(), hashlow));
+        }
+        return block;
+    }
+
+    /**
+     * The block with the earliest timestamp, the next one to evict.
+     */
+    public Block oldest() {
+        Map.Entry<TimeKey, Block> first = byTime.firstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    public int size() {
+        return byHash.size();
+    }
+
+    public boolean isEmpty() {
+        return byHash.isEmpty();
+    }
+}
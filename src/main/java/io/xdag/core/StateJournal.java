@@ -0,0 +1,198 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import io.xdag.db.AddressStore;
+import io.xdag.db.BlockStore;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Write-back journal of the block infos and address balances changed while a main block is applied
+ * or unapplied.
+ * <p>
+ * Between {@link #begin()} and the outermost {@link #commit()} the changes stay in memory, visible
+ * only to the thread that began, and the commit writes the last state of every touched entry once.
+ * {@link #rollback()} replays the journal in reverse up to the matching begin. Without an open
+ * journal every call goes straight to the stores.
+ */
+final class StateJournal {
+
+    private final BlockStore blockStore;
+    private final AddressStore addressStore;
+
+    /**
+     * last saved state of the touched entries, in the order of their last change
+     */
+    private final Map<Bytes32, BlockInfo> blockInfos = new LinkedHashMap<>();
+    private final Map<Bytes, XAmount> balances = new LinkedHashMap<>();
+    private XAmount allBalance;
+
+    /**
+     * undo actions, newest first, and the number of them at every open begin
+     */
+    private final Deque<Runnable> undo = new ArrayDeque<>();
+    private final Deque<Integer> marks = new ArrayDeque<>();
+    private volatile Thread owner;
+
+    StateJournal(BlockStore blockStore, AddressStore addressStore) {
+        this.blockStore = blockStore;
+        this.addressStore = addressStore;
+    }
+
+    void begin() {
+        Thread current = Thread.currentThread();
+        if (owner != null && owner != current) {
+            throw new IllegalStateException("State journal is open in " + owner.getName());
+        }
+        owner = current;
+        marks.push(undo.size());
+    }
+
+    void commit() {
+        checkOpen();
+        marks.pop();
+        if (!marks.isEmpty()) {
+            return;
+        }
+        try {
+            for (BlockInfo blockInfo : blockInfos.values()) {
+                blockStore.saveBlockInfo(blockInfo);
+            }
+            for (Map.Entry<Bytes, XAmount> balance : balances.entrySet()) {
+                addressStore.updateBalance(balance.getKey().toArray(), balance.getValue());
+            }
+            if (allBalance != null) {
+                addressStore.updateAllBalance(allBalance);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    void rollback() {
+        checkOpen();
+        int mark = marks.pop();
+        while (undo.size() > mark) {
+            undo.pop().run();
+        }
+        if (marks.isEmpty()) {
+            close();
+        }
+    }
+
+    boolean isOpen() {
+        return owner == Thread.currentThread();
+    }
+
+    /**
+     * Register how to undo a change of in-memory state made under the journal, run on rollback.
+     */
+    void onRollback(Runnable action) {
+        if (isOpen()) {
+            undo.push(action);
+        }
+    }
+
+    /**
+     * A private copy of the journaled info of the block, null if the journal does not hold it.
+     */
+    BlockInfo getBlockInfo(Bytes32 hashlow) {
+        if (!isOpen()) {
+            return null;
+        }
+        BlockInfo blockInfo = blockInfos.get(hashlow);
+        return blockInfo == null ? null : blockInfo.copy();
+    }
+
+    void saveBlockInfo(BlockInfo blockInfo) {
+        if (!isOpen()) {
+            blockStore.saveBlockInfo(blockInfo);
+            return;
+        }
+        Bytes32 key = Bytes32.wrap(blockInfo.getHashlow().clone());
+        BlockInfo previous = blockInfos.remove(key);
+        blockInfos.put(key, blockInfo.copy());
+        undo.push(() -> {
+            blockInfos.remove(key);
+            if (previous != null) {
+                blockInfos.put(key, previous);
+            }
+        });
+    }
+
+    XAmount getBalance(byte[] address) {
+        XAmount balance = isOpen() ? balances.get(Bytes.wrap(address)) : null;
+        return balance != null ? balance : addressStore.getBalanceByAddress(address);
+    }
+
+    void updateBalance(byte[] address, XAmount balance) {
+        if (!isOpen()) {
+            addressStore.updateBalance(address, balance);
+            return;
+        }
+        Bytes key = Bytes.wrap(address.clone());
+        XAmount previous = balances.put(key, balance);
+        undo.push(() -> {
+            if (previous == null) {
+                balances.remove(key);
+            } else {
+                balances.put(key, previous);
+            }
+        });
+    }
+
+    XAmount getAllBalance() {
+        return isOpen() && allBalance != null ? allBalance : addressStore.getAllBalance();
+    }
+
+    void updateAllBalance(XAmount balance) {
+        if (!isOpen()) {
+            addressStore.updateAllBalance(balance);
+            return;
+        }
+        XAmount previous = allBalance;
+        allBalance = balance;
+        undo.push(() -> allBalance = previous);
+    }
+
+    private void checkOpen() {
+        if (!isOpen() || marks.isEmpty()) {
+            throw new IllegalStateException("State journal is not open in this thread");
+        }
+    }
+
+    private void close() {
+        blockInfos.clear();
+        balances.clear();
+        allBalance = null;
+        undo.clear();
+        marks.clear();
+        owner = null;
+    }
+}
@@ -65,6 +65,13 @@ public class XAmount implements Comparable<XAmount> {
         return new XAmount(d.movePointRight(unit.exp).setScale(0, FLOOR).longValueExact());
     }
 
+    /**
+     * raw amount in NANO_XDAG, the inverse of {@link #of(long)}
+     */
+    public long toLong() {
+        return nano;
+    }
+
     public BigDecimal toDecimal(int scale, XUnit unit) {
         BigDecimal nano = BigDecimal.valueOf(this.nano);
         return nano.movePointLeft(unit.exp).setScale(scale, FLOOR);
@@ -27,15 +27,23 @@ package io.xdag.core;
 import static io.xdag.core.XdagField.FieldType.fromByte;
 
 import java.nio.ByteOrder;
+import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.MutableBytes;
-import org.apache.tuweni.bytes.MutableBytes32;
 
 import lombok.Getter;
 
+/**
+ * The 512 bytes of a block as 16 fields of 32 bytes.
+ * <p>
+ * Read from raw data, the block is a view: types, field data and the sum are read from the data
+ * without copying it, and {@link XdagField} objects, which are views over the data as well, are only
+ * made for the fields asked for.
+ */
 public class XdagBlock {
 
     public static final int XDAG_BLOCK_FIELDS = 16;
     public static final int XDAG_BLOCK_SIZE = 512;
+    public static final int XDAG_FIELD_SIZE = 32;
 
     /**
      * data 以添加签名
@@ -63,17 +71,10 @@ public class XdagBlock {
 
     public XdagBlock(MutableBytes data) {
         this.data = data;
-        if (data != null && data.size() == 512) {
+        if (data != null && data.size() == XDAG_BLOCK_SIZE) {
             fields = new XdagField[XDAG_BLOCK_FIELDS];
-            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                MutableBytes32 fieldBytes = MutableBytes32.create();
-                fieldBytes.set(0, data.slice(i * 32, 32));
-                fields[i] = new XdagField(fieldBytes);
-                fields[i].setType(fromByte(getMsgCode(i)));
-            }
-            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
-                sum += fields[i].getSum();
-                fields[i].setType(fromByte(getMsgCode(i)));
+            for (int i = 0; i < XDAG_BLOCK_SIZE; i += 8) {
+                sum += data.getLong(i, ByteOrder.LITTLE_ENDIAN);
             }
         }
     }
@@ -83,17 +84,48 @@ public class XdagBlock {
         return (byte) (type >> (n << 2) & 0xf);
     }
 
-    public XdagField[] getFields() {
-        if (this.fields == null) {
-            throw new Error("no fields");
-        } else {
-            return this.fields;
+    /**
+     * Type of field n, without making the field.
+     */
+    public XdagField.FieldType getFieldType(int n) {
+        checkFields();
+        long type = getData().getLong(8, ByteOrder.LITTLE_ENDIAN);
+        return fromByte((byte) (type >> (n << 2) & 0xf));
+    }
+
+    /**
+     * Data of field n, a view over the block data.
+     */
+    public Bytes getFieldData(int n) {
+        checkFields();
+        return getData().slice(n * XDAG_FIELD_SIZE, XDAG_FIELD_SIZE);
+    }
+
+    public synchronized XdagField[] getFields() {
+        checkFields();
+        if (data != null) {
+            for (int i = 0; i < XDAG_BLOCK_FIELDS; i++) {
+                getField(i);
+            }
         }
+        return this.fields;
     }
 
-    public XdagField getField(int number) {
-        XdagField[] fields = getFields();
-        return fields[number];
+    public synchronized XdagField getField(int number) {
+        checkFields();
+        XdagField field = fields[number];
+        if (field == null && data != null) {
+            field = new XdagField(data.mutableSlice(number * XDAG_FIELD_SIZE, XDAG_FIELD_SIZE));
+            field.setType(fromByte(getMsgCode(number)));
+            fields[number] = field;
+        }
+        return field;
+    }
+
+    private void checkFields() {
+        if (this.fields == null) {
+            throw new Error("no fields");
+        }
     }
 
     public MutableBytes getData() {
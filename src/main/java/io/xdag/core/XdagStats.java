@@ -25,6 +25,8 @@
 package io.xdag.core;
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Objects;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -109,6 +111,39 @@ public class XdagStats {
         }
     }
 
+    /**
+     * A copy of every field, to tell later with {@link #sameAs(XdagStats)} whether anything changed.
+     */
+    XdagStats snapshot() {
+        XdagStats copy = new XdagStats(this);
+        copy.nwaitsync = nwaitsync;
+        copy.nnoref = nnoref;
+        copy.nextra = nextra;
+        copy.maintime = maintime;
+        copy.balance = balance;
+        copy.globalMiner = globalMiner == null ? null : globalMiner.clone();
+        copy.ourLastBlockHash = ourLastBlockHash == null ? null : ourLastBlockHash.clone();
+        return copy;
+    }
+
+    boolean sameAs(XdagStats other) {
+        return Objects.equals(difficulty, other.difficulty)
+                && Objects.equals(maxdifficulty, other.maxdifficulty)
+                && nblocks == other.nblocks
+                && totalnblocks == other.totalnblocks
+                && nmain == other.nmain
+                && totalnmain == other.totalnmain
+                && nhosts == other.nhosts
+                && totalnhosts == other.totalnhosts
+                && nwaitsync == other.nwaitsync
+                && nnoref == other.nnoref
+                && nextra == other.nextra
+                && maintime == other.maintime
+                && Objects.equals(balance, other.balance)
+                && Arrays.equals(globalMiner, other.globalMiner)
+                && Arrays.equals(ourLastBlockHash, other.ourLastBlockHash);
+    }
+
     @Override
     public String toString() {
         return "XdagStatus[nmain:" +
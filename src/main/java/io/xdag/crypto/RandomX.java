@@ -34,8 +34,6 @@ import static io.xdag.config.RandomXConstants.XDAG_RANDOMX;
 import static io.xdag.utils.BytesUtils.bytesToPointer;
 import static io.xdag.utils.BytesUtils.equalBytes;
 
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -54,6 +52,8 @@ import io.xdag.crypto.randomx.NativeSize;
 import io.xdag.crypto.randomx.RandomXFlag;
 import io.xdag.crypto.randomx.RandomXJNA;
 import io.xdag.crypto.randomx.RandomXUtils;
+import io.xdag.metrics.Histogram;
+import io.xdag.metrics.MetricsRegistry;
 import io.xdag.utils.XdagTime;
 import lombok.Data;
 import lombok.Setter;
@@ -65,7 +65,6 @@ import lombok.extern.slf4j.Slf4j;
 public class RandomX {
 
     protected final RandomXMemory[] globalMemory = new RandomXMemory[2];
-    protected final ReadWriteLock[] globalMemoryLock = new ReentrantReadWriteLock[2];
     protected final Config config;
     protected boolean isTestNet = true;
     protected int mineType;
@@ -85,6 +84,20 @@ public class RandomX {
     protected boolean is_full_mem;
     protected boolean is_Large_pages;
 
+    /**
+     * Max VMs per seed, i.e. how many hashes of the same seed run in parallel
+     */
+    protected int maxVms = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Per thread input and output buffers of randomx_calculate_hash
+     */
+    private static final int MAX_INPUT_SIZE = 512;
+    private static final Histogram HASH_LATENCY = MetricsRegistry.getDefault()
+            .histogram("xdag_randomx_hash_seconds", "Time of one RandomX hash, waiting for a vm included");
+    private static final ThreadLocal<Memory> inputBuffer = ThreadLocal.withInitial(() -> new Memory(MAX_INPUT_SIZE));
+    private static final ThreadLocal<Memory> hashBuffer = ThreadLocal.withInitial(() -> new Memory(RandomXUtils.HASH_SIZE));
+
 
     public RandomX(Config config) {
         this.config = config;
@@ -175,9 +188,8 @@ public class RandomX {
             return;
         }
 
-        // init memory and lock
+        // init memory
         for (int i = 0; i < 2; i++) {
-            globalMemoryLock[i] = new ReentrantReadWriteLock();
             globalMemory[i] = new RandomXMemory();
         }
     }
@@ -191,32 +203,15 @@ public class RandomX {
 
     // 计算出hash
     public Bytes32 randomXPoolCalcHash(Bytes data, int dataSize, long taskTime) {
-        Bytes32 hash;
         RandomXMemory memory = globalMemory[(int) (randomXPoolMemIndex) & 1];
-        ReadWriteLock readWriteLock;
         if (taskTime < memory.switchTime) {
-            readWriteLock = globalMemoryLock[(int) (randomXPoolMemIndex - 1) & 1];
             memory = globalMemory[(int) (randomXPoolMemIndex - 1) & 1];
-        } else {
-            readWriteLock = globalMemoryLock[(int) (randomXPoolMemIndex) & 1];
-        }
-
-        readWriteLock.writeLock().lock();
-        try {
-            Pointer hashPointer = new Memory(RandomXUtils.HASH_SIZE);
-            RandomXJNA.INSTANCE.randomx_calculate_hash(memory.poolVm, bytesToPointer(data.toArray()), new NativeSize(dataSize), hashPointer);
-            hash = Bytes32.wrap(hashPointer.getByteArray(0, RandomXUtils.HASH_SIZE));
-        } finally {
-            readWriteLock.writeLock().unlock();
         }
-
-        return hash;
+        return Bytes32.wrap(calculateHash(memory, data.toArrayUnsafe(), dataSize));
     }
 
 
     public byte[] randomXBlockHash(byte[] data, int dataSize, long blockTime) {
-        byte[] hash;
-        ReadWriteLock readWriteLock;
         RandomXMemory memory;
         // no seed
         if (randomXHashEpochIndex == 0) {
@@ -228,117 +223,108 @@ public class RandomX {
                 log.debug("Block time {} less then switchtime {}", Long.toHexString(blockTime),
                         Long.toHexString(memory.switchTime));
                 return null;
-            } else {
-                readWriteLock = globalMemoryLock[(int) (randomXHashEpochIndex) & 1];
             }
         } else {
             memory = globalMemory[(int) (randomXHashEpochIndex) & 1];
             if (blockTime < memory.switchTime) {
-                readWriteLock = globalMemoryLock[(int) (randomXHashEpochIndex - 1) & 1];
                 memory = globalMemory[(int) (randomXHashEpochIndex - 1) & 1];
-            } else {
-                readWriteLock = globalMemoryLock[(int) (randomXHashEpochIndex) & 1];
             }
         }
 
-        readWriteLock.writeLock().lock();
-        try {
+        if (log.isDebugEnabled() && memory.seed != null) {
             log.debug("Use seed {}", Hex.toHexString(Arrays.reverse(memory.seed)));
-            Pointer hashPointer = new Memory(RandomXUtils.HASH_SIZE);
-            RandomXJNA.INSTANCE.randomx_calculate_hash(memory.blockVm, bytesToPointer(data), new NativeSize(dataSize), hashPointer);
-            hash = hashPointer.getByteArray(0, RandomXUtils.HASH_SIZE);
-        } finally {
-            readWriteLock.writeLock().unlock();
         }
-
-        return hash;
+        return calculateHash(memory, data, dataSize);
     }
 
-
-    public Pointer randomXUpdateVm(RandomXMemory randomXMemory, boolean isPoolVm) {
-        if (isPoolVm) {
-            randomXMemory.poolVm = RandomXJNA.INSTANCE.randomx_create_vm(flags, randomXMemory.rxCache, randomXMemory.rxDataset);
-            return randomXMemory.poolVm;
-        } else {
-            randomXMemory.blockVm = RandomXJNA.INSTANCE.randomx_create_vm(flags, randomXMemory.rxCache, randomXMemory.rxDataset);
-            return randomXMemory.blockVm;
+    /**
+     * Hash on a VM borrowed from the memory's pool, any number of threads may call this at once.
+     */
+    private byte[] calculateHash(RandomXMemory memory, byte[] data, int dataSize) {
+        RandomXVmPool pool;
+        try {
+            pool = memory.acquirePool();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for RandomX seed update", e);
+        }
+        if (pool == null) {
+            throw new IllegalStateException("RandomX vm is not initialized");
+        }
+        long start = System.nanoTime();
+        try {
+            Pointer vm = pool.acquire();
+            try {
+                Memory input = dataSize <= MAX_INPUT_SIZE ? inputBuffer.get() : new Memory(dataSize);
+                input.write(0, data, 0, dataSize);
+                Memory hashPointer = hashBuffer.get();
+                RandomXJNA.INSTANCE.randomx_calculate_hash(vm, input, new NativeSize(dataSize), hashPointer);
+                return hashPointer.getByteArray(0, RandomXUtils.HASH_SIZE);
+            } finally {
+                pool.release(vm);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for RandomX vm", e);
+        } finally {
+            pool.unretain();
+            HASH_LATENCY.observeSince(start);
         }
     }
 
 
     public void randomXPoolUpdateSeed(long memIndex) {
-        ReadWriteLock readWriteLock = globalMemoryLock[(int) (memIndex) & 1];
-        readWriteLock.writeLock().lock();
+        RandomXMemory rx_memory = globalMemory[(int) (memIndex) & 1];
+        RandomXVmPool pool = null;
+        // hashes of the old seed keep running, new ones wait until the new pool is published
+        rx_memory.beginUpdate();
         try {
-            RandomXMemory rx_memory = globalMemory[(int) (memIndex) & 1];
-            if (rx_memory.rxCache == null) {
-                rx_memory.rxCache = RandomXJNA.INSTANCE.randomx_alloc_cache(flags);
-                if (rx_memory.rxCache == null) {
-                    // fail alloc
-                    log.debug("Failed alloc cache");
-                    return;
-                }
+            Pointer rxCache = RandomXJNA.INSTANCE.randomx_alloc_cache(flags);
+            if (rxCache == null) {
+                // fail alloc
+                log.debug("Failed alloc cache");
+                return;
             }
             // 分配成功
-            RandomXJNA.INSTANCE.randomx_init_cache(rx_memory.rxCache, bytesToPointer(rx_memory.seed), new NativeSize(rx_memory.seed.length));
+            RandomXJNA.INSTANCE.randomx_init_cache(rxCache, bytesToPointer(rx_memory.seed), new NativeSize(rx_memory.seed.length));
 
+            Pointer rxDataset = null;
             if (config.getRandomxSpec().getRandomxFlag()) {
-                if (rx_memory.rxDataset == null) {
-                    // 分配dataset
-                    rx_memory.rxDataset = RandomXJNA.INSTANCE.randomx_alloc_dataset(flags);
-                    if (rx_memory.rxDataset == null) {
-                        //分配失败
-                        log.debug("Failed alloc dataset");
-                        return;
-                    }
+                // 分配dataset
+                rxDataset = RandomXJNA.INSTANCE.randomx_alloc_dataset(flags);
+                if (rxDataset == null) {
+                    //分配失败
+                    log.debug("Failed alloc dataset");
+                    RandomXJNA.INSTANCE.randomx_release_cache(rxCache);
+                    return;
                 }
-
-                randomXPoolInitDataset(rx_memory.rxCache, rx_memory.rxDataset);
-            } else {
-                rx_memory.rxDataset = null;
+                randomXPoolInitDataset(rxCache, rxDataset);
             }
 
-
-            if (randomXUpdateVm(rx_memory, true) == null) {
+            RandomXVmPool newPool = new RandomXVmPool(flags, rxCache, rxDataset, maxVms);
+            if (!newPool.prepare()) {
                 // update failed
-                log.debug("Update pool vm failed");
+                log.debug("Update vm pool failed");
+                newPool.unretain();
                 return;
             }
-
-            // update finished
-            if (randomXUpdateVm(rx_memory, false) == null) {
-                // update failed
-                log.debug("Update block vm failed");
-            }
-
             // update finished
-
+            pool = newPool;
         } finally {
-            readWriteLock.writeLock().unlock();
+            rx_memory.endUpdate(pool);
         }
     }
 
     // 释放 ，用于程序关闭时
     public void randomXPoolReleaseMem() {
         for (int i = 0; i < 2; i++) {
-            globalMemoryLock[i].writeLock().lock();
-            try {
-                RandomXMemory rx_memory = globalMemory[i];
-                if (rx_memory.poolVm != null) {
-                    RandomXJNA.INSTANCE.randomx_destroy_vm(rx_memory.poolVm);
-                }
-                if (rx_memory.blockVm != null) {
-                    RandomXJNA.INSTANCE.randomx_destroy_vm(rx_memory.blockVm);
-                }
-                if (rx_memory.rxCache != null) {
-                    RandomXJNA.INSTANCE.randomx_release_cache(rx_memory.rxCache);
-                }
-                if (rx_memory.rxDataset != null) {
-                    RandomXJNA.INSTANCE.randomx_release_dataset(rx_memory.rxDataset);
-                }
-            } finally {
-                globalMemoryLock[i].writeLock().unlock();
+            RandomXMemory rx_memory = globalMemory[i];
+            if (rx_memory == null) {
+                continue;
             }
+            // memory is freed when the hashes still running are done
+            rx_memory.beginUpdate();
+            rx_memory.endUpdate(null);
         }
     }
 
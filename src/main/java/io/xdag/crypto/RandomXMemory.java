@@ -24,8 +24,7 @@
 
 package io.xdag.crypto;
 
-import com.sun.jna.Pointer;
-
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -38,13 +37,51 @@ public class RandomXMemory {
     protected long seedTime;
     protected long switchTime;
     protected int isSwitched;
-    protected Pointer rxCache;
-    protected Pointer rxDataset;
-    protected Pointer poolVm;
-    protected Pointer blockVm;
+    /**
+     * VMs of the current seed, null while the seed is being updated
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private RandomXVmPool vmPool;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean updating;
 
     public RandomXMemory() {
         this.switchTime = -1;
         this.isSwitched = -1;
     }
+
+    /**
+     * Retained VM pool of this seed, the caller must unretain it. Waits while the seed is being
+     * updated, hashes already running on the previous pool are not affected.
+     *
+     * @return null if there is no seed
+     */
+    public synchronized RandomXVmPool acquirePool() throws InterruptedException {
+        while (updating) {
+            wait();
+        }
+        if (vmPool != null) {
+            vmPool.retain();
+        }
+        return vmPool;
+    }
+
+    /**
+     * Take the current pool out of service, it is freed once its in-flight hashes are done.
+     */
+    public synchronized void beginUpdate() {
+        updating = true;
+        if (vmPool != null) {
+            vmPool.unretain();
+            vmPool = null;
+        }
+    }
+
+    public synchronized void endUpdate(RandomXVmPool pool) {
+        vmPool = pool;
+        updating = false;
+        notifyAll();
+    }
 }
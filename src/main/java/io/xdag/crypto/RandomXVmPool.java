@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.crypto;
+
+import com.sun.jna.Pointer;
+import io.xdag.crypto.randomx.RandomXJNA;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * VMs of one seed, all sharing the same cache and dataset. A hashing thread borrows a VM for one
+ * hash, so up to maxVms hashes with the same seed run in parallel.
+ * <p>
+ * The pool is reference counted: the {@link RandomXMemory} holding it owns one reference and every
+ * hash in flight another. The native memory is freed when the last one is gone, so retiring a pool
+ * on seed switch never waits for in-flight hashes.
+ */
+@Slf4j
+public class RandomXVmPool {
+
+    private final int flags;
+    private final Pointer rxCache;
+    private final Pointer rxDataset;
+    private final int maxVms;
+    private final BlockingQueue<Pointer> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    public RandomXVmPool(int flags, Pointer rxCache, Pointer rxDataset, int maxVms) {
+        this.flags = flags;
+        this.rxCache = rxCache;
+        this.rxDataset = rxDataset;
+        this.maxVms = maxVms;
+    }
+
+    /**
+     * Create the first VM up front so that a failing seed update is noticed right away.
+     */
+    public boolean prepare() {
+        try {
+            idle.add(acquire());
+            return true;
+        } catch (IllegalStateException | InterruptedException e) {
+            log.debug("Create vm failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * An idle VM, a new one while there are less than maxVms, otherwise wait for one.
+     */
+    public Pointer acquire() throws InterruptedException {
+        Pointer vm = idle.poll();
+        if (vm != null) {
+            return vm;
+        }
+        if (created.incrementAndGet() <= maxVms) {
+            vm = RandomXJNA.INSTANCE.randomx_create_vm(flags, rxCache, rxDataset);
+            if (vm != null) {
+                return vm;
+            }
+            created.decrementAndGet();
+            throw new IllegalStateException("Failed to create RandomX vm");
+        }
+        created.decrementAndGet();
+        return idle.take();
+    }
+
+    public void release(Pointer vm) {
+        idle.add(vm);
+    }
+
+    public void retain() {
+        refs.incrementAndGet();
+    }
+
+    /**
+     * Drop a reference, the last one frees the VMs, the dataset and the cache.
+     */
+    public void unretain() {
+        if (refs.decrementAndGet() > 0) {
+            return;
+        }
+        Pointer vm;
+        while ((vm = idle.poll()) != null) {
+            RandomXJNA.INSTANCE.randomx_destroy_vm(vm);
+        }
+        if (rxCache != null) {
+            RandomXJNA.INSTANCE.randomx_release_cache(rxCache);
+        }
+        if (rxDataset != null) {
+            RandomXJNA.INSTANCE.randomx_release_dataset(rxDataset);
+        }
+    }
+}
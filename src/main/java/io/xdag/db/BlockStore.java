@@ -38,18 +38,39 @@ public interface BlockStore {
     byte TIME_HASH_INFO = (byte) 0x20;
     byte HASH_BLOCK_INFO = (byte) 0x30;
     byte SUMS_BLOCK_INFO = (byte) 0x40;
+    byte SUMS_INDEX = (byte) 0x41;
     byte OURS_BLOCK_INFO = (byte) 0x50;
     byte SETTING_TOP_STATUS = (byte) 0x60;
     byte SNAPSHOT_BOOT = (byte) 0x70;
     byte BLOCK_HEIGHT = (byte) 0x80;
     byte SNAPSHOT_PRESEED = (byte) 0x90;
     byte TX_HISTORY = (byte) 0xa0;
+    byte TX_HISTORY_INDEX = (byte) 0xa1;
+    byte TX_HISTORY_COUNT = (byte) 0xa2;
+    byte TX_HISTORY_SEQ = (byte) 0xa3;
+    byte BLOCK_INFO_FORMAT = (byte) 0xb0;
     String SUM_FILE_NAME = "sums.dat";
 
     void init();
 
     void reset();
 
+    /**
+     * Drop every cached entry, the next reads go to the underlying storage.
+     */
+    void invalidateCache();
+
+    /**
+     * Move what the calling thread cached inside its batch to the shared caches, once the batch
+     * is committed.
+     */
+    void publishPendingCache();
+
+    /**
+     * Drop what the calling thread cached inside its batch, once the batch is rolled back.
+     */
+    void discardPendingCache();
+
     XdagStats getXdagStatus();
 
     void saveXdagTopStatus(XdagTopStatus status);
@@ -62,12 +83,6 @@ public interface BlockStore {
 
     void saveOurBlock(int index, byte[] hashlow);
 
-    void saveTxHistoryToRocksdb(TxHistory txHistory,int id);
-
-    List<TxHistory> getAllTxHistoryFromRocksdb();
-
-    void deleteAllTxHistoryFromRocksdb();
-
     boolean hasBlock(Bytes32 hashlow);
 
     boolean hasBlockInfo(Bytes32 hashlow);
@@ -76,6 +91,12 @@ public interface BlockStore {
 
     List<Block> getBlocksByTime(long startTime);
 
+    /**
+     * Up to limit keys of the time index in [startTime, endTime), in index order, following the key
+     * after, or from startTime if it is null. Lets a caller page through a range without loading it.
+     */
+    List<byte[]> getBlockTimeKeys(long startTime, long endTime, byte[] after, int limit);
+
     Block getBlockByHeight(long height);
 
     Block getBlockByHash(Bytes32 hashlow, boolean isRaw);
@@ -84,6 +105,11 @@ public interface BlockStore {
 
     Block getRawBlockByHash(Bytes32 hashlow);
 
+    /**
+     * amount of the block without decoding the rest of its BlockInfo, null if unknown
+     */
+    XAmount getBlockAmount(Bytes32 hashlow);
+
     Bytes getOurBlock(int index);
 
     int getKeyIndexByHash(Bytes32 hashlow);
@@ -32,6 +32,10 @@ import org.bouncycastle.util.encoders.Hex;
 public interface OrphanBlockStore {
 
     byte ORPHAN_PREFEX = 0x00;
+    /**
+     * time index, prefix + time + hashlow
+     */
+    byte ORPHAN_TIME_PREFEX = 0x01;
     /**
      * size key
      */
@@ -41,6 +45,21 @@ public interface OrphanBlockStore {
 
     void reset();
 
+    /**
+     * Recount the orphans from the store.
+     */
+    void reload();
+
+    /**
+     * Keep the size changes the calling thread made inside its batch, once the batch is committed.
+     */
+    void commitPending();
+
+    /**
+     * Undo the size changes the calling thread made inside its batch, once the batch is rolled back.
+     */
+    void rollbackPending();
+
     List<Address> getOrphan(long num, long[] sendTime);
 
     void deleteByHash(byte[] hashlow);
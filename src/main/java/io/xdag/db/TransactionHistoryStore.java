@@ -24,6 +24,7 @@
 package io.xdag.db;
 
 import io.xdag.core.TxHistory;
+import io.xdag.core.TxHistoryPage;
 
 import java.util.List;
 
@@ -31,8 +32,20 @@ public interface TransactionHistoryStore {
 
     boolean saveTxHistory(TxHistory txHistory);
     boolean batchSaveTxHistory(TxHistory txHistory,int... cacheNum);
+
+    /**
+     * Insert all the records in one transaction, nothing is inserted if it returns false.
+     */
+    boolean saveTxHistories(List<TxHistory> txHistories);
     List<TxHistory> listTxHistoryByAddress(String address, int page, Object... parameters);
 
+    /**
+     * Keyset paging over the records of the address with start <= time <= end (ms), resuming after
+     * the cursor of the previous page, null for the first one. Unlike the page number above it does
+     * not slow down with the depth of the page.
+     */
+    TxHistoryPage listTxHistoryByAddress(String address, long start, long end, String cursor, int limit);
+
     int getTxHistoryCount(String address);
 
 }
\ No newline at end of file
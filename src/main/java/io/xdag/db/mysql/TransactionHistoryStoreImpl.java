@@ -56,6 +56,10 @@ public class TransactionHistoryStoreImpl implements TransactionHistoryStore {
     private static final String SQL_QUERY_TXHISTORY_BY_ADDRESS_WITH_TIME = "select faddress,faddresstype,fhash," +
             "famount,ftype,fremark,ftime from t_transaction_history where faddress= ? and ftime >= ? and ftime <= ? order by ftime desc limit ?,?";
 
+    private static final String SQL_QUERY_TXHISTORY_BY_ADDRESS_AFTER = "select faddress,faddresstype,fhash," +
+            "famount,ftype,fremark,ftime,fid from t_transaction_history where faddress= ? and ftime >= ? and " +
+            "(ftime < ? or (ftime = ? and fid < ?)) order by ftime desc, fid desc limit ?";
+
     private static final String SQL_QUERY_TXHISTORY_COUNT = "select count(*) from t_transaction_history where faddress=?";
 
     private static final String SQL_QUERY_TXHISTORY_COUNT_WITH_TIME = "select count(*) from t_transaction_history where faddress=? and ftime >=? and ftime <=?";
@@ -83,18 +87,7 @@ public class TransactionHistoryStoreImpl implements TransactionHistoryStore {
             conn = DruidUtils.getConnection();
             if (conn != null) {
                 pstmt = conn.prepareStatement(SQL_INSERT);
-
-                Address address = txHistory.getAddress();
-                String addr = address.getIsAddress() ? toBase58(hash2byte(address.getAddress())) : hash2Address(address.getAddress());
-                pstmt.setString(1, addr);
-                pstmt.setInt(2, address.getIsAddress() ? WALLET_ADDRESS_FLAG : BLOCK_ADDRESS_FLAG);
-                pstmt.setString(3, txHistory.getHash());
-                pstmt.setBigDecimal(4, address.getType().equals(XDAG_FIELD_INPUT) ? address.getAmount().subtract(MIN_GAS).toDecimal(9, XUnit.XDAG) :
-                        address.getAmount().toDecimal(9, XUnit.XDAG));
-                pstmt.setInt(5, address.getType().asByte());
-                pstmt.setString(6, txHistory.getRemark() != null ? txHistory.getRemark().trim() : "");
-                pstmt.setTimestamp(7,
-                        new java.sql.Timestamp(XdagTime.xdagTimestampToMs(txHistory.getTimestamp())));
+                setInsertParameters(pstmt, txHistory);
                 result = pstmt.executeUpdate() == 1;
             }
         } catch (Exception e) {
@@ -106,7 +99,73 @@ public class TransactionHistoryStoreImpl implements TransactionHistoryStore {
     }
 
     @Override
-    public boolean batchSaveTxHistory(TxHistory txHistory, int... cacheNum) {
+    public boolean saveTxHistories(List<TxHistory> txHistories) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        boolean result = false;
+        try {
+            conn = DruidUtils.getConnection();
+            if (conn != null) {
+                conn.setAutoCommit(false);
+                pstmt = conn.prepareStatement(SQL_INSERT);
+                for (TxHistory txHistory : txHistories) {
+                    setInsertParameters(pstmt, txHistory);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+                result = true;
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            rollback(conn);
+        } finally {
+            resetAutoCommit(conn);
+            DruidUtils.close(conn, pstmt);
+        }
+        return result;
+    }
+
+    private static void setInsertParameters(PreparedStatement pstmt, TxHistory txHistory) throws SQLException {
+        Address address = txHistory.getAddress();
+        String addr = address.getIsAddress() ? toBase58(hash2byte(address.getAddress())) : hash2Address(address.getAddress());
+        pstmt.setString(1, addr);
+        pstmt.setInt(2, address.getIsAddress() ? WALLET_ADDRESS_FLAG : BLOCK_ADDRESS_FLAG);
+        pstmt.setString(3, txHistory.getHash());
+        pstmt.setBigDecimal(4, address.getType().equals(XDAG_FIELD_INPUT) ? address.getAmount().subtract(MIN_GAS).toDecimal(9, XUnit.XDAG) :
+                address.getAmount().toDecimal(9, XUnit.XDAG));
+        pstmt.setInt(5, address.getType().asByte());
+        pstmt.setString(6, txHistory.getRemark() != null ? txHistory.getRemark().trim() : "");
+        pstmt.setTimestamp(7,
+                new java.sql.Timestamp(XdagTime.xdagTimestampToMs(txHistory.getTimestamp())));
+    }
+
+    private static void rollback(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static void resetAutoCommit(Connection conn) {
+        // pooled connections are handed out again
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Shared connection filled across calls, only used to load the snapshot and the end of a sync.
+     */
+    @Override
+    public synchronized boolean batchSaveTxHistory(TxHistory txHistory, int... cacheNum) {
         boolean result = false;
         try {
             if (connBatch == null) {
@@ -121,17 +180,7 @@ public class TransactionHistoryStoreImpl implements TransactionHistoryStore {
                 }
             }
             if (txHistory != null) {
-                Address address = txHistory.getAddress();
-                String addr = address.getIsAddress() ? toBase58(hash2byte(address.getAddress())) : hash2Address(address.getAddress());
-                pstmtBatch.setString(1, addr);
-                pstmtBatch.setInt(2, address.getIsAddress() ? WALLET_ADDRESS_FLAG : BLOCK_ADDRESS_FLAG);
-                pstmtBatch.setString(3, txHistory.getHash());
-                pstmtBatch.setBigDecimal(4, address.getType().equals(XDAG_FIELD_INPUT) ? address.getAmount().subtract(MIN_GAS).toDecimal(9, XUnit.XDAG) :
-                        address.getAmount().toDecimal(9, XUnit.XDAG));
-                pstmtBatch.setInt(5, address.getType().asByte());
-                pstmtBatch.setString(6, txHistory.getRemark() != null ? txHistory.getRemark().trim() : "");
-                pstmtBatch.setTimestamp(7,
-                        new java.sql.Timestamp(XdagTime.xdagTimestampToMs(txHistory.getTimestamp())));
+                setInsertParameters(pstmtBatch, txHistory);
                 pstmtBatch.addBatch();
                 count++;
             }
@@ -225,20 +274,7 @@ public class TransactionHistoryStoreImpl implements TransactionHistoryStore {
                 pstmt.setInt(5, PAGE_SIZE);
                 rs = pstmt.executeQuery();
                 while (rs.next()) {
-                    TxHistory txHistory = new TxHistory();
-                    // Bytes32 addr = BasicUtils.address2Hash(rs.getString(1));
-                    String hash = rs.getString(3);
-                    txHistory.setHash(hash);
-                    XAmount amount = XAmount.of(rs.getBigDecimal(4), XUnit.XDAG);
-                    int fType = rs.getInt(5);
-                    Address addrObj =
-                            new Address(checkAddress(hash) ? BasicUtils.pubAddress2Hash(hash) :
-                                    BasicUtils.address2Hash(hash),
-                                    XdagField.FieldType.fromByte((byte) fType), amount, checkAddress(hash));
-                    txHistory.setAddress(addrObj);
-                    txHistory.setRemark(rs.getString(6));
-                    txHistory.setTimestamp(rs.getTimestamp(7).getTime());
-                    txHistoryList.add(txHistory);
+                    txHistoryList.add(readTxHistory(rs));
                 }
             }
         } catch (Exception e) {
@@ -249,6 +285,75 @@ public class TransactionHistoryStoreImpl implements TransactionHistoryStore {
         return txHistoryList;
     }
 
+    /**
+     * The cursor is the time and id of the last record returned, ties on the time are broken by the id.
+     */
+    @Override
+    public TxHistoryPage listTxHistoryByAddress(String address, long start, long end, String cursor, int limit) {
+        long afterTime = end;
+        long afterId = Integer.MAX_VALUE;
+        if (cursor != null) {
+            String[] parts = cursor.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid transaction history cursor " + cursor);
+            }
+            afterTime = Long.parseLong(parts[0]);
+            afterId = Long.parseLong(parts[1]);
+        }
+        int pageSize = (limit > 0 && limit <= TX_PAGE_SIZE_LIMIT) ? limit : DEFAULT_PAGE_SIZE;
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        List<TxHistory> txHistoryList = Lists.newArrayList();
+        String next = null;
+        try {
+            conn = DruidUtils.getConnection();
+            if (conn != null) {
+                pstmt = conn.prepareStatement(SQL_QUERY_TXHISTORY_BY_ADDRESS_AFTER);
+                pstmt.setString(1, address);
+                pstmt.setTimestamp(2, new java.sql.Timestamp(start));
+                pstmt.setTimestamp(3, new java.sql.Timestamp(afterTime));
+                pstmt.setTimestamp(4, new java.sql.Timestamp(afterTime));
+                pstmt.setLong(5, afterId);
+                // one more row tells whether there is a next page
+                pstmt.setInt(6, pageSize + 1);
+                rs = pstmt.executeQuery();
+                long lastId = 0;
+                while (rs.next()) {
+                    if (txHistoryList.size() == pageSize) {
+                        TxHistory last = txHistoryList.get(pageSize - 1);
+                        next = last.getTimestamp() + ":" + lastId;
+                        break;
+                    }
+                    txHistoryList.add(readTxHistory(rs));
+                    lastId = rs.getLong(8);
+                }
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            DruidUtils.close(conn, pstmt, rs);
+        }
+        return new TxHistoryPage(txHistoryList, next);
+    }
+
+    private static TxHistory readTxHistory(ResultSet rs) throws SQLException {
+        TxHistory txHistory = new TxHistory();
+        // Bytes32 addr = BasicUtils.address2Hash(rs.getString(1));
+        String hash = rs.getString(3);
+        txHistory.setHash(hash);
+        XAmount amount = XAmount.of(rs.getBigDecimal(4), XUnit.XDAG);
+        int fType = rs.getInt(5);
+        Address addrObj =
+                new Address(checkAddress(hash) ? BasicUtils.pubAddress2Hash(hash) :
+                        BasicUtils.address2Hash(hash),
+                        XdagField.FieldType.fromByte((byte) fType), amount, checkAddress(hash));
+        txHistory.setAddress(addrObj);
+        txHistory.setRemark(rs.getString(6));
+        txHistory.setTimestamp(rs.getTimestamp(7).getTime());
+        return txHistory;
+    }
+
     @Override
     public int getTxHistoryCount(String address) {
         int count = 0;
@@ -0,0 +1,348 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.mysql;
+
+import static io.xdag.db.BlockStore.TX_HISTORY;
+
+import io.xdag.core.Address;
+import io.xdag.core.TxHistory;
+import io.xdag.core.XAmount;
+import io.xdag.core.XdagField;
+import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.rocksdb.KVSource;
+import io.xdag.metrics.Counter;
+import io.xdag.metrics.Histogram;
+import io.xdag.metrics.MetricsRegistry;
+import io.xdag.utils.BasicUtils;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Writes the transaction history off the block import path: records are queued in order and
+ * inserted by a single thread, up to {@link #BATCH_SIZE} per transaction.
+ * <p>
+ * While the database is unavailable the records go to a spill store in RocksDB, in order, and
+ * are replayed from there once an insert succeeds again, with a growing delay between the
+ * attempts. Nothing is written directly while the spill store isn't empty, so the order of the
+ * history is kept.
+ */
+@Slf4j
+public class TxHistoryWriter {
+
+    public static final int QUEUE_CAPACITY = 100_000;
+    static final int BATCH_SIZE = 1000;
+    static final long MIN_RETRY_DELAY = 1000;
+    static final long MAX_RETRY_DELAY = 60 * 1000;
+    private static final long POLL_MS = 100;
+    private static final long STOP_TIMEOUT_MS = 10 * 1000;
+    /**
+     * key of a spilled record: prefix + 8 bytes sequence, former versions used longer keys
+     */
+    private static final int SPILL_KEY_SIZE = 9;
+
+    private static final Counter WRITTEN = MetricsRegistry.getDefault()
+            .counter("xdag_tx_history_written_total", "Transaction history records inserted");
+    private static final Counter SPILLED = MetricsRegistry.getDefault()
+            .counter("xdag_tx_history_spilled_total", "Transaction history records spilled to RocksDB");
+    private static final Histogram COMMIT_LATENCY = MetricsRegistry.getDefault()
+            .histogram("xdag_tx_history_commit_seconds", "Transaction history group commit latency");
+
+    private final TransactionHistoryStore store;
+    private final KVSource<byte[], byte[]> spill;
+    private final BlockingQueue<TxHistory> queue;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new BasicThreadFactory.Builder()
+            .namingPattern("TxHistoryWriter-thread")
+            .daemon(true)
+            .build());
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private long nextSpillSeq;
+    private long retryDelay = 0;
+    private long retryAt = 0;
+    private volatile boolean running;
+
+    public TxHistoryWriter(TransactionHistoryStore store, KVSource<byte[], byte[]> spill) {
+        this(store, spill, QUEUE_CAPACITY);
+    }
+
+    public TxHistoryWriter(TransactionHistoryStore store, KVSource<byte[], byte[]> spill, int capacity) {
+        this.store = store;
+        this.spill = spill;
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        MetricsRegistry.getDefault().gauge("xdag_tx_history_queued", "Transaction history records waiting to be written",
+                queue::size);
+        MetricsRegistry.getDefault().gauge("xdag_tx_history_spill_size", "Transaction history records waiting in RocksDB",
+                spilled::get);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        spill.fetchPrefix(new byte[]{TX_HISTORY}, pair -> {
+            spilled.incrementAndGet();
+            if (pair.getKey().length == SPILL_KEY_SIZE) {
+                nextSpillSeq = Math.max(nextSpillSeq, BytesUtils.bytesToLong(pair.getKey(), 1, false) + 1);
+            }
+            return Boolean.FALSE;
+        });
+        if (spilled.get() > 0) {
+            log.info("{} transaction history records left in RocksDB, they will be written first", spilled.get());
+        }
+        running = true;
+        executor.execute(this::run);
+    }
+
+    /**
+     * Write what is still queued, or spill it, then stop.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Transaction history writer didn't stop in time, {} records not written", queue.size());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue a record, only blocks if the queue is full, i.e. even spilling can't keep up.
+     */
+    public void submit(TxHistory txHistory) {
+        submitted.incrementAndGet();
+        try {
+            queue.put(txHistory);
+        } catch (InterruptedException e) {
+            submitted.decrementAndGet();
+            Thread.currentThread().interrupt();
+            log.error("Interrupted, transaction history lost: {}", txHistory);
+        }
+    }
+
+    /**
+     * Wait until the records submitted so far are inserted or spilled.
+     *
+     * @return false on timeout
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = submitted.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (completed) {
+            while (completed.get() < target) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(completed, left);
+            }
+        }
+        return true;
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    private void run() {
+        List<TxHistory> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                boolean replaying = spilled.get() > 0 && isAvailable();
+                TxHistory first = queue.poll(replaying ? 0 : POLL_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    if (spilled.get() > 0 || !isAvailable() || !insert(batch)) {
+                        spill(batch);
+                    }
+                    complete(batch.size());
+                    batch.clear();
+                }
+                if (spilled.get() > 0 && isAvailable()) {
+                    replay();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        if (!batch.isEmpty()) {
+            spill(batch);
+            complete(batch.size());
+        }
+    }
+
+    private boolean isAvailable() {
+        return System.currentTimeMillis() >= retryAt;
+    }
+
+    private boolean insert(List<TxHistory> batch) {
+        long start = System.nanoTime();
+        boolean ok;
+        try {
+            ok = store.saveTxHistories(batch);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            ok = false;
+        }
+        if (ok) {
+            COMMIT_LATENCY.observeSince(start);
+            WRITTEN.inc(batch.size());
+            retryDelay = 0;
+        } else {
+            retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            retryAt = System.currentTimeMillis() + retryDelay;
+            log.warn("Transaction history insert failed, spilling to RocksDB, retry in {} ms", retryDelay);
+        }
+        return ok;
+    }
+
+    private void spill(List<TxHistory> batch) {
+        for (TxHistory txHistory : batch) {
+            spill.put(BytesUtils.merge(TX_HISTORY, BytesUtils.longToBytes(nextSpillSeq++, false)), encode(txHistory));
+        }
+        spilled.addAndGet(batch.size());
+        SPILLED.inc(batch.size());
+    }
+
+    /**
+     * Insert the oldest spilled records.
+     */
+    private void replay() {
+        List<byte[]> keys = new ArrayList<>(BATCH_SIZE);
+        List<TxHistory> batch = new ArrayList<>(BATCH_SIZE);
+        spill.fetchPrefix(new byte[]{TX_HISTORY}, pair -> {
+            keys.add(pair.getKey());
+            batch.add(decode(pair.getKey(), pair.getValue()));
+            return keys.size() >= BATCH_SIZE;
+        });
+        if (keys.isEmpty()) {
+            spilled.set(0);
+            return;
+        }
+        if (insert(batch)) {
+            for (byte[] key : keys) {
+                spill.delete(key);
+            }
+            spilled.addAndGet(-keys.size());
+            if (spilled.get() == 0) {
+                log.info("Transaction history spilled to RocksDB is written");
+            }
+        }
+    }
+
+    private void complete(int count) {
+        synchronized (completed) {
+            completed.addAndGet(count);
+            completed.notifyAll();
+        }
+    }
+
+    /**
+     * type + isAddress + address + amount (nano) + timestamp + hash length + hash + remark length + remark
+     */
+    static byte[] encode(TxHistory txHistory) {
+        Address address = txHistory.getAddress();
+        byte[] hash = txHistory.getHash() == null ? new byte[0] : txHistory.getHash().getBytes(StandardCharsets.UTF_8);
+        byte[] remark = txHistory.getRemark() == null ? new byte[0] : txHistory.getRemark().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(1 + 1 + 32 + 8 + 8 + 4 + hash.length + 4 + remark.length);
+        buf.put(address.getType().asByte());
+        buf.put((byte) (address.getIsAddress() ? 1 : 0));
+        buf.put(address.getAddress().toArray(), 0, 32);
+        buf.putLong(address.getAmount().toLong());
+        buf.putLong(txHistory.getTimestamp());
+        buf.putInt(hash.length).put(hash);
+        buf.putInt(remark.length).put(remark);
+        return buf.array();
+    }
+
+    static TxHistory decode(byte[] key, byte[] value) {
+        if (key.length != SPILL_KEY_SIZE) {
+            return decodeFormer(value);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(value);
+        XdagField.FieldType type = XdagField.FieldType.fromByte(buf.get());
+        boolean isAddress = buf.get() == 1;
+        byte[] addressHash = new byte[32];
+        buf.get(addressHash);
+        XAmount amount = XAmount.of(buf.getLong());
+        long timestamp = buf.getLong();
+        byte[] hash = new byte[buf.getInt()];
+        buf.get(hash);
+        byte[] remark = new byte[buf.getInt()];
+        buf.get(remark);
+        Address address = new Address(Bytes32.wrap(addressHash), type, amount, isAddress);
+        return new TxHistory(address, new String(hash, StandardCharsets.UTF_8), timestamp,
+                remark.length == 0 ? null : new String(remark, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * layout of the records stored by former versions when an insert failed
+     */
+    private static TxHistory decodeFormer(byte[] value) {
+        XdagField.FieldType fieldType = XdagField.FieldType.fromByte(value[0]);
+        boolean isAddress = value[1] == 1;
+        Bytes32 addresshashlow = Bytes32.wrap(BytesUtils.subArray(value, 2, 32));
+        Bytes32 txhashlow = Bytes32.wrap(BytesUtils.subArray(value, 34, 32));
+        XAmount amount = XAmount.ofXAmount(Bytes.wrap(BytesUtils.subArray(value, 66, 8)).reverse().toLong());
+        long timestamp = BytesUtils.bytesToLong(value, 74, true);
+        long remarkLength = BytesUtils.bytesToLong(value, 82, true);
+        String remark = null;
+        if (remarkLength != 0) {
+            remark = new String(BytesUtils.subArray(value, 90, (int) remarkLength), StandardCharsets.UTF_8).trim();
+        }
+        return new TxHistory(new Address(addresshashlow, fieldType, amount, isAddress),
+                BasicUtils.hash2Address(txhashlow), timestamp, remark);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import io.xdag.core.BlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.core.XAmount;
+import io.xdag.db.execption.DeserializationException;
+import io.xdag.db.execption.SerializationException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-layout encoding of {@link BlockInfo}, big-endian:
+ *
+ * <pre>
+ * offset size
+ *   0     2   magic 0xB10C
+ *   2     1   version
+ *   3     1   presence bits of the nullable fields
+ *   4     8   type
+ *  12     4   flags
+ *  16     8   height
+ *  24     8   timestamp
+ *  32     8   fee, nano
+ *  40     8   amount, nano
+ *  48    32   difficulty, unsigned
+ *  80    32   ref
+ * 112    32   maxDiffLink
+ * 144    32   remark
+ * 176    32   hash
+ * 208    32   hashlow
+ * 240     1   snapshot info type
+ * 241     4   snapshot info data length
+ * 245     n   snapshot info data
+ * </pre>
+ *
+ * The scalar fields sit at fixed offsets so they can be read straight from the stored value
+ * without decoding the whole record, see {@link #flags(byte[])}, {@link #height(byte[])} and
+ * {@link #amount(byte[])}. The codec is stateless and thread safe.
+ */
+public final class BlockInfoCodec {
+
+    public static final short MAGIC = (short) 0xB10C;
+    public static final byte VERSION = 1;
+
+    static final int FIELD_SIZE = 32;
+
+    static final int VERSION_OFFSET = 2;
+    static final int PRESENCE_OFFSET = 3;
+    static final int TYPE_OFFSET = 4;
+    static final int FLAGS_OFFSET = 12;
+    static final int HEIGHT_OFFSET = 16;
+    static final int TIMESTAMP_OFFSET = 24;
+    static final int FEE_OFFSET = 32;
+    static final int AMOUNT_OFFSET = 40;
+    static final int DIFFICULTY_OFFSET = 48;
+    static final int REF_OFFSET = 80;
+    static final int MAX_DIFF_LINK_OFFSET = 112;
+    static final int REMARK_OFFSET = 144;
+    static final int HASH_OFFSET = 176;
+    static final int HASHLOW_OFFSET = 208;
+    static final int SNAPSHOT_TYPE_OFFSET = 240;
+    static final int SNAPSHOT_LENGTH_OFFSET = 241;
+    public static final int HEADER_SIZE = 245;
+
+    private static final int HAS_DIFFICULTY = 1;
+    private static final int HAS_REF = 1 << 1;
+    private static final int HAS_MAX_DIFF_LINK = 1 << 2;
+    private static final int HAS_REMARK = 1 << 3;
+    private static final int HAS_HASH = 1 << 4;
+    private static final int HAS_HASHLOW = 1 << 5;
+    private static final int IS_SNAPSHOT = 1 << 6;
+    private static final int HAS_SNAPSHOT_INFO = 1 << 7;
+
+    private BlockInfoCodec() {
+    }
+
+    /**
+     * @throws SerializationException if a field doesn't fit the fixed layout, the caller may then
+     *                                fall back to another encoding
+     */
+    public static byte[] encode(BlockInfo blockInfo) throws SerializationException {
+        SnapshotInfo snapshotInfo = blockInfo.getSnapshotInfo();
+        byte[] snapshotData = snapshotInfo == null || snapshotInfo.getData() == null ? null : snapshotInfo.getData();
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + (snapshotData == null ? 0 : snapshotData.length));
+        int presence = 0;
+        buf.putShort(MAGIC);
+        buf.put(VERSION);
+        buf.put((byte) 0);
+        buf.putLong(blockInfo.getType());
+        buf.putInt(blockInfo.getFlags());
+        buf.putLong(blockInfo.getHeight());
+        buf.putLong(blockInfo.getTimestamp());
+        buf.putLong(blockInfo.getFee() == null ? 0 : blockInfo.getFee().toLong());
+        buf.putLong(blockInfo.getAmount() == null ? 0 : blockInfo.getAmount().toLong());
+        if (blockInfo.getDifficulty() != null) {
+            putDifficulty(buf, blockInfo.getDifficulty());
+            presence |= HAS_DIFFICULTY;
+        }
+        presence |= putField(buf, REF_OFFSET, blockInfo.getRef(), HAS_REF, "ref");
+        presence |= putField(buf, MAX_DIFF_LINK_OFFSET, blockInfo.getMaxDiffLink(), HAS_MAX_DIFF_LINK, "maxDiffLink");
+        presence |= putField(buf, REMARK_OFFSET, blockInfo.getRemark(), HAS_REMARK, "remark");
+        presence |= putField(buf, HASH_OFFSET, blockInfo.getHash(), HAS_HASH, "hash");
+        presence |= putField(buf, HASHLOW_OFFSET, blockInfo.getHashlow(), HAS_HASHLOW, "hashlow");
+        if (blockInfo.isSnapshot()) {
+            presence |= IS_SNAPSHOT;
+        }
+        if (snapshotInfo != null) {
+            presence |= HAS_SNAPSHOT_INFO;
+            buf.put(SNAPSHOT_TYPE_OFFSET, (byte) (snapshotInfo.getType() ? 1 : 0));
+            // -1 keeps a null data apart from an empty one
+            buf.putInt(SNAPSHOT_LENGTH_OFFSET, snapshotData == null ? -1 : snapshotData.length);
+            if (snapshotData != null) {
+                buf.put(HEADER_SIZE, snapshotData);
+            }
+        }
+        buf.put(PRESENCE_OFFSET, (byte) presence);
+        return buf.array();
+    }
+
+    public static BlockInfo decode(byte[] value) throws DeserializationException {
+        if (!isEncoded(value)) {
+            throw new DeserializationException("not a version " + VERSION + " BlockInfo record", null);
+        }
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(value);
+            int presence = value[PRESENCE_OFFSET] & 0xff;
+            BlockInfo blockInfo = new BlockInfo();
+            blockInfo.setType(buf.getLong(TYPE_OFFSET));
+            blockInfo.setFlags(buf.getInt(FLAGS_OFFSET));
+            blockInfo.setHeight(buf.getLong(HEIGHT_OFFSET));
+            blockInfo.setTimestamp(buf.getLong(TIMESTAMP_OFFSET));
+            blockInfo.setFee(XAmount.of(buf.getLong(FEE_OFFSET)));
+            blockInfo.setAmount(XAmount.of(buf.getLong(AMOUNT_OFFSET)));
+            if ((presence & HAS_DIFFICULTY) != 0) {
+                blockInfo.setDifficulty(new BigInteger(1,
+                        Arrays.copyOfRange(value, DIFFICULTY_OFFSET, DIFFICULTY_OFFSET + FIELD_SIZE)));
+            }
+            blockInfo.setRef(getField(value, REF_OFFSET, presence, HAS_REF));
+            blockInfo.setMaxDiffLink(getField(value, MAX_DIFF_LINK_OFFSET, presence, HAS_MAX_DIFF_LINK));
+            blockInfo.setRemark(getField(value, REMARK_OFFSET, presence, HAS_REMARK));
+            blockInfo.setHash(getField(value, HASH_OFFSET, presence, HAS_HASH));
+            blockInfo.setHashlow(getField(value, HASHLOW_OFFSET, presence, HAS_HASHLOW));
+            blockInfo.setSnapshot((presence & IS_SNAPSHOT) != 0);
+            if ((presence & HAS_SNAPSHOT_INFO) != 0) {
+                int length = buf.getInt(SNAPSHOT_LENGTH_OFFSET);
+                byte[] data = length < 0 ? null : Arrays.copyOfRange(value, HEADER_SIZE, HEADER_SIZE + length);
+                blockInfo.setSnapshotInfo(new SnapshotInfo(value[SNAPSHOT_TYPE_OFFSET] != 0, data));
+            }
+            return blockInfo;
+        } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new DeserializationException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether the value is a record of this codec, anything else is left to the Kryo encoding
+     * written by former versions.
+     */
+    public static boolean isEncoded(byte[] value) {
+        if (value == null || value.length < HEADER_SIZE
+                || value[0] != (byte) (MAGIC >> 8) || value[1] != (byte) MAGIC
+                || value[VERSION_OFFSET] != VERSION) {
+            return false;
+        }
+        if ((value[PRESENCE_OFFSET] & HAS_SNAPSHOT_INFO) == 0) {
+            return value.length == HEADER_SIZE;
+        }
+        int length = ByteBuffer.wrap(value).getInt(SNAPSHOT_LENGTH_OFFSET);
+        return value.length == HEADER_SIZE + Math.max(length, 0);
+    }
+
+    public static int flags(byte[] value) {
+        return ByteBuffer.wrap(value).getInt(FLAGS_OFFSET);
+    }
+
+    public static long height(byte[] value) {
+        return ByteBuffer.wrap(value).getLong(HEIGHT_OFFSET);
+    }
+
+    public static long timestamp(byte[] value) {
+        return ByteBuffer.wrap(value).getLong(TIMESTAMP_OFFSET);
+    }
+
+    public static XAmount amount(byte[] value) {
+        return XAmount.of(ByteBuffer.wrap(value).getLong(AMOUNT_OFFSET));
+    }
+
+    private static void putDifficulty(ByteBuffer buf, BigInteger difficulty) throws SerializationException {
+        if (difficulty.signum() < 0 || difficulty.bitLength() > FIELD_SIZE * 8) {
+            throw new SerializationException("difficulty doesn't fit in " + FIELD_SIZE + " bytes: " + difficulty, null);
+        }
+        byte[] bytes = difficulty.toByteArray();
+        // toByteArray may carry a leading sign byte
+        int from = Math.max(bytes.length - FIELD_SIZE, 0);
+        int length = bytes.length - from;
+        buf.put(DIFFICULTY_OFFSET + FIELD_SIZE - length, bytes, from, length);
+    }
+
+    private static int putField(ByteBuffer buf, int offset, byte[] field, int bit, String name)
+            throws SerializationException {
+        if (field == null) {
+            return 0;
+        }
+        if (field.length != FIELD_SIZE) {
+            throw new SerializationException(name + " is " + field.length + " bytes, expected " + FIELD_SIZE, null);
+        }
+        buf.put(offset, field);
+        return bit;
+    }
+
+    private static byte[] getField(byte[] value, int offset, int presence, int bit) {
+        if ((presence & bit) == 0) {
+            return null;
+        }
+        return Arrays.copyOfRange(value, offset, offset + FIELD_SIZE);
+    }
+}
@@ -29,12 +29,14 @@ import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.common.collect.Lists;
 import io.xdag.core.*;
 import io.xdag.db.BlockStore;
 import io.xdag.db.execption.DeserializationException;
 import io.xdag.db.execption.SerializationException;
-import io.xdag.utils.BasicUtils;
 import io.xdag.utils.BlockUtils;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.FileUtils;
@@ -52,10 +54,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.nio.ByteOrder;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -65,8 +68,45 @@ import static io.xdag.utils.BytesUtils.equalBytes;
 @Slf4j
 public class BlockStoreImpl implements BlockStore {
 
+    /**
+     * max weight of the BlockInfo cache, in (approximate) bytes
+     */
+    private static final long BLOCK_INFO_CACHE_WEIGHT = 32 * 1024 * 1024;
+    /**
+     * max weight of the raw block cache, in bytes
+     */
+    private static final long RAW_BLOCK_CACHE_WEIGHT = 64 * 1024 * 1024;
+    private static final int BLOCK_INFO_BASE_WEIGHT = 160;
+    /**
+     * BlockInfo records re-encoded per WriteBatch while migrating from the Kryo layout
+     */
+    private static final int MIGRATE_BATCH_SIZE = 10000;
+
     private final Kryo kryo;
 
+    /**
+     * cache of committed records in front of indexSource, <hashlow,blockInfo>
+     */
+    private final Cache<Bytes32, BlockInfo> blockInfoCache = Caffeine.newBuilder()
+            .maximumWeight(BLOCK_INFO_CACHE_WEIGHT)
+            .weigher((Bytes32 key, BlockInfo value) -> weigh(value))
+            .recordStats()
+            .build();
+    /**
+     * cache of committed records in front of blockSource, <hashlow,rawData>
+     */
+    private final Cache<Bytes32, byte[]> rawBlockCache = Caffeine.newBuilder()
+            .maximumWeight(RAW_BLOCK_CACHE_WEIGHT)
+            .weigher((Bytes32 key, byte[] value) -> value.length + 32)
+            .recordStats()
+            .build();
+    /**
+     * entries written or read inside the calling thread's pending batch, kept out of the shared
+     * caches until {@link #publishPendingCache()}, a null BlockInfo stands for a removal
+     */
+    private final ThreadLocal<Map<Bytes32, BlockInfo>> pendingBlockInfos = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<Bytes32, byte[]>> pendingRawBlocks = ThreadLocal.withInitial(HashMap::new);
+
     /**
      * <prefix-hash,value> eg:<diff-hash,blockDiff>
      */
@@ -80,6 +120,7 @@ public class BlockStoreImpl implements BlockStore {
      */
     private final KVSource<byte[], byte[]> blockSource;
     private final KVSource<byte[], byte[]> txHistorySource;
+    private final SumsIndex sumsIndex;
 
     public BlockStoreImpl(
             KVSource<byte[], byte[]> index,
@@ -90,6 +131,7 @@ public class BlockStoreImpl implements BlockStore {
         this.timeSource = time;
         this.blockSource = block;
         this.txHistorySource = txHistory;
+        this.sumsIndex = new SumsIndex(index);
         this.kryo = new Kryo();
         kryoRegister();
     }
@@ -107,7 +149,7 @@ public class BlockStoreImpl implements BlockStore {
         kryo.register(XAmount.class);
     }
 
-    private byte[] serialize(final Object obj) throws SerializationException {
+    byte[] serialize(final Object obj) throws SerializationException {
         synchronized (kryo) {
             try {
                 final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -122,7 +164,7 @@ public class BlockStoreImpl implements BlockStore {
         }
     }
 
-    private Object deserialize(final byte[] bytes, Class<?> type) throws DeserializationException {
+    Object deserialize(final byte[] bytes, Class<?> type) throws DeserializationException {
         synchronized (kryo) {
             try {
                 final ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
@@ -135,14 +177,190 @@ public class BlockStoreImpl implements BlockStore {
         }
     }
 
+    private static int weigh(BlockInfo blockInfo) {
+        int weight = BLOCK_INFO_BASE_WEIGHT;
+        weight += blockInfo.getRef() == null ? 0 : blockInfo.getRef().length;
+        weight += blockInfo.getMaxDiffLink() == null ? 0 : blockInfo.getMaxDiffLink().length;
+        weight += blockInfo.getRemark() == null ? 0 : blockInfo.getRemark().length;
+        weight += blockInfo.getHash() == null ? 0 : blockInfo.getHash().length;
+        weight += blockInfo.getHashlow() == null ? 0 : blockInfo.getHashlow().length;
+        if (blockInfo.getSnapshotInfo() != null && blockInfo.getSnapshotInfo().getData() != null) {
+            weight += blockInfo.getSnapshotInfo().getData().length;
+        }
+        return weight;
+    }
+
+    public CacheStats getBlockInfoCacheStats() {
+        return blockInfoCache.stats();
+    }
+
+    public CacheStats getRawBlockCacheStats() {
+        return rawBlockCache.stats();
+    }
+
+    public void invalidateCache() {
+        blockInfoCache.invalidateAll();
+        rawBlockCache.invalidateAll();
+        sumsIndex.invalidate();
+    }
+
+    public void publishPendingCache() {
+        Map<Bytes32, BlockInfo> blockInfos = pendingBlockInfos.get();
+        for (Map.Entry<Bytes32, BlockInfo> entry : blockInfos.entrySet()) {
+            if (entry.getValue() != null) {
+                blockInfoCache.put(entry.getKey(), entry.getValue());
+            } else {
+                blockInfoCache.invalidate(entry.getKey());
+            }
+        }
+        blockInfos.clear();
+        Map<Bytes32, byte[]> rawBlocks = pendingRawBlocks.get();
+        rawBlockCache.putAll(rawBlocks);
+        rawBlocks.clear();
+        sumsIndex.publish();
+    }
+
+    public void discardPendingCache() {
+        pendingBlockInfos.get().clear();
+        pendingRawBlocks.get().clear();
+        sumsIndex.discard();
+    }
+
+    /**
+     * @return true if writes of the calling thread to this source are not committed yet
+     */
+    private static boolean isPending(KVSource<byte[], byte[]> source) {
+        return source instanceof RocksdbKVSource rocksdb && rocksdb.isInBatch();
+    }
+
+    private BlockInfo getCachedBlockInfo(Bytes32 hashlow) {
+        if (isPending(indexSource)) {
+            Map<Bytes32, BlockInfo> pending = pendingBlockInfos.get();
+            if (pending.containsKey(hashlow)) {
+                return pending.get(hashlow);
+            }
+        }
+        return blockInfoCache.getIfPresent(hashlow);
+    }
+
+    private byte[] getCachedRawData(Bytes32 hashlow) {
+        if (isPending(blockSource)) {
+            byte[] raw = pendingRawBlocks.get().get(hashlow);
+            if (raw != null) {
+                return raw;
+            }
+        }
+        return rawBlockCache.getIfPresent(hashlow);
+    }
+
+    private void cacheBlockInfo(Bytes32 hashlow, BlockInfo blockInfo) {
+        if (isPending(indexSource)) {
+            pendingBlockInfos.get().put(hashlow, blockInfo);
+        } else if (blockInfo == null) {
+            blockInfoCache.invalidate(hashlow);
+        } else {
+            blockInfoCache.put(hashlow, blockInfo);
+        }
+    }
+
+    /**
+     * @param fill true for a value read from the store, which never replaces a newer committed one
+     */
+    private void cacheRawData(Bytes32 hashlow, byte[] raw, boolean fill) {
+        if (isPending(blockSource)) {
+            pendingRawBlocks.get().put(hashlow, raw);
+        } else if (fill) {
+            rawBlockCache.asMap().putIfAbsent(hashlow, raw);
+        } else {
+            rawBlockCache.put(hashlow, raw);
+        }
+    }
+
     public void init() {
         indexSource.init();
         timeSource.init();
         blockSource.init();
         txHistorySource.init();
+        migrateBlockInfo();
+        migrateSums();
+    }
+
+    private void migrateSums() {
+        long migrated = sumsIndex.migrate(value -> {
+            try {
+                return (byte[]) deserialize(value, byte[].class);
+            } catch (DeserializationException e) {
+                log.warn("Can't migrate sums: {}", e.getMessage());
+                return null;
+            }
+        });
+        if (migrated > 0) {
+            log.info("Migrated {} sums files to merge keys", migrated);
+        }
+    }
+
+    /**
+     * Re-encode the BlockInfo records written with Kryo by former versions into the layout of
+     * {@link BlockInfoCodec}. Runs once, reads of a not yet migrated record fall back to Kryo anyway.
+     */
+    private void migrateBlockInfo() {
+        byte[] format = indexSource.get(new byte[]{BLOCK_INFO_FORMAT});
+        if (format != null && format[0] >= BlockInfoCodec.VERSION) {
+            return;
+        }
+        RocksdbKVSource batchSource = indexSource instanceof RocksdbKVSource source && !source.isInBatch()
+                ? source : null;
+        long[] migrated = new long[1];
+        indexSource.fetchPrefix(new byte[]{HASH_BLOCK_INFO}, pair -> {
+            byte[] value = pair.getValue();
+            if (value == null || BlockInfoCodec.isEncoded(value)) {
+                return Boolean.FALSE;
+            }
+            try {
+                byte[] encoded = BlockInfoCodec.encode((BlockInfo) deserialize(value, BlockInfo.class));
+                if (batchSource != null) {
+                    batchSource.beginBatch();
+                }
+                indexSource.put(pair.getKey(), encoded);
+                if (++migrated[0] % MIGRATE_BATCH_SIZE == 0 && batchSource != null) {
+                    batchSource.commitBatch();
+                }
+            } catch (DeserializationException | SerializationException e) {
+                // left as is, still readable through Kryo
+                log.warn("Can't migrate BlockInfo {}: {}", Hex.toHexString(pair.getKey()), e.getMessage());
+            }
+            return Boolean.FALSE;
+        });
+        if (batchSource != null) {
+            batchSource.commitBatch();
+        }
+        indexSource.put(new byte[]{BLOCK_INFO_FORMAT}, new byte[]{BlockInfoCodec.VERSION});
+        if (migrated[0] > 0) {
+            log.info("Migrated {} BlockInfo records to format version {}", migrated[0], BlockInfoCodec.VERSION);
+        }
+    }
+
+    /**
+     * BlockInfoCodec record, or Kryo for a record the fixed layout can't hold
+     */
+    byte[] encodeBlockInfo(BlockInfo blockInfo) throws SerializationException {
+        try {
+            return BlockInfoCodec.encode(blockInfo);
+        } catch (SerializationException e) {
+            log.debug("BlockInfo doesn't fit the fixed layout, falling back to Kryo: {}", e.getMessage());
+            return serialize(blockInfo);
+        }
+    }
+
+    BlockInfo decodeBlockInfo(byte[] value) throws DeserializationException {
+        if (BlockInfoCodec.isEncoded(value)) {
+            return BlockInfoCodec.decode(value);
+        }
+        return (BlockInfo) deserialize(value, BlockInfo.class);
     }
 
     public void reset() {
+        invalidateCache();
         indexSource.reset();
         timeSource.reset();
         blockSource.reset();
@@ -159,66 +377,6 @@ public class BlockStoreImpl implements BlockStore {
         indexSource.put(new byte[]{SETTING_STATS}, value);
     }
 
-    @Override
-    public void saveTxHistoryToRocksdb(TxHistory txHistory, int id) {
-        byte[] remark = new byte[]{};
-        if (txHistory.getRemark() != null) {
-            remark = txHistory.getRemark().getBytes(StandardCharsets.UTF_8);
-        }
-        byte[] isWalletAddress = new byte[]{(byte) (txHistory.getAddress().getIsAddress() ? 1 : 0)};
-        byte[] key = BytesUtils.merge(TX_HISTORY, BytesUtils.merge(txHistory.getAddress().getAddress().toArray(),
-                BasicUtils.address2Hash(txHistory.getHash()).toArray(), BytesUtils.intToBytes(id, true)));
-        // key: 0xa0 + address hash + txHashLow + id
-        byte[] value;
-        value = BytesUtils.merge(txHistory.getAddress().getType().asByte(), BytesUtils.merge(isWalletAddress,
-                txHistory.getAddress().getAddress().toArray(),
-                BasicUtils.address2Hash(txHistory.getHash()).toArray(),
-                txHistory.getAddress().getAmount().toXAmount().toBytes().reverse().toArray(),
-                BytesUtils.longToBytes(txHistory.getTimestamp(), true),
-                BytesUtils.longToBytes(remark.length, true),
-                remark));
-        // value: type  +  isWalletAddress +address hash +txHashLow+ amount + timestamp + remark_length + remark
-        txHistorySource.put(key, value);
-        log.info("MySQL write exception, transaction history stored in Rocksdb. {}", txHistory);
-    }
-
-    public List<TxHistory> getAllTxHistoryFromRocksdb() {
-        List<TxHistory> res = Lists.newArrayList();
-        Set<byte[]> Keys = txHistorySource.keys();
-        for (byte[] key : Keys) {
-            byte[] txHistoryBytes = txHistorySource.get(key);
-            byte type = BytesUtils.subArray(txHistoryBytes, 0, 1)[0];
-            boolean isAddress = BytesUtils.subArray(txHistoryBytes, 1, 1)[0] == 1;
-            XdagField.FieldType fieldType = XdagField.FieldType.fromByte(type);
-            Bytes32 addresshashlow = Bytes32.wrap(BytesUtils.subArray(txHistoryBytes, 2, 32));
-            Bytes32 txhashlow = Bytes32.wrap(BytesUtils.subArray(txHistoryBytes, 34, 32));
-            String hash = BasicUtils.hash2Address(txhashlow);
-            XAmount amount =
-                    XAmount.ofXAmount(Bytes.wrap(BytesUtils.subArray(txHistoryBytes, 66, 8)).reverse().toLong());
-            long timestamp = BytesUtils.bytesToLong(BytesUtils.subArray(txHistoryBytes, 74, 8), 0, true);
-            Address address = new Address(addresshashlow, fieldType, amount, isAddress);
-            long remarkLength = BytesUtils.bytesToLong(BytesUtils.subArray(txHistoryBytes, 82, 8), 0, true);
-            String remark = null;
-            if (remarkLength != 0) {
-                remark = new String(BytesUtils.subArray(txHistoryBytes, 90, (int) remarkLength),
-                        StandardCharsets.UTF_8).trim();
-            }
-            res.add(new TxHistory(address, hash, timestamp, remark));
-        }
-        return res;
-    }
-
-    public void deleteAllTxHistoryFromRocksdb() {
-        for (byte[] key : txHistorySource.keys()) {
-            try {
-                txHistorySource.delete(key);
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            }
-        }
-    }
-
-
     // 状态也是存在区块里面的
     public XdagStats getXdagStatus() {
         XdagStats status = null;
@@ -264,7 +422,9 @@ public class BlockStoreImpl implements BlockStore {
         long time = block.getTimestamp();
         // Fix: time中只拿key的后缀（hashlow）就够了，值可以不存
         timeSource.put(BlockUtils.getTimeKey(time, block.getHashLow()), new byte[]{0});
-        blockSource.put(block.getHashLow().toArray(), block.getXdagBlock().getData().toArray());
+        byte[] raw = block.getXdagBlock().getData().toArray();
+        blockSource.put(block.getHashLow().toArray(), raw);
+        cacheRawData(block.getHashLow().copy(), raw, false);
         saveBlockSums(block);
         saveBlockInfo(block.getInfo());
     }
@@ -339,56 +499,16 @@ public class BlockStoreImpl implements BlockStore {
     }
 
     public MutableBytes getSums(String key) {
-        byte[] value = indexSource.get(BytesUtils.merge(SUMS_BLOCK_INFO, key.getBytes(StandardCharsets.UTF_8)));
-        if (value == null) {
-            return null;
-        } else {
-            MutableBytes sums = null;
-            try {
-                sums = MutableBytes.wrap((byte[]) deserialize(value, byte[].class));
-            } catch (DeserializationException e) {
-                log.error(e.getMessage(), e);
-            }
-            return sums;
-        }
+        byte[] sums = sumsIndex.get(key);
+        return sums == null ? null : MutableBytes.wrap(sums);
     }
 
     public void putSums(String key, Bytes sums) {
-        byte[] value = null;
-        try {
-            value = serialize(sums.toArray());
-        } catch (SerializationException e) {
-            log.error(e.getMessage(), e);
-        }
-        indexSource.put(BytesUtils.merge(SUMS_BLOCK_INFO, key.getBytes(StandardCharsets.UTF_8)), value);
+        sumsIndex.put(key, sums);
     }
 
     public void updateSum(String key, long sum, long size, long index) {
-        MutableBytes sums = getSums(key);
-        if (sums == null) {
-//            sums = new byte[4096];
-            sums = MutableBytes.create(4096);
-//            System.arraycopy(BytesUtils.longToBytes(sum, true), 0, sums, (int) (16 * index), 8);
-            sums.set((int) (16 * index), Bytes.wrap(BytesUtils.longToBytes(sum, true)));
-//            System.arraycopy(BytesUtils.longToBytes(size, true), 0, sums, (int) (index * 16 + 8), 8);
-            sums.set((int) (index * 16 + 8), Bytes.wrap(BytesUtils.longToBytes(size, true)));
-            putSums(key, sums);
-        } else {
-            // size + sum
-//            byte[] data = ArrayUtils.subarray(sums, 16 * (int)index, 16 * (int)index + 16);
-            MutableBytes data = sums.slice(16 * (int) index, 16).mutableCopy();
-//            sum += BytesUtils.bytesToLong(data, 0, true);
-            sum += data.getLong(0, ByteOrder.LITTLE_ENDIAN);
-//            size += BytesUtils.bytesToLong(data, 8, true);
-            size += data.getLong(8, ByteOrder.LITTLE_ENDIAN);
-//            System.arraycopy(BytesUtils.longToBytes(sum, true), 0, data, 0, 8);
-            data.set(0, Bytes.wrap(BytesUtils.longToBytes(sum, true)));
-//            System.arraycopy(BytesUtils.longToBytes(size, true), 0, data, 8, 8);
-            data.set(8, Bytes.wrap(BytesUtils.longToBytes(size, true)));
-//            System.arraycopy(data, 0, sums, 16 * (int)index, 16);
-            sums.set(16 * (int) index, data.slice(0, 16));
-            putSums(key, sums);
-        }
+        sumsIndex.add(key, (int) index, sum, size);
     }
 
     public int loadSum(long starttime, long endtime, MutableBytes sums) {
@@ -454,11 +574,12 @@ public class BlockStoreImpl implements BlockStore {
     public void saveBlockInfo(BlockInfo blockInfo) {
         byte[] value = null;
         try {
-            value = serialize(blockInfo);
+            value = encodeBlockInfo(blockInfo);
         } catch (SerializationException e) {
             log.error(e.getMessage(), e);
         }
         indexSource.put(BytesUtils.merge(HASH_BLOCK_INFO, blockInfo.getHashlow()), value);
+        cacheBlockInfo(Bytes32.wrap(blockInfo.getHashlow().clone()), value != null ? blockInfo.copy() : null);
         // 如果区块是主块的话顺便保存对应的高度信息
         // TODO: paulochen 如果回滚了，对应高度的键值对该怎么更新(直接让其height=0的区块覆盖)
 //        if (blockInfo.getHeight() > 0) {
@@ -469,11 +590,12 @@ public class BlockStoreImpl implements BlockStore {
     }
 
     public boolean hasBlock(Bytes32 hashlow) {
-        return blockSource.get(hashlow.toArray()) != null;
+        return getCachedRawData(hashlow) != null || blockSource.get(hashlow.toArray()) != null;
     }
 
     public boolean hasBlockInfo(Bytes32 hashlow) {
-        return indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray())) != null;
+        return getCachedBlockInfo(hashlow) != null
+                || indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray())) != null;
     }
 
     public List<Block> getBlocksUsedTime(long startTime, long endTime) {
@@ -495,9 +617,7 @@ public class BlockStoreImpl implements BlockStore {
         byte[] keyPrefix = BlockUtils.getTimeKey(startTime, null);
         List<byte[]> keys = timeSource.prefixKeyLookup(keyPrefix);
         for (byte[] bytes : keys) {
-            // 1 + 8 : prefix + time
-            byte[] hash = BytesUtils.subArray(bytes, 1 + 8, 32);
-            Block block = getBlockByHash(Bytes32.wrap(hash), true);
+            Block block = getBlockByHash(BlockUtils.getHashlowOfTimeKey(bytes), true);
             if (block != null) {
                 blocks.add(block);
             }
@@ -505,6 +625,30 @@ public class BlockStoreImpl implements BlockStore {
         return blocks;
     }
 
+    public List<byte[]> getBlockTimeKeys(long startTime, long endTime, byte[] after, int limit) {
+        List<byte[]> keys = Lists.newArrayList();
+        long time = startTime;
+        if (after != null) {
+            // continue in the slice of the last key, slices step by 0x10000 from startTime as in getBlocksUsedTime
+            long slice = BytesUtils.bytesToLong(after, 1, false);
+            time = startTime + ((slice - (startTime >> 16)) << 16);
+        }
+        while (time < endTime && keys.size() < limit) {
+            timeSource.fetchPrefix(BlockUtils.getTimeKey(time, null), pair -> {
+                byte[] key = pair.getKey();
+                if (after != null && Arrays.compareUnsigned(key, after) <= 0) {
+                    return false;
+                }
+                keys.add(key);
+                return keys.size() >= limit;
+            });
+            if (keys.size() < limit) {
+                time += 0x10000;
+            }
+        }
+        return keys;
+    }
+
     // ADD: 通过高度获取区块
     public Block getBlockByHeight(long height) {
         byte[] hashlow = indexSource.get(BlockUtils.getHeight(height));
@@ -526,36 +670,82 @@ public class BlockStoreImpl implements BlockStore {
         if (block == null) {
             return null;
         }
-//        log.debug("Data:{}",Hex.toHexString(blockSource.get(hashlow)));
         // 没有源数据
-        if (blockSource.get(hashlow.toArray()) == null) {
-//            log.error("No block origin data");
+        byte[] raw = getRawData(hashlow);
+        if (raw == null) {
             return null;
         }
-        block.setXdagBlock(new XdagBlock(blockSource.get(hashlow.toArray())));
+        block.setXdagBlock(new XdagBlock(raw));
         block.setParsed(false);
         block.parse();
         return block;
     }
 
+    /**
+     * raw 512 bytes of the block, always a private copy for the caller
+     */
+    private byte[] getRawData(Bytes32 hashlow) {
+        byte[] raw = getCachedRawData(hashlow);
+        if (raw == null) {
+            raw = blockSource.get(hashlow.toArray());
+            if (raw == null) {
+                return null;
+            }
+            cacheRawData(hashlow.copy(), raw.clone(), true);
+            return raw;
+        }
+        return raw.clone();
+    }
+
     public Block getBlockInfoByHash(Bytes32 hashlow) {
-        if (!hasBlockInfo(hashlow)) {
+        BlockInfo blockInfo;
+        if (isPending(indexSource)) {
+            blockInfo = getCachedBlockInfo(hashlow);
+            if (blockInfo == null) {
+                blockInfo = loadBlockInfo(hashlow);
+                if (blockInfo != null) {
+                    pendingBlockInfos.get().put(hashlow.copy(), blockInfo.copy());
+                }
+            }
+        } else {
+            // loaded atomically, a concurrent put or invalidation waits for the load and then wins
+            blockInfo = blockInfoCache.get(hashlow.copy(), this::loadBlockInfo);
+        }
+        return blockInfo == null ? null : new Block(blockInfo.copy());
+    }
+
+    /**
+     * committed record read from indexSource, null if missing or unreadable
+     */
+    private BlockInfo loadBlockInfo(Bytes32 hashlow) {
+        byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
+        if (value == null) {
+            return null;
+        }
+        try {
+            return decodeBlockInfo(value);
+        } catch (DeserializationException e) {
+            log.error("hash low:{}", hashlow.toHexString());
+            log.error("can't deserialize data:{}", Hex.toHexString(value));
+            log.error(e.getMessage(), e);
             return null;
         }
-        BlockInfo blockInfo = null;
+    }
+
+    public XAmount getBlockAmount(Bytes32 hashlow) {
+        BlockInfo blockInfo = getCachedBlockInfo(hashlow);
+        if (blockInfo != null) {
+            return blockInfo.getAmount();
+        }
         byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
         if (value == null) {
             return null;
-        } else {
-            try {
-                blockInfo = (BlockInfo) deserialize(value, BlockInfo.class);
-            } catch (DeserializationException e) {
-                log.error("hash low:{}", hashlow.toHexString());
-                log.error("can't deserialize data:{}", Hex.toHexString(value));
-                log.error(e.getMessage(), e);
-            }
         }
-        return new Block(blockInfo);
+        if (BlockInfoCodec.isEncoded(value)) {
+            return BlockInfoCodec.amount(value);
+        }
+        Block block = getBlockInfoByHash(hashlow);
+        return block == null ? null : block.getInfo().getAmount();
     }
 
     public boolean isSnapshotBoot() {
@@ -28,6 +28,11 @@ public interface DatabaseFactory {
 
     KVSource<byte[], byte[]> getDB(DatabaseName name);
 
+    /**
+     * Unit of work spanning every database opened by this factory.
+     */
+    UnitOfWork getUnitOfWork();
+
     /**
      * Close all opened resources.
      */
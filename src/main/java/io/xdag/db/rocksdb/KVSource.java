@@ -49,6 +49,8 @@ public interface KVSource<K, V> {
 
     void delete(K key);
 
+    void merge(K key, V val);
+
     Set<byte[]> keys() throws RuntimeException;
 
     List<K> prefixKeyLookup(byte[] key);
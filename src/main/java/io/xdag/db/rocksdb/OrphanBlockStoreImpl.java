@@ -29,21 +29,30 @@ import io.xdag.core.Block;
 import io.xdag.core.XdagField;
 import io.xdag.db.OrphanBlockStore;
 import io.xdag.utils.BytesUtils;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.tuple.Pair;
 import org.apache.tuweni.bytes.Bytes32;
-import org.bouncycastle.util.encoders.Hex;
 
 import com.google.common.collect.Lists;
 
 @Slf4j
 public class OrphanBlockStoreImpl implements OrphanBlockStore {
 
+    /**
+     * ORPHAN_SIZE is written every that many changes, the in-memory size is authoritative
+     */
+    static final int SIZE_PERSIST_INTERVAL = 1024;
 
-    // <hash,nexthash>
+    // <prefix+hashlow,time> and <time prefix+time+hashlow,empty>
     private final KVSource<byte[], byte[]> orphanSource;
+    private final AtomicLong orphanSize = new AtomicLong();
+    private final AtomicLong unpersisted = new AtomicLong();
+    /**
+     * size changes the calling thread made inside its batch, undone if the batch is rolled back
+     */
+    private final ThreadLocal<long[]> pendingSize = ThreadLocal.withInitial(() -> new long[1]);
 
     public OrphanBlockStoreImpl(KVSource<byte[], byte[]> orphan) {
         this.orphanSource = orphan;
@@ -51,74 +60,127 @@ public class OrphanBlockStoreImpl implements OrphanBlockStore {
 
     public void init() {
         this.orphanSource.init();
-        if (orphanSource.get(ORPHAN_SIZE) == null) {
-            this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(0, false));
-        }
+        reload();
     }
 
     public void reset() {
         this.orphanSource.reset();
         this.orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(0, false));
+        orphanSize.set(0);
+        unpersisted.set(0);
     }
 
-    public List<Address> getOrphan(long num, long[] sendtime) {
-        List<Address> res = Lists.newArrayList();
-        if (orphanSource.get(ORPHAN_SIZE) == null || getOrphanSize() == 0) {
-            return null;
-        } else {
-            long orphanSize = getOrphanSize();
-            long addNum = Math.min(orphanSize, num);
-            byte[] key = BytesUtils.of(ORPHAN_PREFEX);
-            List<Pair<byte[],byte[]>> ans = orphanSource.prefixKeyAndValueLookup(key);
-            ans.sort(Comparator.comparingLong(a -> BytesUtils.bytesToLong(a.getValue(), 0, true)));
-            for (Pair<byte[],byte[]> an : ans) {
-                if (addNum == 0) {
-                    break;
-                }
-                // TODO:判断时间，这里出现过orphanSource获取key时为空的情况
-                if (an.getValue() == null) {
-                    continue;
-                }
-                long time =  BytesUtils.bytesToLong(an.getValue(), 0, true);
-                if (time <= sendtime[0]) {
-                    addNum--;
-                    res.add(new Address(Bytes32.wrap(an.getKey(), 1), XdagField.FieldType.XDAG_FIELD_OUT,false));
-                    sendtime[1] = Math.max(sendtime[1],time);
-//                    Bytes32 blockHashLow = Bytes32.wrap(an.getKey(),1);
-//                    if(filter.filterOurLinkBlock(blockHashLow)){
-//                        addNum--;
-//                        //TODO:通过address 获取区块 遍历连接块是否都是output如果是 则为链接块 判断是否是自己的是才链接
-//                        res.add(new Address(blockHashLow, XdagField.FieldType.XDAG_FIELD_OUT,false));
-//                        sendtime[1] = Math.max(sendtime[1],time);
-//                    }
+    /**
+     * Recount the orphans from the store, building the time index of a store written before it
+     * existed.
+     */
+    public void reload() {
+        long[] indexed = new long[1];
+        orphanSource.fetchPrefix(BytesUtils.of(ORPHAN_TIME_PREFEX), pair -> {
+            indexed[0]++;
+            return Boolean.FALSE;
+        });
+        if (indexed[0] == 0) {
+            List<byte[]> keys = Lists.newArrayList();
+            List<byte[]> times = Lists.newArrayList();
+            orphanSource.fetchPrefix(BytesUtils.of(ORPHAN_PREFEX), pair -> {
+                if (pair.getValue() != null) {
+                    keys.add(pair.getKey());
+                    times.add(pair.getValue());
                 }
+                return Boolean.FALSE;
+            });
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] hashlow = Arrays.copyOfRange(keys.get(i), 1, keys.get(i).length);
+                orphanSource.put(timeKey(BytesUtils.bytesToLong(times.get(i), 0, true), hashlow), new byte[0]);
+            }
+            if (!keys.isEmpty()) {
+                log.info("Built orphan time index for {} orphans", keys.size());
             }
-            sendtime[1] = Math.min(sendtime[1]+1,sendtime[0]);
-            return res;
+            indexed[0] = keys.size();
         }
+        orphanSize.set(indexed[0]);
+        unpersisted.set(0);
+        orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(indexed[0], false));
+    }
+
+    public void commitPending() {
+        pendingSize.get()[0] = 0;
+    }
+
+    public void rollbackPending() {
+        long[] pending = pendingSize.get();
+        orphanSize.addAndGet(-pending[0]);
+        pending[0] = 0;
+    }
+
+    public List<Address> getOrphan(long num, long[] sendtime) {
+        if (orphanSize.get() <= 0) {
+            return null;
+        }
+        List<Address> res = Lists.newArrayList();
+        // oldest first, stop at the first orphan newer than the send time
+        orphanSource.fetchPrefix(BytesUtils.of(ORPHAN_TIME_PREFEX), pair -> {
+            if (res.size() >= num) {
+                return Boolean.TRUE;
+            }
+            byte[] key = pair.getKey();
+            long time = BytesUtils.bytesToLong(key, 1, false);
+            if (time > sendtime[0]) {
+                return Boolean.TRUE;
+            }
+            res.add(new Address(Bytes32.wrap(key, 9), XdagField.FieldType.XDAG_FIELD_OUT, false));
+            sendtime[1] = Math.max(sendtime[1], time);
+            return Boolean.FALSE;
+        });
+        sendtime[1] = Math.min(sendtime[1] + 1, sendtime[0]);
+        return res;
     }
 
     public void deleteByHash(byte[] hashlow) {
         log.debug("deleteByhash");
-        orphanSource.delete(BytesUtils.merge(ORPHAN_PREFEX, hashlow));
-        long currentsize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-        orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentsize - 1, false));
+        byte[] key = BytesUtils.merge(ORPHAN_PREFEX, hashlow);
+        byte[] time = orphanSource.get(key);
+        if (time == null) {
+            return;
+        }
+        orphanSource.delete(key);
+        orphanSource.delete(timeKey(BytesUtils.bytesToLong(time, 0, true), hashlow));
+        sizeChanged(-1);
     }
 
     public void addOrphan(Block block) {
-        orphanSource.put(BytesUtils.merge(ORPHAN_PREFEX, block.getHashLow().toArray()),
-                BytesUtils.longToBytes(block.getTimestamp(), true));
-        long currentsize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-        log.debug("orphan current size:{}", currentsize);
-//        log.debug(":" + Hex.toHexString(orphanSource.get(ORPHAN_SIZE)));
-        orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentsize + 1, false));
+        byte[] hashlow = block.getHashLow().toArray();
+        byte[] key = BytesUtils.merge(ORPHAN_PREFEX, hashlow);
+        if (orphanSource.get(key) != null) {
+            return;
+        }
+        orphanSource.put(key, BytesUtils.longToBytes(block.getTimestamp(), true));
+        orphanSource.put(timeKey(block.getTimestamp(), hashlow), new byte[0]);
+        sizeChanged(1);
+        log.debug("orphan current size:{}", orphanSize.get());
     }
 
     public long getOrphanSize() {
-        long currentsize = BytesUtils.bytesToLong(orphanSource.get(ORPHAN_SIZE), 0, false);
-        log.debug("current orphan size:{}", currentsize);
-        log.debug("Hex:{}", Hex.toHexString(orphanSource.get(ORPHAN_SIZE)));
-        return currentsize;
+        return orphanSize.get();
+    }
+
+    /**
+     * Time index key, big endian time so that keys sort by time, then by hash.
+     */
+    private static byte[] timeKey(long time, byte[] hashlow) {
+        return BytesUtils.merge(new byte[]{ORPHAN_TIME_PREFEX}, BytesUtils.longToBytes(time, false), hashlow);
+    }
+
+    private void sizeChanged(long delta) {
+        long currentsize = orphanSize.addAndGet(delta);
+        if (orphanSource instanceof RocksdbKVSource rocksdb && rocksdb.isInBatch()) {
+            pendingSize.get()[0] += delta;
+        }
+        if (unpersisted.incrementAndGet() >= SIZE_PERSIST_INTERVAL) {
+            unpersisted.set(0);
+            orphanSource.put(ORPHAN_SIZE, BytesUtils.longToBytes(currentsize, false));
+        }
     }
 
 }
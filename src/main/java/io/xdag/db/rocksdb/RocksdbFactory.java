@@ -26,16 +26,31 @@ package io.xdag.db.rocksdb;
 
 import io.xdag.config.Config;
 import java.util.EnumMap;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
+@Slf4j
 public class RocksdbFactory implements DatabaseFactory {
 
     private final EnumMap<DatabaseName, KVSource<byte[], byte[]>> databases = new EnumMap<>(DatabaseName.class);
+    private final UnitOfWork unitOfWork = new UnitOfWork(databases::values);
 
     protected Config config;
+    /**
+     * all stores as column families of one db, null while the node still runs on the former
+     * one-db-per-store layout
+     */
+    private final RocksdbStorage storage;
 
     public RocksdbFactory(Config config) {
         this.config = config;
+        if (RocksdbStorage.isLegacyLayout(config)) {
+            log.warn("Database in {} uses the former layout, stop the node and run './xdag.sh --migratedb' to migrate it",
+                    config.getNodeSpec().getStoreDir());
+            this.storage = null;
+        } else {
+            this.storage = new RocksdbStorage(config);
+        }
     }
 
     @Override
@@ -43,8 +58,10 @@ public class RocksdbFactory implements DatabaseFactory {
         return databases.computeIfAbsent(
                 name, k -> {
                     RocksdbKVSource dataSource;
-                    // time data source must set fixed prefix length
-                    if (StringUtils.equals(DatabaseName.TIME.toString(), name.toString())) {
+                    if (storage != null) {
+                        dataSource = new RocksdbKVSource(name, storage);
+                    } else if (StringUtils.equals(DatabaseName.TIME.toString(), name.toString())) {
+                        // time data source must set fixed prefix length
                         dataSource = new RocksdbKVSource(name.toString(), 9);
                     } else {
                         dataSource = new RocksdbKVSource(name.toString());
@@ -54,11 +71,19 @@ public class RocksdbFactory implements DatabaseFactory {
                 });
     }
 
+    @Override
+    public UnitOfWork getUnitOfWork() {
+        return unitOfWork;
+    }
+
     @Override
     public void close() {
         for (KVSource<byte[], byte[]> db : databases.values()) {
             db.close();
         }
         databases.clear();
+        if (storage != null) {
+            storage.close();
+        }
     }
 }
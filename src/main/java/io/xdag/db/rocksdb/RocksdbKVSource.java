@@ -48,6 +48,7 @@ import org.rocksdb.BackupEngine;
 import org.rocksdb.BackupEngineOptions;
 import org.rocksdb.BlockBasedTableConfig;
 import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.CompressionType;
 import org.rocksdb.Env;
 import org.rocksdb.LRUCache;
@@ -57,6 +58,8 @@ import org.rocksdb.RestoreOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatchWithIndex;
+import org.rocksdb.WriteOptions;
 
 @Slf4j
 @Setter
@@ -78,8 +81,19 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     private String name;
     private RocksDB db;
     private ReadOptions readOpts;
+    private WriteOptions writeOpts;
     private boolean alive;
     private int prefixSeekLength;
+    /**
+     * shared database when this source is a column family, null for a standalone db
+     */
+    private RocksdbStorage storage;
+    private ColumnFamilyHandle handle;
+    /**
+     * pending mutations of the calling thread, see {@link #beginBatch()}. Shared by all the
+     * column families of one {@link RocksdbStorage}, so a batch commits them atomically.
+     */
+    private ThreadLocal<WriteBatchWithIndex> batch = new ThreadLocal<>();
 
     public RocksdbKVSource(String name) {
         this.name = name;
@@ -92,6 +106,14 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         log.debug("New RocksdbKVSource: {}", name);
     }
 
+    public RocksdbKVSource(DatabaseName name, RocksdbStorage storage) {
+        this.name = name.toString();
+        this.prefixSeekLength = RocksdbStorage.prefixSeekLength(name);
+        this.storage = storage;
+        this.batch = storage.getBatch();
+        log.debug("New RocksdbKVSource: {} (column family)", name);
+    }
+
     @Override
     public void init() {
         resetDbLock.writeLock().lock();
@@ -106,6 +128,16 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 throw new NullPointerException("no name set to the db");
             }
 
+            if (storage != null) {
+                handle = storage.getColumnFamily(DatabaseName.valueOf(name));
+                db = storage.getDb();
+                readOpts = new ReadOptions().setPrefixSameAsStart(true).setVerifyChecksums(false);
+                writeOpts = new WriteOptions();
+                alive = true;
+                log.debug("<~ RocksdbKVSource.init(): {}", name);
+                return;
+            }
+
             try (Options options = new Options()) {
                 // most of these options are suggested by
                 // https://github.com/facebook/rocksdb/wiki/Set-Up-Options
@@ -120,6 +152,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
                 // key prefix for state node lookups
                 options.useFixedLengthPrefixExtractor(prefixSeekLength);
+                options.setMergeOperatorName(RocksdbStorage.MERGE_OPERATOR);
 
                 // table options
                 final BlockBasedTableConfig tableCfg;
@@ -133,6 +166,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 // read options
                 readOpts = new ReadOptions();
                 readOpts = readOpts.setPrefixSameAsStart(true).setVerifyChecksums(false);
+                writeOpts = new WriteOptions();
 
                 try {
                     log.debug("Opening database");
@@ -159,6 +193,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                     log.debug("Initializing new or existing database: '{}'", name);
                     try {
                         db = RocksDB.open(options, dbPath.toString());
+                        handle = db.getDefaultColumnFamily();
                     } catch (RocksDBException e) {
                         log.error(e.getMessage(), e);
                         throw new RuntimeException("Failed to initialize database", e);
@@ -183,7 +218,9 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         if (log.isTraceEnabled()) {
             log.trace("~> RocksdbKVSource.backup(): {}", name);
         }
-        Path path = backupPath();
+        Path path = storage != null
+                ? Paths.get(config.getNodeSpec().getStoreDir(), "backup", RocksdbStorage.DB_NAME)
+                : backupPath();
         path.toFile().mkdirs();
         try (BackupEngineOptions backupOptions = new BackupEngineOptions(path.toString());
                 BackupEngine backups = BackupEngine.open(Env.getDefault(), backupOptions)) {
@@ -210,14 +247,19 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
                 log.trace("~> RocksdbKVSource.put(): {}, key: {}, {}", name, Hex.encodeHexString(key),
                         val == null ? "null" : val.length);
             }
+            WriteBatchWithIndex wb = batch.get();
             if (val != null) {
                 if (db == null) {
                     log.error("db is null");
+                } else if (wb != null) {
+                    wb.put(handle, key, val);
                 } else {
-                    db.put(key, val);
+                    db.put(handle, key, val);
                 }
+            } else if (wb != null) {
+                wb.delete(handle, key);
             } else {
-                db.delete(key);
+                db.delete(handle, key);
             }
             if (log.isTraceEnabled()) {
                 log.trace("<~ RocksdbKVSource.put(): {}, key: {}, {}", name, Hex.encodeHexString(key),
@@ -239,7 +281,8 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.get(): {}, key: {}", name, Hex.encodeHexString(key));
             }
-            byte[] ret = db.get(readOpts, key);
+            WriteBatchWithIndex wb = batch.get();
+            byte[] ret = wb == null ? db.get(handle, readOpts, key) : wb.getFromBatchAndDB(db, handle, readOpts, key);
             if (log.isTraceEnabled()) {
                 log.trace("<~ RocksdbKVSource.get(): {}, key: {}, {}", name, Hex.encodeHexString(key),
                         ret == null ? "null" : ret.length);
@@ -261,7 +304,12 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.delete(): {}, key: {}", name, Hex.encodeHexString(key));
             }
-            db.delete(key);
+            WriteBatchWithIndex wb = batch.get();
+            if (wb != null) {
+                wb.delete(handle, key);
+            } else {
+                db.delete(handle, key);
+            }
             if (log.isTraceEnabled()) {
                 log.trace("<~ RocksdbKVSource.delete(): {}, key: {}", name, Hex.encodeHexString(key));
             }
@@ -273,6 +321,28 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    /**
+     * Add the 8 bytes little-endian value to the one stored under key, through the
+     * {@link RocksdbStorage#MERGE_OPERATOR} merge operator.
+     */
+    @Override
+    public void merge(byte[] key, byte[] val) {
+        resetDbLock.readLock().lock();
+        try {
+            WriteBatchWithIndex wb = batch.get();
+            if (wb != null) {
+                wb.merge(handle, key, val);
+            } else {
+                db.merge(handle, key, val);
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to merge into db '{}'", name, e);
+            throw new RuntimeException(e);
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public Set<byte[]> keys() throws RuntimeException {
         resetDbLock.readLock().lock();
@@ -280,7 +350,7 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             if (log.isTraceEnabled()) {
                 log.trace("~> RocksdbKVSource.keys(): {}", name);
             }
-            try (RocksIterator iterator = db.newIterator()) {
+            try (RocksIterator iterator = newIterator(null)) {
                 Set<byte[]> result = new HashSet<>();
                 for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
                     result.add(iterator.key());
@@ -332,8 +402,20 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
 
     @Override
     public void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        fetchPrefix(key, func, true);
+    }
+
+    /**
+     * {@link #fetchPrefix} over the written data only, ignoring the pending batch of the calling
+     * thread. The batch iterator can't resolve merge operands, so merged keys must be read this way.
+     */
+    public void fetchCommittedPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func) {
+        fetchPrefix(key, func, false);
+    }
+
+    private void fetchPrefix(byte[] key, Function<Pair<byte[], byte[]>, Boolean> func, boolean withBatch) {
         resetDbLock.readLock().lock();
-        try (RocksIterator it = db.newIterator(readOpts)) {
+        try (RocksIterator it = withBatch ? newIterator(readOpts) : db.newIterator(handle, readOpts)) {
             for (it.seek(key); it.isValid(); it.next()) {
                 if (BytesUtils.keyStartsWith(it.key(), key)) {
                     if (func.apply(Pair.of(it.key(), it.value()))) {
@@ -352,6 +434,72 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
         }
     }
 
+    /**
+     * Iterator over the db, merged with the pending batch of the calling thread if any.
+     */
+    private RocksIterator newIterator(ReadOptions options) {
+        RocksIterator base = options == null ? db.newIterator(handle) : db.newIterator(handle, options);
+        WriteBatchWithIndex wb = batch.get();
+        return wb == null ? base : wb.newIteratorWithBase(handle, base);
+    }
+
+    /**
+     * Total order iterator over this store, the caller must close it.
+     */
+    public RocksIterator newIterator() {
+        return newIterator(null);
+    }
+
+    /**
+     * Start collecting the mutations of the calling thread into a single WriteBatch. Until
+     * {@link #commitBatch()} they are only visible to this thread (read-your-writes).
+     */
+    public void beginBatch() {
+        if (batch.get() == null) {
+            batch.set(new WriteBatchWithIndex(true));
+        }
+    }
+
+    public boolean isInBatch() {
+        return batch.get() != null;
+    }
+
+    /**
+     * Atomically write the pending batch of the calling thread.
+     */
+    public void commitBatch() {
+        WriteBatchWithIndex wb = batch.get();
+        if (wb == null) {
+            return;
+        }
+        batch.remove();
+        resetDbLock.readLock().lock();
+        try {
+            if (wb.count() > 0) {
+                db.write(writeOpts, wb);
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to write batch into db '{}'", name, e);
+            hintOnTooManyOpenFiles(e);
+            throw new RuntimeException(e);
+        } finally {
+            wb.close();
+            resetDbLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Discard the pending batch of the calling thread.
+     */
+    public void rollbackBatch() {
+        WriteBatchWithIndex wb = batch.get();
+        if (wb == null) {
+            return;
+        }
+        batch.remove();
+        wb.close();
+    }
+
     @Override
     public void close() {
         resetDbLock.writeLock().lock();
@@ -361,8 +509,12 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
             }
 
             log.debug("Close db: {}", name);
-            db.close();
+            // a column family is closed together with its storage
+            if (storage == null) {
+                db.close();
+            }
             readOpts.close();
+            writeOpts.close();
 
             alive = false;
 
@@ -376,6 +528,11 @@ public class RocksdbKVSource implements KVSource<byte[], byte[]> {
     @Override
     public void reset() {
         close();
+        if (storage != null) {
+            storage.dropColumnFamily(DatabaseName.valueOf(name));
+            init();
+            return;
+        }
         try {
             FileUtils.deleteDirectory(new File(getPath().toString()));
         } catch (IOException e) {
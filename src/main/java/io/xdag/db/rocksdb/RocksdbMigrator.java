@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import io.xdag.config.Config;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+/**
+ * Offline migration of the former one-db-per-store layout into the column families of
+ * {@link RocksdbStorage}. The node must be stopped. Migrated stores are moved to
+ * {@code <storeDir>/legacy} instead of being deleted, a store already there from an earlier
+ * migration is renamed with a timestamp suffix.
+ * <p>
+ * The database is built in a temporary directory and renamed into place once every store is copied,
+ * so an interrupted migration leaves the former layout in use and is simply run again.
+ */
+@Slf4j
+public class RocksdbMigrator {
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final Config config;
+
+    public RocksdbMigrator(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * @return number of migrated entries, -1 if there is nothing to migrate
+     */
+    public long migrate() throws IOException {
+        if (!RocksdbStorage.isLegacyLayout(config)) {
+            if (RocksdbStorage.hasLegacyStores(config)) {
+                // stopped after the rename, the migrated stores are still to be moved away
+                moveLegacyStores();
+            }
+            log.info("Database in {} doesn't need migration", config.getNodeSpec().getStoreDir());
+            return -1;
+        }
+        Path path = RocksdbStorage.getPath(config);
+        Path tmp = path.resolveSibling(RocksdbStorage.DB_NAME + ".migrating");
+        if (Files.exists(tmp)) {
+            log.info("Discarding the interrupted migration in {}", tmp);
+            FileUtils.deleteDirectory(tmp.toFile());
+        }
+        long total = 0;
+        RocksdbStorage storage = new RocksdbStorage(config, tmp);
+        try {
+            storage.open();
+            for (DatabaseName name : DatabaseName.values()) {
+                Path legacyPath = RocksdbStorage.getLegacyPath(config, name);
+                if (!Files.exists(legacyPath.resolve("CURRENT"))) {
+                    continue;
+                }
+                long count = copy(name, storage);
+                log.info("Migrated {}: {} entries", name, count);
+                total += count;
+            }
+        } catch (RocksDBException e) {
+            log.error("Failed to migrate database", e);
+            throw new IOException(e);
+        } finally {
+            storage.close();
+        }
+
+        // only put the database in place and move the old stores away once everything has been copied
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        moveLegacyStores();
+        return total;
+    }
+
+    private void moveLegacyStores() throws IOException {
+        Path legacyDir = Paths.get(config.getNodeSpec().getStoreDir(), "legacy");
+        Files.createDirectories(legacyDir);
+        for (DatabaseName name : DatabaseName.values()) {
+            Path legacyPath = RocksdbStorage.getLegacyPath(config, name);
+            if (!Files.exists(legacyPath.resolve("CURRENT"))) {
+                continue;
+            }
+            Path target = legacyDir.resolve(name.toString());
+            if (Files.exists(target)) {
+                // left by an earlier migration, keep it next to the one moved now
+                Path aside = legacyDir.resolve(name + "." + System.currentTimeMillis());
+                log.info("Moving the earlier {} to {}", target, aside);
+                Files.move(target, aside);
+            }
+            Files.move(legacyPath, target);
+        }
+    }
+
+    private long copy(DatabaseName name, RocksdbStorage storage) throws RocksDBException {
+        RocksdbKVSource source = new RocksdbKVSource(name.toString(), RocksdbStorage.prefixSeekLength(name));
+        source.setConfig(config);
+        source.init();
+        ColumnFamilyHandle handle = storage.getColumnFamily(name);
+        long count = 0;
+        try (RocksIterator it = source.newIterator();
+                WriteOptions writeOptions = new WriteOptions()) {
+            WriteBatch batch = new WriteBatch();
+            try {
+                for (it.seekToFirst(); it.isValid(); it.next()) {
+                    batch.put(handle, it.key(), it.value());
+                    if (++count % BATCH_SIZE == 0) {
+                        storage.getDb().write(writeOptions, batch);
+                        batch.close();
+                        batch = new WriteBatch();
+                    }
+                }
+                storage.getDb().write(writeOptions, batch);
+            } finally {
+                batch.close();
+            }
+        } finally {
+            source.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import com.google.common.collect.Lists;
+import io.xdag.config.Config;
+import io.xdag.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.List;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompressionType;
+import org.rocksdb.DBOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.StatsLevel;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+import org.rocksdb.WriteBatchWithIndex;
+import org.rocksdb.WriteBufferManager;
+
+/**
+ * One RocksDB instance holding a column family per {@link DatabaseName}. All families share one
+ * block cache, one write buffer budget, one WAL and one set of background threads, and a single
+ * WriteBatch can span all of them.
+ */
+@Slf4j
+public class RocksdbStorage {
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    /**
+     * directory of the database, under the store dir
+     */
+    public static final String DB_NAME = "XDAG";
+    /**
+     * built-in merge operator adding 8 bytes little-endian unsigned values, used by the sums
+     */
+    public static final String MERGE_OPERATOR = "uint64add";
+
+    private static final long BLOCK_CACHE_SIZE = 128L * 1024 * 1024;
+    private static final long WRITE_BUFFER_SIZE = 64L * 1024 * 1024;
+
+    private final Config config;
+    private final Path path;
+    private final EnumMap<DatabaseName, ColumnFamilyHandle> handles = new EnumMap<>(DatabaseName.class);
+    private final List<ColumnFamilyOptions> familyOptions = Lists.newArrayList();
+    /**
+     * pending batch of the calling thread, shared by every column family
+     */
+    @Getter
+    private final ThreadLocal<WriteBatchWithIndex> batch = new ThreadLocal<>();
+    @Getter
+    private RocksDB db;
+    private DBOptions dbOptions;
+    private LRUCache blockCache;
+    private WriteBufferManager writeBufferManager;
+    private ColumnFamilyHandle defaultHandle;
+    private Statistics statistics;
+
+    public RocksdbStorage(Config config) {
+        this(config, getPath(config));
+    }
+
+    /**
+     * A database in another directory than {@link #getPath(Config)}, see {@link RocksdbMigrator}.
+     */
+    RocksdbStorage(Config config, Path path) {
+        this.config = config;
+        this.path = path;
+    }
+
+    /**
+     * RocksDB tickers exported as metrics, read from the open database on every scrape
+     */
+    private void registerMetrics() {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.counter("xdag_rocksdb_block_cache_hits_total", "RocksDB block cache hits",
+                () -> getTickerCount(TickerType.BLOCK_CACHE_HIT));
+        registry.counter("xdag_rocksdb_block_cache_misses_total", "RocksDB block cache misses",
+                () -> getTickerCount(TickerType.BLOCK_CACHE_MISS));
+        registry.counter("xdag_rocksdb_bytes_read_total", "Bytes read by RocksDB point lookups",
+                () -> getTickerCount(TickerType.BYTES_READ));
+        registry.counter("xdag_rocksdb_bytes_written_total", "Bytes written to RocksDB",
+                () -> getTickerCount(TickerType.BYTES_WRITTEN));
+        registry.counter("xdag_rocksdb_compaction_bytes_written_total", "Bytes written by RocksDB compactions",
+                () -> getTickerCount(TickerType.COMPACT_WRITE_BYTES));
+        registry.counter("xdag_rocksdb_stall_micros_total", "Time RocksDB writes were stalled",
+                () -> getTickerCount(TickerType.STALL_MICROS));
+        registry.gauge("xdag_rocksdb_block_cache_usage_bytes", "Memory used by the RocksDB block cache and memtables",
+                this::getBlockCacheUsage);
+    }
+
+    private synchronized long getTickerCount(TickerType type) {
+        return statistics == null ? 0 : statistics.getTickerCount(type);
+    }
+
+    private synchronized long getBlockCacheUsage() {
+        return blockCache == null ? 0 : blockCache.getUsage();
+    }
+
+    public static Path getPath(Config config) {
+        return Paths.get(config.getNodeSpec().getStoreDir(), DB_NAME);
+    }
+
+    /**
+     * true if the store dir only contains the former one-instance-per-store layout. The database is
+     * only moved to {@link #getPath(Config)} once it is completely migrated.
+     */
+    public static boolean isLegacyLayout(Config config) {
+        return !Files.exists(getPath(config)) && hasLegacyStores(config);
+    }
+
+    /**
+     * true if a store of the former layout is left in the store dir
+     */
+    static boolean hasLegacyStores(Config config) {
+        for (DatabaseName name : DatabaseName.values()) {
+            if (Files.exists(getLegacyPath(config, name).resolve("CURRENT"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * directory of a store in the former layout
+     */
+    public static Path getLegacyPath(Config config, DatabaseName name) {
+        return Paths.get(config.getNodeSpec().getStoreDir(), name.toString());
+    }
+
+    static int prefixSeekLength(DatabaseName name) {
+        // time data source must set fixed prefix length
+        return name == DatabaseName.TIME ? 9 : 0;
+    }
+
+    public synchronized boolean isOpen() {
+        return db != null;
+    }
+
+    public synchronized void open() {
+        if (db != null) {
+            return;
+        }
+        blockCache = new LRUCache(BLOCK_CACHE_SIZE);
+        // memtables are charged to the block cache, so the whole db stays inside one budget
+        writeBufferManager = new WriteBufferManager(WRITE_BUFFER_SIZE, blockCache);
+        statistics = new Statistics();
+        statistics.setStatsLevel(StatsLevel.EXCEPT_DETAILED_TIMERS);
+        dbOptions = new DBOptions()
+                .setCreateIfMissing(true)
+                .setCreateMissingColumnFamilies(true)
+                .setMaxOpenFiles(config.getNodeSpec().getStoreMaxOpenFiles())
+                .setIncreaseParallelism(config.getNodeSpec().getStoreMaxThreads())
+                .setWriteBufferManager(writeBufferManager)
+                .setStatistics(statistics);
+
+        List<ColumnFamilyDescriptor> descriptors = Lists.newArrayList();
+        ColumnFamilyOptions defaultOptions = new ColumnFamilyOptions();
+        familyOptions.add(defaultOptions);
+        descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, defaultOptions));
+        for (DatabaseName name : DatabaseName.values()) {
+            descriptors.add(new ColumnFamilyDescriptor(name.toString().getBytes(StandardCharsets.UTF_8),
+                    newColumnFamilyOptions(name)));
+        }
+
+        List<ColumnFamilyHandle> opened = Lists.newArrayList();
+        try {
+            Files.createDirectories(path);
+            log.debug("Opening database {} with {} column families", path, descriptors.size());
+            db = RocksDB.open(dbOptions, path.toString(), descriptors, opened);
+        } catch (RocksDBException | IOException e) {
+            log.error(e.getMessage(), e);
+            close();
+            throw new RuntimeException("Failed to initialize database", e);
+        }
+        defaultHandle = opened.get(0);
+        DatabaseName[] names = DatabaseName.values();
+        for (int i = 0; i < names.length; i++) {
+            handles.put(names[i], opened.get(i + 1));
+        }
+        registerMetrics();
+    }
+
+    /**
+     * Per family tuning: the hot point-lookup families get bigger memtables and pinned filters,
+     * the cold ones stay small so they don't eat into the shared write buffer budget.
+     */
+    private ColumnFamilyOptions newColumnFamilyOptions(DatabaseName name) {
+        ColumnFamilyOptions options = new ColumnFamilyOptions();
+        familyOptions.add(options);
+        options.setCompressionType(CompressionType.LZ4_COMPRESSION);
+        options.setBottommostCompressionType(CompressionType.LZ4_COMPRESSION);
+        options.setLevelCompactionDynamicLevelBytes(true);
+        options.useFixedLengthPrefixExtractor(prefixSeekLength(name));
+        options.setMergeOperatorName(MERGE_OPERATOR);
+
+        BlockBasedTableConfig tableCfg = new BlockBasedTableConfig();
+        tableCfg.setBlockCache(blockCache);
+        tableCfg.setCacheIndexAndFilterBlocks(true);
+        tableCfg.setFilterPolicy(new BloomFilter(10, false));
+
+        switch (name) {
+            case INDEX, BLOCK, TIME -> {
+                options.setWriteBufferSize(32L * 1024 * 1024);
+                tableCfg.setBlockSize(16 * 1024);
+                tableCfg.setPinL0FilterAndIndexBlocksInCache(true);
+            }
+            case ADDRESS -> {
+                options.setWriteBufferSize(16L * 1024 * 1024);
+                tableCfg.setBlockSize(4 * 1024);
+                tableCfg.setPinL0FilterAndIndexBlocksInCache(true);
+            }
+            default -> {
+                options.setWriteBufferSize(8L * 1024 * 1024);
+                tableCfg.setBlockSize(16 * 1024);
+            }
+        }
+        options.setTableFormatConfig(tableCfg);
+        return options;
+    }
+
+    public synchronized ColumnFamilyHandle getColumnFamily(DatabaseName name) {
+        open();
+        ColumnFamilyHandle handle = handles.get(name);
+        if (handle == null) {
+            try {
+                handle = db.createColumnFamily(new ColumnFamilyDescriptor(
+                        name.toString().getBytes(StandardCharsets.UTF_8), newColumnFamilyOptions(name)));
+            } catch (RocksDBException e) {
+                log.error("Failed to create column family '{}'", name, e);
+                throw new RuntimeException(e);
+            }
+            handles.put(name, handle);
+        }
+        return handle;
+    }
+
+    /**
+     * Drop all data of one store, the family is recreated empty on next use.
+     */
+    public synchronized void dropColumnFamily(DatabaseName name) {
+        ColumnFamilyHandle handle = handles.remove(name);
+        if (handle == null) {
+            return;
+        }
+        try {
+            db.dropColumnFamily(handle);
+        } catch (RocksDBException e) {
+            log.error("Failed to drop column family '{}'", name, e);
+            throw new RuntimeException(e);
+        } finally {
+            handle.close();
+        }
+    }
+
+    public synchronized void close() {
+        for (ColumnFamilyHandle handle : handles.values()) {
+            handle.close();
+        }
+        handles.clear();
+        if (defaultHandle != null) {
+            defaultHandle.close();
+            defaultHandle = null;
+        }
+        if (db != null) {
+            db.close();
+            db = null;
+        }
+        for (ColumnFamilyOptions options : familyOptions) {
+            options.close();
+        }
+        familyOptions.clear();
+        if (dbOptions != null) {
+            dbOptions.close();
+            dbOptions = null;
+        }
+        if (writeBufferManager != null) {
+            writeBufferManager.close();
+            writeBufferManager = null;
+        }
+        if (blockCache != null) {
+            blockCache.close();
+            blockCache = null;
+        }
+        if (statistics != null) {
+            statistics.close();
+            statistics = null;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import static io.xdag.config.Constants.MIN_GAS;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
+import static io.xdag.db.BlockStore.TX_HISTORY_COUNT;
+import static io.xdag.db.BlockStore.TX_HISTORY_INDEX;
+import static io.xdag.db.BlockStore.TX_HISTORY_SEQ;
+import static io.xdag.utils.BasicUtils.hash2Address;
+import static io.xdag.utils.BasicUtils.hash2byte;
+import static io.xdag.utils.WalletUtils.checkAddress;
+import static io.xdag.utils.WalletUtils.toBase58;
+import static io.xdag.utils.XdagTime.xdagTimestampToMs;
+
+import com.google.common.collect.Lists;
+import io.xdag.core.Address;
+import io.xdag.core.TxHistory;
+import io.xdag.core.TxHistoryPage;
+import io.xdag.core.XAmount;
+import io.xdag.core.XdagField;
+import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.mysql.TransactionHistoryStoreImpl;
+import io.xdag.utils.BasicUtils;
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.rocksdb.RocksIterator;
+
+/**
+ * Transaction history kept in the TXHISTORY store next to the chain, for nodes running without MySQL.
+ * <p>
+ * Every record is stored under its index key, so the history of an address is one contiguous key
+ * range ordered by time:
+ * <pre>
+ * TX_HISTORY_INDEX | address (24) | time in ms (8, big-endian) | hash (24) | seq (8, big-endian)
+ * </pre>
+ * The sequence only keeps apart the records sharing address, time and hash. The records of every
+ * address are counted under TX_HISTORY_COUNT through the merge operator.
+ */
+@Slf4j
+public class RocksdbTransactionHistoryStore implements TransactionHistoryStore {
+
+    static final int ADDRESS_KEY_SIZE = 24;
+    private static final int TIME_OFFSET = 1 + ADDRESS_KEY_SIZE;
+    static final int INDEX_KEY_SIZE = TIME_OFFSET + 8 + ADDRESS_KEY_SIZE + 8;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final byte[] SEQ_KEY = BytesUtils.of(TX_HISTORY_SEQ);
+    private static final byte[] ONE = BytesUtils.longToBytes(1, true);
+    private static final byte[] LAST_HASH = new byte[ADDRESS_KEY_SIZE];
+
+    static {
+        Arrays.fill(LAST_HASH, (byte) 0xff);
+    }
+
+    private final RocksdbKVSource source;
+    private final long txPageSizeLimit;
+    private long seq;
+
+    public RocksdbTransactionHistoryStore(RocksdbKVSource source, long txPageSizeLimit) {
+        this.source = source;
+        this.txPageSizeLimit = txPageSizeLimit;
+    }
+
+    public synchronized void init() {
+        source.init();
+        byte[] value = source.get(SEQ_KEY);
+        seq = value == null ? 0 : BytesUtils.bytesToLong(value, 0, false);
+    }
+
+    @Override
+    public boolean saveTxHistory(TxHistory txHistory) {
+        return saveTxHistories(Collections.singletonList(txHistory));
+    }
+
+    /**
+     * Nothing is buffered, every record is written right away.
+     */
+    @Override
+    public boolean batchSaveTxHistory(TxHistory txHistory, int... cacheNum) {
+        return txHistory == null || saveTxHistory(txHistory);
+    }
+
+    @Override
+    public synchronized boolean saveTxHistories(List<TxHistory> txHistories) {
+        // join the batch of the caller if there is one
+        boolean ownBatch = !source.isInBatch();
+        long next = seq;
+        try {
+            if (ownBatch) {
+                source.beginBatch();
+            }
+            for (TxHistory txHistory : txHistories) {
+                Address address = txHistory.getAddress();
+                byte[] addressKey = addressKey(address.getIsAddress() ?
+                        toBase58(hash2byte(address.getAddress())) : hash2Address(address.getAddress()));
+                long time = xdagTimestampToMs(txHistory.getTimestamp());
+                source.put(indexKey(addressKey, time, hashKey(txHistory.getHash()), ++next), encode(txHistory));
+                source.merge(BytesUtils.merge(TX_HISTORY_COUNT, addressKey), ONE);
+            }
+            source.put(SEQ_KEY, BytesUtils.longToBytes(next, false));
+            if (ownBatch) {
+                source.commitBatch();
+            }
+            seq = next;
+            return true;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            if (ownBatch) {
+                source.rollbackBatch();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Takes the same parameters as the MySQL store: [page size], [start, end] or [start, end, page size].
+     * Without a time range the walk stops at the end of the page, the total comes from the counter.
+     */
+    @Override
+    public List<TxHistory> listTxHistoryByAddress(String address, int page, Object... parameters) {
+        List<TxHistory> txHistoryList = Lists.newArrayList();
+        int pageSize = DEFAULT_PAGE_SIZE;
+        long start = 0;
+        long end = System.currentTimeMillis();
+        if (parameters.length == 1 || parameters.length == 3) {
+            pageSize = pageSize(Integer.parseInt(parameters[parameters.length - 1].toString()));
+        }
+        boolean ranged = parameters.length >= 2;
+        if (ranged) {
+            start = parseTime(parameters[0]);
+            end = parseTime(parameters[1]);
+        }
+        byte[] addressKey = queryKey(address);
+        if (addressKey == null) {
+            TransactionHistoryStoreImpl.totalPage = 1;
+            return txHistoryList;
+        }
+
+        long from = (long) (Math.max(page, 1) - 1) * pageSize;
+        long to = from + pageSize;
+        long[] position = {0};
+        scan(addressKey, start, end, null, it -> {
+            long i = position[0]++;
+            if (i >= from && i < to) {
+                txHistoryList.add(decode(it.key(), it.value()));
+            }
+            return ranged || i + 1 < to;
+        });
+        long total = ranged ? position[0] : count(addressKey);
+        // read by the RPC module along with the page
+        TransactionHistoryStoreImpl.totalPage = total < pageSize ? 1 : (int) Math.ceil((double) total / pageSize);
+        return txHistoryList;
+    }
+
+    /**
+     * The cursor is the hex index key of the last record returned.
+     */
+    @Override
+    public TxHistoryPage listTxHistoryByAddress(String address, long start, long end, String cursor, int limit) {
+        List<TxHistory> txHistoryList = Lists.newArrayList();
+        byte[] addressKey = queryKey(address);
+        if (addressKey == null) {
+            return new TxHistoryPage(txHistoryList, null);
+        }
+        byte[] after = null;
+        if (cursor != null) {
+            after = Bytes.fromHexString(cursor).toArray();
+            if (after.length != INDEX_KEY_SIZE || !BytesUtils.keyStartsWith(after, BytesUtils.merge(TX_HISTORY_INDEX, addressKey))) {
+                throw new IllegalArgumentException("Invalid transaction history cursor " + cursor);
+            }
+        }
+
+        int pageSize = pageSize(limit);
+        byte[][] last = new byte[1][];
+        String[] next = new String[1];
+        scan(addressKey, start, end, after, it -> {
+            if (txHistoryList.size() == pageSize) {
+                next[0] = Bytes.wrap(last[0]).toUnprefixedHexString();
+                return false;
+            }
+            last[0] = it.key();
+            txHistoryList.add(decode(last[0], it.value()));
+            return true;
+        });
+        return new TxHistoryPage(txHistoryList, next[0]);
+    }
+
+    @Override
+    public int getTxHistoryCount(String address) {
+        byte[] addressKey = queryKey(address);
+        return addressKey == null ? 0 : (int) count(addressKey);
+    }
+
+    private long count(byte[] addressKey) {
+        byte[] value = source.get(BytesUtils.merge(TX_HISTORY_COUNT, addressKey));
+        return value == null ? 0 : BytesUtils.bytesToLong(value, 0, true);
+    }
+
+    /**
+     * Walk the records of the address newest first, from end or from just before the cursor key,
+     * down to start. The visitor returns false to stop.
+     */
+    private void scan(byte[] addressKey, long start, long end, byte[] after, Predicate<RocksIterator> visitor) {
+        byte[] prefix = BytesUtils.merge(TX_HISTORY_INDEX, addressKey);
+        byte[] from = after;
+        if (from == null || time(from) > end) {
+            from = indexKey(addressKey, end, LAST_HASH, -1);
+        }
+        try (RocksIterator it = source.newIterator()) {
+            it.seekForPrev(from);
+            if (it.isValid() && Arrays.equals(it.key(), after)) {
+                it.prev();
+            }
+            for (; it.isValid(); it.prev()) {
+                byte[] key = it.key();
+                if (key.length != INDEX_KEY_SIZE || !BytesUtils.keyStartsWith(key, prefix) || time(key) < start) {
+                    return;
+                }
+                if (!visitor.test(it)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private int pageSize(int pageSize) {
+        return (pageSize > 0 && pageSize <= txPageSizeLimit) ? pageSize : DEFAULT_PAGE_SIZE;
+    }
+
+    private static long parseTime(Object time) {
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(time.toString()).getTime();
+        } catch (ParseException e) {
+            return Long.parseLong(time.toString());
+        }
+    }
+
+    static byte[] indexKey(byte[] addressKey, long time, byte[] hashKey, long seq) {
+        return BytesUtils.merge(new byte[]{TX_HISTORY_INDEX}, addressKey, BytesUtils.longToBytes(time, false),
+                hashKey, BytesUtils.longToBytes(seq, false));
+    }
+
+    private static long time(byte[] key) {
+        return BytesUtils.bytesToLong(key, TIME_OFFSET, false);
+    }
+
+    /**
+     * The significant 24 bytes of the hash of a wallet (base58) or block (base64) address.
+     */
+    static byte[] addressKey(String address) {
+        Bytes32 hash = checkAddress(address) ? BasicUtils.pubAddress2Hash(address) : BasicUtils.address2Hash(address);
+        return hash.slice(8, ADDRESS_KEY_SIZE).toArray();
+    }
+
+    /**
+     * Unknown or malformed addresses have no history.
+     */
+    private static byte[] queryKey(String address) {
+        try {
+            return addressKey(address);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Only orders the records of the same time, a malformed hash must not keep the record out.
+     */
+    private static byte[] hashKey(String hash) {
+        byte[] key = hash == null ? null : queryKey(hash);
+        return key == null ? new byte[ADDRESS_KEY_SIZE] : key;
+    }
+
+    /**
+     * type + amount (nano, net of the fee for inputs like the MySQL store) + hash length + hash + remark
+     */
+    static byte[] encode(TxHistory txHistory) {
+        Address address = txHistory.getAddress();
+        XAmount amount = address.getType().equals(XDAG_FIELD_INPUT) ? address.getAmount().subtract(MIN_GAS) :
+                address.getAmount();
+        byte[] hash = txHistory.getHash() == null ? new byte[0] : txHistory.getHash().getBytes(StandardCharsets.UTF_8);
+        byte[] remark = txHistory.getRemark() == null ? new byte[0] :
+                txHistory.getRemark().trim().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 8 + 1 + hash.length + remark.length)
+                .put(address.getType().asByte())
+                .putLong(amount.toLong())
+                .put((byte) hash.length).put(hash)
+                .put(remark)
+                .array();
+    }
+
+    /**
+     * The record as the MySQL store reads it back: the address is the one of the transaction hash.
+     */
+    static TxHistory decode(byte[] key, byte[] value) {
+        ByteBuffer buf = ByteBuffer.wrap(value);
+        XdagField.FieldType type = XdagField.FieldType.fromByte(buf.get());
+        XAmount amount = XAmount.of(buf.getLong());
+        byte[] hashBytes = new byte[buf.get() & 0xff];
+        buf.get(hashBytes);
+        byte[] remark = new byte[buf.remaining()];
+        buf.get(remark);
+
+        String hash = new String(hashBytes, StandardCharsets.UTF_8);
+        boolean isAddress = checkAddress(hash);
+        TxHistory txHistory = new TxHistory();
+        txHistory.setHash(hash);
+        txHistory.setAddress(new Address(isAddress ? BasicUtils.pubAddress2Hash(hash) : BasicUtils.address2Hash(hash),
+                type, amount, isAddress));
+        txHistory.setRemark(new String(remark, StandardCharsets.UTF_8));
+        txHistory.setTimestamp(time(key));
+        return txHistory;
+    }
+}
@@ -112,7 +112,7 @@ public class SnapshotStoreImpl implements SnapshotStore {
     }
 
     public void makeSnapshot(RocksdbKVSource blockSource, RocksdbKVSource indexSource, boolean b) {
-        try (RocksIterator iter = indexSource.getDb().newIterator()) {
+        try (RocksIterator iter = indexSource.newIterator()) {
             for (iter.seek(new byte[]{HASH_BLOCK_INFO}); iter.isValid() && iter.key()[0] < SUMS_BLOCK_INFO; iter.next()) {
                 PreBlockInfo preBlockInfo;
                 BlockInfo blockInfo = new BlockInfo();
@@ -122,7 +122,7 @@ public class SnapshotStoreImpl implements SnapshotStore {
                             preBlockInfo = (PreBlockInfo) deserialize(iter.value(), PreBlockInfo.class);
                             setBlockInfo(blockInfo, preBlockInfo);
                         } else {
-                            blockInfo = (BlockInfo) deserialize(iter.value(), BlockInfo.class);
+                            blockInfo = deserializeBlockInfo(iter.value());
                         }
                     } catch (DeserializationException e) {
 //                        log.error("hash low:{}", Hex.toHexString(blockInfo.getHashlow()));
@@ -163,13 +163,13 @@ public class SnapshotStoreImpl implements SnapshotStore {
     }
 
     public void saveSnapshotToIndex(BlockStore blockStore, TransactionHistoryStore txHistoryStore, List<KeyPair> keys,long snapshotTime) {
-        try (RocksIterator iter = snapshotSource.getDb().newIterator()) {
+        try (RocksIterator iter = snapshotSource.newIterator()) {
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
                 if (iter.key()[0] == HASH_BLOCK_INFO) {
                     BlockInfo blockInfo = new BlockInfo();
                     if (iter.value() != null) {
                         try {
-                            blockInfo = (BlockInfo) deserialize(iter.value(), BlockInfo.class);
+                            blockInfo = deserializeBlockInfo(iter.value());
                         } catch (DeserializationException e) {
                             log.error("hash low:{}", Hex.toHexString(blockInfo.getHashlow()));
                             log.error("can't deserialize data:{}", Hex.toHexString(iter.value()));
@@ -247,7 +247,7 @@ public class SnapshotStoreImpl implements SnapshotStore {
 
     @Override
     public void saveAddress(BlockStore blockStore, AddressStore addressStore, TransactionHistoryStore txHistoryStore, List<KeyPair> keys, long snapshotTime) {
-        try (RocksIterator iter = snapshotSource.getDb().newIterator()) {
+        try (RocksIterator iter = snapshotSource.newIterator()) {
             for (iter.seekToFirst(); iter.isValid(); iter.next()) {
                 if (iter.key().length < 20) {
                     if (iter.key()[0] == ADDRESS_SIZE) {
@@ -284,6 +284,19 @@ public class SnapshotStoreImpl implements SnapshotStore {
         }
     }
 
+    /**
+     * The index holds {@link BlockInfoCodec} records, snapshots of former versions Kryo ones.
+     */
+    private BlockInfo deserializeBlockInfo(byte[] value) throws DeserializationException {
+        if (BlockInfoCodec.isEncoded(value)) {
+            return BlockInfoCodec.decode(value);
+        }
+        return (BlockInfo) deserialize(value, BlockInfo.class);
+    }
+
+    /**
+     * Snapshot entries stay Kryo encoded so that snapshots can still be loaded by former versions.
+     */
     public void save(RocksIterator iter, BlockInfo blockInfo) {
         byte[] value = null;
         try {
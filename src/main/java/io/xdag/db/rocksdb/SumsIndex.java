@@ -0,0 +1,273 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import static io.xdag.db.BlockStore.SUMS_BLOCK_INFO;
+import static io.xdag.db.BlockStore.SUMS_INDEX;
+
+import io.xdag.utils.BytesUtils;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.tuweni.bytes.Bytes;
+
+/**
+ * The sums files of {@link BlockStoreImpl}, 256 slots of (sum, size) little-endian longs each.
+ * <p>
+ * Every long is its own key {@code <prefix><file name><slot><0 sum|1 size>} updated by the
+ * {@link RocksdbStorage#MERGE_OPERATOR} merge operator, so saving a block writes 8 small merge
+ * operands, in the same batch as the block, instead of rewriting four 4 KB files. The files are
+ * assembled in memory on first use and then kept up to date. The view only holds committed sums,
+ * deltas added inside a batch stay with the calling thread until {@link #publish()} or
+ * {@link #discard()}.
+ */
+@Slf4j
+class SumsIndex {
+
+    static final int SLOTS = 256;
+    static final int FILE_SIZE = SLOTS * 16;
+
+    private static final int MIGRATE_BATCH_SIZE = 1000;
+    private final KVSource<byte[], byte[]> source;
+    private final ConcurrentHashMap<String, SumsFile> files = new ConcurrentHashMap<>();
+    /**
+     * orders loads of the view against pending deltas, see {@link #publish()}
+     */
+    private final AtomicLong clock = new AtomicLong();
+    private final ThreadLocal<Map<String, Delta>> pending = ThreadLocal.withInitial(HashMap::new);
+
+    SumsIndex(KVSource<byte[], byte[]> source) {
+        this.source = source;
+    }
+
+    /**
+     * @return a copy of the file, null if nothing was ever added to it
+     */
+    byte[] get(String name) {
+        byte[][] copy = new byte[1][];
+        files.compute(name, (k, file) -> {
+            file = file == null ? load(k) : file;
+            copy[0] = file.data == null ? null : file.data.clone();
+            return file;
+        });
+        Delta delta = isPending() ? pending.get().get(name) : null;
+        if (delta != null) {
+            copy[0] = delta.addTo(copy[0] == null ? new byte[FILE_SIZE] : copy[0]);
+        }
+        return copy[0];
+    }
+
+    void add(String name, int slot, long sum, long size) {
+        if (isPending()) {
+            pending.get().computeIfAbsent(name, k -> new Delta(clock.incrementAndGet())).add(slot, sum, size);
+        } else {
+            // in memory first, so that a concurrent load can't miss this delta
+            files.compute(name, (k, file) -> (file == null ? load(k) : file).add(slot, sum, size));
+        }
+        source.merge(key(name, slot, 0), BytesUtils.longToBytes(sum, true));
+        source.merge(key(name, slot, 1), BytesUtils.longToBytes(size, true));
+    }
+
+    void put(String name, Bytes sums) {
+        byte[] file = Arrays.copyOf(sums.toArrayUnsafe(), FILE_SIZE);
+        files.compute(name, (k, old) -> {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                source.put(key(name, slot, 0), Arrays.copyOfRange(file, slot * 16, slot * 16 + 8));
+                source.put(key(name, slot, 1), Arrays.copyOfRange(file, slot * 16 + 8, slot * 16 + 16));
+            }
+            return new SumsFile(file, clock.incrementAndGet());
+        });
+    }
+
+    /**
+     * Apply the deltas the calling thread added inside its batch, once the batch is committed.
+     */
+    void publish() {
+        Map<String, Delta> deltas = pending.get();
+        for (Map.Entry<String, Delta> entry : deltas.entrySet()) {
+            Delta delta = entry.getValue();
+            // a file loaded after the delta was added may already hold it, it is reloaded instead
+            files.computeIfPresent(entry.getKey(), (k, file) -> file.loaded > delta.since ? null : file.add(delta));
+        }
+        deltas.clear();
+    }
+
+    /**
+     * Drop the deltas the calling thread added inside its batch, once the batch is rolled back.
+     */
+    void discard() {
+        pending.get().clear();
+    }
+
+    /**
+     * Drop the in memory view, files are reloaded from the store on next use.
+     */
+    void invalidate() {
+        files.clear();
+    }
+
+    /**
+     * Split the Kryo encoded 4 KB files of former versions into merge keys. Each file is replaced
+     * in the same batch as its keys are written.
+     *
+     * @return number of migrated files
+     */
+    long migrate(UnaryOperator<byte[]> decoder) {
+        RocksdbKVSource batchSource = source instanceof RocksdbKVSource rocksdb && !rocksdb.isInBatch()
+                ? rocksdb : null;
+        long[] migrated = new long[1];
+        source.fetchPrefix(new byte[]{SUMS_BLOCK_INFO}, pair -> {
+            byte[] file = pair.getValue() == null ? null : decoder.apply(pair.getValue());
+            if (file == null) {
+                return Boolean.FALSE;
+            }
+            if (batchSource != null) {
+                batchSource.beginBatch();
+            }
+            String name = new String(pair.getKey(), 1, pair.getKey().length - 1, StandardCharsets.UTF_8);
+            for (int slot = 0; slot < SLOTS && slot * 16 + 16 <= file.length; slot++) {
+                // empty slots are implicit
+                if (BytesUtils.bytesToLong(file, slot * 16, true) != 0) {
+                    source.put(key(name, slot, 0), Arrays.copyOfRange(file, slot * 16, slot * 16 + 8));
+                }
+                if (BytesUtils.bytesToLong(file, slot * 16 + 8, true) != 0) {
+                    source.put(key(name, slot, 1), Arrays.copyOfRange(file, slot * 16 + 8, slot * 16 + 16));
+                }
+            }
+            source.delete(pair.getKey());
+            if (++migrated[0] % MIGRATE_BATCH_SIZE == 0 && batchSource != null) {
+                batchSource.commitBatch();
+            }
+            return Boolean.FALSE;
+        });
+        if (batchSource != null) {
+            batchSource.commitBatch();
+        }
+        files.clear();
+        return migrated[0];
+    }
+
+    private boolean isPending() {
+        return source instanceof RocksdbKVSource rocksdb && rocksdb.isInBatch();
+    }
+
+    private SumsFile load(String name) {
+        long loaded = clock.incrementAndGet();
+        byte[] prefix = BytesUtils.merge(SUMS_INDEX, name.getBytes(StandardCharsets.UTF_8));
+        byte[][] file = new byte[1][];
+        Function<Pair<byte[], byte[]>, Boolean> reader = pair -> {
+            byte[] key = pair.getKey();
+            // a longer file name starting with this one
+            if (key.length != prefix.length + 2 || pair.getValue() == null) {
+                return Boolean.FALSE;
+            }
+            if (file[0] == null) {
+                file[0] = new byte[FILE_SIZE];
+            }
+            int offset = (key[key.length - 2] & 0xff) * 16 + key[key.length - 1] * 8;
+            System.arraycopy(pair.getValue(), 0, file[0], offset, 8);
+            return Boolean.FALSE;
+        };
+        // the pending batch may hold merge operands, which its iterator can't resolve
+        if (source instanceof RocksdbKVSource rocksdb) {
+            rocksdb.fetchCommittedPrefix(prefix, reader);
+        } else {
+            source.fetchPrefix(prefix, reader);
+        }
+        return new SumsFile(file[0], loaded);
+    }
+
+    static byte[] key(String name, int slot, int field) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] key = new byte[bytes.length + 3];
+        key[0] = SUMS_INDEX;
+        System.arraycopy(bytes, 0, key, 1, bytes.length);
+        key[key.length - 2] = (byte) slot;
+        key[key.length - 1] = (byte) field;
+        return key;
+    }
+
+    private static final class SumsFile {
+
+        /**
+         * null while nothing was ever added
+         */
+        private byte[] data;
+        private final long loaded;
+
+        private SumsFile(byte[] data, long loaded) {
+            this.data = data;
+            this.loaded = loaded;
+        }
+
+        private SumsFile add(int slot, long sum, long size) {
+            if (data == null) {
+                data = new byte[FILE_SIZE];
+            }
+            ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putLong(slot * 16, buf.getLong(slot * 16) + sum);
+            buf.putLong(slot * 16 + 8, buf.getLong(slot * 16 + 8) + size);
+            return this;
+        }
+
+        private SumsFile add(Delta delta) {
+            data = delta.addTo(data == null ? new byte[FILE_SIZE] : data);
+            return this;
+        }
+    }
+
+    private static final class Delta {
+
+        private final long since;
+        private final long[] values = new long[SLOTS * 2];
+
+        private Delta(long since) {
+            this.since = since;
+        }
+
+        private void add(int slot, long sum, long size) {
+            values[slot * 2] += sum;
+            values[slot * 2 + 1] += size;
+        }
+
+        private byte[] addTo(byte[] file) {
+            ByteBuffer buf = ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != 0) {
+                    buf.putLong(i * 8, buf.getLong(i * 8) + values[i]);
+                }
+            }
+            return file;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Groups every mutation the calling thread makes to the underlying {@link RocksdbKVSource}s into
+ * one WriteBatch per database, written once on {@link #commit()}. Calls may nest, only the
+ * outermost commit writes. A rollback at any depth discards the whole unit of work.
+ * <p>
+ * Listeners run on the thread owning the unit, so they can publish or drop what that thread kept
+ * aside while the unit was pending.
+ */
+@Slf4j
+public class UnitOfWork {
+
+    private final Supplier<Collection<KVSource<byte[], byte[]>>> sources;
+    private final List<Runnable> commitListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> rollbackListeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private final ThreadLocal<Boolean> rollbackOnly = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    public UnitOfWork(Supplier<Collection<KVSource<byte[], byte[]>>> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Register an action to run once the outermost commit has written every batch, e.g. to
+     * publish cache entries only other threads may now see.
+     */
+    public void onCommit(Runnable listener) {
+        commitListeners.add(listener);
+    }
+
+    /**
+     * Register an action to run after a rollback, e.g. to drop caches filled by discarded writes.
+     */
+    public void onRollback(Runnable listener) {
+        rollbackListeners.add(listener);
+    }
+
+    public boolean isActive() {
+        return depth.get()[0] > 0;
+    }
+
+    public void begin() {
+        int[] d = depth.get();
+        if (d[0]++ == 0) {
+            rollbackOnly.set(Boolean.FALSE);
+            for (KVSource<byte[], byte[]> source : sources.get()) {
+                if (source instanceof RocksdbKVSource rocksdb) {
+                    rocksdb.beginBatch();
+                }
+            }
+        }
+    }
+
+    public void commit() {
+        int[] d = depth.get();
+        if (d[0] == 0) {
+            return;
+        }
+        if (--d[0] > 0) {
+            return;
+        }
+        if (rollbackOnly.get()) {
+            discard();
+            return;
+        }
+        try {
+            for (KVSource<byte[], byte[]> source : sources.get()) {
+                if (source instanceof RocksdbKVSource rocksdb) {
+                    rocksdb.commitBatch();
+                }
+            }
+        } catch (RuntimeException e) {
+            discard();
+            throw e;
+        }
+        run(commitListeners);
+    }
+
+    public void rollback() {
+        int[] d = depth.get();
+        if (d[0] == 0) {
+            return;
+        }
+        rollbackOnly.set(Boolean.TRUE);
+        if (--d[0] == 0) {
+            discard();
+        }
+    }
+
+    private void discard() {
+        for (KVSource<byte[], byte[]> source : sources.get()) {
+            if (source instanceof RocksdbKVSource rocksdb) {
+                rocksdb.rollbackBatch();
+            }
+        }
+        rollbackOnly.set(Boolean.FALSE);
+        run(rollbackListeners);
+    }
+
+    private static void run(List<Runnable> listeners) {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+}
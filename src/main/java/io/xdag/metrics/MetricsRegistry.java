@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics of the node, rendered in the Prometheus text format by {@link #scrape()}.
+ * <p>
+ * Components register on the {@link #getDefault() default registry} where they are created, so
+ * instrumenting a class does not change its constructor. Counters and histograms are shared by
+ * name, a gauge registered again replaces the previous one, i.e. the latest owner is reported.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Counter counter(String name, String help) {
+        return get(name, Counter.class, metrics.computeIfAbsent(name, n -> new Counter(n, help)));
+    }
+
+    public Histogram histogram(String name, String help) {
+        return histogram(name, help, Histogram.LATENCY_BUCKETS);
+    }
+
+    public Histogram histogram(String name, String help, double... buckets) {
+        return get(name, Histogram.class, metrics.computeIfAbsent(name, n -> new Histogram(n, help, buckets)));
+    }
+
+    public Gauge gauge(String name, String help, DoubleSupplier value) {
+        return register(new Gauge(name, help, "gauge", value));
+    }
+
+    /**
+     * Counter whose total is kept by its owner.
+     */
+    public Gauge counter(String name, String help, DoubleSupplier value) {
+        return register(new Gauge(name, help, "counter", value));
+    }
+
+    private Gauge register(Gauge gauge) {
+        String name = gauge.getName();
+        Metric previous = metrics.put(name, gauge);
+        if (previous != null && !(previous instanceof Gauge)) {
+            metrics.put(name, previous);
+            throw new IllegalArgumentException("Metric " + name + " is a " + previous.getType());
+        }
+        return gauge;
+    }
+
+    public Metric get(String name) {
+        return metrics.get(name);
+    }
+
+    public void remove(String name) {
+        metrics.remove(name);
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format 0.0.4, sorted by name.
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : metrics.values()) {
+            out.append("# HELP ").append(metric.getName()).append(' ')
+                    .append(metric.getHelp().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(metric.getName()).append(' ').append(metric.getType()).append('\n');
+            try {
+                metric.write(out);
+            } catch (RuntimeException e) {
+                // an owner that is gone or failing must not break the whole scrape
+                out.append("# ").append(metric.getName()).append(" unavailable\n");
+            }
+        }
+        return out.toString();
+    }
+
+    static String format(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            return "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static <T extends Metric> T get(String name, Class<T> type, Metric metric) {
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + metric.getType());
+        }
+        return type.cast(metric);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.xdag.core.Block;
+import io.xdag.metrics.Counter;
+import io.xdag.metrics.MetricsRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Relays new blocks to the peers without sending a block over a connection that already carried it.
+ * <p>
+ * Each peer keeps a filter of the blocks it is known to have, those it sent us and those we sent or
+ * announced to it, and is skipped for them. About the square root of the remaining peers get the full
+ * block so propagation doesn't wait for a round trip, the others get the hash only and request the
+ * block if they miss it. Blocks made by this node, and any block sent to peers without
+ * {@link Capability#BLOCK_ANNOUNCE}, always go in full.
+ * <p>
+ * An announced block is requested from one announcer at a time. The next few announcers are kept,
+ * and the block is requested from the next of them when the request times out or its peer goes away.
+ */
+public class BlockAnnouncer {
+
+    private static final int IN_FLIGHT_SIZE = 65536;
+    private static final long IN_FLIGHT_SECONDS = 30;
+    /**
+     * Announcers kept per block besides the one asked.
+     */
+    static final int MAX_ANNOUNCERS = 4;
+    static final long REQUEST_TIMEOUT_MILLIS = 2000;
+
+    private static final Counter FULL_BLOCKS = MetricsRegistry.getDefault()
+            .counter("xdag_block_relay_full_total", "New blocks pushed to peers in full");
+    private static final Counter HASHES = MetricsRegistry.getDefault()
+            .counter("xdag_block_relay_hashes_total", "New blocks announced to peers by hash");
+    private static final Counter SKIPPED = MetricsRegistry.getDefault()
+            .counter("xdag_block_relay_skipped_total", "New blocks not relayed to a peer known to have them");
+    private static final Counter REQUESTED = MetricsRegistry.getDefault()
+            .counter("xdag_block_announce_requests_total", "Announced blocks requested from the announcing peer");
+    private static final Counter RETRIED = MetricsRegistry.getDefault()
+            .counter("xdag_block_announce_retries_total", "Announced blocks requested again from another announcer");
+
+    /**
+     * A peer new blocks are relayed to.
+     */
+    public interface Target {
+
+        boolean isBlockKnown(Bytes32 hashLow);
+
+        void markBlockKnown(Bytes32 hashLow);
+
+        boolean isAnnounceSupported();
+
+        void sendNewBlock(Block block, int ttl);
+
+        void sendNewBlockHash(Bytes32 hashLow, int ttl);
+
+        void requestBlock(Bytes32 hashLow);
+    }
+
+    /**
+     * A block received or announced lately.
+     */
+    private static final class InFlight {
+        /**
+         * TTL the block is relayed with
+         */
+        final int ttl;
+        /**
+         * announcers not asked yet, oldest first
+         */
+        final Deque<Target> announcers = new ArrayDeque<>();
+        Target requested;
+        long requestedAt;
+        boolean received;
+
+        InFlight(int ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    /**
+     * Blocks received or requested lately.
+     */
+    private final Cache<Bytes32, InFlight> inFlight = Caffeine.newBuilder()
+            .maximumSize(IN_FLIGHT_SIZE)
+            .expireAfterWrite(IN_FLIGHT_SECONDS, TimeUnit.SECONDS)
+            .build();
+    /**
+     * Blocks requested and not received yet.
+     */
+    private final Map<Bytes32, InFlight> requested = new ConcurrentHashMap<>();
+
+    /**
+     * current time in milliseconds
+     */
+    private final LongSupplier clock;
+
+    public BlockAnnouncer() {
+        this(System::currentTimeMillis);
+    }
+
+    BlockAnnouncer(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Sends the block, or its hash, to each target not known to have it.
+     *
+     * @param local true if the block was made by this node, no peer can have it yet
+     */
+    public void announce(Block block, int ttl, boolean local, Collection<? extends Target> targets) {
+        Bytes32 hashLow = block.getHashLow();
+        List<Target> candidates = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            if (target.isBlockKnown(hashLow)) {
+                SKIPPED.inc();
+            } else {
+                candidates.add(target);
+            }
+        }
+        Collections.shuffle(candidates, ThreadLocalRandom.current());
+
+        int push = local ? candidates.size() : fullBlockPeers(candidates.size());
+        for (Target target : candidates) {
+            target.markBlockKnown(hashLow);
+            if (push > 0 || !target.isAnnounceSupported()) {
+                push--;
+                FULL_BLOCKS.inc();
+                target.sendNewBlock(block, ttl);
+            } else {
+                HASHES.inc();
+                target.sendNewBlockHash(hashLow, ttl);
+            }
+        }
+    }
+
+    /**
+     * Records a block received in full.
+     *
+     * @return the TTL to relay the block with, the announced one if the block was requested
+     */
+    public int onBlockReceived(Bytes32 hashLow, int ttl) {
+        InFlight received = new InFlight(ttl);
+        received.received = true;
+        InFlight block = inFlight.asMap().putIfAbsent(hashLow, received);
+        if (block == null) {
+            return ttl;
+        }
+        synchronized (block) {
+            block.received = true;
+            block.requested = null;
+            block.announcers.clear();
+        }
+        requested.remove(hashLow);
+        return Math.min(block.ttl, ttl);
+    }
+
+    /**
+     * @return true if the block was received or announced lately, an announcement of it needs no
+     *         look-up in the chain
+     */
+    public boolean isInFlight(Bytes32 hashLow) {
+        return inFlight.getIfPresent(hashLow) != null;
+    }
+
+    /**
+     * Records an announcement of a block this node doesn't have. The block is requested from the
+     * announcer, unless it is received or requested from another one already. In that case the
+     * announcer is kept to ask next.
+     */
+    public void onAnnounced(Bytes32 hashLow, int ttl, Target from) {
+        InFlight block = inFlight.get(hashLow, k -> new InFlight(ttl));
+        synchronized (block) {
+            if (block.received || block.requested == from || block.announcers.contains(from)) {
+                return;
+            }
+            if (block.requested != null) {
+                if (block.announcers.size() < MAX_ANNOUNCERS) {
+                    block.announcers.add(from);
+                }
+                return;
+            }
+            block.requested = from;
+            block.requestedAt = clock.getAsLong();
+            requested.put(hashLow, block);
+        }
+        REQUESTED.inc();
+        from.requestBlock(hashLow);
+    }
+
+    /**
+     * Requests the blocks not received in time from their next announcer.
+     */
+    public void checkTimeouts() {
+        long now = clock.getAsLong();
+        for (Map.Entry<Bytes32, InFlight> entry : requested.entrySet()) {
+            InFlight block = entry.getValue();
+            Target next;
+            synchronized (block) {
+                if (block.requested == null || now - block.requestedAt < REQUEST_TIMEOUT_MILLIS) {
+                    continue;
+                }
+                next = requestNext(entry.getKey(), block, now);
+            }
+            retry(entry.getKey(), next);
+        }
+    }
+
+    /**
+     * Forgets a peer that went away, and requests the blocks that were asked from it from their next
+     * announcer.
+     */
+    public void onDisconnected(Target target) {
+        long now = clock.getAsLong();
+        for (Map.Entry<Bytes32, InFlight> entry : requested.entrySet()) {
+            InFlight block = entry.getValue();
+            Target next;
+            synchronized (block) {
+                block.announcers.remove(target);
+                if (block.requested != target) {
+                    continue;
+                }
+                next = requestNext(entry.getKey(), block, now);
+            }
+            retry(entry.getKey(), next);
+        }
+    }
+
+    /**
+     * Moves the request of the block to its next announcer, if there is one left.
+     */
+    private Target requestNext(Bytes32 hashLow, InFlight block, long now) {
+        Target next = block.announcers.poll();
+        block.requested = next;
+        block.requestedAt = now;
+        if (next == null) {
+            // asked again once it is announced again
+            requested.remove(hashLow, block);
+        }
+        return next;
+    }
+
+    private static void retry(Bytes32 hashLow, Target next) {
+        if (next != null) {
+            RETRIED.inc();
+            next.requestBlock(hashLow);
+        }
+    }
+
+    /**
+     * Number of peers that get a new block in full.
+     */
+    static int fullBlockPeers(int peers) {
+        return (int) Math.ceil(Math.sqrt(peers));
+    }
+}
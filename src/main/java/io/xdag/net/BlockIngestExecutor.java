@@ -0,0 +1,162 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * Runs block messages off the Netty I/O threads.
+ * <p>
+ * Every channel has its own queue, executed in order and one task at a time. A channel with work
+ * holds at most one slot in the worker queue and gives it up after each task, so busy peers are
+ * served round robin. When a channel has more than highWater tasks queued its reads are paused
+ * until the queue drains below lowWater.
+ */
+@Slf4j
+public class BlockIngestExecutor {
+
+    public static final int DEFAULT_HIGH_WATER = 1024;
+    public static final int DEFAULT_LOW_WATER = 256;
+
+    private static final ThreadFactory factory = new BasicThreadFactory.Builder()
+            .namingPattern("block-ingest-%d")
+            .daemon(true)
+            .build();
+
+    private final ExecutorService workers;
+    private final int highWater;
+    private final int lowWater;
+    private final Map<Channel, PeerQueue> queues = new ConcurrentHashMap<>();
+
+    public BlockIngestExecutor(int threads, int highWater, int lowWater) {
+        this.workers = Executors.newFixedThreadPool(threads, factory);
+        this.highWater = highWater;
+        this.lowWater = lowWater;
+    }
+
+    public BlockIngestExecutor() {
+        this(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_HIGH_WATER, DEFAULT_LOW_WATER);
+    }
+
+    public void submit(Channel channel, Runnable task) {
+        queues.computeIfAbsent(channel, PeerQueue::new).submit(task);
+    }
+
+    /**
+     * Queued tasks of the channel, 0 if none.
+     */
+    public int queued(Channel channel) {
+        PeerQueue queue = queues.get(channel);
+        return queue == null ? 0 : queue.size.get();
+    }
+
+    /**
+     * Queued tasks of all channels.
+     */
+    public int queued() {
+        int total = 0;
+        for (PeerQueue queue : queues.values()) {
+            total += queue.size.get();
+        }
+        return total;
+    }
+
+    /**
+     * Forget a closed channel, tasks already queued still run.
+     */
+    public void remove(Channel channel) {
+        queues.remove(channel);
+    }
+
+    public void stop() {
+        workers.shutdownNow();
+        queues.clear();
+    }
+
+    private class PeerQueue implements Runnable {
+
+        private final Channel channel;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean paused = new AtomicBoolean();
+
+        PeerQueue(Channel channel) {
+            this.channel = channel;
+        }
+
+        void submit(Runnable task) {
+            tasks.add(task);
+            if (size.incrementAndGet() >= highWater && paused.compareAndSet(false, true)) {
+                log.debug("Pause reading from {}, {} blocks queued", channel.getRemoteAddress(), size.get());
+                setAutoRead(false);
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Runnable task = tasks.poll();
+            if (task != null) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    log.error("Failed to process block from {}", channel.getRemoteAddress(), e);
+                }
+                if (size.decrementAndGet() <= lowWater && paused.compareAndSet(true, false)) {
+                    log.debug("Resume reading from {}", channel.getRemoteAddress());
+                    setAutoRead(true);
+                }
+            }
+            scheduled.set(false);
+            // back of the line, behind the other channels
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void setAutoRead(boolean autoRead) {
+            if (channel.getSocket() != null) {
+                channel.getSocket().config().setAutoRead(autoRead);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net;
+
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.xdag.core.Block;
+import io.xdag.db.BlockStore;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.consensus.SyncBlockMessage;
+import io.xdag.utils.BlockUtils;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+/**
+ * Answers the block range requests of one peer by streaming the blocks out of the time index.
+ * <p>
+ * The blocks are read a page at a time and written straight to the channel, only while it is
+ * writable and less than budget bytes are written but not yet sent. Requests are served in order,
+ * each one followed by its reply message, so a whole-history sync needs no more heap than the
+ * budget and one page of blocks.
+ */
+@Slf4j
+public class BlockRangeResponder implements Runnable {
+
+    public static final int DEFAULT_BUDGET = 1024 * 1024;
+    static final int PAGE_SIZE = 64;
+
+    private static final ExecutorService workers = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+            new BasicThreadFactory.Builder()
+                    .namingPattern("block-range-%d")
+                    .daemon(true)
+                    .build());
+
+    private final BlockStore blockStore;
+    private final int budget;
+    private final Executor executor;
+    private final Queue<Range> ranges = new ConcurrentLinkedQueue<>();
+    private final AtomicLong unsent = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile ChannelHandlerContext ctx;
+    private volatile boolean closed;
+
+    public BlockRangeResponder(BlockStore blockStore, int budget, Executor executor) {
+        this.blockStore = blockStore;
+        this.budget = budget;
+        this.executor = executor;
+    }
+
+    public BlockRangeResponder(BlockStore blockStore) {
+        this(blockStore, DEFAULT_BUDGET, workers);
+    }
+
+    public void activate(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Send the blocks of [startTime, endTime) and then the reply.
+     */
+    public void submit(long startTime, long endTime, Supplier<Message> reply) {
+        ranges.add(new Range(startTime, endTime, reply));
+        schedule();
+    }
+
+    /**
+     * Resume after the channel became writable again.
+     */
+    public void schedule() {
+        if (!closed && ctx != null && !ranges.isEmpty() && scheduled.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * Drop the ranges not sent yet.
+     */
+    public void close() {
+        closed = true;
+        ranges.clear();
+    }
+
+    /**
+     * Bytes written to the channel and not sent yet.
+     */
+    public long unsent() {
+        return unsent.get();
+    }
+
+    public int pending() {
+        return ranges.size();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (canSend()) {
+                Range range = ranges.peek();
+                if (range == null) {
+                    break;
+                }
+                List<byte[]> keys = blockStore.getBlockTimeKeys(range.startTime, range.endTime, range.after, PAGE_SIZE);
+                int sent = 0;
+                for (byte[] key : keys) {
+                    if (sent > 0 && !canSend()) {
+                        // the rest of the page is read again on resume
+                        break;
+                    }
+                    range.after = key;
+                    Block block = blockStore.getBlockByHash(BlockUtils.getHashlowOfTimeKey(key), true);
+                    if (block != null) {
+                        write(new SyncBlockMessage(block, 1));
+                    }
+                    sent++;
+                }
+                if (sent == keys.size() && keys.size() < PAGE_SIZE) {
+                    ranges.poll();
+                    write(range.reply.get());
+                }
+                ctx.flush();
+            }
+        } catch (Exception e) {
+            log.error("Failed to send blocks to {}", ctx.channel().remoteAddress(), e);
+            close();
+        } finally {
+            scheduled.set(false);
+        }
+        // a write may have completed, or a request arrived, while this run was finishing
+        if (canSend()) {
+            schedule();
+        }
+    }
+
+    private boolean canSend() {
+        return !closed && ctx.channel().isWritable() && unsent.get() < budget;
+    }
+
+    private void write(Message msg) {
+        long size = msg.getBody().length;
+        unsent.addAndGet(size);
+        ctx.write(msg).addListener((ChannelFutureListener) future -> {
+            if (unsent.addAndGet(-size) < budget / 2) {
+                schedule();
+            }
+        });
+    }
+
+    private static class Range {
+        final long startTime;
+        final long endTime;
+        final Supplier<Message> reply;
+        /**
+         * time index key of the last block sent
+         */
+        byte[] after;
+
+        Range(long startTime, long endTime, Supplier<Message> reply) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.reply = reply;
+        }
+    }
+}
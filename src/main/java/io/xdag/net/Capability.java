@@ -31,7 +31,11 @@ public enum Capability {
     /**
      * light node.
      */
-    LIGHT_NODE;
+    LIGHT_NODE,
+    /**
+     * understands NEW_BLOCK_HASH announcements.
+     */
+    BLOCK_ANNOUNCE;
 
     public static Capability of(String name) {
         try {
@@ -24,24 +24,31 @@
 
 package io.xdag.net;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.xdag.Kernel;
+import io.xdag.core.Block;
 import io.xdag.net.message.MessageQueue;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.TimeUnit;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.tuweni.bytes.Bytes32;
 
 /**
  * @author wawa
  */
 @Getter
 @Setter
-public class Channel {
+public class Channel implements BlockAnnouncer.Target {
+
+    private static final int KNOWN_BLOCKS_SIZE = 1024;
 
     private SocketChannel socket;
     private boolean isInbound;
@@ -50,6 +57,12 @@ public class Channel {
     private MessageQueue msgQueue;
     private boolean isActive;
     private XdagP2pHandler p2pHandler;
+    private boolean announceSupported;
+    /**
+     * Latest blocks the remote peer sent us or got from us.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Cache<Bytes32, Boolean> knownBlocks = Caffeine.newBuilder().maximumSize(KNOWN_BLOCKS_SIZE).build();
 
     /**
      * Creates a new channel instance.
@@ -102,6 +115,8 @@ public class Channel {
 
     public void setActive(Peer remotePeer) {
         this.remotePeer = remotePeer;
+        this.announceSupported = CapabilityTreeSet.of(remotePeer.getCapabilities())
+                .isSupported(Capability.BLOCK_ANNOUNCE);
         this.isActive = true;
     }
 
@@ -109,6 +124,36 @@ public class Channel {
         this.isActive = false;
     }
 
+    @Override
+    public boolean isBlockKnown(Bytes32 hashLow) {
+        return knownBlocks.getIfPresent(hashLow) != null;
+    }
+
+    @Override
+    public void markBlockKnown(Bytes32 hashLow) {
+        knownBlocks.put(hashLow, Boolean.TRUE);
+    }
+
+    @Override
+    public boolean isAnnounceSupported() {
+        return announceSupported;
+    }
+
+    @Override
+    public void sendNewBlock(Block block, int ttl) {
+        p2pHandler.sendNewBlock(block, ttl);
+    }
+
+    @Override
+    public void sendNewBlockHash(Bytes32 hashLow, int ttl) {
+        p2pHandler.sendNewBlockHash(hashLow, ttl);
+    }
+
+    @Override
+    public void requestBlock(Bytes32 hashLow) {
+        p2pHandler.requestBlock(hashLow);
+    }
+
     public String getRemoteIp() {
         return remoteAddress.getAddress().getHostAddress();
     }
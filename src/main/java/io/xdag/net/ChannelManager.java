@@ -28,6 +28,7 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import io.xdag.Kernel;
 import io.xdag.core.BlockWrapper;
+import io.xdag.metrics.MetricsRegistry;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -36,10 +37,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
 @Slf4j
 public class ChannelManager {
@@ -57,6 +62,17 @@ public class ChannelManager {
 
     private static final int LRU_CACHE_SIZE = 1024;
 
+    @Getter
+    private final BlockAnnouncer blockAnnouncer = new BlockAnnouncer();
+    /**
+     * Moves announced block requests that timed out to the next announcer
+     */
+    private final ScheduledExecutorService announceTimer = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder()
+                    .namingPattern("block-announce-%d")
+                    .daemon(true)
+                    .build());
+
     @Getter
     private final Cache<InetSocketAddress, Long> channelLastConnect = Caffeine.newBuilder().maximumSize(LRU_CACHE_SIZE).build();
 
@@ -66,10 +82,23 @@ public class ChannelManager {
         // Resending new blocks to network in loop
         this.blockDistributeThread = new Thread(this::newBlocksDistributeLoop, "NewSyncThreadBlocks");
         initWhiteIPs();
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        registry.gauge("xdag_new_foreign_blocks_queued", "New blocks waiting to be relayed to peers",
+                newForeignBlocks::size);
+        registry.gauge("xdag_channels_active", "Connected peers", activeChannels::size);
+        registry.gauge("xdag_message_queue_size", "Messages queued for sending over all peers", () -> {
+            long total = 0;
+            for (Channel channel : activeChannels.values()) {
+                total += channel.getMessageQueue().size();
+            }
+            return total;
+        });
     }
 
     public void start() {
         blockDistributeThread.start();
+        announceTimer.scheduleAtFixedRate(blockAnnouncer::checkTimeouts, BlockAnnouncer.REQUEST_TIMEOUT_MILLIS / 4,
+                BlockAnnouncer.REQUEST_TIMEOUT_MILLIS / 4, TimeUnit.MILLISECONDS);
     }
 
     public boolean isAcceptable(InetSocketAddress address) {
@@ -205,26 +234,12 @@ public class ChannelManager {
         }
     }
 
-    // TODO:怎么发送 目前是发给除receive的节点
+    /**
+     * Relays a new block to the peers that are not known to have it, the sender included.
+     */
     public void sendNewBlock(BlockWrapper blockWrapper) {
-//        Node receive;
-//        Peer blockPeer = blockWrapper.getRemotePeer();
-//        Node node = kernel.getClient().getNode();
-//        // 说明是自己产生的
-//        if (blockPeer == null || (StringUtils.equals(blockPeer.getIp(), node.getIp()) && blockPeer.getPort() == node.getPort())) {
-//            receive = node;
-//        } else {
-//            Channel channel = activeChannels.get(blockWrapper.getRemotePeer().getPeerId());
-//            receive = channel != null ? new Node(channel.getRemoteIp(), channel.getRemotePort()) : null;
-//        }
-        for (Channel channel : activeChannels.values()) {
-//            Peer remotePeer = channel.getRemotePeer();
-//            if (StringUtils.equals(remotePeer.getIp(), receive.getIp()) && remotePeer.getPort() == receive.getPort()) {
-//                log.debug("not send to sender node");
-//                continue;
-//            }
-            channel.getP2pHandler().sendNewBlock(blockWrapper.getBlock(), blockWrapper.getTtl());
-        }
+        blockAnnouncer.announce(blockWrapper.getBlock(), blockWrapper.getTtl(), blockWrapper.getRemotePeer() == null,
+                activeChannels.values());
     }
 
     public void onNewForeignBlock(BlockWrapper blockWrapper) {
@@ -249,6 +264,7 @@ public class ChannelManager {
             // 中断
             blockDistributeThread.interrupt();
         }
+        announceTimer.shutdownNow();
         // 关闭所有连接
         for (Channel channel : activeChannels.values()) {
             channel.close();
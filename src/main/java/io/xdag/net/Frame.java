@@ -35,6 +35,7 @@ import lombok.Setter;
  * <li><code>HEADER := VERSION + COMPRESS_TYPE + PACKET_TYPE + PACKET_ID + PACKET_SIZE + BODY_SIZE</code></li>
  * <li><code>BODY := BINARY_DATA</code></li>
  * </ul>
+ * The body is a slice of a pooled buffer; whoever takes the frame off the pipeline releases it.
  */
 @Getter
 @Setter
@@ -52,10 +53,10 @@ public class Frame {
     protected final int packetSize;    /* packet size,   4 bytes */
     protected final int bodySize;      /* body size,     4 bytes */
 
-    protected byte[] body;
+    protected ByteBuf body;
 
     public Frame(short version, byte compressType, byte packetType, int packetId, int packetSize, int bodySize,
-            byte[] body) {
+            ByteBuf body) {
         this.version = version;
         this.compressType = compressType;
         this.packetType = packetType;
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageCodec;
 import io.xdag.config.Config;
@@ -43,9 +44,12 @@ public class XdagFrameHandler extends ByteToMessageCodec<Frame>  {
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Frame frame, ByteBuf out) throws Exception {
+        ByteBuf body = frame.getBody();
+
         // check version
         if (frame.getVersion() != Frame.VERSION) {
             log.error("Invalid frame version: {}", frame.getVersion());
+            body.release();
             return;
         }
 
@@ -53,18 +57,18 @@ public class XdagFrameHandler extends ByteToMessageCodec<Frame>  {
         int bodySize = frame.getBodySize();
         if (bodySize < 0 || bodySize > config.getNodeSpec().getNetMaxFrameBodySize()) {
             log.error("Invalid frame body size: {}", bodySize);
+            body.release();
             return;
         }
 
-        // create a buffer
-        ByteBuf buf = out.alloc().buffer(Frame.HEADER_SIZE + bodySize);
-        frame.writeHeader(buf);
-        buf.writeBytes(frame.getBody());
+        // the body is written as is after the header, without copying it
+        ByteBuf header = ctx.alloc().buffer(Frame.HEADER_SIZE);
+        frame.writeHeader(header);
 
         // NOTE: write() operation does not flush automatically
 
         // write to context
-        ctx.write(buf);
+        ctx.write(Unpooled.wrappedBuffer(header, body));
     }
 
     @Override
@@ -92,10 +96,8 @@ public class XdagFrameHandler extends ByteToMessageCodec<Frame>  {
             // reset reader index if not available
             in.readerIndex(readerIndex);
         } else {
-            // read body
-            byte[] body = new byte[bodySize];
-            in.readBytes(body);
-            frame.setBody(body);
+            // read body, a slice of the input released by the message handler
+            frame.setBody(in.readRetainedSlice(bodySize));
 
             // deliver
             out.add(frame);
@@ -21,36 +21,70 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
+
 package io.xdag.net;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.xerial.snappy.Snappy;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 import io.xdag.config.Config;
+import io.xdag.metrics.Counter;
+import io.xdag.metrics.MetricsRegistry;
 import io.xdag.net.message.Message;
 import io.xdag.net.message.MessageException;
 import io.xdag.net.message.MessageFactory;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Compresses messages into frames and reassembles frames into messages.
+ * <p>
+ * Outgoing packets are compressed from the message body into a pooled direct buffer and each frame
+ * is a slice of it, so the socket write does not copy them again. Incoming frames are slices of the
+ * read buffer and are decompressed where they are; a packet in several frames is gathered into one
+ * pooled buffer and decompressed from there. Reassembly is per channel and runs on the channel's
+ * event loop, so it needs no lock, and the packets still missing frames are bounded by the bytes
+ * they announce.
+ */
 @Slf4j
 public class XdagMessageHandler extends MessageToMessageCodec<Frame, Message>  {
-    private static final int MAX_PACKETS = 16;
+    /**
+     * Packets of the largest size that can be waiting for frames on one channel at once.
+     */
+    private static final int MAX_INCOMPLETE_PACKETS = 2;
 
     private static final byte COMPRESS_TYPE = Frame.COMPRESS_SNAPPY;
 
-    private final Cache<Integer, Pair<List<Frame>, AtomicInteger>> incompletePackets = Caffeine.newBuilder()
-            .maximumSize(MAX_PACKETS).build();
+    private static final Counter DROPPED = MetricsRegistry.getDefault()
+            .counter("xdag_net_incomplete_packets_dropped_total", "Chunked packets dropped before all their frames arrived");
+
+    private static final class IncompletePacket {
+        final Frame head;
+        final ByteBuf data;
+
+        IncompletePacket(Frame head, ByteBuf data) {
+            this.head = head;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Chunked packets still missing frames by packet id, oldest first.
+     */
+    private final Map<Integer, IncompletePacket> incompletePackets = new LinkedHashMap<>();
+    private long incompleteBytes;
 
     private final Config config;
 
@@ -58,10 +92,12 @@ public class XdagMessageHandler extends MessageToMessageCodec<Frame, Message>  {
     private final AtomicInteger count;
 
     private final int netMaxPacketSize;
+    private final long maxIncompleteBytes;
 
     public XdagMessageHandler(Config config) {
         this.config = config;
         this.netMaxPacketSize = config.getNodeSpec().getNetMaxPacketSize();
+        this.maxIncompleteBytes = (long) MAX_INCOMPLETE_PACKETS * netMaxPacketSize;
         this.messageFactory = new MessageFactory();
         this.count = new AtomicInteger(0);
     }
@@ -69,70 +105,58 @@ public class XdagMessageHandler extends MessageToMessageCodec<Frame, Message>  {
     @Override
     protected void encode(ChannelHandlerContext ctx, Message msg, List<Object> out) throws Exception {
         byte[] data = msg.getBody();
-        byte[] dataCompressed = data;
+        if (data.length > netMaxPacketSize) {
+            log.error("Invalid packet size, max = {}, actual = {}", netMaxPacketSize, data.length);
+            return;
+        }
 
+        ByteBuf packet;
         switch (COMPRESS_TYPE) {
         case Frame.COMPRESS_SNAPPY:
-            dataCompressed = Snappy.compress(data);
+            packet = compress(ctx.alloc(), data);
             break;
         case Frame.COMPRESS_NONE:
+            packet = Unpooled.wrappedBuffer(data);
             break;
         default:
             log.error("Unsupported compress type: " + COMPRESS_TYPE);
             return;
         }
 
-        byte packetType = msg.getCode().toByte();
-        int packetId = count.incrementAndGet();
-        int packetSize = dataCompressed.length;
-
-        if (data.length > netMaxPacketSize || dataCompressed.length > netMaxPacketSize) {
-            log.error("Invalid packet size, max = {}, actual = {}", netMaxPacketSize, packetSize);
-            return;
-        }
+        try {
+            byte packetType = msg.getCode().toByte();
+            int packetId = count.incrementAndGet();
+            int packetSize = packet.readableBytes();
 
-        int limit = config.getNodeSpec().getNetMaxFrameBodySize();
-        int total = (dataCompressed.length - 1) / limit + 1;
-        for (int i = 0; i < total; i++) {
-            byte[] body = new byte[(i < total - 1) ? limit : dataCompressed.length % limit];
-            System.arraycopy(dataCompressed, i * limit, body, 0, body.length);
+            if (packetSize > netMaxPacketSize) {
+                log.error("Invalid packet size, max = {}, actual = {}", netMaxPacketSize, packetSize);
+                return;
+            }
 
-            out.add(new Frame(Frame.VERSION, COMPRESS_TYPE, packetType, packetId, packetSize, body.length, body));
+            int limit = config.getNodeSpec().getNetMaxFrameBodySize();
+            int offset = 0;
+            do {
+                int bodySize = Math.min(limit, packetSize - offset);
+                ByteBuf body = packet.retainedSlice(packet.readerIndex() + offset, bodySize);
+                out.add(new Frame(Frame.VERSION, COMPRESS_TYPE, packetType, packetId, packetSize, bodySize, body));
+                offset += bodySize;
+            } while (offset < packetSize);
+        } finally {
+            packet.release();
         }
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, Frame frame, List<Object> out) throws Exception {
-        Message decodedMsg = null;
-
-        if (frame.isChunked()) {
-            synchronized (incompletePackets) {
-                int packetId = frame.getPacketId();
-                Pair<List<Frame>, AtomicInteger> pair = incompletePackets.getIfPresent(packetId);
-                if (pair == null) {
-                    int packetSize = frame.getPacketSize();
-                    if (packetSize < 0 || packetSize > netMaxPacketSize) {
-                        // this will kill the connection
-                        throw new IOException("Invalid packet size: " + packetSize);
-                    }
-
-                    pair = Pair.of(new ArrayList<>(), new AtomicInteger(packetSize));
-                    incompletePackets.put(packetId, pair);
-                }
-
-                pair.getLeft().add(frame);
-                int remaining = pair.getRight().addAndGet(-frame.getBodySize());
-                if (remaining == 0) {
-                    decodedMsg = decodeMessage(pair.getLeft());
-
-                    // remove complete packets from cache
-                    incompletePackets.invalidate(packetId);
-                } else if (remaining < 0) {
-                    throw new IOException("Packet remaining size went to negative");
-                }
+        Message decodedMsg;
+        try {
+            if (frame.isChunked()) {
+                decodedMsg = addChunk(ctx, frame);
+            } else {
+                decodedMsg = decodeMessage(frame, frame.getBody());
             }
-        } else {
-            decodedMsg = decodeMessage(Collections.singletonList(frame));
+        } finally {
+            frame.getBody().release();
         }
 
         if (decodedMsg != null) {
@@ -140,36 +164,75 @@ public class XdagMessageHandler extends MessageToMessageCodec<Frame, Message>  {
         }
     }
 
-    protected Message decodeMessage(List<Frame> frames) throws MessageException {
-        if (frames == null || frames.isEmpty()) {
-            throw new MessageException("Frames can't be null or empty");
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        for (IncompletePacket packet : incompletePackets.values()) {
+            packet.data.release();
         }
-        Frame head = frames.get(0);
+        incompletePackets.clear();
+        incompleteBytes = 0;
+        super.handlerRemoved(ctx);
+    }
 
-        byte packetType = head.getPacketType();
-        int packetSize = head.getPacketSize();
+    /**
+     * Adds the frame to its packet, and decodes the packet once it is complete.
+     *
+     * @return the message, or null while frames are missing
+     */
+    private Message addChunk(ChannelHandlerContext ctx, Frame frame) throws IOException, MessageException {
+        int packetId = frame.getPacketId();
+        IncompletePacket packet = incompletePackets.get(packetId);
+        if (packet == null) {
+            int packetSize = frame.getPacketSize();
+            if (packetSize < 0 || packetSize > netMaxPacketSize) {
+                // this will kill the connection
+                throw new IOException("Invalid packet size: " + packetSize);
+            }
+
+            // make room by dropping the packets that have waited longest
+            Iterator<IncompletePacket> oldest = incompletePackets.values().iterator();
+            while (incompleteBytes + packetSize > maxIncompleteBytes && oldest.hasNext()) {
+                IncompletePacket dropped = oldest.next();
+                oldest.remove();
+                incompleteBytes -= dropped.head.getPacketSize();
+                dropped.data.release();
+                DROPPED.inc();
+            }
+
+            packet = new IncompletePacket(frame, ctx.alloc().heapBuffer(frame.getBodySize(), packetSize));
+            incompletePackets.put(packetId, packet);
+            incompleteBytes += packetSize;
+        }
+
+        ByteBuf body = frame.getBody();
+        if (body.readableBytes() > packet.data.maxWritableBytes()) {
+            throw new IOException("Packet remaining size went to negative");
+        }
+        packet.data.writeBytes(body, body.readerIndex(), body.readableBytes());
+        if (packet.data.readableBytes() < packet.head.getPacketSize()) {
+            return null;
+        }
 
-        byte[] data = new byte[packetSize];
-        int pos = 0;
-        for (Frame frame : frames) {
-            System.arraycopy(frame.getBody(), 0, data, pos, frame.getBodySize());
-            pos += frame.getBodySize();
+        // remove complete packets
+        incompletePackets.remove(packetId);
+        incompleteBytes -= packet.head.getPacketSize();
+        try {
+            return decodeMessage(packet.head, packet.data);
+        } finally {
+            packet.data.release();
         }
+    }
+
+    protected Message decodeMessage(Frame head, ByteBuf packet) throws MessageException {
+        byte packetType = head.getPacketType();
+        byte[] data;
 
         switch (head.getCompressType()) {
         case Frame.COMPRESS_SNAPPY:
-            try {
-                // check uncompressed length to avoid OOM vulnerability
-                int length = Snappy.uncompressedLength(data);
-                if (length > netMaxPacketSize) {
-                    throw new MessageException("Uncompressed data length is too big: " + length);
-                }
-                data = Snappy.uncompress(data);
-            } catch (IOException e) {
-                throw new MessageException(e);
-            }
+            data = uncompress(packet);
             break;
         case Frame.COMPRESS_NONE:
+            data = ByteBufUtil.getBytes(packet);
             break;
         default:
             throw new MessageException("Unsupported compress type: " + head.getCompressType());
@@ -177,4 +240,81 @@ public class XdagMessageHandler extends MessageToMessageCodec<Frame, Message>  {
 
         return messageFactory.create(packetType, data);
     }
+
+    /**
+     * Snappy compression of data into a pooled direct buffer, so the frames sliced from it are written
+     * to the socket without another copy. Snappy only compresses direct memory into direct memory, so
+     * the body is copied once into a pooled direct buffer first.
+     */
+    static ByteBuf compress(ByteBufAllocator alloc, byte[] data) throws IOException {
+        ByteBuf in = alloc.directBuffer(data.length).writeBytes(data);
+        ByteBuf out = alloc.directBuffer(Snappy.maxCompressedLength(data.length));
+        try {
+            int length = Snappy.compress(in.nioBuffer(), out.nioBuffer(0, out.capacity()));
+            return out.writerIndex(length);
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        } finally {
+            in.release();
+        }
+    }
+
+    /**
+     * Snappy decompression of the readable bytes of packet, read in place when it is backed by an
+     * array or by one block of direct memory.
+     */
+    byte[] uncompress(ByteBuf packet) throws MessageException {
+        if (!packet.hasArray() && packet.nioBufferCount() == 1) {
+            return uncompress(packet.alloc(), packet.nioBuffer());
+        }
+        byte[] input;
+        int offset;
+        int length = packet.readableBytes();
+        if (packet.hasArray()) {
+            input = packet.array();
+            offset = packet.arrayOffset() + packet.readerIndex();
+        } else {
+            input = ByteBufUtil.getBytes(packet);
+            offset = 0;
+        }
+
+        try {
+            // check uncompressed length to avoid OOM vulnerability
+            int uncompressedLength = Snappy.uncompressedLength(input, offset, length);
+            if (uncompressedLength > netMaxPacketSize) {
+                throw new MessageException("Uncompressed data length is too big: " + uncompressedLength);
+            }
+            byte[] data = new byte[uncompressedLength];
+            Snappy.uncompress(input, offset, length, data, 0);
+            return data;
+        } catch (IOException e) {
+            throw new MessageException(e);
+        }
+    }
+
+    /**
+     * Snappy only reads direct memory into direct memory, so the data is decompressed into a pooled
+     * direct buffer and copied once into the array the message is parsed from.
+     */
+    private byte[] uncompress(ByteBufAllocator alloc, ByteBuffer input) throws MessageException {
+        try {
+            // check uncompressed length to avoid OOM vulnerability
+            int uncompressedLength = Snappy.uncompressedLength(input);
+            if (uncompressedLength > netMaxPacketSize) {
+                throw new MessageException("Uncompressed data length is too big: " + uncompressedLength);
+            }
+            ByteBuf out = alloc.directBuffer(uncompressedLength);
+            try {
+                int length = Snappy.uncompress(input, out.nioBuffer(0, uncompressedLength));
+                byte[] data = new byte[length];
+                out.getBytes(0, data);
+                return data;
+            } finally {
+                out.release();
+            }
+        } catch (IOException e) {
+            throw new MessageException(e);
+        }
+    }
 }
@@ -24,7 +24,6 @@
 package io.xdag.net;
 
 import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -59,6 +58,7 @@ import io.xdag.net.message.consensus.BlockExtRequestMessage;
 import io.xdag.net.message.consensus.BlockRequestMessage;
 import io.xdag.net.message.consensus.BlocksReplyMessage;
 import io.xdag.net.message.consensus.BlocksRequestMessage;
+import io.xdag.net.message.consensus.NewBlockHashMessage;
 import io.xdag.net.message.consensus.NewBlockMessage;
 import io.xdag.net.message.consensus.SumReplyMessage;
 import io.xdag.net.message.consensus.SumRequestMessage;
@@ -105,6 +105,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
 
     private final NetDBManager netdbMgr;
     private final MessageQueue msgQueue;
+    private final BlockRangeResponder blockRangeResponder;
 
     private final AtomicBoolean isHandshakeDone = new AtomicBoolean(false);
 
@@ -128,6 +129,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
         this.syncMgr = kernel.getSyncMgr();
         this.netdbMgr = kernel.getNetDBMgr();
         this.msgQueue = channel.getMessageQueue();
+        this.blockRangeResponder = new BlockRangeResponder(kernel.getBlockStore());
     }
 
     @Override
@@ -136,6 +138,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
 
         // activate message queue
         msgQueue.activate(ctx);
+        blockRangeResponder.activate(ctx);
 
         // disconnect if too many connections
         if (channel.isInbound() && channelMgr.size() >= config.getNodeSpec().getNetMaxInboundConnections()) {
@@ -155,6 +158,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
 
         // deactivate the message queue
         msgQueue.deactivate();
+        blockRangeResponder.close();
 
         // stop scheduled workers
         if (getNodes != null) {
@@ -167,9 +171,21 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
             pingPong = null;
         }
 
+        syncMgr.getBlockIngest().remove(channel);
+        channelMgr.getBlockAnnouncer().onDisconnected(channel);
+
         super.channelInactive(ctx);
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            msgQueue.onWritable();
+            blockRangeResponder.schedule();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         log.debug("Exception in P2P handler, remoteIp = {}, remotePort = {}", channel.getRemoteIp(), channel.getRemotePort(),cause);
@@ -192,7 +208,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
         case HANDSHAKE_WORLD -> onHandshakeWorld((WorldMessage) msg);
 
         /* sync */
-        case BLOCKS_REQUEST, BLOCKS_REPLY, SUMS_REQUEST, SUMS_REPLY, BLOCKEXT_REQUEST, BLOCKEXT_REPLY, BLOCK_REQUEST, NEW_BLOCK, SYNC_BLOCK, SYNCBLOCK_REQUEST ->
+        case BLOCKS_REQUEST, BLOCKS_REPLY, SUMS_REQUEST, SUMS_REPLY, BLOCKEXT_REQUEST, BLOCKEXT_REPLY, BLOCK_REQUEST, NEW_BLOCK, NEW_BLOCK_HASH, SYNC_BLOCK, SYNCBLOCK_REQUEST ->
                 onXdag(msg);
         default -> ctx.fireChannelRead(msg);
         }
@@ -305,6 +321,7 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
 
         switch (msg.getCode()) {
             case NEW_BLOCK -> processNewBlock((NewBlockMessage) msg);
+            case NEW_BLOCK_HASH -> processNewBlockHash((NewBlockHashMessage) msg);
             case BLOCK_REQUEST -> processBlockRequest((BlockRequestMessage) msg);
             case BLOCKS_REQUEST -> processBlocksRequest((BlocksRequestMessage) msg);
             case BLOCKS_REPLY -> processBlocksReply((BlocksReplyMessage) msg);
@@ -363,21 +380,50 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
      */
     protected void processNewBlock(NewBlockMessage msg) {
         Block block = msg.getBlock();
+        Bytes32 hashLow = block.getHashLow();
+        channel.markBlockKnown(hashLow);
+        if (syncMgr.isSyncOld()) {
+            return;
+        }
+
+        log.debug("processNewBlock:{} from node {}", hashLow, channel.getRemoteAddress());
+        int ttl = channelMgr.getBlockAnnouncer().onBlockReceived(hashLow, msg.getTtl());
+        BlockWrapper bw = new BlockWrapper(block, ttl - 1, channel.getRemotePeer(), false);
+        // importing can take a while, keep it off the I/O thread
+        syncMgr.getBlockIngest().submit(channel, () -> syncMgr.validateAndAddNewBlock(bw));
+    }
+
+    /**
+     * Requests an announced block from the announcing peer, unless it is known or on its way.
+     */
+    protected void processNewBlockHash(NewBlockHashMessage msg) {
+        Bytes32 hashLow = msg.getHashLow();
+        channel.markBlockKnown(hashLow);
         if (syncMgr.isSyncOld()) {
             return;
         }
 
-        log.debug("processNewBlock:{} from node {}", block.getHashLow(), channel.getRemoteAddress());
-        BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getRemotePeer(), false);
-        syncMgr.validateAndAddNewBlock(bw);
+        log.debug("processNewBlockHash:{} from node {}", hashLow, channel.getRemoteAddress());
+        BlockAnnouncer announcer = channelMgr.getBlockAnnouncer();
+        if (announcer.isInFlight(hashLow)) {
+            announcer.onAnnounced(hashLow, msg.getTtl(), channel);
+            return;
+        }
+        // looking the block up reads the store, keep it off the I/O thread
+        syncMgr.getBlockIngest().submit(channel, () -> {
+            if (chain.getBlockByHash(hashLow, false) == null) {
+                announcer.onAnnounced(hashLow, msg.getTtl(), channel);
+            }
+        });
     }
 
     protected void processSyncBlock(SyncBlockMessage msg) {
         Block block = msg.getBlock();
+        channel.markBlockKnown(block.getHashLow());
 
         log.debug("processSyncBlock:{}  from node {}", block.getHashLow(), channel.getRemoteAddress());
         BlockWrapper bw = new BlockWrapper(block, msg.getTtl() - 1, channel.getRemotePeer(), true);
-        syncMgr.validateAndAddNewBlock(bw);
+        syncMgr.getBlockIngest().submit(channel, () -> syncMgr.validateAndAddNewBlock(bw));
     }
 
     /**
@@ -398,21 +444,21 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(startTime)),
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(endTime)),
                 channel.getRemoteAddress());
-        List<Block> blocks = chain.getBlocksByTime(startTime, endTime);
-        for (Block block : blocks) {
-            SyncBlockMessage blockMsg = new SyncBlockMessage(block, 1);
-            msgQueue.sendMessage(blockMsg);
-        }
-        msgQueue.sendMessage(new BlocksReplyMessage(startTime, endTime, random, chain.getXdagStats(), netdbMgr.getNetDB()));
+        // streamed as the channel drains, the reply follows the last block
+        blockRangeResponder.submit(startTime, endTime,
+                () -> new BlocksReplyMessage(startTime, endTime, random, chain.getXdagStats(), netdbMgr.getNetDB()));
     }
 
     protected void processBlocksReply(BlocksReplyMessage msg) {
         updateXdagStats(msg);
         long randomSeq = msg.getRandom();
-        SettableFuture<Bytes> sf = kernel.getSync().getBlocksRequestMap().get(randomSeq);
-        if (sf != null) {
-            sf.set(Bytes.wrap(new byte[]{0}));
-        }
+        // queued behind the blocks of the range, so the request completes once they are imported
+        syncMgr.getBlockIngest().submit(channel, () -> {
+            SettableFuture<Bytes> sf = kernel.getSync().getBlocksRequestMap().get(randomSeq);
+            if (sf != null) {
+                sf.set(Bytes.wrap(new byte[]{0}));
+            }
+        });
     }
 
     /**
@@ -470,6 +516,16 @@ public class XdagP2pHandler extends SimpleChannelInboundHandler<Message> {
         sendMessage(msg);
     }
 
+    public void sendNewBlockHash(Bytes32 hashLow, int TTL) {
+        log.debug("announce block:{} to node:{}", hashLow, channel.getRemoteAddress());
+        sendMessage(new NewBlockHashMessage(hashLow, TTL));
+    }
+
+    public void requestBlock(Bytes32 hashLow) {
+        log.debug("request block:{} from node:{}", hashLow, channel.getRemoteAddress());
+        sendMessage(new BlockRequestMessage(hashLow.mutableCopy(), chain.getXdagStats(), netdbMgr.getNetDB()));
+    }
+
     public long sendGetBlocks(long startTime, long endTime) {
         log.debug("Request blocks between {} and {} from node {}",
                 FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS").format(XdagTime.xdagTimestampToMs(startTime)),
@@ -89,7 +89,12 @@ public enum MessageCode {
 //    RECEIVE_BLOCK(0x17),
     NEW_BLOCK(0x18),
     SYNC_BLOCK(0x19),
-    SYNCBLOCK_REQUEST(0x1A);
+    SYNCBLOCK_REQUEST(0x1A),
+
+    /**
+     * [0x1B] Announce a new block by hash, the full block is fetched with BLOCK_REQUEST.
+     */
+    NEW_BLOCK_HASH(0x1B);
 
 
     private static final MessageCode[] map = new MessageCode[256];
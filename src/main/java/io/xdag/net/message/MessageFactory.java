@@ -72,6 +72,7 @@ public class MessageFactory {
                 case NEW_BLOCK -> new NewBlockMessage(body);
                 case SYNC_BLOCK -> new SyncBlockMessage(body);
                 case SYNCBLOCK_REQUEST -> new SyncBlockRequestMessage(body);
+                case NEW_BLOCK_HASH -> new NewBlockHashMessage(body);
             };
         } catch (Exception e) {
             throw new MessageException("Failed to decode message", e);
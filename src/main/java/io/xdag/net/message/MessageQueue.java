@@ -21,11 +21,8 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
-
 package io.xdag.net.message;
 
-import static io.xdag.config.Constants.SEND_PERIOD;
-
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.xdag.config.Config;
@@ -35,47 +32,57 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.xdag.net.message.p2p.DisconnectMessage;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
+/**
+ * Outgoing messages of one channel.
+ * <p>
+ * Messages are written on the event loop of the channel as soon as they are queued and the channel
+ * is writable, prioritized ones first, with a single flush per drain. One drain writes at most
+ * {@link #MAX_BYTES_PER_DRAIN} bytes and then yields to the other channels of the event loop, a
+ * channel that is not writable waits for {@link #onWritable()}. A full queue blocks the caller for at
+ * most {@link #SEND_TIMEOUT_MILLIS}, after which the peer is considered stuck and the channel is
+ * closed, unless the caller is the event loop itself, which then writes out the queued messages
+ * before queueing its own. Once deactivated, the queue is emptied and drops every new message.
+ */
 @Slf4j
 public class MessageQueue {
-    public static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(
-            Runtime.getRuntime().availableProcessors(),
-            new BasicThreadFactory.Builder()
-                    .namingPattern("MessageQueueTimer-thread-%d")
-                    .daemon(true)
-                    .build());
+
+    public static final int MAX_BYTES_PER_DRAIN = 64 * 1024;
+    public static final int CAPACITY = 8192;
+    public static final long SEND_TIMEOUT_MILLIS = 10_000;
+
     private final Config config;
     //'8192' is a value obtained from testing experience, not a standard value.Looking forward to optimization.
-    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>(8192);
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>(CAPACITY);
     private final Queue<Message> prioritized = new ConcurrentLinkedQueue<>();
-    private ChannelHandlerContext ctx;
-    private ScheduledFuture<?> timerTask;
+    private volatile ChannelHandlerContext ctx;
+    private volatile boolean active;
+    private volatile boolean stopped;
+    private final long sendTimeoutMillis;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
 
     private final AtomicBoolean isClosed = new AtomicBoolean(false);
 
     public MessageQueue(Config config) {
+        this(config, SEND_TIMEOUT_MILLIS);
+    }
+
+    MessageQueue(Config config, long sendTimeoutMillis) {
         this.config = config;
+        this.sendTimeoutMillis = sendTimeoutMillis;
     }
 
     public synchronized void activate(ChannelHandlerContext ctx) {
         this.ctx = ctx;
-        timerTask = timer.scheduleAtFixedRate(
-                () -> {
-                    try {
-                        nudgeQueue();
-                    } catch (Throwable t) {
-                        log.error("Unhandled exception", t);
-                    }
-                },
-                10,
-                SEND_PERIOD,
-                // 10 MILLISECONDS
-                TimeUnit.MILLISECONDS);
+        this.active = true;
+        scheduleDrain();
     }
 
     public synchronized void deactivate() {
-        this.timerTask.cancel(false);
+        this.active = false;
+        this.stopped = true;
+        // frees the room senders may be waiting for, they see the stop and return
+        clear();
     }
 
     public boolean isIdle() {
@@ -92,36 +99,112 @@ public class MessageQueue {
     }
 
     public void sendMessage(Message msg) {
+        if (stopped) {
+            return;
+        }
     //when full message queue, whitelist don't need to disconnect.
         if (config.getNodeSpec().getNetPrioritizedMessages().contains(msg.getCode())) {
             prioritized.add(msg);
-        } else {
-            try {
-                //update to BlockingQueue, capacity 8192
-                queue.put(msg);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+        } else if (!queue.offer(msg)) {
+            ChannelHandlerContext c = ctx;
+            if (c != null && c.executor().inEventLoop()) {
+                // waiting here would block the drain, so hand the queued messages to netty's outbound
+                // buffer first, the message still goes after them
+                do {
+                    log.debug("Message queue full, writing it out: {}", msg);
+                    writeAll(c);
+                } while (!queue.offer(msg));
+            } else {
+                try {
+                    //update to BlockingQueue, capacity 8192
+                    if (!queue.offer(msg, sendTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        close();
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
             }
         }
+        if (stopped) {
+            // deactivated while this message was being queued
+            clear();
+            return;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * The channel can take more data, continue writing.
+     */
+    public void onWritable() {
+        scheduleDrain();
+    }
+
+    /**
+     * The peer has not read anything for the whole send timeout. A disconnect message would never
+     * get through, so the channel is closed right away.
+     */
+    private void close() {
+        log.warn("Message queue full for {} ms, closing the connection", sendTimeoutMillis);
+        deactivate();
+        ChannelHandlerContext c = ctx;
+        if (c != null && isClosed.compareAndSet(false, true)) {
+            c.close();
+        }
+    }
+
+    private void clear() {
+        queue.clear();
+        prioritized.clear();
     }
 
     public int size() {
         return queue.size() + prioritized.size();
     }
 
-    private void nudgeQueue() {
-        //Increase bandwidth consumption of a full used single sync thread to 3 Mbps.
-        int n = Math.min(8, size());
-        if (n == 0) {
+    private void scheduleDrain() {
+        ChannelHandlerContext c = ctx;
+        if (c != null && active && size() > 0 && scheduled.compareAndSet(false, true)) {
+            c.executor().execute(this::drain);
+        }
+    }
+
+    /**
+     * Writes every queued message regardless of writability, prioritized ones first.
+     */
+    private void writeAll(ChannelHandlerContext c) {
+        Message msg;
+        while ((msg = !prioritized.isEmpty() ? prioritized.poll() : queue.poll()) != null) {
+            c.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+        }
+        c.flush();
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        ChannelHandlerContext c = ctx;
+        if (!active) {
             return;
         }
-        // write out n messages
-        for (int i = 0; i < n; i++) {
+        int bytes = 0;
+        boolean written = false;
+        while (bytes < MAX_BYTES_PER_DRAIN && c.channel().isWritable()) {
             Message msg = !prioritized.isEmpty() ? prioritized.poll() : queue.poll();
-
+            if (msg == null) {
+                break;
+            }
             log.trace("Wiring message: {}", msg);
-            ctx.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            c.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            bytes += msg.getBody().length;
+            written = true;
+        }
+        if (written) {
+            c.flush();
+        }
+        if (c.channel().isWritable()) {
+            // budget used up, or a message arrived after the last poll
+            scheduleDrain();
         }
-        ctx.flush();
     }
 }
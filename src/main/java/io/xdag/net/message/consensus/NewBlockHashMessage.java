@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.message.consensus;
+
+import io.xdag.net.message.Message;
+import io.xdag.net.message.MessageCode;
+import io.xdag.utils.SimpleDecoder;
+import io.xdag.utils.SimpleEncoder;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Announces a new block by its hashlow, peers that don't have it reply with a BLOCK_REQUEST.
+ */
+@Getter
+public class NewBlockHashMessage extends Message {
+
+    private final Bytes32 hashLow;
+    private final int ttl;
+
+    public NewBlockHashMessage(Bytes32 hashLow, int ttl) {
+        super(MessageCode.NEW_BLOCK_HASH, null);
+
+        this.hashLow = hashLow;
+        this.ttl = ttl;
+
+        SimpleEncoder enc = new SimpleEncoder();
+        enc.writeBytes(hashLow.toArray());
+        enc.writeInt(ttl);
+        this.body = enc.toBytes();
+    }
+
+    public NewBlockHashMessage(byte[] body) {
+        super(MessageCode.NEW_BLOCK_HASH, null);
+
+        SimpleDecoder dec = new SimpleDecoder(body);
+        this.hashLow = Bytes32.wrap(dec.readBytes());
+        this.ttl = dec.readInt();
+
+        this.body = body;
+    }
+
+    @Override
+    public String toString() {
+        return "NewBlockHashMessage [hashLow=" + hashLow.toHexString() + ", ttl=" + ttl + "]";
+    }
+}
@@ -23,17 +23,20 @@
  */
 package io.xdag.net.websocket;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelId;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
 @Slf4j
 @ChannelHandler.Sharable
@@ -66,11 +69,30 @@ public class ChannelSupervise {// supervise channel
         return GlobalGroup.find(id).toString();
     }
 
-    public static void send2Pools(String info) {
+    /**
+     * Sends a message to all pools, as JSON or binary as negotiated. Each form is built only if
+     * a pool uses it, and the binary frame is shared by all pools without copying.
+     */
+    public static void send2Pools(Supplier<String> json, Supplier<ByteBuf> binary) {
         if (!ChannelMap.isEmpty()) {
             log.debug("There are active mining pools: {}", showChannel());
-            GlobalGroup.writeAndFlush(new TextWebSocketFrame(info));
-            log.debug("Send info to pools successfully. Info: {}", info);
+            boolean anyJson = false;
+            boolean anyBinary = false;
+            for (Channel channel : GlobalGroup) {
+                if (PoolProtocol.isBinary(channel)) {
+                    anyBinary = true;
+                } else {
+                    anyJson = true;
+                }
+            }
+            if (anyJson) {
+                String info = json.get();
+                GlobalGroup.writeAndFlush(new TextWebSocketFrame(info), channel -> !PoolProtocol.isBinary(channel));
+                log.debug("Send info to pools successfully. Info: {}", info);
+            }
+            if (anyBinary) {
+                GlobalGroup.writeAndFlush(new BinaryWebSocketFrame(binary.get()), PoolProtocol::isBinary);
+            }
         } else {
             log.debug("No active pools.");
         }
@@ -94,13 +94,18 @@ public class PoolHandShakeHandler extends SimpleChannelInboundHandler<Object> {
             return;
         }
         String uri = "ws://0.0.0.0:" + port + "/websocket";
+        // pools asking for the binary subprotocol get it, the others keep JSON
         WebSocketServerHandshakerFactory wsFactory = new WebSocketServerHandshakerFactory(
-                uri, null, false);
-        handshaker = wsFactory.newHandshaker(req);
-        if (handshaker == null) {
+                uri, PoolProtocol.SUBPROTOCOL, false);
+        WebSocketServerHandshaker poolHandshaker = wsFactory.newHandshaker(req);
+        handshaker = poolHandshaker;
+        if (poolHandshaker == null) {
             WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
         } else {
-            handshaker.handshake(ctx.channel(), req);
+            poolHandshaker.handshake(ctx.channel(), req);
+            PoolProtocol.setBinary(ctx.channel(), PoolProtocol.SUBPROTOCOL.equals(poolHandshaker.selectedSubprotocol()));
+            log.debug("Pool {} uses the {} protocol", ctx.channel().remoteAddress(),
+                    PoolProtocol.isBinary(ctx.channel()) ? "binary" : "JSON");
         }
     }
 
@@ -135,6 +140,13 @@ public class PoolHandShakeHandler extends SimpleChannelInboundHandler<Object> {
             ctx.channel().write(new PongWebSocketFrame(frame.content().retain()));
             return;
         }
+        if (frame instanceof BinaryWebSocketFrame) {
+            // read in place, the frame is released once this returns
+            if (xdagPow != null) {
+                xdagPow.getSharesFromPools().getShare(frame.content());
+            }
+            return;
+        }
         // support text msg
         if (!(frame instanceof TextWebSocketFrame)) {
             log.debug("Unsupported msg type ");
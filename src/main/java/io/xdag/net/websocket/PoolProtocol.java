@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.websocket;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.xdag.consensus.Task;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.Bytes32;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Messages exchanged with the pools over the WebSocket server.
+ * <p>
+ * Pools asking for the {@value #SUBPROTOCOL} subprotocol in the WebSocket handshake get binary
+ * frames, the others keep the JSON text frames. Shares are accepted in either form from any pool.
+ * A binary frame is a version byte, a type byte matching the JSON msgType, then the payload, with
+ * numbers in big-endian and amounts in nano XDAG:
+ * <pre>
+ * TASK   preHash:32 taskSeed:32 taskTime:8 taskIndex:8
+ * SHARE  share:32 preHash:32 taskIndex:8
+ * AWARDS count:1 (txBlock:32 preHash:32 share:32 amount:8 fee:8 donate:8){count}
+ * </pre>
+ */
+public final class PoolProtocol {
+
+    public static final String SUBPROTOCOL = "xdag-pool-bin.1";
+    public static final byte VERSION = 1;
+
+    public static final byte TYPE_TASK = 1;
+    public static final byte TYPE_SHARE = 2;
+    public static final byte TYPE_AWARDS = 3;
+
+    public static final int HEADER_SIZE = 2;
+    public static final int TASK_SIZE = HEADER_SIZE + 32 + 32 + 8 + 8;
+    public static final int SHARE_SIZE = HEADER_SIZE + 32 + 32 + 8;
+    public static final int AWARD_SIZE = 32 + 32 + 32 + 8 + 8 + 8;
+
+    private static final AttributeKey<Boolean> BINARY = AttributeKey.valueOf("xdagPoolBinary");
+
+    private PoolProtocol() {
+    }
+
+    /**
+     * A share submitted by a pool for the task of the given index.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Share {
+        private final Bytes32 share;
+        private final Bytes32 preHash;
+        private final long taskIndex;
+    }
+
+    public static void setBinary(Channel channel, boolean binary) {
+        channel.attr(BINARY).set(binary);
+    }
+
+    public static boolean isBinary(Channel channel) {
+        return Boolean.TRUE.equals(channel.attr(BINARY).get());
+    }
+
+    public static ByteBuf encodeTask(ByteBufAllocator alloc, Task task) {
+        ByteBuf buf = alloc.buffer(TASK_SIZE);
+        buf.writeByte(VERSION).writeByte(TYPE_TASK);
+        if (task.getTask() != null && task.getTask().length == 2) {
+            buf.writeBytes(task.getTask()[0].getData().toArrayUnsafe(), 0, 32);
+            buf.writeBytes(task.getTask()[1].getData().toArrayUnsafe(), 0, 32);
+        } else {
+            buf.writeZero(64);
+        }
+        buf.writeLong(task.getTaskTime());
+        buf.writeLong(task.getTaskIndex());
+        return buf;
+    }
+
+    public static ByteBuf encodeShare(ByteBufAllocator alloc, Bytes32 share, Bytes32 preHash, long taskIndex) {
+        ByteBuf buf = alloc.buffer(SHARE_SIZE);
+        buf.writeByte(VERSION).writeByte(TYPE_SHARE);
+        buf.writeBytes(share.toArrayUnsafe());
+        buf.writeBytes(preHash.toArrayUnsafe());
+        buf.writeLong(taskIndex);
+        return buf;
+    }
+
+    /**
+     * Encodes the award notices, each one from {@link #encodeAward}.
+     */
+    public static ByteBuf encodeAwards(ByteBufAllocator alloc, Collection<byte[]> awards) {
+        ByteBuf buf = alloc.buffer(HEADER_SIZE + 1 + awards.size() * AWARD_SIZE);
+        buf.writeByte(VERSION).writeByte(TYPE_AWARDS);
+        buf.writeByte(awards.size());
+        for (byte[] award : awards) {
+            buf.writeBytes(award);
+        }
+        return buf;
+    }
+
+    public static byte[] encodeAward(Bytes32 txBlock, Bytes32 preHash, Bytes32 share, long amount, long fee,
+            long donate) {
+        return ByteBuffer.allocate(AWARD_SIZE)
+                .put(txBlock.toArrayUnsafe())
+                .put(preHash.toArrayUnsafe())
+                .put(share.toArrayUnsafe())
+                .putLong(amount)
+                .putLong(fee)
+                .putLong(donate)
+                .array();
+    }
+
+    /**
+     * Reads a binary share, the buffer is left as it was.
+     *
+     * @throws IllegalArgumentException if the frame is not a share of a supported version
+     */
+    public static Share readShare(ByteBuf buf) {
+        int i = buf.readerIndex();
+        if (buf.readableBytes() < SHARE_SIZE) {
+            throw new IllegalArgumentException("Share frame too short: " + buf.readableBytes());
+        }
+        if (buf.getByte(i) != VERSION || buf.getByte(i + 1) != TYPE_SHARE) {
+            throw new IllegalArgumentException("Unsupported frame, version " + buf.getByte(i)
+                    + ", type " + buf.getByte(i + 1));
+        }
+        byte[] share = new byte[32];
+        byte[] preHash = new byte[32];
+        buf.getBytes(i + HEADER_SIZE, share);
+        buf.getBytes(i + HEADER_SIZE + 32, preHash);
+        return new Share(Bytes32.wrap(share), Bytes32.wrap(preHash), buf.getLong(i + HEADER_SIZE + 64));
+    }
+
+    /**
+     * Parses a JSON share.
+     *
+     * @throws IllegalArgumentException if the message is not a well formed share
+     */
+    public static Share parseShare(String json) {
+        try {
+            JSONObject message = new JSONObject(json);
+            if (message.getInt("msgType") != TYPE_SHARE) {
+                throw new IllegalArgumentException("Not a share, msgType " + message.getInt("msgType"));
+            }
+            JSONObject content = message.getJSONObject("msgContent");
+            return new Share(Bytes32.wrap(Bytes.fromHexString(content.getString("share"))),
+                    Bytes32.wrap(Bytes.fromHexString(content.getString("hash"))), content.getLong("taskIndex"));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+}
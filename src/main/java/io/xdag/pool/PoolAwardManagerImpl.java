@@ -23,12 +23,15 @@
  */
 package io.xdag.pool;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.xdag.Kernel;
 import io.xdag.Wallet;
 import io.xdag.cli.Commands;
 import io.xdag.config.Config;
 import io.xdag.core.*;
 import io.xdag.net.websocket.ChannelSupervise;
+import io.xdag.net.websocket.PoolProtocol;
 import io.xdag.utils.BasicUtils;
 import io.xdag.utils.WalletUtils;
 import lombok.Setter;
@@ -39,6 +42,7 @@ import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes32;
 import org.hyperledger.besu.crypto.KeyPair;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -49,6 +53,7 @@ import static io.xdag.config.Constants.MIN_GAS;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
 import static io.xdag.pool.PoolAwardManagerImpl.BlockRewardHistorySender.awardMessageHistoryQueue;
+import static io.xdag.pool.PoolAwardManagerImpl.BlockRewardHistorySender.awardRecordHistoryQueue;
 import static io.xdag.utils.BasicUtils.*;
 import static io.xdag.utils.BytesUtils.compareTo;
 
@@ -276,9 +281,13 @@ public class PoolAwardManagerImpl implements PoolAwardManager, Runnable {
         if (awardMessageHistoryQueue.remainingCapacity() == 0) {
             awardMessageHistoryQueue.poll();
         }
+        if (awardRecordHistoryQueue.remainingCapacity() == 0) {
+            awardRecordHistoryQueue.poll();
+        }
         // Send the last 16 reward distribution transaction history to the pool
-        if (awardMessageHistoryQueue.offer(transactionInfoSender.toJsonString())) {
-            ChannelSupervise.send2Pools(BlockRewardHistorySender.toJsonString());
+        if (awardMessageHistoryQueue.offer(transactionInfoSender.toJsonString())
+                && awardRecordHistoryQueue.offer(transactionInfoSender.toBytes())) {
+            ChannelSupervise.send2Pools(BlockRewardHistorySender::toJsonString, BlockRewardHistorySender::toBinary);
         } else {
             log.error("Failed to add transaction history");
         }
@@ -319,11 +328,24 @@ public class PoolAwardManagerImpl implements PoolAwardManager, Runnable {
                     "  \"donate\":" + donate +
                     "\n}";
         }
+
+        /**
+         * Binary form of the award notice, the donation is in the transaction block.
+         */
+        public byte[] toBytes() {
+            return PoolProtocol.encodeAward(txBlock, preHash, share, toNano(amount), toNano(fee), toNano(donate));
+        }
+
+        private static long toNano(String xdag) {
+            return XAmount.of(new BigDecimal(xdag), XUnit.XDAG).toLong();
+        }
     }
 
     public static class BlockRewardHistorySender {
         // Cache the last 16 blocks reward transaction history
         public static final BlockingQueue<String> awardMessageHistoryQueue = new LinkedBlockingQueue<>(16);
+        // The same history in binary form
+        public static final BlockingQueue<byte[]> awardRecordHistoryQueue = new LinkedBlockingQueue<>(16);
         private static final int REWARD_HISTORIES_FLAG = 3;
 
         public static String toJsonString() {
@@ -333,6 +355,10 @@ public class PoolAwardManagerImpl implements PoolAwardManager, Runnable {
                     "}";
         }
 
+        public static ByteBuf toBinary() {
+            return PoolProtocol.encodeAwards(ByteBufAllocator.DEFAULT, awardRecordHistoryQueue);
+        }
+
     }
 
 }
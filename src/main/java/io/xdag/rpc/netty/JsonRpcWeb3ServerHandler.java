@@ -41,6 +41,9 @@ import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.xdag.metrics.Counter;
+import io.xdag.metrics.Histogram;
+import io.xdag.metrics.MetricsRegistry;
 import io.xdag.rpc.Web3;
 import io.xdag.rpc.exception.XdagErrorResolver;
 import io.xdag.rpc.filter.JsonRpcMethodFilter;
@@ -55,6 +58,11 @@ import java.util.Map;
 @ChannelHandler.Sharable
 public class JsonRpcWeb3ServerHandler extends SimpleChannelInboundHandler<ByteBufHolder> {
 
+    private static final Histogram RPC_LATENCY = MetricsRegistry.getDefault()
+            .histogram("xdag_rpc_request_seconds", "Time spent handling a JSON-RPC request");
+    private static final Counter RPC_ERRORS = MetricsRegistry.getDefault()
+            .counter("xdag_rpc_errors_total", "JSON-RPC requests that failed unexpectedly");
+
     private final ObjectMapper mapper = new ObjectMapper();
     private final JsonNodeFactory jsonNodeFactory = JsonNodeFactory.instance;
     private final JsonRpcBasicServer jsonRpcServer;
@@ -69,6 +77,7 @@ public class JsonRpcWeb3ServerHandler extends SimpleChannelInboundHandler<ByteBu
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ByteBufHolder request) throws Exception {
+        long start = System.nanoTime();
         ByteBuf responseContent = Unpooled.buffer();
         int responseCode;
         try (ByteBufOutputStream os = new ByteBufOutputStream(responseContent);
@@ -81,7 +90,9 @@ public class JsonRpcWeb3ServerHandler extends SimpleChannelInboundHandler<ByteBu
             int errorCode = ErrorResolver.JsonError.CUSTOM_SERVER_ERROR_LOWER;
             responseContent = buildErrorContent(errorCode, unexpectedErrorMsg);
             responseCode = errorCode;
+            RPC_ERRORS.inc();
         }
+        RPC_LATENCY.observeSince(start);
 
         ctx.fireChannelRead(new Web3Result(
                 responseContent,
@@ -38,6 +38,11 @@ public final class BlockUtils {
         return BytesUtils.merge(key, hashlow.toArray());
     }
 
+    public static Bytes32 getHashlowOfTimeKey(byte[] key) {
+        // 1 + 8 : prefix + time
+        return Bytes32.wrap(BytesUtils.subArray(key, 1 + 8, 32));
+    }
+
     public static byte[] getOurKey(int index, byte[] hashlow) {
         byte[] key = BytesUtils.merge(BlockStore.OURS_BLOCK_INFO, BytesUtils.intToBytes(index, false));
         key = BytesUtils.merge(key, hashlow);
@@ -27,6 +27,8 @@ package io.xdag;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_IN;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
 import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_PUBLIC_KEY_0;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_PUBLIC_KEY_1;
 
 import com.google.common.collect.Lists;
 import io.xdag.config.Config;
@@ -34,7 +36,9 @@ import io.xdag.core.Address;
 import io.xdag.core.Block;
 import io.xdag.core.XAmount;
 import io.xdag.core.XUnit;
+import io.xdag.core.XdagBlock;
 import io.xdag.crypto.Hash;
+import java.util.Arrays;
 import java.util.List;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
@@ -47,6 +51,21 @@ public class BlockBuilder {
         return generateAddressBlockWithAmount(config, key, xdagTime, XAmount.of(1000, XUnit.XDAG) );
     }
 
+    /**
+     * The block with every public key field replaced by an x coordinate off the curve.
+     */
+    public static Block withInvalidPublicKey(Block block) {
+        byte[] raw = block.toBytes().clone();
+        XdagBlock xdagBlock = new XdagBlock(raw.clone());
+        for (int i = 0; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            if (xdagBlock.getFieldType(i) == XDAG_FIELD_PUBLIC_KEY_0
+                    || xdagBlock.getFieldType(i) == XDAG_FIELD_PUBLIC_KEY_1) {
+                Arrays.fill(raw, i * XdagBlock.XDAG_FIELD_SIZE, (i + 1) * XdagBlock.XDAG_FIELD_SIZE, (byte) 0xff);
+            }
+        }
+        return new Block(new XdagBlock(raw));
+    }
+
     public static Block generateAddressBlockWithAmount(Config config, KeyPair key, long xdagTime, XAmount balance) {
         Block b = new Block(config, xdagTime, null, null, false, null, null, -1, XAmount.ZERO);
         b.signOut(key);
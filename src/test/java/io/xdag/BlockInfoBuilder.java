@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag;
+
+import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
+import org.apache.tuweni.bytes.Bytes32;
+
+/**
+ * Bare blocks for the in-memory structures that only look at the block info, identified by an int.
+ */
+public class BlockInfoBuilder {
+
+    /**
+     * hashlow ending with the big-endian id
+     */
+    public static Bytes32 hashlow(int id) {
+        byte[] hashlow = new byte[32];
+        hashlow[28] = (byte) (id >>> 24);
+        hashlow[29] = (byte) (id >>> 16);
+        hashlow[30] = (byte) (id >>> 8);
+        hashlow[31] = (byte) id;
+        return Bytes32.wrap(hashlow);
+    }
+
+    public static BlockInfo blockInfo(int id) {
+        BlockInfo info = new BlockInfo();
+        info.setHashlow(hashlow(id).toArray());
+        return info;
+    }
+
+    public static Block block(int id) {
+        return new Block(blockInfo(id));
+    }
+}
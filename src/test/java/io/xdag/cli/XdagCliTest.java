@@ -100,6 +100,7 @@ public class XdagCliTest {
                     --importmnemonic <mnemonic>       import HDWallet mnemonic
                     --importprivatekey <key>          import hex key
                     --makesnapshot <covertuint>       make snapshot
+                    --migratedb                       migrate the database to the column family layout
                     --password <password>             wallet password
                     --version                         show version
                 """;
@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.consensus;
+
+import static io.xdag.BlockInfoBuilder.hashlow;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.BlockInfoBuilder;
+import io.xdag.core.BlockWrapper;
+import io.xdag.core.XdagBlock;
+import java.util.List;
+import org.junit.Test;
+
+public class PendingBlockPoolTest {
+
+    private static BlockWrapper wrapper(int id) {
+        return new BlockWrapper(BlockInfoBuilder.block(id), 5);
+    }
+
+    @Test
+    public void testReleaseInArrivalOrder() {
+        PendingBlockPool pool = new PendingBlockPool(1L << 20);
+        BlockWrapper a = wrapper(1);
+        BlockWrapper b = wrapper(2);
+        BlockWrapper c = wrapper(3);
+        assertTrue(pool.add(a, hashlow(100), 0));
+        assertTrue(pool.add(b, hashlow(100), 0));
+        assertTrue(pool.add(c, hashlow(101), 0));
+        assertEquals(3, pool.size());
+        assertEquals(2, pool.parents());
+        assertEquals(3L * XdagBlock.XDAG_BLOCK_SIZE, pool.bytes());
+
+        List<BlockWrapper> released = pool.release(hashlow(100));
+        assertEquals(2, released.size());
+        assertSame(a, released.get(0));
+        assertSame(b, released.get(1));
+        assertTrue(pool.release(hashlow(100)).isEmpty());
+        assertEquals(1, pool.size());
+        assertEquals(1, pool.parents());
+        assertEquals(XdagBlock.XDAG_BLOCK_SIZE, pool.bytes());
+    }
+
+    @Test
+    public void testDuplicateRequestsParentAfterResendTime() {
+        PendingBlockPool pool = new PendingBlockPool(1L << 20);
+        assertTrue(pool.add(wrapper(1), hashlow(100), 1000));
+        assertFalse(pool.add(wrapper(1), hashlow(100), 2000));
+        assertTrue(pool.add(wrapper(1), hashlow(100), 2000 + PendingBlockPool.RESEND_MILLIS));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testMovesToNewParent() {
+        PendingBlockPool pool = new PendingBlockPool(1L << 20);
+        BlockWrapper a = wrapper(1);
+        pool.add(a, hashlow(100), 0);
+        assertTrue(pool.add(a, hashlow(101), 0));
+        assertEquals(1, pool.size());
+        assertEquals(1, pool.parents());
+        assertTrue(pool.release(hashlow(100)).isEmpty());
+        assertSame(a, pool.release(hashlow(101)).get(0));
+    }
+
+    @Test
+    public void testEvictsOldestWhenFull() {
+        PendingBlockPool pool = new PendingBlockPool(3L * XdagBlock.XDAG_BLOCK_SIZE);
+        for (int i = 1; i <= 5; i++) {
+            pool.add(wrapper(i), hashlow(100 + i % 2), 0);
+        }
+        assertEquals(3, pool.size());
+        assertEquals(3L * XdagBlock.XDAG_BLOCK_SIZE, pool.bytes());
+        assertFalse(pool.contains(hashlow(1)));
+        assertFalse(pool.contains(hashlow(2)));
+        assertTrue(pool.contains(hashlow(3)));
+        assertTrue(pool.contains(hashlow(5)));
+        assertEquals(2, pool.release(hashlow(101)).size());
+        assertEquals(1, pool.release(hashlow(100)).size());
+        assertEquals(0, pool.parents());
+        assertEquals(0, pool.bytes());
+    }
+}
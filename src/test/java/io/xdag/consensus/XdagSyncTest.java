@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.consensus;
+
+import com.google.common.util.concurrent.SettableFuture;
+import io.xdag.Kernel;
+import io.xdag.core.XdagStats;
+import io.xdag.db.BlockStore;
+import io.xdag.net.Channel;
+import io.xdag.net.ChannelManager;
+import io.xdag.net.XdagP2pHandler;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class XdagSyncTest {
+
+    static final int PEERS = 3;
+
+    List<Channel> channels;
+    XdagSync sync;
+
+    @Before
+    public void setUp() {
+        Kernel kernel = mock(Kernel.class);
+        BlockStore blockStore = mock(BlockStore.class);
+        when(blockStore.loadSum(anyLong(), anyLong(), any())).thenReturn(1);
+        when(blockStore.getXdagStatus()).thenReturn(new XdagStats());
+        SyncManager syncManager = mock(SyncManager.class);
+        when(syncManager.isSyncOld()).thenReturn(true);
+
+        channels = new ArrayList<>();
+        for (int i = 0; i < PEERS; i++) {
+            // peer i numbers its requests i * 1000 + n
+            AtomicLong seq = new AtomicLong(i * 1000L);
+            XdagP2pHandler handler = mock(XdagP2pHandler.class);
+            when(handler.sendGetSums(anyLong(), anyLong())).thenAnswer(inv -> seq.incrementAndGet());
+            when(handler.sendGetBlocks(anyLong(), anyLong())).thenAnswer(inv -> seq.incrementAndGet());
+            Channel channel = new Channel(null);
+            channel.setActive(true);
+            channel.setP2pHandler(handler);
+            channels.add(channel);
+        }
+        ChannelManager channelManager = mock(ChannelManager.class);
+        when(channelManager.getActiveChannels()).thenReturn(channels);
+
+        when(kernel.getBlockStore()).thenReturn(blockStore);
+        when(kernel.getChannelMgr()).thenReturn(channelManager);
+        when(kernel.getSyncMgr()).thenReturn(syncManager);
+        sync = new XdagSync(kernel);
+        sync.setStatus(XdagSync.Status.SYNCING);
+    }
+
+    @Test
+    public void testFanOutAndReassign() throws Exception {
+        sync.syncNow().get();
+        // the root of the sums tree
+        assertEquals(1, sync.getSumsRequestMap().size());
+        reply(sync.getSumsRequestMap(), 0, allDifferent());
+        sync.syncNow().get();
+
+        // 16 sub ranges spread over the peers, at most MAX_IN_FLIGHT_PER_PEER each
+        assertEquals(PEERS * XdagSync.MAX_IN_FLIGHT_PER_PEER, sync.getSumsRequestMap().size());
+        for (int i = 0; i < PEERS; i++) {
+            assertEquals(XdagSync.MAX_IN_FLIGHT_PER_PEER, inFlight(sync.getSumsRequestMap(), i));
+        }
+
+        // peer 0 goes away, its requests fail and the others take over once they have room
+        channels.get(0).setActive(false);
+        for (Map.Entry<Long, SettableFuture<Bytes>> e : new ArrayList<>(sync.getSumsRequestMap().entrySet())) {
+            if (e.getKey() / 1000 == 0) {
+                e.getValue().setException(new IllegalStateException("disconnected"));
+            }
+        }
+        sync.syncNow().get();
+        assertEquals(0, inFlight(sync.getSumsRequestMap(), 0));
+        assertEquals(2 * XdagSync.MAX_IN_FLIGHT_PER_PEER, sync.getSumsRequestMap().size());
+
+        // equal sums finish a range without more work, 8 ranges are still waiting for a slot
+        reply(sync.getSumsRequestMap(), 1, MutableBytes.create(256));
+        sync.syncNow().get();
+        assertEquals(0, inFlight(sync.getSumsRequestMap(), 0));
+        assertEquals(XdagSync.MAX_IN_FLIGHT_PER_PEER, inFlight(sync.getSumsRequestMap(), 1));
+        assertEquals(XdagSync.MAX_IN_FLIGHT_PER_PEER, inFlight(sync.getSumsRequestMap(), 2));
+    }
+
+    private static Bytes allDifferent() {
+        MutableBytes sums = MutableBytes.create(256);
+        for (int i = 0; i < 16; i++) {
+            sums.setLong(i * 16 + 8, 1, ByteOrder.LITTLE_ENDIAN);
+        }
+        return sums;
+    }
+
+    private static void reply(Map<Long, SettableFuture<Bytes>> requests, int peer, Bytes sums) {
+        // replies make room for new requests, only answer the ones sent so far
+        for (Map.Entry<Long, SettableFuture<Bytes>> e : new ArrayList<>(requests.entrySet())) {
+            if (e.getKey() / 1000 == peer) {
+                e.getValue().set(sums);
+            }
+        }
+    }
+
+    private static long inFlight(Map<Long, SettableFuture<Bytes>> requests, int peer) {
+        return requests.keySet().stream().filter(k -> k / 1000 == peer).count();
+    }
+}
@@ -24,15 +24,28 @@
 
 package io.xdag.core;
 
+import io.xdag.BlockBuilder;
+import io.xdag.config.Constants;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.Keys;
+import io.xdag.crypto.SampleKeys;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.SimpleEncoder;
+import io.xdag.utils.XdagTime;
 import org.apache.tuweni.bytes.Bytes32;
 import org.bouncycastle.util.encoders.Hex;
+import org.hyperledger.besu.crypto.KeyPair;
 import org.junit.Test;
 
 import java.nio.ByteOrder;
 
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_INPUT;
+import static io.xdag.core.XdagField.FieldType.XDAG_FIELD_OUTPUT;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class BlockTest {
 
@@ -75,6 +88,58 @@ public class BlockTest {
           //assertEquals(first.getXdagBlock().getData(), new XdagBlock(Hex.decode(blockRawdata)).getData());//A 'block' create by rawdata, its xdagblock will not change.
      }
 
+     private static Block transactionBlock() {
+          KeyPair key = SampleKeys.KEY_PAIR;
+          Address from = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(key)), XDAG_FIELD_INPUT, true);
+          Address to = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(key)), XDAG_FIELD_OUTPUT, true);
+          return BlockBuilder.generateNewTransactionBlock(new DevnetConfig(), key, XdagTime.getCurrentTimestamp(),
+                  from, to, XAmount.of(10, XUnit.XDAG));
+     }
+
+     @Test
+     public void testParsedKeysDecompressedOnUse() {
+          Block block = transactionBlock();
+          Block parsed = new Block(new XdagBlock(block.toBytes()));
+          assertEquals(block.getHash(), parsed.getHash());
+          assertEquals(block.getInsigs(), parsed.getInsigs());
+          assertEquals(block.getOutsig(), parsed.getOutsig());
+          assertEquals(block.getPubKeys(), parsed.getPubKeys());
+          assertSame(parsed.getPubKeys(), parsed.getPubKeys());
+          assertEquals(block.verifiedKeys(), parsed.verifiedKeys());
+     }
+
+     @Test
+     public void testInvalidPublicKey() {
+          Block block = transactionBlock();
+          assertTrue(new Block(new XdagBlock(block.toBytes())).hasValidKeys());
+
+          Block invalid = BlockBuilder.withInvalidPublicKey(block);
+          assertFalse(invalid.hasValidKeys());
+          assertFalse(invalid.hasValidKeys());
+     }
+
+     @Test
+     public void testCopyOwnsInfoAndCollections() {
+          Block parsed = new Block(new XdagBlock(transactionBlock().toBytes()));
+          Block copy = parsed.copy();
+          assertSame(parsed.getXdagBlock(), copy.getXdagBlock());
+          assertEquals(parsed.getInputs(), copy.getInputs());
+          assertEquals(parsed.getHashLow(), copy.getHashLow());
+          assertEquals(parsed.getPubKeys(), copy.getPubKeys());
+
+          assertNotSame(parsed.getInputs(), copy.getInputs());
+          copy.getInputs().clear();
+          copy.getInsigs().clear();
+          assertFalse(parsed.getInputs().isEmpty());
+          assertFalse(parsed.getInsigs().isEmpty());
+
+          assertNotSame(parsed.getInfo(), copy.getInfo());
+          copy.getInfo().setFlags(Constants.BI_APPLIED);
+          copy.getInfo().setHeight(7);
+          assertEquals(0, parsed.getInfo().getFlags());
+          assertEquals(0, parsed.getInfo().getHeight());
+     }
+
     /**
      Config config = new Config();
      Wallet xdagWallet;
@@ -37,7 +37,10 @@ import io.xdag.db.AddressStore;
 import io.xdag.db.BlockStore;
 import io.xdag.db.OrphanBlockStore;
 import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.mysql.TxHistoryWriter;
 import io.xdag.db.rocksdb.*;
+import io.xdag.metrics.MetricsHttpServer;
+import io.xdag.metrics.MetricsRegistry;
 import io.xdag.rpc.modules.xdag.XdagModuleTransactionBase;
 import io.xdag.utils.BytesUtils;
 import io.xdag.utils.WalletUtils;
@@ -46,6 +49,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.tuweni.bytes.Bytes;
 import org.apache.tuweni.bytes.Bytes32;
 import org.hyperledger.besu.crypto.KeyPair;
+import org.hyperledger.besu.crypto.SECPPublicKey;
 import org.hyperledger.besu.crypto.SECPPrivateKey;
 import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.SECPSignature;
@@ -57,13 +61,19 @@ import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.math.BigInteger;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static io.xdag.BlockBuilder.*;
+import static io.xdag.config.Constants.BI_APPLIED;
 import static io.xdag.core.ImportResult.*;
 import static io.xdag.core.XdagField.FieldType.*;
 import static io.xdag.utils.BasicUtils.*;
@@ -126,6 +136,7 @@ public class BlockchainTest {
 
         TransactionHistoryStore txHistoryStore = Mockito.mock(TransactionHistoryStore.class);
 
+        kernel.setDbFactory(dbFactory);
         kernel.setBlockStore(blockStore);
         kernel.setOrphanBlockStore(orphanBlockStore);
         kernel.setAddressStore(addressStore);
@@ -951,6 +962,81 @@ public class BlockchainTest {
         assertEquals("0.0" , RollBackMainBlockLinkTxBalance.toDecimal(1, XUnit.XDAG).toString());//
 
     }
+    @Test
+    public void testPreVerifySignatures() {
+        KeyPair addrKey = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
+        KeyPair poolKey = KeyPair.create(SampleKeys.SRIVATE_KEY, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        Block addressBlock = generateAddressBlock(config, poolKey, generateTime);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+
+        Address from = new Address(addressBlock.getHashLow(), XDAG_FIELD_IN, false);
+        Address to = new Address(BytesUtils.arrayToByte32(Keys.toBytesAddress(addrKey)), XDAG_FIELD_OUTPUT, true);
+        long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime + 64000L));
+        Block txBlock = generateOldTransactionBlock(config, poolKey, xdagTime - 1, from, to, XAmount.of(100, XUnit.XDAG));
+
+        // a block received from a peer is verified before it reaches tryToConnect
+        Block remote = new Block(txBlock.getXdagBlock());
+        blockchain.preVerify(remote);
+        List<SECPPublicKey> keys = blockchain.getSignatureVerifier().verifiedKeys(new Block(txBlock.getXdagBlock()));
+        assertEquals(txBlock.verifiedKeys(), keys);
+        assertEquals(1, keys.size());
+        assertTrue(blockchain.getSignatureVerifier().verifyOutsig(from.getAddress(),
+                addressBlock.getSubRawData(addressBlock.getOutsigIndex() - 2), addressBlock.getOutsig(), keys.get(0)));
+        assertTrue(blockchain.canUseInput(remote));
+
+        // signed by another key
+        Block otherTx = generateOldTransactionBlock(config, addrKey, xdagTime - 1, from, to, XAmount.of(100, XUnit.XDAG));
+        blockchain.preVerify(otherTx);
+        assertFalse(blockchain.canUseInput(new Block(otherTx.getXdagBlock())));
+    }
+
+    @Test
+    public void testMetricsAfterImport() throws Exception {
+        KeyPair key = KeyPair.create(secretary_1, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        long imported = registry.counter("xdag_blocks_imported_total", "").get();
+        long observed = registry.histogram("xdag_block_import_seconds", "").getCount();
+
+        Block addressBlock = generateAddressBlock(config, key, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 1; i <= 5; i++) {
+            generateTime += 64000L;
+            List<Address> pending = Lists.newArrayList(new Address(ref, XDAG_FIELD_OUT, false));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, key, xdagTime, pending);
+            assertSame(IMPORTED_BEST, blockchain.tryToConnect(extraBlock));
+            ref = extraBlock.getHashLow();
+        }
+        assertEquals(imported + 6, registry.counter("xdag_blocks_imported_total", "").get());
+        assertEquals(observed + 6, registry.histogram("xdag_block_import_seconds", "").getCount());
+
+        MetricsHttpServer server = new MetricsHttpServer(registry, InetAddress.getLoopbackAddress(), 0);
+        int port = server.start();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://127.0.0.1:" + port + MetricsHttpServer.PATH).openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(MetricsHttpServer.CONTENT_TYPE, connection.getContentType());
+            String body = new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(body.contains("# TYPE xdag_blocks_imported_total counter\n"));
+            assertTrue(body.contains("xdag_blocks_imported_total " + (imported + 6) + "\n"));
+            assertTrue(body.contains("# TYPE xdag_block_import_seconds histogram\n"));
+            assertTrue(body.contains("xdag_block_import_seconds_count " + (observed + 6) + "\n"));
+            assertTrue(body.contains("# TYPE xdag_orphan_blocks gauge\n"));
+            assertTrue(body.contains("# TYPE xdag_rocksdb_block_cache_hits_total counter\n"));
+
+            connection = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/other").openConnection();
+            assertEquals(404, connection.getResponseCode());
+        } finally {
+            server.stop();
+        }
+    }
+
     @Test
     public void testCanUseInput() {
 //        Date date = fastDateFormat.parse("2020-09-20 23:45:00");
@@ -1133,6 +1219,228 @@ public class BlockchainTest {
     }
 
 
+    @Test
+    public void testBlockCacheCoherentAfterUnwind() {
+        KeyPair poolKey = KeyPair.create(secretary_2, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        List<Bytes32> hashes = Lists.newArrayList();
+
+        Block addressBlock = generateAddressBlock(config, poolKey, generateTime);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        hashes.add(addressBlock.getHashLow());
+        List<Address> pending = Lists.newArrayList();
+        Bytes32 ref = addressBlock.getHashLow();
+
+        // 1. main chain of 10 blocks
+        for (int i = 1; i <= 10; i++) {
+            generateTime += 64000L;
+            pending.clear();
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(poolKey), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            blockchain.tryToConnect(extraBlock);
+            hashes.add(extraBlock.getHashLow());
+            ref = extraBlock.getHashLow();
+        }
+        long heightBeforeFork = blockchain.getXdagStats().nmain;
+
+        // 2. a longer fork unwinds the main chain above
+        generateTime = 1600616700001L;
+        Block addressBlock1 = generateAddressBlock(config, poolKey, generateTime);
+        blockchain.tryToConnect(addressBlock1);
+        hashes.add(addressBlock1.getHashLow());
+        ref = addressBlock1.getHashLow();
+        for (int i = 0; i < 20; i++) {
+            generateTime += 64000L;
+            pending.clear();
+            pending.add(new Address(ref, XDAG_FIELD_OUT, false));
+            pending.add(new Address(keyPair2Hash(poolKey), XdagField.FieldType.XDAG_FIELD_COINBASE, true));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            blockchain.tryToConnect(extraBlock);
+            hashes.add(extraBlock.getHashLow());
+            ref = extraBlock.getHashLow();
+        }
+        assertTrue(blockchain.getXdagStats().nmain > heightBeforeFork);
+
+        // 3. the cached view must match what an uncached store reads back from rocksdb
+        BlockStore uncached = new BlockStoreImpl(
+                dbFactory.getDB(DatabaseName.INDEX),
+                dbFactory.getDB(DatabaseName.TIME),
+                dbFactory.getDB(DatabaseName.BLOCK),
+                dbFactory.getDB(DatabaseName.TXHISTORY));
+        BlockStore cached = kernel.getBlockStore();
+        for (Bytes32 hash : hashes) {
+            Block fromDb = uncached.getBlockInfoByHash(hash);
+            if (fromDb == null) {
+                // still an extra block in memory
+                assertNull(cached.getBlockInfoByHash(hash));
+                continue;
+            }
+            BlockInfo expected = fromDb.getInfo();
+            BlockInfo actual = cached.getBlockInfoByHash(hash).getInfo();
+            assertEquals(expected, actual);
+            assertEquals(expected.getAmount(), actual.getAmount());
+            assertEquals(expected.getFee(), actual.getFee());
+            assertArrayEquals(expected.getRef(), actual.getRef());
+            assertArrayEquals(expected.getMaxDiffLink(), actual.getMaxDiffLink());
+            assertEquals(expected.getDifficulty(), actual.getDifficulty());
+        }
+    }
+
+    @Test
+    public void testApplyDeepLinksOnSmallStack() throws Exception {
+        KeyPair poolKey = KeyPair.create(secretary_2, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        Block addressBlock = generateAddressBlock(config, poolKey, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        List<Bytes32> hashes = Lists.newArrayList();
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 0; i < 2000; i++) {
+            generateTime += 64000L;
+            List<Address> pending = Lists.newArrayList(new Address(ref, XDAG_FIELD_OUT, false));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            blockchain.tryToConnect(extraBlock);
+            hashes.add(extraBlock.getHashLow());
+            ref = extraBlock.getHashLow();
+        }
+        Bytes32 top = blockchain.getBlockByHeight(blockchain.getXdagStats().nmain).getHashLow();
+
+        // take every main block back, so that the top one applies the whole chain at once
+        blockchain.unWindMain(null);
+        assertEquals(0, blockchain.getXdagStats().nmain);
+        Block main = blockchain.getBlockByHash(top, true);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                blockchain.setMain(main);
+                assertEquals(1, blockchain.getXdagStats().nmain);
+                assertTrue((blockchain.getBlockByHash(hashes.get(0), false).getInfo().flags & BI_APPLIED) != 0);
+                blockchain.unSetMain(main);
+                assertEquals(0, blockchain.getXdagStats().nmain);
+                assertEquals(0, blockchain.getBlockByHash(hashes.get(0), false).getInfo().flags & BI_APPLIED);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+    }
+
+    @Test
+    public void testIdleCheckMainDoesNotReadStore() {
+        KeyPair poolKey = KeyPair.create(secretary_2, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        BlockStore blockStore = spy(kernel.getBlockStore());
+        kernel.setBlockStore(blockStore);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+
+        Block addressBlock = generateAddressBlock(config, poolKey, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        Bytes32 ref = addressBlock.getHashLow();
+        for (int i = 0; i < 10; i++) {
+            generateTime += 64000L;
+            List<Address> pending = Lists.newArrayList(new Address(ref, XDAG_FIELD_OUT, false));
+            long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+            Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+            assertSame(IMPORTED_BEST, blockchain.tryToConnect(extraBlock));
+            ref = extraBlock.getHashLow();
+        }
+        blockchain.checkMain();
+        long nmain = blockchain.getXdagStats().nmain;
+
+        Mockito.clearInvocations(blockStore);
+        for (int i = 0; i < 10; i++) {
+            blockchain.checkMain();
+        }
+        assertEquals(nmain, blockchain.getXdagStats().nmain);
+        Mockito.verify(blockStore, Mockito.never()).getBlockByHash(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(blockStore, Mockito.never()).getBlockInfoByHash(Mockito.any());
+        Mockito.verify(blockStore, Mockito.never()).saveXdagStatus(Mockito.any());
+
+        // stats reported by peers are saved on the next check, once
+        blockchain.getXdagStats().update(new XdagStats(BigInteger.ONE.shiftLeft(200), 0, 0, 5, 0));
+        blockchain.checkMain();
+        blockchain.checkMain();
+        Mockito.verify(blockStore, Mockito.times(1)).saveXdagStatus(Mockito.any());
+    }
+
+    @Test
+    public void testInvalidPublicKeyRejected() {
+        KeyPair poolKey = KeyPair.create(secretary_2, Sign.CURVE, Sign.CURVE_NAME);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        Block addressBlock = generateAddressBlock(config, poolKey, 1600616700000L);
+
+        assertSame(INVALID_BLOCK, blockchain.tryToConnect(withInvalidPublicKey(addressBlock)));
+        assertFalse(blockchain.canUseInput(withInvalidPublicKey(addressBlock)));
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+    }
+
+    @Test
+    public void testFailedImportRestoresChainState() {
+        KeyPair poolKey = KeyPair.create(secretary_2, Sign.CURVE, Sign.CURVE_NAME);
+        long generateTime = 1600616700000L;
+        BlockStore blockStore = spy(kernel.getBlockStore());
+        kernel.setBlockStore(blockStore);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+
+        Block addressBlock = generateAddressBlock(config, poolKey, generateTime);
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(addressBlock));
+        long nblocks = blockchain.getXdagStats().nblocks;
+        long nnoref = blockchain.getXdagStats().nnoref;
+        long nextra = blockchain.getXdagStats().nextra;
+        byte[] top = blockchain.getXdagTopStatus().getTop().clone();
+        BigInteger topDiff = blockchain.getXdagTopStatus().getTopDiff();
+
+        generateTime += 64000L;
+        List<Address> pending = Lists.newArrayList(new Address(addressBlock.getHashLow(), XDAG_FIELD_OUT, false));
+        long xdagTime = XdagTime.getEndOfEpoch(XdagTime.msToXdagtimestamp(generateTime));
+        Block extraBlock = generateExtraBlock(config, poolKey, xdagTime, pending);
+        Mockito.doThrow(new IllegalStateException("disk full")).when(blockStore).saveXdagStatus(Mockito.any());
+        assertSame(ERROR, blockchain.tryToConnect(extraBlock));
+
+        assertEquals(nblocks, blockchain.getXdagStats().nblocks);
+        assertEquals(nnoref, blockchain.getXdagStats().nnoref);
+        assertEquals(nextra, blockchain.getXdagStats().nextra);
+        assertArrayEquals(top, blockchain.getXdagTopStatus().getTop());
+        assertEquals(topDiff, blockchain.getXdagTopStatus().getTopDiff());
+        assertFalse(blockchain.isExistInMem(extraBlock.getHashLow()));
+        assertNull(blockchain.getBlockByHash(extraBlock.getHashLow(), false));
+
+        Mockito.doCallRealMethod().when(blockStore).saveXdagStatus(Mockito.any());
+        assertSame(IMPORTED_BEST, blockchain.tryToConnect(new Block(new XdagBlock(extraBlock.toBytes()))));
+        assertEquals(nblocks + 1, blockchain.getXdagStats().nblocks);
+    }
+
+    @Test
+    public void testTxHistorySubmittedOnCommit() {
+        TxHistoryWriter txHistoryWriter = Mockito.mock(TxHistoryWriter.class);
+        kernel.setTxHistoryWriter(txHistoryWriter);
+        MockBlockchain blockchain = new MockBlockchain(kernel);
+        UnitOfWork unitOfWork = dbFactory.getUnitOfWork();
+        Bytes32 address = Bytes32.random();
+        Bytes32 tx = Bytes32.random();
+
+        unitOfWork.begin();
+        blockchain.onNewTxHistory(address, tx, XDAG_FIELD_IN, XAmount.of(1, XUnit.XDAG), 1L, null, false);
+        Mockito.verify(txHistoryWriter, Mockito.never()).submit(Mockito.any());
+        unitOfWork.rollback();
+        Mockito.verify(txHistoryWriter, Mockito.never()).submit(Mockito.any());
+
+        unitOfWork.begin();
+        blockchain.onNewTxHistory(address, tx, XDAG_FIELD_IN, XAmount.of(1, XUnit.XDAG), 1L, null, false);
+        unitOfWork.commit();
+        Mockito.verify(txHistoryWriter).submit(Mockito.any());
+    }
+
     static class MockBlockchain extends BlockchainImpl {
 
         public MockBlockchain(Kernel kernel) {
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ChainStateSnapshotTest {
+
+    @Test
+    public void testRestore() {
+        XdagStats stats = new XdagStats();
+        stats.nblocks = 10;
+        stats.totalnblocks = 12;
+        stats.nextra = 2;
+        stats.nnoref = 3;
+        stats.nmain = 4;
+        XdagTopStatus topStatus = new XdagTopStatus();
+        topStatus.setTop(new byte[]{1});
+        topStatus.setTopDiff(BigInteger.TEN);
+        XdagExtStats extStats = new XdagExtStats();
+        BigInteger[] hashRateTotal = extStats.getHashRateTotal();
+        List<String> pool = new ArrayList<>();
+
+        ChainStateSnapshot snapshot = new ChainStateSnapshot(stats, topStatus, extStats);
+        stats.nblocks++;
+        stats.totalnblocks = 13;
+        stats.nextra++;
+        stats.nnoref--;
+        stats.nmain++;
+        stats.updateMaxDiff(BigInteger.TWO);
+        topStatus.getTop()[0] = 5;
+        topStatus.setTop(new byte[]{2});
+        topStatus.setTopDiff(BigInteger.TWO);
+        topStatus.setPreTop(new byte[]{1});
+        hashRateTotal[3] = BigInteger.ONE;
+        extStats.setHashrate_last_time(64);
+        pool.add("extra");
+        snapshot.onRollback(() -> pool.remove("extra"));
+        snapshot.restore();
+
+        assertEquals(10, stats.nblocks);
+        assertEquals(12, stats.totalnblocks);
+        assertEquals(2, stats.nextra);
+        assertEquals(3, stats.nnoref);
+        assertEquals(4, stats.nmain);
+        assertEquals(BigInteger.ZERO, stats.maxdifficulty);
+        assertArrayEquals(new byte[]{1}, topStatus.getTop());
+        assertEquals(BigInteger.TEN, topStatus.getTopDiff());
+        assertNull(topStatus.getPreTop());
+        assertEquals(BigInteger.ZERO, hashRateTotal[3]);
+        assertEquals(0, extStats.getHashrate_last_time());
+        assertEquals(0, pool.size());
+    }
+}
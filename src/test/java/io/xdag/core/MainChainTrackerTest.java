@@ -0,0 +1,138 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.BlockInfoBuilder.hashlow;
+import static io.xdag.config.Constants.BI_MAIN;
+import static io.xdag.config.Constants.BI_MAIN_CHAIN;
+import static io.xdag.config.Constants.BI_REF;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import io.xdag.BlockInfoBuilder;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MainChainTrackerTest {
+
+    private MainChainTracker tracker;
+    private MainChainTracker.Candidate top;
+    private MainChainTracker.Candidate middle;
+    private MainChainTracker.Candidate bottom;
+
+    private static Block block(int id, int flags, Bytes32 maxDiffLink) {
+        BlockInfo info = BlockInfoBuilder.blockInfo(id);
+        info.setFlags(flags);
+        info.setTimestamp(id);
+        info.setMaxDiffLink(maxDiffLink == null ? null : maxDiffLink.toArray());
+        return new Block(info);
+    }
+
+    @Before
+    public void setUp() {
+        tracker = new MainChainTracker();
+        top = new MainChainTracker.Candidate(hashlow(3), 3, BI_MAIN_CHAIN);
+        middle = new MainChainTracker.Candidate(hashlow(2), 2, BI_MAIN_CHAIN | BI_REF);
+        bottom = new MainChainTracker.Candidate(hashlow(1), 1, BI_REF);
+        tracker.reset(hashlow(3), Lists.newArrayList(top, middle, bottom));
+    }
+
+    @Test
+    public void testReset() {
+        assertTrue(tracker.isValid(hashlow(3)));
+        assertFalse(tracker.isValid(hashlow(4)));
+        assertSame(middle, tracker.oldestOnChain());
+        assertEquals(2, tracker.chainCount());
+        assertEquals(3, tracker.size());
+    }
+
+    @Test
+    public void testNewTopLinkingTheTopExtendsThePath() {
+        tracker.onNewTop(block(4, BI_MAIN_CHAIN, hashlow(3)), hashlow(3));
+
+        assertTrue(tracker.isValid(hashlow(4)));
+        assertEquals(4, tracker.size());
+        assertEquals(3, tracker.chainCount());
+        assertSame(middle, tracker.oldestOnChain());
+    }
+
+    @Test
+    public void testOtherNewTopNeedsRebuild() {
+        tracker.onNewTop(block(4, BI_MAIN_CHAIN, hashlow(2)), hashlow(3));
+
+        assertFalse(tracker.isValid(hashlow(4)));
+        assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void testFlagsOfPathBlocksAreFollowed() {
+        tracker.onFlags(hashlow(1), BI_REF, BI_REF | BI_MAIN_CHAIN);
+        assertEquals(3, tracker.chainCount());
+        assertEquals(hashlow(1), tracker.oldestOnChain().hashlow);
+
+        tracker.onFlags(hashlow(1), BI_REF | BI_MAIN_CHAIN, BI_REF);
+        tracker.onFlags(hashlow(2), BI_MAIN_CHAIN | BI_REF, BI_REF);
+        assertEquals(1, tracker.chainCount());
+        assertSame(top, tracker.oldestOnChain());
+
+        // flags of blocks off the path do not matter
+        tracker.onFlags(hashlow(9), 0, BI_MAIN_CHAIN);
+        assertTrue(tracker.isValid(hashlow(3)));
+    }
+
+    @Test
+    public void testNewMainCutsThePath() {
+        tracker.onFlags(hashlow(2), BI_MAIN_CHAIN | BI_REF, BI_MAIN_CHAIN | BI_REF | BI_MAIN);
+
+        assertTrue(tracker.isValid(hashlow(3)));
+        assertEquals(1, tracker.size());
+        assertEquals(1, tracker.chainCount());
+        assertSame(top, tracker.oldestOnChain());
+
+        tracker.onFlags(hashlow(3), BI_MAIN_CHAIN, BI_MAIN_CHAIN | BI_MAIN);
+        assertEquals(0, tracker.size());
+        assertNull(tracker.oldestOnChain());
+    }
+
+    @Test
+    public void testUnsetMainBelowThePathNeedsRebuild() {
+        tracker.onFlags(hashlow(0), BI_MAIN_CHAIN | BI_MAIN, BI_MAIN_CHAIN);
+
+        assertFalse(tracker.isValid(hashlow(3)));
+    }
+
+    @Test
+    public void testRemovedPathBlockNeedsRebuild() {
+        tracker.onRemoved(hashlow(9));
+        assertTrue(tracker.isValid(hashlow(3)));
+
+        tracker.onRemoved(hashlow(2));
+        assertFalse(tracker.isValid(hashlow(3)));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static io.xdag.BlockInfoBuilder.hashlow;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.BlockInfoBuilder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemOrphanPoolTest {
+
+    private MemOrphanPool pool;
+
+    private static Block block(int id, long timestamp) {
+        BlockInfo info = BlockInfoBuilder.blockInfo(id);
+        info.setTimestamp(timestamp);
+        return new Block(info);
+    }
+
+    @Before
+    public void setUp() {
+        pool = new MemOrphanPool();
+    }
+
+    @Test
+    public void testAddGetRemove() {
+        Block a = block(1, 100);
+        assertTrue(pool.add(a));
+        assertFalse(pool.add(block(1, 50)));
+        assertSame(a, pool.get(hashlow(1)));
+        assertTrue(pool.contains(hashlow(1)));
+        assertEquals(1, pool.size());
+
+        assertSame(a, pool.remove(hashlow(1)));
+        assertNull(pool.remove(hashlow(1)));
+        assertFalse(pool.contains(hashlow(1)));
+        assertTrue(pool.isEmpty());
+        assertNull(pool.oldest());
+    }
+
+    @Test
+    public void testOldestFollowsTimestamp() {
+        Block late = block(1, 300);
+        Block early = block(2, 100);
+        Block middle = block(3, 200);
+        Block tie = block(4, 100);
+        pool.add(late);
+        pool.add(early);
+        pool.add(middle);
+        pool.add(tie);
+
+        assertSame(early, pool.oldest());
+        pool.remove(hashlow(2));
+        assertSame(tie, pool.oldest());
+        pool.remove(hashlow(4));
+        assertSame(middle, pool.oldest());
+        pool.remove(hashlow(3));
+        assertSame(late, pool.oldest());
+    }
+
+    @Test
+    public void testKeyIsNotAliasedToBlock() {
+        Block a = block(1, 100);
+        pool.add(a);
+        a.getHashLow().set(31, (byte) 9);
+        assertTrue(pool.contains(hashlow(1)));
+    }
+
+    @Test
+    public void testConcurrentReadersWithWriter() throws Exception {
+        final int blocks = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<?>[] readers = new Future<?>[3];
+            for (int r = 0; r < readers.length; r++) {
+                readers[r] = executor.submit(() -> {
+                    start.await();
+                    int i = 0;
+                    while (!done.get()) {
+                        Bytes32 key = hashlow(i++ % blocks);
+                        Block b = pool.get(key);
+                        if (b != null) {
+                            assertEquals(key, b.getHashLow());
+                        }
+                        pool.contains(key);
+                        pool.oldest();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (int i = 0; i < blocks; i++) {
+                pool.add(block(i, blocks - i));
+                if (i % 3 == 0) {
+                    pool.remove(pool.oldest().getHashLow());
+                }
+            }
+            done.set(true);
+            for (Future<?> reader : readers) {
+                reader.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int expected = blocks - (blocks + 2) / 3;
+        assertEquals(expected, pool.size());
+        int drained = 0;
+        long last = Long.MIN_VALUE;
+        while (!pool.isEmpty()) {
+            Block oldest = pool.oldest();
+            assertTrue(oldest.getTimestamp() >= last);
+            last = oldest.getTimestamp();
+            assertSame(oldest, pool.remove(oldest.getHashLow()));
+            drained++;
+        }
+        assertEquals(expected, drained);
+        assertNull(pool.oldest());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.xdag.BlockInfoBuilder;
+import io.xdag.db.AddressStore;
+import io.xdag.db.BlockStore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+public class StateJournalTest {
+
+    private final byte[] address = new byte[20];
+
+    private BlockStore blockStore;
+    private AddressStore addressStore;
+    private StateJournal journal;
+
+    @Before
+    public void setUp() {
+        blockStore = mock(BlockStore.class);
+        addressStore = mock(AddressStore.class);
+        when(addressStore.getBalanceByAddress(any())).thenReturn(XAmount.of(10));
+        when(addressStore.getAllBalance()).thenReturn(XAmount.of(100));
+        journal = new StateJournal(blockStore, addressStore);
+        address[0] = 1;
+    }
+
+    private static BlockInfo blockInfo(int id, int flags) {
+        BlockInfo info = BlockInfoBuilder.blockInfo(id);
+        info.setFlags(flags);
+        return info;
+    }
+
+    @Test
+    public void testWritesThroughWhenNotOpen() {
+        BlockInfo info = blockInfo(1, 0);
+        journal.saveBlockInfo(info);
+        journal.updateBalance(address, XAmount.of(5));
+        journal.updateAllBalance(XAmount.of(50));
+
+        verify(blockStore).saveBlockInfo(info);
+        verify(addressStore).updateBalance(address, XAmount.of(5));
+        verify(addressStore).updateAllBalance(XAmount.of(50));
+        assertNull(journal.getBlockInfo(Bytes32.wrap(info.getHashlow())));
+        assertFalse(journal.isOpen());
+    }
+
+    @Test
+    public void testCommitWritesLastStateOnce() {
+        BlockInfo first = blockInfo(1, 0);
+        BlockInfo second = blockInfo(2, 0);
+        journal.begin();
+        journal.saveBlockInfo(first);
+        journal.saveBlockInfo(second);
+        first.setFlags(1);
+        journal.saveBlockInfo(first);
+        // the saved state is a copy, later changes of the caller do not leak in
+        first.setFlags(3);
+
+        journal.updateBalance(address, journal.getBalance(address).add(XAmount.of(1)));
+        journal.updateBalance(address, journal.getBalance(address).add(XAmount.of(1)));
+        journal.updateAllBalance(journal.getAllBalance().add(XAmount.of(1)));
+
+        assertEquals(1, journal.getBlockInfo(Bytes32.wrap(first.getHashlow())).getFlags());
+        assertEquals(XAmount.of(12), journal.getBalance(address));
+        assertEquals(XAmount.of(101), journal.getAllBalance());
+        verify(blockStore, never()).saveBlockInfo(any());
+        verify(addressStore, never()).updateBalance(any(), any());
+
+        journal.commit();
+
+        ArgumentCaptor<BlockInfo> saved = ArgumentCaptor.forClass(BlockInfo.class);
+        verify(blockStore, times(2)).saveBlockInfo(saved.capture());
+        // in the order of the last change
+        assertArrayEquals(second.getHashlow(), saved.getAllValues().get(0).getHashlow());
+        assertArrayEquals(first.getHashlow(), saved.getAllValues().get(1).getHashlow());
+        assertEquals(1, saved.getAllValues().get(1).getFlags());
+        verify(addressStore, times(1)).updateBalance(address, XAmount.of(12));
+        verify(addressStore, times(1)).updateAllBalance(XAmount.of(101));
+        assertFalse(journal.isOpen());
+    }
+
+    @Test
+    public void testRollbackRestoresPreviousState() {
+        BlockInfo info = blockInfo(1, 0);
+        AtomicInteger counter = new AtomicInteger();
+        journal.begin();
+        journal.saveBlockInfo(info);
+        journal.updateBalance(address, XAmount.of(7));
+
+        journal.begin();
+        info.setFlags(1);
+        journal.saveBlockInfo(info);
+        journal.saveBlockInfo(blockInfo(2, 0));
+        journal.updateBalance(address, XAmount.of(8));
+        journal.updateAllBalance(XAmount.of(1));
+        counter.incrementAndGet();
+        journal.onRollback(counter::decrementAndGet);
+        journal.rollback();
+
+        // the inner changes are gone, the outer ones are kept
+        assertTrue(journal.isOpen());
+        assertEquals(0, counter.get());
+        assertEquals(0, journal.getBlockInfo(Bytes32.wrap(info.getHashlow())).getFlags());
+        assertNull(journal.getBlockInfo(Bytes32.wrap(blockInfo(2, 0).getHashlow())));
+        assertEquals(XAmount.of(7), journal.getBalance(address));
+        assertEquals(XAmount.of(100), journal.getAllBalance());
+
+        journal.rollback();
+        assertFalse(journal.isOpen());
+        assertEquals(XAmount.of(10), journal.getBalance(address));
+        verify(blockStore, never()).saveBlockInfo(any());
+        verify(addressStore, never()).updateBalance(any(), any());
+        verify(addressStore, never()).updateAllBalance(any());
+    }
+
+    @Test
+    public void testNestedCommitWritesOnOutermost() {
+        journal.begin();
+        journal.begin();
+        journal.updateBalance(address, XAmount.of(3));
+        journal.commit();
+        verify(addressStore, never()).updateBalance(any(), any());
+
+        journal.commit();
+        InOrder order = inOrder(addressStore);
+        order.verify(addressStore).updateBalance(address, XAmount.of(3));
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void testOnlyVisibleToOwnerThread() throws Exception {
+        journal.begin();
+        journal.saveBlockInfo(blockInfo(1, 0));
+        journal.updateBalance(address, XAmount.of(3));
+
+        AtomicReference<Object> seen = new AtomicReference<>();
+        AtomicReference<Throwable> beginError = new AtomicReference<>();
+        Thread other = new Thread(() -> {
+            seen.set(journal.getBalance(address));
+            try {
+                journal.begin();
+            } catch (IllegalStateException e) {
+                beginError.set(e);
+            }
+        });
+        other.start();
+        other.join();
+
+        assertEquals(XAmount.of(10), seen.get());
+        assertTrue(beginError.get() instanceof IllegalStateException);
+        journal.commit();
+    }
+
+    @Test
+    public void testCommitWithoutBeginFails() {
+        try {
+            journal.commit();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
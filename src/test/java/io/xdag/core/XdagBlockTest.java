@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.Test;
+
+public class XdagBlockTest {
+
+    private static byte[] randomBlock() {
+        byte[] raw = new byte[XdagBlock.XDAG_BLOCK_SIZE];
+        new Random(7).nextBytes(raw);
+        return raw;
+    }
+
+    @Test
+    public void testViewMatchesFields() {
+        byte[] raw = randomBlock();
+        XdagBlock view = new XdagBlock(raw);
+        long type = Bytes.wrap(raw).getLong(8, ByteOrder.LITTLE_ENDIAN);
+        long sum = 0;
+        for (int i = 0; i < XdagBlock.XDAG_BLOCK_FIELDS; i++) {
+            XdagField field = view.getField(i);
+            assertEquals(XdagField.FieldType.fromByte((byte) (type >> (i << 2) & 0xf)), view.getFieldType(i));
+            assertEquals(field.getType(), view.getFieldType(i));
+            assertEquals(Bytes.wrap(raw, i * 32, 32), view.getFieldData(i));
+            assertEquals(Bytes.wrap(raw, i * 32, 32), field.getData());
+            assertSame(field, view.getField(i));
+            sum += field.getSum();
+        }
+        assertEquals(sum, view.getSum());
+    }
+
+    @Test
+    public void testFieldsAreViews() {
+        byte[] raw = randomBlock();
+        XdagBlock view = new XdagBlock(raw);
+        raw[14 * 32] ^= 1;
+        assertEquals(Bytes.wrap(raw, 14 * 32, 32), view.getField(14).getData());
+        assertEquals(Bytes.wrap(raw, 14 * 32, 32), view.getFieldData(14));
+    }
+
+    @Test
+    public void testFromFields() {
+        XdagBlock view = new XdagBlock(randomBlock());
+        XdagField[] fields = new XdagField[XdagBlock.XDAG_BLOCK_FIELDS];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = new XdagField(MutableBytes.wrap(view.getFieldData(i).reverse().toArray()));
+        }
+        XdagBlock built = new XdagBlock(fields);
+        assertEquals(view.getData(), built.getData());
+        assertEquals(view.getFieldType(9), built.getFieldType(9));
+        assertEquals(view.getFieldData(9), built.getFieldData(9));
+    }
+
+    @Test(expected = Error.class)
+    public void testShortData() {
+        new XdagBlock(new byte[100]).getFieldType(1);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RandomXTest {
+
+    private static final int INPUTS = 64;
+
+    Config config = new DevnetConfig();
+    RandomX randomX;
+
+    @Before
+    public void setUp() {
+        randomX = new RandomX(config);
+        randomX.init();
+        RandomXMemory memory = randomX.getGlobalMemory()[1];
+        memory.setSeed("xdag randomx test seed".getBytes());
+        randomX.randomXPoolUpdateSeed(1);
+        randomX.setRandomXHashEpochIndex(1);
+    }
+
+    @After
+    public void tearDown() {
+        randomX.randomXPoolReleaseMem();
+    }
+
+    @Test
+    public void testParallelHashMatchesSerial() throws Exception {
+        List<byte[]> inputs = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < INPUTS; i++) {
+            byte[] data = new byte[64];
+            data[0] = (byte) i;
+            data[63] = (byte) (i * 7);
+            inputs.add(data);
+            expected.add(randomX.randomXBlockHash(data, data.length, 0));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> hashes = new ArrayList<>();
+            for (byte[] data : inputs) {
+                hashes.add(executor.submit(() -> randomX.randomXBlockHash(data, data.length, 0)));
+            }
+            assertEquals(INPUTS, hashes.size());
+            for (int i = 0; i < INPUTS; i++) {
+                assertArrayEquals(expected.get(i), hashes.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -219,8 +219,8 @@ public class SnapshotStoreTest {
     public void makeSnapshot() throws IOException {
         dataConfig.getNodeSpec().setStoreDir(backup.getAbsolutePath());
         dataConfig.getNodeSpec().setStoreBackupDir(root2.newFolder().getAbsolutePath());
-        RocksdbKVSource blockSource = new RocksdbKVSource(DatabaseName.BLOCK.toString());
-        blockSource.setConfig(dataConfig);
+        RocksdbFactory dataFactory = new RocksdbFactory(dataConfig);
+        RocksdbKVSource blockSource = (RocksdbKVSource) dataFactory.getDB(DatabaseName.BLOCK);
         blockSource.init();
 
         snapshotSource = new RocksdbKVSource(DatabaseName.SNAPSHOT.toString());
@@ -228,8 +228,7 @@ public class SnapshotStoreTest {
         snapshotStore = new SnapshotStoreImpl(snapshotSource);
         snapshotStore.init();
 
-        RocksdbKVSource indexSource = new RocksdbKVSource(DatabaseName.INDEX.toString());
-        indexSource.setConfig(dataConfig);
+        RocksdbKVSource indexSource = (RocksdbKVSource) dataFactory.getDB(DatabaseName.INDEX);
         indexSource.init();
 
         snapshotStore.makeSnapshot(blockSource, indexSource,false);
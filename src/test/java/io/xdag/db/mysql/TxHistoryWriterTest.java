@@ -0,0 +1,193 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.mysql;
+
+import static io.xdag.db.BlockStore.TX_HISTORY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Address;
+import io.xdag.core.TxHistory;
+import io.xdag.core.XAmount;
+import io.xdag.core.XUnit;
+import io.xdag.core.XdagField;
+import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.rocksdb.DatabaseFactory;
+import io.xdag.db.rocksdb.DatabaseName;
+import io.xdag.db.rocksdb.KVSource;
+import io.xdag.db.rocksdb.RocksdbFactory;
+import io.xdag.utils.BasicUtils;
+import io.xdag.utils.DruidUtils;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TxHistoryWriterTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    DatabaseFactory factory;
+    KVSource<byte[], byte[]> spill;
+    TxHistoryWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        spill = factory.getDB(DatabaseName.TXHISTORY);
+
+        Connection conn = DruidUtils.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute(TransactionHistoryStoreImplTest.SQL_CTEATE_TABLE);
+        DruidUtils.close(conn, stmt);
+    }
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.stop();
+        }
+        factory.close();
+    }
+
+    @Test
+    public void testGroupCommitKeepsOrder() throws Exception {
+        writer = new TxHistoryWriter(new TransactionHistoryStoreImpl(100), spill);
+        writer.start();
+        int count = TxHistoryWriter.BATCH_SIZE * 2 + 500;
+        for (int i = 0; i < count; i++) {
+            writer.submit(txHistory(i));
+        }
+        assertTrue(writer.flush(30, TimeUnit.SECONDS));
+
+        List<String> remarks = new CopyOnWriteArrayList<>();
+        Connection conn = DruidUtils.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement("select fremark from t_transaction_history order by fid");
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+            remarks.add(rs.getString(1));
+        }
+        DruidUtils.close(conn, pstmt, rs);
+        assertEquals(count, remarks.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(String.valueOf(i), remarks.get(i));
+        }
+        assertEquals(0, writer.getSpilled());
+    }
+
+    @Test
+    public void testSpillDuringOutageAndReplayInOrder() throws Exception {
+        AtomicBoolean down = new AtomicBoolean(true);
+        List<TxHistory> written = new CopyOnWriteArrayList<>();
+        TransactionHistoryStore store = mock(TransactionHistoryStore.class);
+        when(store.saveTxHistories(anyList())).thenAnswer(invocation -> {
+            if (down.get()) {
+                return false;
+            }
+            written.addAll(invocation.getArgument(0));
+            return true;
+        });
+        writer = new TxHistoryWriter(store, spill);
+        writer.start();
+        for (int i = 0; i < 1500; i++) {
+            writer.submit(txHistory(i));
+        }
+        assertTrue(writer.flush(10, TimeUnit.SECONDS));
+        assertEquals(1500, writer.getSpilled());
+        assertEquals(1500, spill.prefixKeyLookup(new byte[]{TX_HISTORY}).size());
+
+        // later records queue up behind the spilled ones
+        down.set(false);
+        for (int i = 1500; i < 1600; i++) {
+            writer.submit(txHistory(i));
+        }
+        long deadline = System.currentTimeMillis() + 10 * TxHistoryWriter.MIN_RETRY_DELAY;
+        while ((writer.getSpilled() > 0 || written.size() < 1600) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1600, written.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(String.valueOf(i), written.get(i).getRemark());
+        }
+        assertEquals(XAmount.of(1, XUnit.XDAG), written.get(7).getAddress().getAmount());
+        assertEquals(0, spill.prefixKeyLookup(new byte[]{TX_HISTORY}).size());
+    }
+
+    @Test
+    public void testSubmitDoesNotWaitForDatabase() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TransactionHistoryStore store = mock(TransactionHistoryStore.class);
+        when(store.saveTxHistories(anyList())).thenAnswer(invocation -> {
+            release.await();
+            return true;
+        });
+        writer = new TxHistoryWriter(store, spill);
+        writer.start();
+
+        // the writer is stuck in the database, import goes on
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            writer.submit(txHistory(i));
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("submit took " + elapsed + " ms", elapsed < 1000);
+        assertTrue(writer.getQueued() > 0);
+
+        release.countDown();
+        assertTrue(writer.flush(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSpillEncoding() {
+        TxHistory txHistory = txHistory(42);
+        TxHistory decoded = TxHistoryWriter.decode(new byte[9], TxHistoryWriter.encode(txHistory));
+        assertEquals(txHistory.toString(), decoded.toString());
+    }
+
+    private static TxHistory txHistory(int i) {
+        Bytes32 hashlow = Bytes32.fromHexStringLenient(Integer.toHexString(i + 1));
+        Address address = new Address(hashlow, XdagField.FieldType.XDAG_FIELD_IN, XAmount.of(1, XUnit.XDAG), false);
+        return new TxHistory(address, BasicUtils.hash2Address(hashlow), i, String.valueOf(i));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import static io.xdag.db.BlockStore.HASH_BLOCK_INFO;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.BlockInfo;
+import io.xdag.core.SnapshotInfo;
+import io.xdag.core.XAmount;
+import io.xdag.core.XUnit;
+import io.xdag.db.execption.SerializationException;
+import io.xdag.utils.BytesUtils;
+import java.math.BigInteger;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes32;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockInfoCodecTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    DatabaseFactory factory;
+    KVSource<byte[], byte[]> indexSource;
+    BlockStoreImpl blockStore;
+    Random random = new Random(1);
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        indexSource = factory.getDB(DatabaseName.INDEX);
+        blockStore = new BlockStoreImpl(indexSource, factory.getDB(DatabaseName.TIME),
+                factory.getDB(DatabaseName.BLOCK), factory.getDB(DatabaseName.TXHISTORY));
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        BlockInfo blockInfo = blockInfo(7);
+        blockInfo.setSnapshot(true);
+        blockInfo.setSnapshotInfo(new SnapshotInfo(true, randomBytes(33)));
+        byte[] encoded = BlockInfoCodec.encode(blockInfo);
+        assertTrue(BlockInfoCodec.isEncoded(encoded));
+        assertEquals(BlockInfoCodec.HEADER_SIZE + 33, encoded.length);
+
+        assertEquals(blockInfo.toString(), BlockInfoCodec.decode(encoded).toString());
+        assertEquals(blockInfo.getFlags(), BlockInfoCodec.flags(encoded));
+        assertEquals(blockInfo.getHeight(), BlockInfoCodec.height(encoded));
+        assertEquals(blockInfo.getTimestamp(), BlockInfoCodec.timestamp(encoded));
+        assertEquals(blockInfo.getAmount(), BlockInfoCodec.amount(encoded));
+    }
+
+    @Test
+    public void testRoundTripNullFields() throws Exception {
+        BlockInfo blockInfo = new BlockInfo();
+        blockInfo.setHashlow(randomBytes(32));
+        blockInfo.setSnapshotInfo(new SnapshotInfo(false, null));
+        byte[] encoded = BlockInfoCodec.encode(blockInfo);
+        assertEquals(BlockInfoCodec.HEADER_SIZE, encoded.length);
+
+        BlockInfo decoded = BlockInfoCodec.decode(encoded);
+        assertEquals(blockInfo.toString(), decoded.toString());
+        assertNull(decoded.getDifficulty());
+        assertNull(decoded.getRef());
+        assertNull(decoded.getSnapshotInfo().getData());
+    }
+
+    @Test
+    public void testLargestDifficulty() throws Exception {
+        BlockInfo blockInfo = blockInfo(1);
+        // 256 bits, toByteArray() gives 33 bytes
+        blockInfo.setDifficulty(BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE));
+        assertEquals(blockInfo.getDifficulty(), BlockInfoCodec.decode(BlockInfoCodec.encode(blockInfo)).getDifficulty());
+    }
+
+    @Test(expected = SerializationException.class)
+    public void testFieldOutOfLayout() throws Exception {
+        BlockInfo blockInfo = blockInfo(1);
+        blockInfo.setRemark(new byte[]{1, 2, 3});
+        BlockInfoCodec.encode(blockInfo);
+    }
+
+    @Test
+    public void testKryoIsNotEncoded() {
+        byte[] kryo = Hex.decode("000b0b06a3b82241967b51a190003821c85e4170076aaca3b2ca5157c4e32be33164847e5a4ab0b03abe6202b0cd2712210000000000000000b2ca5157c4e32be33164847e5a4ab0b03abe6202b0cd271200210000000000000000ed08bcea6ac58a3cc883ad35e862caf1e60fe8f77d0933ba210000000000000000b8cb3358f9fbca51916d3d7378b00190dc75b3e55703180f00feff97d8f85bf0d482808080808080");
+        assertFalse(BlockInfoCodec.isEncoded(kryo));
+        assertFalse(BlockInfoCodec.isEncoded(null));
+    }
+
+    @Test
+    public void testStoreFallsBackToKryo() {
+        blockStore.init();
+        BlockInfo blockInfo = blockInfo(3);
+        blockInfo.setRemark(new byte[]{1, 2, 3});
+        blockStore.saveBlockInfo(blockInfo);
+        byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, blockInfo.getHashlow()));
+        assertFalse(BlockInfoCodec.isEncoded(value));
+
+        blockStore.invalidateCache();
+        BlockInfo stored = blockStore.getBlockInfoByHash(Bytes32.wrap(blockInfo.getHashlow())).getInfo();
+        assertArrayEquals(blockInfo.getRemark(), stored.getRemark());
+    }
+
+    @Test
+    public void testMigrateKryoRecords() throws Exception {
+        BlockInfo[] blockInfos = new BlockInfo[5];
+        for (int i = 0; i < blockInfos.length; i++) {
+            blockInfos[i] = blockInfo(i);
+            indexSource.put(BytesUtils.merge(HASH_BLOCK_INFO, blockInfos[i].getHashlow()),
+                    blockStore.serialize(blockInfos[i]));
+        }
+        blockStore.init();
+
+        for (BlockInfo blockInfo : blockInfos) {
+            Bytes32 hashlow = Bytes32.wrap(blockInfo.getHashlow());
+            byte[] value = indexSource.get(BytesUtils.merge(HASH_BLOCK_INFO, hashlow.toArray()));
+            assertTrue(BlockInfoCodec.isEncoded(value));
+            assertEquals(blockInfo.toString(), blockStore.getBlockInfoByHash(hashlow).getInfo().toString());
+            assertEquals(blockInfo.getAmount(), blockStore.getBlockAmount(hashlow));
+        }
+    }
+
+    private BlockInfo blockInfo(long height) {
+        BlockInfo blockInfo = new BlockInfo();
+        blockInfo.type = 0x0171;
+        blockInfo.flags = 0x1f;
+        blockInfo.setHeight(height);
+        blockInfo.setDifficulty(new BigInteger(128, random));
+        blockInfo.setRef(randomBytes(32));
+        blockInfo.setMaxDiffLink(randomBytes(32));
+        blockInfo.setHash(randomBytes(32));
+        blockInfo.setHashlow(randomBytes(32));
+        blockInfo.setRemark(randomBytes(32));
+        blockInfo.setFee(XAmount.of(100, XUnit.MILLI_XDAG));
+        blockInfo.setAmount(XAmount.of(1024, XUnit.XDAG));
+        blockInfo.setTimestamp(height * 64);
+        return blockInfo;
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Address;
+import io.xdag.core.Block;
+import io.xdag.db.OrphanBlockStore;
+import io.xdag.utils.BytesUtils;
+import java.util.List;
+import org.apache.tuweni.bytes.MutableBytes32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OrphanBlockStoreImplTest {
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    DatabaseFactory factory;
+    OrphanBlockStoreImpl orphanBlockStore;
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        orphanBlockStore = new OrphanBlockStoreImpl(factory.getDB(DatabaseName.ORPHANIND));
+        orphanBlockStore.reset();
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Test
+    public void testGetOrphanOldestFirst() {
+        assertNull(orphanBlockStore.getOrphan(4, new long[]{Long.MAX_VALUE, 0}));
+        // added out of time order
+        for (long time : new long[]{50, 10, 40, 20, 30}) {
+            orphanBlockStore.addOrphan(block(time));
+        }
+        assertEquals(5, orphanBlockStore.getOrphanSize());
+
+        long[] sendtime = new long[]{35, 0};
+        List<Address> orphans = orphanBlockStore.getOrphan(4, sendtime);
+        assertEquals(3, orphans.size());
+        assertEquals(hashlow(10), orphans.get(0).getAddress());
+        assertEquals(hashlow(20), orphans.get(1).getAddress());
+        assertEquals(hashlow(30), orphans.get(2).getAddress());
+        assertEquals(31, sendtime[1]);
+
+        sendtime = new long[]{100, 0};
+        orphans = orphanBlockStore.getOrphan(2, sendtime);
+        assertEquals(2, orphans.size());
+        assertEquals(hashlow(20), orphans.get(1).getAddress());
+        assertEquals(21, sendtime[1]);
+    }
+
+    @Test
+    public void testDeleteByHash() {
+        for (long time = 1; time <= 3; time++) {
+            orphanBlockStore.addOrphan(block(time));
+        }
+        // duplicates and unknown hashes leave the size alone
+        orphanBlockStore.addOrphan(block(2));
+        orphanBlockStore.deleteByHash(hashlow(9).toArray());
+        assertEquals(3, orphanBlockStore.getOrphanSize());
+
+        orphanBlockStore.deleteByHash(hashlow(1).toArray());
+        assertEquals(2, orphanBlockStore.getOrphanSize());
+        List<Address> orphans = orphanBlockStore.getOrphan(10, new long[]{Long.MAX_VALUE, 0});
+        assertEquals(2, orphans.size());
+        assertEquals(hashlow(2), orphans.get(0).getAddress());
+    }
+
+    @Test
+    public void testReloadBuildsTimeIndex() {
+        KVSource<byte[], byte[]> source = factory.getDB(DatabaseName.ORPHANIND);
+        // layout without the time index
+        for (long time = 3; time >= 1; time--) {
+            source.put(BytesUtils.merge(OrphanBlockStore.ORPHAN_PREFEX, hashlow(time).toArray()),
+                    BytesUtils.longToBytes(time, true));
+        }
+        orphanBlockStore.init();
+        assertEquals(3, orphanBlockStore.getOrphanSize());
+        List<Address> orphans = orphanBlockStore.getOrphan(10, new long[]{Long.MAX_VALUE, 0});
+        assertEquals(3, orphans.size());
+        assertEquals(hashlow(1), orphans.get(0).getAddress());
+        assertEquals(hashlow(3), orphans.get(2).getAddress());
+    }
+
+    @Test
+    public void testRollbackRestoresSize() {
+        orphanBlockStore.addOrphan(block(1));
+        orphanBlockStore.addOrphan(block(2));
+        UnitOfWork unitOfWork = factory.getUnitOfWork();
+        unitOfWork.onCommit(orphanBlockStore::commitPending);
+        unitOfWork.onRollback(orphanBlockStore::rollbackPending);
+
+        unitOfWork.begin();
+        orphanBlockStore.addOrphan(block(3));
+        orphanBlockStore.addOrphan(block(4));
+        orphanBlockStore.deleteByHash(hashlow(1).toArray());
+        assertEquals(3, orphanBlockStore.getOrphanSize());
+        unitOfWork.rollback();
+
+        assertEquals(2, orphanBlockStore.getOrphanSize());
+        List<Address> orphans = orphanBlockStore.getOrphan(10, new long[]{Long.MAX_VALUE, 0});
+        assertEquals(2, orphans.size());
+        assertEquals(hashlow(1), orphans.get(0).getAddress());
+
+        unitOfWork.begin();
+        orphanBlockStore.addOrphan(block(3));
+        unitOfWork.commit();
+        assertEquals(3, orphanBlockStore.getOrphanSize());
+    }
+
+    private static MutableBytes32 hashlow(long time) {
+        MutableBytes32 hashlow = MutableBytes32.create();
+        hashlow.setLong(24, time * 31);
+        return hashlow;
+    }
+
+    private static Block block(long time) {
+        Block block = mock(Block.class);
+        when(block.getHashLow()).thenReturn(hashlow(time));
+        when(block.getTimestamp()).thenReturn(time);
+        return block;
+    }
+}
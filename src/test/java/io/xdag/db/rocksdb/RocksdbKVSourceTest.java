@@ -37,9 +37,18 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class RocksdbKVSourceTest {
 
@@ -103,4 +112,185 @@ public class RocksdbKVSourceTest {
         List<byte[]> values = indexSource.prefixValueLookup(key);
         assertEquals(2, values.size());
     }
+
+    @Test
+    public void testUnitOfWorkCommit() throws Exception {
+        DatabaseFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> addressSource = factory.getDB(DatabaseName.ADDRESS);
+        indexSource.reset();
+        addressSource.reset();
+        UnitOfWork unitOfWork = factory.getUnitOfWork();
+
+        byte[] key = Hex.decode("FFFF");
+        indexSource.put(key, Hex.decode("00"));
+
+        unitOfWork.begin();
+        indexSource.put(key, Hex.decode("1234"));
+        addressSource.put(key, Hex.decode("5678"));
+        // read-your-writes inside the unit of work
+        assertEquals("1234", Hex.toHexString(indexSource.get(key)));
+        assertEquals(1, indexSource.prefixValueLookup(key).size());
+        assertEquals("1234", Hex.toHexString(indexSource.prefixValueLookup(key).get(0)));
+        // other threads still see the committed state
+        assertEquals("00", Hex.toHexString(CompletableFuture.supplyAsync(() -> indexSource.get(key)).get()));
+        assertNull(CompletableFuture.supplyAsync(() -> addressSource.get(key)).get());
+
+        // nested units of work are folded into the outer one
+        unitOfWork.begin();
+        indexSource.delete(key);
+        unitOfWork.commit();
+        assertTrue(unitOfWork.isActive());
+        assertNull(indexSource.get(key));
+        unitOfWork.commit();
+        assertFalse(unitOfWork.isActive());
+
+        assertNull(indexSource.get(key));
+        assertEquals("5678", Hex.toHexString(addressSource.get(key)));
+    }
+
+    @Test
+    public void testUnitOfWorkKilledMidway() {
+        DatabaseFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> addressSource = factory.getDB(DatabaseName.ADDRESS);
+        indexSource.reset();
+        addressSource.reset();
+        UnitOfWork unitOfWork = factory.getUnitOfWork();
+        int[] rollbacks = new int[1];
+        unitOfWork.onRollback(() -> rollbacks[0]++);
+
+        byte[] committed = Hex.decode("01");
+        indexSource.put(committed, committed);
+
+        // 1. an exception half way through discards everything
+        unitOfWork.begin();
+        try {
+            for (int i = 0; i < 100; i++) {
+                indexSource.put(new byte[]{0x10, (byte) i}, new byte[]{(byte) i});
+                addressSource.put(new byte[]{0x10, (byte) i}, new byte[]{(byte) i});
+                indexSource.delete(committed);
+                if (i == 50) {
+                    throw new IllegalStateException("killed");
+                }
+            }
+            unitOfWork.commit();
+        } catch (IllegalStateException e) {
+            unitOfWork.rollback();
+        }
+        assertEquals(1, rollbacks[0]);
+        assertEquals(0, indexSource.prefixKeyLookup(new byte[]{0x10}).size());
+        assertEquals(0, addressSource.prefixKeyLookup(new byte[]{0x10}).size());
+        assertArrayEquals(committed, indexSource.get(committed));
+
+        // 2. a process dying before commit leaves nothing behind on disk
+        unitOfWork.begin();
+        indexSource.put(new byte[]{0x20}, new byte[]{0x20});
+        indexSource.delete(committed);
+        factory.close();
+
+        DatabaseFactory reopened = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> reopenedIndex = reopened.getDB(DatabaseName.INDEX);
+        reopenedIndex.init();
+        assertNull(reopenedIndex.get(new byte[]{0x20}));
+        assertArrayEquals(committed, reopenedIndex.get(committed));
+        reopened.close();
+        unitOfWork.rollback();
+    }
+
+    @Test
+    public void testMigrateLegacyLayout() throws Exception {
+        Bytes32 hashlow = Hash.hashTwice(Bytes.wrap("1".getBytes(StandardCharsets.UTF_8)));
+        byte[] timeKey = BlockUtils.getTimeKey(1602226304712L, hashlow);
+        byte[] key = Hex.decode("FFFF");
+
+        // stores in the former one-db-per-store layout
+        RocksdbKVSource legacyIndex = new RocksdbKVSource(DatabaseName.INDEX.toString());
+        legacyIndex.setConfig(config);
+        legacyIndex.init();
+        legacyIndex.put(key, Hex.decode("1234"));
+        legacyIndex.close();
+        RocksdbKVSource legacyTime = new RocksdbKVSource(DatabaseName.TIME.toString(), 9);
+        legacyTime.setConfig(config);
+        legacyTime.init();
+        legacyTime.put(timeKey, Hex.decode("5678"));
+        legacyTime.close();
+        assertTrue(RocksdbStorage.isLegacyLayout(config));
+
+        // a not yet migrated node keeps running on the old layout
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        indexSource.init();
+        assertNull(((RocksdbKVSource) indexSource).getStorage());
+        assertEquals("1234", Hex.toHexString(indexSource.get(key)));
+        factory.close();
+
+        assertEquals(2, new RocksdbMigrator(config).migrate());
+        assertFalse(RocksdbStorage.isLegacyLayout(config));
+        assertEquals(-1, new RocksdbMigrator(config).migrate());
+
+        factory = new RocksdbFactory(config);
+        indexSource = factory.getDB(DatabaseName.INDEX);
+        KVSource<byte[], byte[]> timeSource = factory.getDB(DatabaseName.TIME);
+        indexSource.init();
+        timeSource.init();
+        assertNotNull(((RocksdbKVSource) indexSource).getStorage());
+        assertEquals("1234", Hex.toHexString(indexSource.get(key)));
+        assertNull(timeSource.get(key));
+        assertEquals(1, timeSource.prefixKeyLookup(BlockUtils.getTimeKey(1602226304712L, null)).size());
+
+        // one unit of work spans all the column families
+        UnitOfWork unitOfWork = factory.getUnitOfWork();
+        unitOfWork.begin();
+        indexSource.put(key, Hex.decode("4321"));
+        timeSource.delete(timeKey);
+        factory.close();
+        unitOfWork.rollback();
+
+        factory = new RocksdbFactory(config);
+        indexSource = factory.getDB(DatabaseName.INDEX);
+        timeSource = factory.getDB(DatabaseName.TIME);
+        indexSource.init();
+        timeSource.init();
+        assertEquals("1234", Hex.toHexString(indexSource.get(key)));
+        assertArrayEquals(Hex.decode("5678"), timeSource.get(timeKey));
+        factory.close();
+    }
+
+    @Test
+    public void testMigrationRedoneAfterInterruption() throws Exception {
+        byte[] key = Hex.decode("FFFF");
+        RocksdbKVSource legacyIndex = new RocksdbKVSource(DatabaseName.INDEX.toString());
+        legacyIndex.setConfig(config);
+        legacyIndex.init();
+        legacyIndex.put(key, Hex.decode("1234"));
+        legacyIndex.close();
+
+        // a migration that stopped half way leaves its database in the temporary directory only
+        Path path = RocksdbStorage.getPath(config);
+        Path tmp = path.resolveSibling(RocksdbStorage.DB_NAME + ".migrating");
+        Files.createDirectories(tmp);
+        Files.write(tmp.resolve("CURRENT"), new byte[0]);
+        assertTrue(RocksdbStorage.isLegacyLayout(config));
+
+        assertEquals(1, new RocksdbMigrator(config).migrate());
+        assertFalse(Files.exists(tmp));
+        assertTrue(Files.exists(path));
+        assertFalse(RocksdbStorage.hasLegacyStores(config));
+
+        // stopped between the rename and moving the former stores away
+        Path legacyPath = RocksdbStorage.getLegacyPath(config, DatabaseName.INDEX);
+        Path movedPath = Paths.get(config.getNodeSpec().getStoreDir(), "legacy", DatabaseName.INDEX.toString());
+        Files.move(movedPath, legacyPath);
+        assertFalse(RocksdbStorage.isLegacyLayout(config));
+        assertEquals(-1, new RocksdbMigrator(config).migrate());
+        assertFalse(Files.exists(legacyPath));
+        assertTrue(Files.exists(movedPath));
+
+        RocksdbFactory factory = new RocksdbFactory(config);
+        KVSource<byte[], byte[]> indexSource = factory.getDB(DatabaseName.INDEX);
+        indexSource.init();
+        assertEquals("1234", Hex.toHexString(indexSource.get(key)));
+        factory.close();
+    }
 }
@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Address;
+import io.xdag.core.TxHistory;
+import io.xdag.core.TxHistoryPage;
+import io.xdag.core.XAmount;
+import io.xdag.core.XUnit;
+import io.xdag.core.XdagField;
+import io.xdag.db.TransactionHistoryStore;
+import io.xdag.db.mysql.TransactionHistoryStoreImpl;
+import io.xdag.db.mysql.TransactionHistoryStoreImplTest;
+import io.xdag.utils.BasicUtils;
+import io.xdag.utils.DruidUtils;
+import io.xdag.utils.XdagTime;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RocksdbTransactionHistoryStoreTest {
+
+    // xdag time of a whole second, converts back to ms exactly
+    static final long START_TIME = 1_700_000_000L << 10;
+    static final long START_MS = XdagTime.xdagTimestampToMs(START_TIME);
+    static final long END_MS = START_MS + 1_000_000_000L;
+
+    static int remark = 0;
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    RocksdbFactory factory;
+    RocksdbTransactionHistoryStore store;
+
+    Bytes32 account = hashlow(1);
+    String address = BasicUtils.hash2Address(account);
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        open();
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
+    }
+
+    private void open() {
+        factory = new RocksdbFactory(config);
+        store = new RocksdbTransactionHistoryStore((RocksdbKVSource) factory.getDB(DatabaseName.TXHISTORY), 500);
+        store.init();
+    }
+
+    @Test
+    public void testPagesNewestFirst() {
+        List<TxHistory> records = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            records.add(txHistory(account, 1000 + i, START_MS + i * 1000L));
+        }
+        // another address in between must not show up
+        records.add(txHistory(hashlow(2), 5000, START_MS));
+        assertTrue(store.saveTxHistories(records));
+
+        assertEquals(250, store.getTxHistoryCount(address));
+        List<TxHistory> page = store.listTxHistoryByAddress(address, 2, 100);
+        assertEquals(100, page.size());
+        assertEquals(3, TransactionHistoryStoreImpl.totalPage);
+        assertEquals(START_MS + 149 * 1000L, page.get(0).getTimestamp());
+        assertEquals(START_MS + 50 * 1000L, page.get(99).getTimestamp());
+        assertEquals(BasicUtils.hash2Address(hashlow(1149)), page.get(0).getHash());
+        assertEquals(hashlow(1149), page.get(0).getAddress().getAddress());
+
+        // time range, both ends included
+        page = store.listTxHistoryByAddress(address, 1, START_MS + 10_000L, START_MS + 19_000L);
+        assertEquals(10, page.size());
+        assertEquals(1, TransactionHistoryStoreImpl.totalPage);
+        assertEquals(START_MS + 19_000L, page.get(0).getTimestamp());
+        assertEquals(START_MS + 10_000L, page.get(9).getTimestamp());
+
+        assertTrue(store.listTxHistoryByAddress("not an address", 1).isEmpty());
+        assertEquals(0, store.getTxHistoryCount(BasicUtils.hash2Address(hashlow(3))));
+    }
+
+    @Test
+    public void testKeysetPagingVisitsEveryRecordOnce() {
+        List<TxHistory> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // three records per time, the same transaction twice
+            records.add(txHistory(account, 1000 + i / 2, START_MS + (i / 3) * 1000L));
+        }
+        assertTrue(store.saveTxHistories(records));
+
+        Set<String> seen = new HashSet<>();
+        long lastTime = Long.MAX_VALUE;
+        String cursor = null;
+        int pages = 0;
+        do {
+            TxHistoryPage page = store.listTxHistoryByAddress(address, 0, END_MS, cursor, 7);
+            for (TxHistory txHistory : page.getTxHistories()) {
+                assertTrue(txHistory.getTimestamp() <= lastTime);
+                lastTime = txHistory.getTimestamp();
+                assertTrue(seen.add(txHistory.getRemark()));
+            }
+            cursor = page.getNext();
+            pages++;
+        } while (cursor != null);
+        assertEquals(100, seen.size());
+        assertEquals(15, pages);
+
+        TxHistoryPage ranged = store.listTxHistoryByAddress(address, START_MS + 3000L, START_MS + 5000L, null, 100);
+        assertEquals(9, ranged.getTxHistories().size());
+        assertNull(ranged.getNext());
+    }
+
+    @Test
+    public void testSequenceSurvivesReopen() {
+        assertTrue(store.saveTxHistory(txHistory(account, 1000, START_MS)));
+        factory.close();
+        open();
+        // same address, time and hash: kept apart by the sequence only
+        assertTrue(store.saveTxHistory(txHistory(account, 1000, START_MS)));
+        assertEquals(2, store.listTxHistoryByAddress(address, 1).size());
+        assertEquals(2, store.getTxHistoryCount(address));
+    }
+
+    @Test
+    public void testSameResultsAsMysqlStore() throws Exception {
+        Connection conn = DruidUtils.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute(TransactionHistoryStoreImplTest.SQL_CTEATE_TABLE);
+        DruidUtils.close(conn, stmt);
+        TransactionHistoryStore mysql = new TransactionHistoryStoreImpl(500);
+
+        List<TxHistory> records = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            TxHistory txHistory = txHistory(account, 1000 + i, START_MS + i * 1000L);
+            if (i % 4 == 0) {
+                txHistory.getAddress().setType(XdagField.FieldType.XDAG_FIELD_INPUT);
+                txHistory.setRemark(null);
+            }
+            records.add(txHistory);
+        }
+        assertTrue(mysql.saveTxHistories(records));
+        assertTrue(store.saveTxHistories(records));
+
+        assertEquals(toStrings(mysql.listTxHistoryByAddress(address, 2, 50)),
+                toStrings(store.listTxHistoryByAddress(address, 2, 50)));
+        assertEquals(toStrings(mysql.listTxHistoryByAddress(address, 1, START_MS + 5000L, START_MS + 60_000L, 20)),
+                toStrings(store.listTxHistoryByAddress(address, 1, START_MS + 5000L, START_MS + 60_000L, 20)));
+
+        String mysqlCursor = null;
+        String rocksdbCursor = null;
+        do {
+            TxHistoryPage expected = mysql.listTxHistoryByAddress(address, 0, END_MS, mysqlCursor, 25);
+            TxHistoryPage actual = store.listTxHistoryByAddress(address, 0, END_MS, rocksdbCursor, 25);
+            assertEquals(toStrings(expected.getTxHistories()), toStrings(actual.getTxHistories()));
+            mysqlCursor = expected.getNext();
+            rocksdbCursor = actual.getNext();
+            assertEquals(mysqlCursor == null, rocksdbCursor == null);
+        } while (mysqlCursor != null);
+    }
+
+    private static List<String> toStrings(List<TxHistory> txHistories) {
+        List<String> result = new ArrayList<>();
+        for (TxHistory txHistory : txHistories) {
+            result.add(txHistory.toString());
+        }
+        return result;
+    }
+
+    private static Bytes32 hashlow(long n) {
+        return Bytes32.fromHexStringLenient(Long.toHexString(n << 8));
+    }
+
+    private static TxHistory txHistory(Bytes32 account, long tx, long ms) {
+        Address address = new Address(account, XdagField.FieldType.XDAG_FIELD_OUT, XAmount.of(tx, XUnit.MILLI_XDAG), false);
+        return new TxHistory(address, BasicUtils.hash2Address(hashlow(tx)),
+                START_TIME + ((ms - START_MS) << 10) / 1000, "tx " + tx + " #" + remark++);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.db.rocksdb;
+
+import static io.xdag.db.BlockStore.SUMS_BLOCK_INFO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.XdagBlock;
+import io.xdag.utils.BytesUtils;
+import io.xdag.utils.FileUtils;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.apache.tuweni.bytes.Bytes;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SumsIndexTest {
+
+    // spans a few files at every level
+    static final long START_TIME = 0x17f0_0000_0000L;
+    static final long TIME_SPAN = 0x20_0000_0000L;
+
+    @Rule
+    public TemporaryFolder root = new TemporaryFolder();
+
+    Config config = new DevnetConfig();
+    RocksdbFactory factory;
+    KVSource<byte[], byte[]> indexSource;
+    BlockStoreImpl blockStore;
+    LegacySums legacy;
+    Random random = new Random(1);
+
+    @Before
+    public void setUp() throws Exception {
+        config.getNodeSpec().setStoreDir(root.newFolder().getAbsolutePath());
+        config.getNodeSpec().setStoreBackupDir(root.newFolder().getAbsolutePath());
+        factory = new RocksdbFactory(config);
+        indexSource = factory.getDB(DatabaseName.INDEX);
+        blockStore = newBlockStore();
+        blockStore.init();
+        legacy = new LegacySums();
+    }
+
+    @After
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Test
+    public void testMatchesLegacySums() {
+        for (int i = 0; i < 2000; i++) {
+            Block block = block(START_TIME + (random.nextLong() & (TIME_SPAN - 1)), random.nextLong());
+            blockStore.saveBlockSums(block);
+            legacy.saveBlockSums(block);
+        }
+        assertSameSums(blockStore);
+
+        // a fresh store only sees what was written to rocksdb
+        BlockStoreImpl reopened = newBlockStore();
+        reopened.init();
+        assertSameSums(reopened);
+    }
+
+    @Test
+    public void testRollbackDiscardsSums() {
+        Block saved = block(START_TIME, 7);
+        blockStore.saveBlockSums(saved);
+        legacy.saveBlockSums(saved);
+
+        UnitOfWork unitOfWork = factory.getUnitOfWork();
+        unitOfWork.onRollback(blockStore::discardPendingCache);
+        unitOfWork.begin();
+        blockStore.saveBlockSums(block(START_TIME, 11));
+        blockStore.saveBlockSums(block(START_TIME + TIME_SPAN / 2, 13));
+        unitOfWork.rollback();
+
+        assertSameSums(blockStore);
+    }
+
+    @Test
+    public void testPendingSumsOnlySeenByWriter() throws Exception {
+        Block saved = block(START_TIME, 7);
+        blockStore.saveBlockSums(saved);
+        legacy.saveBlockSums(saved);
+
+        UnitOfWork unitOfWork = factory.getUnitOfWork();
+        unitOfWork.onCommit(blockStore::publishPendingCache);
+        unitOfWork.begin();
+        Block pending = block(START_TIME, 11);
+        blockStore.saveBlockSums(pending);
+        String name = FileUtils.getFileName(START_TIME).get(0);
+        MutableBytes committed = legacy.getSums(name);
+        legacy.saveBlockSums(pending);
+
+        assertEquals(legacy.getSums(name), blockStore.getSums(name));
+        MutableBytes[] seen = new MutableBytes[1];
+        Thread reader = new Thread(() -> seen[0] = blockStore.getSums(name));
+        reader.start();
+        reader.join();
+        assertEquals(committed, seen[0]);
+
+        unitOfWork.commit();
+        assertSameSums(blockStore);
+    }
+
+    @Test
+    public void testMigrateLegacyFiles() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            legacy.saveBlockSums(block(START_TIME + (random.nextLong() & (TIME_SPAN - 1)), random.nextLong()));
+        }
+        for (Map.Entry<String, MutableBytes> file : legacy.files.entrySet()) {
+            indexSource.put(BytesUtils.merge(SUMS_BLOCK_INFO, file.getKey().getBytes(StandardCharsets.UTF_8)),
+                    blockStore.serialize(file.getValue().toArray()));
+        }
+        BlockStoreImpl migrated = newBlockStore();
+        migrated.init();
+
+        assertSameSums(migrated);
+        assertEquals(0, indexSource.prefixKeyLookup(new byte[]{SUMS_BLOCK_INFO}).size());
+        assertNull(migrated.getSums("ff/" + FileUtils.getFileName(0).get(0)));
+    }
+
+    private void assertSameSums(BlockStoreImpl store) {
+        for (String name : legacy.files.keySet()) {
+            assertEquals(name, legacy.getSums(name), store.getSums(name));
+        }
+        // the ranges XdagSync walks down, from the whole time span to single 64 seconds slots
+        for (long dt = 1L << 48; dt >= 1L << 16; dt >>= 4) {
+            for (long start = START_TIME & -dt; start < START_TIME + TIME_SPAN; start += Math.max(dt, TIME_SPAN / 64)) {
+                MutableBytes expected = MutableBytes.create(256);
+                MutableBytes actual = MutableBytes.create(256);
+                assertEquals(legacy.loadSum(start, start + dt, expected), store.loadSum(start, start + dt, actual));
+                assertEquals(Long.toHexString(start) + "+" + Long.toHexString(dt), expected, actual);
+            }
+        }
+    }
+
+    private BlockStoreImpl newBlockStore() {
+        return new BlockStoreImpl(indexSource, factory.getDB(DatabaseName.TIME),
+                factory.getDB(DatabaseName.BLOCK), factory.getDB(DatabaseName.TXHISTORY));
+    }
+
+    private static Block block(long time, long sum) {
+        XdagBlock xdagBlock = mock(XdagBlock.class);
+        when(xdagBlock.getSum()).thenReturn(sum);
+        Block block = mock(Block.class);
+        when(block.getTimestamp()).thenReturn(time);
+        when(block.getXdagBlock()).thenReturn(xdagBlock);
+        return block;
+    }
+
+    /**
+     * The former 4 KB read-modify-write of every sums file, kept in memory.
+     */
+    private class LegacySums extends BlockStoreImpl {
+
+        final Map<String, MutableBytes> files = new HashMap<>();
+
+        LegacySums() {
+            super(indexSource, factory.getDB(DatabaseName.TIME),
+                    factory.getDB(DatabaseName.BLOCK), factory.getDB(DatabaseName.TXHISTORY));
+        }
+
+        @Override
+        public MutableBytes getSums(String key) {
+            MutableBytes sums = files.get(key);
+            return sums == null ? null : sums.mutableCopy();
+        }
+
+        @Override
+        public void putSums(String key, Bytes sums) {
+            files.put(key, sums.mutableCopy());
+        }
+
+        @Override
+        public void updateSum(String key, long sum, long size, long index) {
+            MutableBytes sums = getSums(key);
+            if (sums == null) {
+                sums = MutableBytes.create(4096);
+                sums.set((int) (16 * index), Bytes.wrap(BytesUtils.longToBytes(sum, true)));
+                sums.set((int) (index * 16 + 8), Bytes.wrap(BytesUtils.longToBytes(size, true)));
+                putSums(key, sums);
+            } else {
+                MutableBytes data = sums.slice(16 * (int) index, 16).mutableCopy();
+                sum += data.getLong(0, ByteOrder.LITTLE_ENDIAN);
+                size += data.getLong(8, ByteOrder.LITTLE_ENDIAN);
+                data.set(0, Bytes.wrap(BytesUtils.longToBytes(sum, true)));
+                data.set(8, Bytes.wrap(BytesUtils.longToBytes(size, true)));
+                sums.set(16 * (int) index, data.slice(0, 16));
+                putSums(key, sums);
+            }
+        }
+    }
+}
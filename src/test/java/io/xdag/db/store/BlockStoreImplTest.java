@@ -27,12 +27,17 @@ package io.xdag.db.store;
 import io.xdag.config.Config;
 import io.xdag.config.DevnetConfig;
 import io.xdag.core.Block;
+import io.xdag.core.BlockInfo;
 import io.xdag.core.XAmount;
 import io.xdag.core.XdagBlock;
 import io.xdag.core.XdagStats;
 import io.xdag.crypto.Keys;
 import io.xdag.db.BlockStore;
 import io.xdag.db.rocksdb.*;
+import com.google.common.collect.Lists;
+import io.xdag.utils.BlockUtils;
+import io.xdag.utils.XdagTime;
+import org.apache.tuweni.bytes.Bytes32;
 import org.apache.tuweni.bytes.MutableBytes;
 import org.bouncycastle.util.encoders.Hex;
 import org.hyperledger.besu.crypto.KeyPair;
@@ -45,10 +50,16 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static io.xdag.BlockBuilder.generateAddressBlock;
 import static io.xdag.utils.BytesUtils.equalBytes;
 import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 
 public class BlockStoreImplTest {
 
@@ -173,6 +184,128 @@ public class BlockStoreImplTest {
         bs.loadSum(time, time + 64 * 1024, sums);
     }
 
+    @Test
+    public void testBlockCacheWriteThrough()
+            throws InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchProviderException {
+        BlockStoreImpl bs = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource);
+        bs.init();
+        long time = System.currentTimeMillis();
+        KeyPair key = Keys.createEcKeyPair();
+        Block block = generateAddressBlock(config, key, time);
+        bs.saveBlock(block);
+
+        // saveBlock populates both caches, so no read goes to rocksdb
+        Block storedBlock = bs.getBlockByHash(block.getHashLow(), true);
+        assertArrayEquals(block.toBytes(), storedBlock.toBytes());
+        assertEquals(0, bs.getBlockInfoCacheStats().missCount());
+        assertEquals(0, bs.getRawBlockCacheStats().missCount());
+        assertEquals(1, bs.getBlockInfoCacheStats().hitCount());
+        assertEquals(1, bs.getRawBlockCacheStats().hitCount());
+
+        // a caller mutating its copy must not leak into the cache
+        storedBlock.getInfo().setFee(XAmount.TEN);
+        storedBlock.getInfo().setHeight(10);
+        assertEquals(XAmount.ZERO, bs.getBlockInfoByHash(block.getHashLow()).getFee());
+        assertEquals(0, bs.getBlockInfoByHash(block.getHashLow()).getInfo().getHeight());
+
+        // saveBlockInfo keeps the cache coherent
+        bs.saveBlockInfo(storedBlock.getInfo());
+        assertEquals(XAmount.TEN, bs.getBlockInfoByHash(block.getHashLow()).getFee());
+        assertEquals(10, bs.getBlockInfoByHash(block.getHashLow()).getInfo().getHeight());
+
+        // after invalidation values come back from rocksdb unchanged
+        bs.invalidateCache();
+        BlockInfo reloaded = bs.getBlockInfoByHash(block.getHashLow()).getInfo();
+        assertEquals(1, bs.getBlockInfoCacheStats().missCount());
+        assertEquals(XAmount.TEN, reloaded.getFee());
+        assertEquals(10, reloaded.getHeight());
+        assertArrayEquals(block.toBytes(), bs.getBlockByHash(block.getHashLow(), true).toBytes());
+        assertEquals(1, bs.getRawBlockCacheStats().missCount());
+    }
+
+    @Test
+    public void testPendingBlockCachedOnCommit() throws Exception {
+        BlockStoreImpl bs = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource);
+        bs.init();
+        UnitOfWork unitOfWork = factory.getUnitOfWork();
+        unitOfWork.onCommit(bs::publishPendingCache);
+        unitOfWork.onRollback(bs::discardPendingCache);
+        Block block = generateAddressBlock(config, Keys.createEcKeyPair(), System.currentTimeMillis());
+        Bytes32 hashlow = block.getHashLow();
+
+        unitOfWork.begin();
+        bs.saveBlock(block);
+        assertTrue(bs.hasBlockInfo(hashlow));
+        assertEquals(0, bs.getBlockInfoCacheStats().requestCount());
+        // other threads only see committed blocks, through rocksdb
+        assertFalse(hasBlockInfoFromOtherThread(bs, hashlow));
+        unitOfWork.rollback();
+        assertFalse(bs.hasBlockInfo(hashlow));
+        assertNull(bs.getBlockByHash(hashlow, true));
+
+        unitOfWork.begin();
+        bs.saveBlock(block);
+        unitOfWork.commit();
+        long infoMisses = bs.getBlockInfoCacheStats().missCount();
+        long rawMisses = bs.getRawBlockCacheStats().missCount();
+        assertTrue(hasBlockInfoFromOtherThread(bs, hashlow));
+        assertArrayEquals(block.toBytes(), bs.getBlockByHash(hashlow, true).toBytes());
+        assertEquals(infoMisses, bs.getBlockInfoCacheStats().missCount());
+        assertEquals(rawMisses, bs.getRawBlockCacheStats().missCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFillDoesNotOverwriteConcurrentCommit() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AtomicReference<Thread> paused = new AtomicReference<>();
+        KVSource<byte[], byte[]> index = mock(KVSource.class, delegatesTo(indexSource));
+        doAnswer(invocation -> {
+            byte[] value = indexSource.get(invocation.getArgument(0));
+            if (Thread.currentThread() == paused.get()) {
+                // the old record is read, hold the fill back while the writer runs
+                loading.countDown();
+                resume.await();
+            }
+            return value;
+        }).when(index).get(any());
+        BlockStoreImpl bs = new BlockStoreImpl(index, timeSource, blockSource, TxHistorySource);
+        bs.init();
+        Block block = generateAddressBlock(config, Keys.createEcKeyPair(), System.currentTimeMillis());
+        Bytes32 hashlow = block.getHashLow();
+        bs.saveBlock(block);
+        bs.invalidateCache();
+
+        Thread reader = new Thread(() -> bs.getBlockInfoByHash(hashlow));
+        paused.set(reader);
+        reader.start();
+        loading.await();
+
+        // commit a newer record and evict it while the fill still holds the old one
+        BlockInfo updated = block.getInfo();
+        updated.setFee(XAmount.TEN);
+        Thread writer = new Thread(() -> {
+            bs.saveBlockInfo(updated);
+            bs.invalidateCache();
+        });
+        writer.start();
+        writer.join(200);
+        resume.countDown();
+        reader.join();
+        writer.join();
+
+        assertEquals(XAmount.TEN, bs.getBlockInfoByHash(hashlow).getFee());
+    }
+
+    private static boolean hasBlockInfoFromOtherThread(BlockStore bs, Bytes32 hashlow) throws InterruptedException {
+        boolean[] found = new boolean[1];
+        Thread reader = new Thread(() -> found[0] = bs.hasBlockInfo(hashlow));
+        reader.start();
+        reader.join();
+        return found[0];
+    }
+
     @Test
     public void getBlockByTimeTest() {
         BlockStore blockStore = new BlockStoreImpl(indexSource, timeSource, blockSource,TxHistorySource);
@@ -195,4 +328,42 @@ public class BlockStoreImplTest {
         assertEquals(block, blocks.get(0));
 
     }
+
+    @Test
+    public void testPageBlockTimeKeys() throws Exception {
+        BlockStore blockStore = new BlockStoreImpl(indexSource, timeSource, blockSource, TxHistorySource);
+        blockStore.init();
+        KeyPair key = Keys.createEcKeyPair();
+        long start = XdagTime.msToXdagtimestamp(1600616700000L) & ~0xffffL;
+        // a few blocks in each of several slices, and an empty slice in between
+        for (int slice = 0; slice < 5; slice++) {
+            if (slice == 2) {
+                continue;
+            }
+            for (int i = 0; i < 3; i++) {
+                blockStore.saveBlock(generateAddressBlock(config, key, start + ((long) slice << 16) + i));
+            }
+        }
+        long end = start + (5L << 16);
+        List<Block> expected = blockStore.getBlocksUsedTime(start, end);
+        assertEquals(12, expected.size());
+
+        List<Bytes32> paged = Lists.newArrayList();
+        byte[] after = null;
+        List<byte[]> keys;
+        do {
+            keys = blockStore.getBlockTimeKeys(start, end, after, 5);
+            for (byte[] k : keys) {
+                paged.add(BlockUtils.getHashlowOfTimeKey(k));
+                after = k;
+            }
+        } while (keys.size() == 5);
+
+        assertEquals(expected.size(), paged.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getHashLow(), paged.get(i));
+        }
+        // the end is exclusive
+        assertEquals(3, blockStore.getBlockTimeKeys(start, start + 1, null, 100).size());
+    }
 }
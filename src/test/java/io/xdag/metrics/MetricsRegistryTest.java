@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testScrape() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("test_events_total", "Events");
+        counter.inc();
+        counter.inc(2);
+        assertEquals(counter, registry.counter("test_events_total", "Events"));
+
+        AtomicInteger queue = new AtomicInteger(7);
+        registry.gauge("test_queue_size", "Queue size", queue::get);
+
+        Histogram histogram = registry.histogram("test_latency_seconds", "Latency", 0.1, 1);
+        histogram.observe(0.0625);
+        histogram.observe(0.5);
+        histogram.observe(2);
+
+        String expected = """
+                # HELP test_events_total Events
+                # TYPE test_events_total counter
+                test_events_total 3
+                # HELP test_latency_seconds Latency
+                # TYPE test_latency_seconds histogram
+                test_latency_seconds_bucket{le="0.1"} 1
+                test_latency_seconds_bucket{le="1"} 2
+                test_latency_seconds_bucket{le="+Inf"} 3
+                test_latency_seconds_sum 2.5625
+                test_latency_seconds_count 3
+                # HELP test_queue_size Queue size
+                # TYPE test_queue_size gauge
+                test_queue_size 7
+                """;
+        assertEquals(expected, registry.scrape());
+
+        // the latest owner of a gauge is reported
+        registry.gauge("test_queue_size", "Queue size", () -> 9);
+        assertTrue(registry.scrape().contains("test_queue_size 9\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_metric", "Counter");
+        registry.gauge("test_metric", "Gauge", () -> 1);
+    }
+}
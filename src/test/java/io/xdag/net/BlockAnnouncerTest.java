@@ -0,0 +1,466 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.core.XdagStats;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.net.message.consensus.BlockRequestMessage;
+import io.xdag.net.message.consensus.NewBlockHashMessage;
+import io.xdag.net.message.consensus.NewBlockMessage;
+import io.xdag.utils.XdagTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlockAnnouncerTest {
+
+    private static final int NODES = 64;
+    private static final int DEGREE = 16;
+    private static final int LATENCY = 10;
+
+    private final Config config = new DevnetConfig();
+    private Block block;
+    private Bytes32 hashLow;
+
+    @Before
+    public void setUp() {
+        block = generateAddressBlock(config, SampleKeys.KEY_PAIR, XdagTime.getCurrentTimestamp());
+        hashLow = block.getHashLow();
+    }
+
+    @Test
+    public void testSkipsPeersKnowingTheBlock() {
+        List<TestTarget> targets = targets(5, true);
+        targets.get(0).markBlockKnown(hashLow);
+
+        new BlockAnnouncer().announce(block, 5, false, targets);
+
+        assertEquals(0, targets.get(0).blocks + targets.get(0).hashes);
+        int blocks = 0, hashes = 0;
+        for (TestTarget target : targets) {
+            assertTrue(target.isBlockKnown(hashLow));
+            blocks += target.blocks;
+            hashes += target.hashes;
+        }
+        assertEquals(BlockAnnouncer.fullBlockPeers(4), blocks);
+        assertEquals(4 - BlockAnnouncer.fullBlockPeers(4), hashes);
+    }
+
+    @Test
+    public void testRelaysOncePerPeer() {
+        List<TestTarget> targets = targets(9, true);
+        BlockAnnouncer announcer = new BlockAnnouncer();
+
+        announcer.announce(block, 5, false, targets);
+        announcer.announce(block, 5, false, targets);
+
+        for (TestTarget target : targets) {
+            assertEquals(1, target.blocks + target.hashes);
+        }
+    }
+
+    @Test
+    public void testFullBlockToLegacyPeers() {
+        List<TestTarget> targets = targets(9, false);
+
+        new BlockAnnouncer().announce(block, 5, false, targets);
+
+        for (TestTarget target : targets) {
+            assertEquals(1, target.blocks);
+            assertEquals(0, target.hashes);
+        }
+    }
+
+    @Test
+    public void testFullBlockForLocalBlocks() {
+        List<TestTarget> targets = targets(9, true);
+
+        new BlockAnnouncer().announce(block, 5, true, targets);
+
+        for (TestTarget target : targets) {
+            assertEquals(1, target.blocks);
+        }
+    }
+
+    @Test
+    public void testRequestsAnnouncedBlockOnce() {
+        BlockAnnouncer announcer = new BlockAnnouncer();
+        List<TestTarget> targets = targets(2, true);
+
+        assertFalse(announcer.isInFlight(hashLow));
+        announcer.onAnnounced(hashLow, 3, targets.get(0));
+        announcer.onAnnounced(hashLow, 4, targets.get(1));
+        announcer.onAnnounced(hashLow, 3, targets.get(0));
+        assertTrue(announcer.isInFlight(hashLow));
+        assertEquals(1, targets.get(0).requests);
+        assertEquals(0, targets.get(1).requests);
+        // the reply carries the TTL of the responder, the block is relayed with the announced one
+        assertEquals(3, announcer.onBlockReceived(hashLow, 5));
+        assertEquals(5, announcer.onBlockReceived(Bytes32.random(), 5));
+    }
+
+    @Test
+    public void testNoRequestForReceivedBlock() {
+        BlockAnnouncer announcer = new BlockAnnouncer();
+        TestTarget target = new TestTarget(true);
+
+        announcer.onBlockReceived(hashLow, 5);
+        announcer.onAnnounced(hashLow, 5, target);
+
+        assertTrue(announcer.isInFlight(hashLow));
+        assertEquals(0, target.requests);
+    }
+
+    @Test
+    public void testRequestsNextAnnouncerOnTimeout() {
+        AtomicLong now = new AtomicLong();
+        BlockAnnouncer announcer = new BlockAnnouncer(now::get);
+        List<TestTarget> targets = targets(BlockAnnouncer.MAX_ANNOUNCERS + 2, true);
+        for (TestTarget target : targets) {
+            announcer.onAnnounced(hashLow, 5, target);
+        }
+
+        now.addAndGet(BlockAnnouncer.REQUEST_TIMEOUT_MILLIS - 1);
+        announcer.checkTimeouts();
+        assertEquals(1, targets.get(0).requests);
+        assertEquals(0, targets.get(1).requests);
+
+        now.incrementAndGet();
+        announcer.checkTimeouts();
+        assertEquals(1, targets.get(1).requests);
+
+        // the announcers past the limit are never asked
+        for (int i = 2; i <= BlockAnnouncer.MAX_ANNOUNCERS; i++) {
+            now.addAndGet(BlockAnnouncer.REQUEST_TIMEOUT_MILLIS);
+            announcer.checkTimeouts();
+            assertEquals(1, targets.get(i).requests);
+        }
+        now.addAndGet(BlockAnnouncer.REQUEST_TIMEOUT_MILLIS);
+        announcer.checkTimeouts();
+        assertEquals(0, targets.get(BlockAnnouncer.MAX_ANNOUNCERS + 1).requests);
+
+        // with every announcer tried, the next announcement is asked right away
+        TestTarget late = new TestTarget(true);
+        announcer.onAnnounced(hashLow, 5, late);
+        assertEquals(1, late.requests);
+    }
+
+    @Test
+    public void testRequestsNextAnnouncerOnDisconnect() {
+        AtomicLong now = new AtomicLong();
+        BlockAnnouncer announcer = new BlockAnnouncer(now::get);
+        List<TestTarget> targets = targets(3, true);
+        for (TestTarget target : targets) {
+            announcer.onAnnounced(hashLow, 5, target);
+        }
+
+        // a disconnected announcer that was not asked yet is skipped
+        announcer.onDisconnected(targets.get(1));
+        announcer.onDisconnected(targets.get(0));
+        assertEquals(0, targets.get(1).requests);
+        assertEquals(1, targets.get(2).requests);
+
+        announcer.onBlockReceived(hashLow, 5);
+        now.addAndGet(BlockAnnouncer.REQUEST_TIMEOUT_MILLIS);
+        announcer.checkTimeouts();
+        announcer.onDisconnected(targets.get(2));
+        assertEquals(1, targets.get(2).requests);
+        assertEquals(0, targets.get(1).requests);
+    }
+
+    /**
+     * Relays one block over a random network of 64 nodes, once flooding it like before and once with
+     * announcements. Only the link latency is simulated, which leaves flooding at its best.
+     */
+    @Test
+    public void testSimulatedNetwork() {
+        Random random = new Random(42);
+        Network flood = new Network(false);
+        Network announce = new Network(true);
+        for (int i = 0; i < NODES; i++) {
+            flood.link(i, (i + 1) % NODES);
+            announce.link(i, (i + 1) % NODES);
+        }
+        for (int edges = NODES; edges < NODES * DEGREE / 2; ) {
+            int a = random.nextInt(NODES), b = random.nextInt(NODES);
+            if (a != b && flood.link(a, b)) {
+                announce.link(a, b);
+                edges++;
+            }
+        }
+
+        int origin = random.nextInt(NODES);
+        flood.run(origin);
+        announce.run(origin);
+
+        assertEquals(NODES, flood.reached());
+        assertEquals(NODES, announce.reached());
+        // the block crosses every link in full when flooded, less than half as much data is sent
+        assertTrue(announce.bytes * 2 < flood.bytes);
+        // a node that only got hashes waits for one request round trip at worst
+        assertTrue(announce.lastReceived() <= flood.lastReceived() + 2 * LATENCY);
+        assertTrue(announce.meanReceived() <= flood.meanReceived() * 1.5);
+    }
+
+    private List<TestTarget> targets(int count, boolean announceSupported) {
+        List<TestTarget> targets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            targets.add(new TestTarget(announceSupported));
+        }
+        return targets;
+    }
+
+    private static class TestTarget implements BlockAnnouncer.Target {
+
+        private final Set<Bytes32> known = new HashSet<>();
+        private final boolean announceSupported;
+        private int blocks;
+        private int hashes;
+        private int requests;
+
+        TestTarget(boolean announceSupported) {
+            this.announceSupported = announceSupported;
+        }
+
+        @Override
+        public boolean isBlockKnown(Bytes32 hashLow) {
+            return known.contains(hashLow);
+        }
+
+        @Override
+        public void markBlockKnown(Bytes32 hashLow) {
+            known.add(hashLow);
+        }
+
+        @Override
+        public boolean isAnnounceSupported() {
+            return announceSupported;
+        }
+
+        @Override
+        public void sendNewBlock(Block block, int ttl) {
+            blocks++;
+        }
+
+        @Override
+        public void sendNewBlockHash(Bytes32 hashLow, int ttl) {
+            hashes++;
+        }
+
+        @Override
+        public void requestBlock(Bytes32 hashLow) {
+            requests++;
+        }
+    }
+
+    /**
+     * Nodes relaying a block the way XdagP2pHandler and ChannelManager do, over links of a fixed latency.
+     */
+    private class Network {
+
+        private final boolean announce;
+        private final List<Node> nodes = new ArrayList<>();
+        private final PriorityQueue<Event> events = new PriorityQueue<>();
+        private final int ttl = config.getNodeSpec().getTTL();
+        private final int blockSize = new NewBlockMessage(block, ttl).getBody().length;
+        private final int hashSize = new NewBlockHashMessage(hashLow, ttl).getBody().length;
+        private final int requestSize = new BlockRequestMessage(hashLow.mutableCopy(), new XdagStats(), new NetDB())
+                .getBody().length;
+        private long now;
+        private long sequence;
+        private long bytes;
+
+        Network(boolean announce) {
+            this.announce = announce;
+            for (int i = 0; i < NODES; i++) {
+                nodes.add(new Node());
+            }
+        }
+
+        boolean link(int a, int b) {
+            Node from = nodes.get(a), to = nodes.get(b);
+            if (from.links.containsKey(to)) {
+                return false;
+            }
+            from.links.put(to, new Link(from, to));
+            to.links.put(from, new Link(to, from));
+            return true;
+        }
+
+        void run(int origin) {
+            nodes.get(origin).receivedAt = 0;
+            nodes.get(origin).relay(ttl, true);
+            while (!events.isEmpty()) {
+                Event event = events.poll();
+                now = event.time;
+                event.action.run();
+            }
+        }
+
+        int reached() {
+            int reached = 0;
+            for (Node node : nodes) {
+                if (node.receivedAt >= 0) {
+                    reached++;
+                }
+            }
+            return reached;
+        }
+
+        long lastReceived() {
+            long last = 0;
+            for (Node node : nodes) {
+                last = Math.max(last, node.receivedAt);
+            }
+            return last;
+        }
+
+        double meanReceived() {
+            long sum = 0;
+            for (Node node : nodes) {
+                sum += node.receivedAt;
+            }
+            return (double) sum / NODES;
+        }
+
+        void send(int size, Runnable delivery) {
+            bytes += size;
+            events.add(new Event(now + LATENCY, sequence++, delivery));
+        }
+
+        private class Node {
+
+            private final BlockAnnouncer announcer = new BlockAnnouncer();
+            private final Map<Node, Link> links = new LinkedHashMap<>();
+            private long receivedAt = -1;
+
+            void relay(int ttl, boolean local) {
+                if (announce) {
+                    announcer.announce(block, ttl, local, links.values());
+                } else {
+                    for (Link link : links.values()) {
+                        link.sendNewBlock(block, ttl);
+                    }
+                }
+            }
+
+            void onNewBlock(Node from, int ttl) {
+                links.get(from).markBlockKnown(hashLow);
+                if (receivedAt >= 0) {
+                    return;
+                }
+                receivedAt = now;
+                int relayTtl = (announce ? announcer.onBlockReceived(hashLow, ttl) : ttl) - 1;
+                if (relayTtl > 0) {
+                    relay(relayTtl, false);
+                }
+            }
+
+            void onNewBlockHash(Node from, int announcedTtl) {
+                links.get(from).markBlockKnown(hashLow);
+                if (receivedAt < 0) {
+                    announcer.onAnnounced(hashLow, announcedTtl, links.get(from));
+                }
+            }
+        }
+
+        private class Link implements BlockAnnouncer.Target {
+
+            private final Node from;
+            private final Node to;
+            private final Set<Bytes32> known = new HashSet<>();
+
+            Link(Node from, Node to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            public boolean isBlockKnown(Bytes32 hashLow) {
+                return known.contains(hashLow);
+            }
+
+            @Override
+            public void markBlockKnown(Bytes32 hashLow) {
+                known.add(hashLow);
+            }
+
+            @Override
+            public boolean isAnnounceSupported() {
+                return true;
+            }
+
+            @Override
+            public void sendNewBlock(Block block, int ttl) {
+                send(blockSize, () -> to.onNewBlock(from, ttl));
+            }
+
+            @Override
+            public void sendNewBlockHash(Bytes32 hashLow, int ttl) {
+                send(hashSize, () -> to.onNewBlockHash(from, ttl));
+            }
+
+            @Override
+            public void requestBlock(Bytes32 hashLow) {
+                // the request and the block sent back in reply
+                send(requestSize, () -> send(blockSize, () -> from.onNewBlock(to, ttl)));
+            }
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package io.xdag.net;
+
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.SocketChannelConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlockIngestExecutorTest {
+
+    BlockIngestExecutor executor = new BlockIngestExecutor(1, 4, 1);
+
+    @After
+    public void tearDown() {
+        executor.stop();
+    }
+
+    @Test
+    public void testPeersServedRoundRobin() throws Exception {
+        Channel a = new Channel(null);
+        Channel b = new Channel(null);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        executor.submit(a, () -> await(release));
+        for (int i = 0; i < 3; i++) {
+            executor.submit(a, () -> order.add("a"));
+        }
+        executor.submit(b, () -> order.add("b"));
+        executor.submit(b, () -> order.add("b"));
+        executor.submit(a, done::countDown);
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // a flooding peer doesn't starve the other one
+        assertEquals(List.of("b", "a", "b", "a", "a"), order);
+    }
+
+    @Test
+    public void testPauseReadsWhenQueueIsFull() throws Exception {
+        SocketChannel socket = mock(SocketChannel.class);
+        SocketChannelConfig config = mock(SocketChannelConfig.class);
+        when(socket.config()).thenReturn(config);
+        Channel channel = new Channel(socket);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(channel, () -> await(release));
+        for (int i = 0; i < 2; i++) {
+            executor.submit(channel, () -> {});
+        }
+        verify(config, never()).setAutoRead(false);
+        executor.submit(channel, () -> {});
+        verify(config).setAutoRead(false);
+
+        release.countDown();
+        verify(config, timeout(5000)).setAutoRead(true);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.db.BlockStore;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.p2p.PingMessage;
+import io.xdag.net.message.consensus.SyncBlockMessage;
+import io.xdag.utils.BlockUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlockRangeResponderTest {
+
+    private static final int BLOCKS = 10;
+
+    private final Config config = new DevnetConfig();
+    private final Map<byte[], Block> index = new TreeMap<>(Arrays::compareUnsigned);
+    private final List<Object> written = new ArrayList<>();
+    private final List<ChannelPromise> unsent = new ArrayList<>();
+    private ChannelHandlerContext ctx;
+    private BlockStore blockStore;
+    private int blockSize;
+
+    @Before
+    public void setUp() {
+        long time = 1600616700000L;
+        for (int i = 0; i < BLOCKS; i++) {
+            Block block = generateAddressBlock(config, SampleKeys.KEY_PAIR, time + i);
+            index.put(BlockUtils.getTimeKey(block.getTimestamp(), block.getHashLow()), block);
+        }
+        blockSize = new SyncBlockMessage(index.values().iterator().next(), 1).getBody().length;
+
+        blockStore = mock(BlockStore.class);
+        when(blockStore.getBlockTimeKeys(anyLong(), anyLong(), any(), anyInt())).thenAnswer(invocation -> {
+            byte[] after = invocation.getArgument(2);
+            int limit = invocation.getArgument(3);
+            List<byte[]> keys = new ArrayList<>();
+            for (byte[] key : index.keySet()) {
+                if ((after == null || Arrays.compareUnsigned(key, after) > 0) && keys.size() < limit) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        });
+        when(blockStore.getBlockByHash(any(), eq(true))).thenAnswer(invocation -> {
+            Bytes32 hashlow = invocation.getArgument(0);
+            return index.values().stream().filter(b -> b.getHashLow().equals(hashlow)).findFirst().orElse(null);
+        });
+
+        // holds every write until the test sends it
+        new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                written.add(msg);
+                unsent.add(promise);
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+            }
+        }, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void handlerAdded(ChannelHandlerContext ctx) {
+                BlockRangeResponderTest.this.ctx = ctx;
+            }
+        });
+    }
+
+    private void sendAll() {
+        while (!unsent.isEmpty()) {
+            List<ChannelPromise> promises = new ArrayList<>(unsent);
+            unsent.clear();
+            promises.forEach(ChannelPromise::setSuccess);
+        }
+    }
+
+    @Test
+    public void testStreamsWithinBudget() {
+        BlockRangeResponder responder = new BlockRangeResponder(blockStore, 3 * blockSize, Runnable::run);
+        responder.activate(ctx);
+        Message reply = new PingMessage();
+        responder.submit(0, Long.MAX_VALUE, () -> reply);
+
+        // stops once the budget is used up
+        assertEquals(3, written.size());
+        assertEquals(3L * blockSize, responder.unsent());
+
+        sendAll();
+        assertEquals(BLOCKS + 1, written.size());
+        assertEquals(0, responder.unsent());
+        assertEquals(0, responder.pending());
+
+        // blocks in time index order, then the reply
+        List<Block> expected = new ArrayList<>(index.values());
+        for (int i = 0; i < BLOCKS; i++) {
+            assertTrue(written.get(i) instanceof SyncBlockMessage);
+            assertEquals(expected.get(i).getHashLow(), ((SyncBlockMessage) written.get(i)).getBlock().getHashLow());
+        }
+        assertEquals(reply, written.get(BLOCKS));
+    }
+
+    @Test
+    public void testRequestsServedInOrder() {
+        BlockRangeResponder responder = new BlockRangeResponder(blockStore, 3 * blockSize, Runnable::run);
+        responder.activate(ctx);
+        Message first = new PingMessage();
+        Message second = new PingMessage();
+        responder.submit(0, Long.MAX_VALUE, () -> first);
+        responder.submit(0, Long.MAX_VALUE, () -> second);
+        assertEquals(2, responder.pending());
+
+        sendAll();
+        assertEquals(2 * (BLOCKS + 1), written.size());
+        assertEquals(first, written.get(BLOCKS));
+        assertEquals(second, written.get(2 * BLOCKS + 1));
+    }
+
+    @Test
+    public void testCloseDropsPending() {
+        BlockRangeResponder responder = new BlockRangeResponder(blockStore, 3 * blockSize, Runnable::run);
+        responder.activate(ctx);
+        responder.submit(0, Long.MAX_VALUE, PingMessage::new);
+        responder.close();
+
+        sendAll();
+        assertEquals(3, written.size());
+        assertEquals(0, responder.pending());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import io.xdag.BlockBuilder;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.net.message.Message;
+import io.xdag.net.message.MessageCode;
+import io.xdag.net.message.consensus.NewBlockMessage;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+public class XdagMessageHandlerTest {
+
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    private static Config config(int maxFrameBodySize, int maxPacketSize) {
+        return new DevnetConfig() {
+            {
+                netMaxFrameBodySize = maxFrameBodySize;
+                netMaxPacketSize = maxPacketSize;
+            }
+        };
+    }
+
+    private EmbeddedChannel channel(Config config) {
+        EmbeddedChannel channel = new EmbeddedChannel(DefaultChannelId.newInstance(),
+                new XdagFrameHandler(config), new XdagMessageHandler(config));
+        channels.add(channel);
+        return channel;
+    }
+
+    private static NewBlockMessage message(long time) {
+        return new NewBlockMessage(BlockBuilder.generateAddressBlock(new DevnetConfig(), SampleKeys.KEY_PAIR, time), 5);
+    }
+
+    private static List<ByteBuf> send(EmbeddedChannel sender, Message message) {
+        assertTrue(sender.writeOutbound(message));
+        List<ByteBuf> frames = new ArrayList<>();
+        ByteBuf frame;
+        while ((frame = sender.readOutbound()) != null) {
+            // the frame handler writes each frame itself and leaves its encoder an empty buffer
+            if (frame.isReadable()) {
+                frames.add(frame);
+            } else {
+                frame.release();
+            }
+        }
+        return frames;
+    }
+
+    private static void assertMessage(Message expected, Message actual) {
+        assertEquals(expected.getCode(), actual.getCode());
+        assertArrayEquals(expected.getBody(), actual.getBody());
+    }
+
+    @After
+    public void tearDown() {
+        channels.forEach(EmbeddedChannel::finishAndReleaseAll);
+    }
+
+    @Test
+    public void testSingleFrame() {
+        Config config = config(128 * 1024, 16 * 1024 * 1024);
+        EmbeddedChannel sender = channel(config);
+        EmbeddedChannel receiver = channel(config);
+        NewBlockMessage message = message(1600616700000L);
+
+        List<ByteBuf> frames = send(sender, message);
+        assertEquals(1, frames.size());
+        receiver.writeInbound(frames.get(0));
+        Message received = receiver.readInbound();
+        assertEquals(MessageCode.NEW_BLOCK, received.getCode());
+        assertMessage(message, received);
+    }
+
+    @Test
+    public void testDirectFrame() {
+        Config config = config(128 * 1024, 16 * 1024 * 1024);
+        EmbeddedChannel sender = channel(config);
+        EmbeddedChannel receiver = channel(config);
+        NewBlockMessage message = message(1600616700000L);
+
+        ByteBuf frame = send(sender, message).get(0);
+        ByteBuf direct = Unpooled.directBuffer(frame.readableBytes()).writeBytes(frame);
+        frame.release();
+        receiver.writeInbound(direct);
+        assertMessage(message, receiver.readInbound());
+    }
+
+    @Test
+    public void testCompressRoundTrip() throws Exception {
+        XdagMessageHandler handler = new XdagMessageHandler(config(128 * 1024, 16 * 1024 * 1024));
+        byte[] body = message(1600616700000L).getBody();
+
+        ByteBuf compressed = XdagMessageHandler.compress(PooledByteBufAllocator.DEFAULT, body);
+        ByteBuf heap = PooledByteBufAllocator.DEFAULT.heapBuffer().writeBytes(compressed, 0, compressed.readableBytes());
+        try {
+            assertTrue(compressed.isDirect());
+            assertArrayEquals(body, handler.uncompress(compressed));
+            assertArrayEquals(body, handler.uncompress(heap));
+        } finally {
+            compressed.release();
+            heap.release();
+        }
+    }
+
+    @Test
+    public void testChunkedPackets() {
+        Config config = config(64, 16 * 1024 * 1024);
+        EmbeddedChannel sender = channel(config);
+        EmbeddedChannel receiver = channel(config);
+        NewBlockMessage first = message(1600616700000L);
+        NewBlockMessage second = message(1600616800000L);
+
+        List<ByteBuf> firstFrames = send(sender, first);
+        List<ByteBuf> secondFrames = send(sender, second);
+        assertTrue(firstFrames.size() > 1);
+
+        // frames of the two packets interleaved
+        int n = Math.max(firstFrames.size(), secondFrames.size());
+        for (int i = 0; i < n; i++) {
+            if (i < firstFrames.size()) {
+                receiver.writeInbound(firstFrames.get(i));
+            }
+            if (i < secondFrames.size()) {
+                receiver.writeInbound(secondFrames.get(i));
+            }
+        }
+        // a packet is decoded when its last frame arrives
+        boolean firstDone = firstFrames.size() <= secondFrames.size();
+        assertMessage(firstDone ? first : second, receiver.readInbound());
+        assertMessage(firstDone ? second : first, receiver.readInbound());
+        assertNull(receiver.readInbound());
+    }
+
+    @Test
+    public void testIncompletePacketsAreBounded() {
+        // two packets of the largest size fit, a third one drops the oldest
+        int maxPacketSize = 600;
+        Config config = config(32, maxPacketSize);
+        EmbeddedChannel sender = channel(config);
+        EmbeddedChannel receiver = channel(config);
+
+        List<List<ByteBuf>> packets = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            packets.add(send(sender, message(1600616700000L + i * 64000L)));
+        }
+        for (List<ByteBuf> frames : packets) {
+            receiver.writeInbound(frames.remove(0));
+        }
+        packets.get(1).forEach(receiver::writeInbound);
+        packets.get(2).forEach(receiver::writeInbound);
+        assertNotNull(receiver.readInbound());
+        assertNotNull(receiver.readInbound());
+
+        // the first packet was dropped, its other frames can't complete it
+        packets.get(0).forEach(receiver::writeInbound);
+        assertNull(receiver.readInbound());
+    }
+
+    @Test(expected = DecoderException.class)
+    public void testPacketTooLarge() {
+        EmbeddedChannel sender = channel(config(32, 16 * 1024 * 1024));
+        EmbeddedChannel receiver = channel(config(32, 64));
+        List<ByteBuf> frames = send(sender, message(1600616700000L));
+        receiver.writeInbound(frames.get(0));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.message;
+
+import static io.xdag.BlockBuilder.generateAddressBlock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.xdag.config.Config;
+import io.xdag.config.DevnetConfig;
+import io.xdag.core.Block;
+import io.xdag.crypto.SampleKeys;
+import io.xdag.net.message.consensus.NewBlockMessage;
+import io.xdag.net.message.consensus.SyncBlockMessage;
+import io.xdag.net.message.p2p.PingMessage;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageQueueTest {
+
+    private final Config config = new DevnetConfig();
+    private final AtomicInteger flushes = new AtomicInteger();
+    private EmbeddedChannel channel;
+    private MessageQueue queue;
+    private Block block;
+
+    @Before
+    public void setUp() {
+        block = generateAddressBlock(config, SampleKeys.KEY_PAIR, 1600616700000L);
+        queue = new MessageQueue(config);
+        channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushes.incrementAndGet();
+                super.flush(ctx);
+            }
+        }, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void handlerAdded(ChannelHandlerContext ctx) {
+                queue.activate(ctx);
+            }
+        });
+    }
+
+    @Test
+    public void testWritesWithoutWaitingForATimer() {
+        PingMessage ping = new PingMessage();
+        queue.sendMessage(ping);
+        channel.runPendingTasks();
+
+        assertSame(ping, channel.readOutbound());
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void testPrioritizedFirstAndOneFlushPerDrain() {
+        PingMessage ping = new PingMessage();
+        NewBlockMessage newBlock = new NewBlockMessage(block, 1);
+        queue.sendMessage(ping);
+        queue.sendMessage(newBlock);
+        channel.runPendingTasks();
+
+        assertSame(newBlock, channel.readOutbound());
+        assertSame(ping, channel.readOutbound());
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void testDrainYieldsAfterByteBudget() {
+        int size = new SyncBlockMessage(block, 1).getBody().length;
+        // a drain stops at the first message that reaches the budget
+        int perDrain = (MessageQueue.MAX_BYTES_PER_DRAIN + size - 1) / size;
+        int count = 2 * perDrain + 1;
+        for (int i = 0; i < count; i++) {
+            queue.sendMessage(new SyncBlockMessage(block, 1));
+        }
+        channel.runPendingTasks();
+
+        // every message is written, over more than one drain
+        for (int i = 0; i < count; i++) {
+            assertTrue(channel.readOutbound() instanceof SyncBlockMessage);
+        }
+        assertNull(channel.readOutbound());
+        assertEquals(3, flushes.get());
+    }
+
+    @Test
+    public void testWaitsForWritability() {
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        queue.sendMessage(new PingMessage());
+        channel.runPendingTasks();
+        assertNull(channel.readOutbound());
+        assertEquals(1, queue.size());
+
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        queue.onWritable();
+        channel.runPendingTasks();
+        assertTrue(channel.readOutbound() instanceof PingMessage);
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void testFullQueueOnEventLoopKeepsOrder() {
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, false);
+        for (int i = 0; i < MessageQueue.CAPACITY; i++) {
+            queue.sendMessage(new PingMessage());
+        }
+        SyncBlockMessage last = new SyncBlockMessage(block, 1);
+        queue.sendMessage(last);
+
+        // the queued messages went out first, the last one waits in the queue
+        for (int i = 0; i < MessageQueue.CAPACITY; i++) {
+            assertTrue(channel.readOutbound() instanceof PingMessage);
+        }
+        assertNull(channel.readOutbound());
+        assertEquals(1, queue.size());
+
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        queue.onWritable();
+        channel.runPendingTasks();
+        assertSame(last, channel.readOutbound());
+    }
+
+    @Test
+    public void testStuckPeerIsClosedAfterTimeout() {
+        ChannelHandlerContext ctx = unwritableContextOffEventLoop();
+        MessageQueue stuck = new MessageQueue(config, 100);
+        stuck.activate(ctx);
+        for (int i = 0; i < MessageQueue.CAPACITY; i++) {
+            stuck.sendMessage(new PingMessage());
+        }
+
+        // the sender returns once the timeout expires and the channel is closed
+        stuck.sendMessage(new PingMessage());
+        verify(ctx).close();
+        assertTrue(stuck.isIdle());
+
+        stuck.sendMessage(new PingMessage());
+        assertTrue(stuck.isIdle());
+    }
+
+    @Test
+    public void testDeactivateReleasesBlockedSender() throws InterruptedException {
+        MessageQueue stuck = new MessageQueue(config, 60_000);
+        stuck.activate(unwritableContextOffEventLoop());
+        Thread sender = new Thread(() -> {
+            for (int i = 0; i <= MessageQueue.CAPACITY; i++) {
+                stuck.sendMessage(new PingMessage());
+            }
+        });
+        sender.start();
+        while (sender.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(sender.isAlive());
+            Thread.sleep(10);
+        }
+
+        stuck.deactivate();
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertTrue(stuck.isIdle());
+    }
+
+    private ChannelHandlerContext unwritableContextOffEventLoop() {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        Channel ch = mock(Channel.class);
+        EventExecutor executor = mock(EventExecutor.class);
+        when(ctx.channel()).thenReturn(ch);
+        when(ctx.executor()).thenReturn(executor);
+        when(ch.isWritable()).thenReturn(false);
+        when(executor.inEventLoop()).thenReturn(false);
+        return ctx;
+    }
+}
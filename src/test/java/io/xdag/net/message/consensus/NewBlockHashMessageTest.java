@@ -0,0 +1,47 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.message.consensus;
+
+import static org.junit.Assert.assertEquals;
+
+import io.xdag.net.message.MessageCode;
+import org.apache.tuweni.bytes.Bytes32;
+import org.junit.Test;
+
+public class NewBlockHashMessageTest {
+
+    @Test
+    public void testCodec() {
+        Bytes32 hashLow = Bytes32.random();
+
+        NewBlockHashMessage msg = new NewBlockHashMessage(hashLow, 5);
+        assertEquals(MessageCode.NEW_BLOCK_HASH, msg.getCode());
+        assertEquals(hashLow, msg.getHashLow());
+        assertEquals(5, msg.getTtl());
+
+        msg = new NewBlockHashMessage(msg.getBody());
+        assertEquals(hashLow, msg.getHashLow());
+        assertEquals(5, msg.getTtl());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2030 The XdagJ Developers
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.xdag.net.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.xdag.consensus.Task;
+import io.xdag.core.XdagField;
+import java.util.Arrays;
+import org.apache.tuweni.bytes.Bytes32;
+import org.apache.tuweni.bytes.MutableBytes;
+import org.junit.Test;
+
+public class PoolProtocolTest {
+
+    private final Bytes32 share = Bytes32.random();
+    private final Bytes32 preHash = Bytes32.random();
+
+    @Test
+    public void testEncodeTask() {
+        Bytes32 taskSeed = Bytes32.random();
+        Task task = new Task();
+        task.setTask(new XdagField[]{new XdagField(MutableBytes.wrap(preHash.toArray())),
+                new XdagField(MutableBytes.wrap(taskSeed.toArray()))});
+        task.setTaskTime(1700000000L);
+        task.setTaskIndex(42);
+
+        ByteBuf buf = PoolProtocol.encodeTask(ByteBufAllocator.DEFAULT, task);
+        try {
+            assertEquals(PoolProtocol.TASK_SIZE, buf.readableBytes());
+            assertEquals(PoolProtocol.VERSION, buf.readByte());
+            assertEquals(PoolProtocol.TYPE_TASK, buf.readByte());
+            assertEquals(preHash, readBytes32(buf));
+            assertEquals(taskSeed, readBytes32(buf));
+            assertEquals(1700000000L, buf.readLong());
+            assertEquals(42, buf.readLong());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testShareCodec() {
+        ByteBuf buf = PoolProtocol.encodeShare(ByteBufAllocator.DEFAULT, share, preHash, 7);
+        try {
+            PoolProtocol.Share decoded = PoolProtocol.readShare(buf);
+            assertEquals(share, decoded.getShare());
+            assertEquals(preHash, decoded.getPreHash());
+            assertEquals(7, decoded.getTaskIndex());
+            // read in place
+            assertEquals(PoolProtocol.SHARE_SIZE, buf.readableBytes());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedVersion() {
+        ByteBuf buf = PoolProtocol.encodeShare(ByteBufAllocator.DEFAULT, share, preHash, 7);
+        try {
+            buf.setByte(0, PoolProtocol.VERSION + 1);
+            PoolProtocol.readShare(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedShare() {
+        PoolProtocol.readShare(Unpooled.wrappedBuffer(new byte[]{PoolProtocol.VERSION, PoolProtocol.TYPE_SHARE}));
+    }
+
+    @Test
+    public void testParseJsonShare() {
+        PoolProtocol.Share decoded = PoolProtocol.parseShare(jsonShare(2));
+
+        assertEquals(share, decoded.getShare());
+        assertEquals(preHash, decoded.getPreHash());
+        assertEquals(7, decoded.getTaskIndex());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseJsonNotAShare() {
+        PoolProtocol.parseShare(jsonShare(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMalformedJson() {
+        PoolProtocol.parseShare("{\"msgType\": 2,");
+    }
+
+    @Test
+    public void testEncodeAwards() {
+        byte[] award = PoolProtocol.encodeAward(Bytes32.random(), preHash, share, 60_000_000_000L, 100_000_000L,
+                3_200_000_000L);
+        ByteBuf buf = PoolProtocol.encodeAwards(ByteBufAllocator.DEFAULT, Arrays.asList(award, award));
+        try {
+            assertEquals(PoolProtocol.HEADER_SIZE + 1 + 2 * PoolProtocol.AWARD_SIZE, buf.readableBytes());
+            buf.skipBytes(PoolProtocol.HEADER_SIZE);
+            assertEquals(2, buf.readByte());
+            buf.skipBytes(32);
+            assertEquals(preHash, readBytes32(buf));
+            assertEquals(share, readBytes32(buf));
+            assertEquals(60_000_000_000L, buf.readLong());
+            assertEquals(100_000_000L, buf.readLong());
+            assertEquals(3_200_000_000L, buf.readLong());
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testSendToPoolsByProtocol() {
+        EmbeddedChannel jsonPool = new EmbeddedChannel(DefaultChannelId.newInstance());
+        EmbeddedChannel binaryPool = new EmbeddedChannel(DefaultChannelId.newInstance());
+        PoolProtocol.setBinary(binaryPool, true);
+        ChannelSupervise.addChannel(jsonPool);
+        ChannelSupervise.addChannel(binaryPool);
+        try {
+            assertFalse(PoolProtocol.isBinary(jsonPool));
+            assertTrue(PoolProtocol.isBinary(binaryPool));
+
+            ChannelSupervise.send2Pools(() -> jsonShare(2),
+                    () -> PoolProtocol.encodeShare(ByteBufAllocator.DEFAULT, share, preHash, 7));
+
+            TextWebSocketFrame text = jsonPool.readOutbound();
+            assertEquals(jsonShare(2), text.text());
+            text.release();
+            assertNull(jsonPool.readOutbound());
+
+            BinaryWebSocketFrame binary = binaryPool.readOutbound();
+            assertEquals(share, PoolProtocol.readShare(binary.content()).getShare());
+            binary.release();
+            assertNull(binaryPool.readOutbound());
+        } finally {
+            ChannelSupervise.removeChannel(jsonPool);
+            ChannelSupervise.removeChannel(binaryPool);
+            jsonPool.finishAndReleaseAll();
+            binaryPool.finishAndReleaseAll();
+        }
+    }
+
+    private String jsonShare(int msgType) {
+        return "{\"msgType\": " + msgType + ", \"msgContent\": {\"share\": \"" + share.toUnprefixedHexString()
+                + "\", \"hash\": \"" + preHash.toUnprefixedHexString() + "\", \"taskIndex\": 7}}";
+    }
+
+    private static Bytes32 readBytes32(ByteBuf buf) {
+        byte[] bytes = new byte[32];
+        buf.readBytes(bytes);
+        return Bytes32.wrap(bytes);
+    }
+}